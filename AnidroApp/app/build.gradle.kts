@@ -91,6 +91,10 @@ android {
         viewBinding = true
     }
 
+    testOptions {
+        unitTests.isReturnDefaultValues = true
+    }
+
     androidExtensions {
         isExperimental = true
     }
@@ -120,6 +124,14 @@ dependencies {
 
     // Crashlytics
     implementation("com.google.firebase:firebase-crashlytics:17.2.1")
+
+    // Tests
+    testImplementation("junit:junit:4.13.2")
+}
+
+tasks.withType<Test> {
+    // The benchmarks only run when opted in with -Pbenchmarks
+    systemProperty("anidro.benchmarks", project.hasProperty("benchmarks"))
 }
 
 apply(plugin = "com.google.gms.google-services")
@@ -16,7 +16,14 @@ class DisplayMetricsConverter(resources: Resources) {
      * Convert the input DP value into physical device pixels
      */
     fun pixelsFromDp(dp: Int): Float {
+        return pixelsFromDp(dp.toFloat())
+    }
+
+    /**
+     * Convert the input fractional DP value into physical device pixels
+     */
+    fun pixelsFromDp(dp: Float): Float {
         return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
-                dp.toFloat(), displayMetrics)
+                dp, displayMetrics)
     }
 }
\ No newline at end of file
@@ -11,8 +11,13 @@ import app.anidro.R
  * It contains the indexes of the default colors as well as
  * getters for all supported drawing colors. Each color is
  * uniquely defined by its color index and its lightness index.
+ *
+ * The whole palette is read from the resources once, when the palette is created,
+ * into a table indexed by color and lightness, so getting a color never touches the resources.
  */
-class DrawingColorsPalette(private val resources: Resources) {
+class DrawingColorsPalette(resources: Resources) {
+
+    private val colors: Array<IntArray> = loadColors(resources)
 
     /**
      * Returns the default drawing color, i.e. pitch black
@@ -35,20 +40,7 @@ class DrawingColorsPalette(private val resources: Resources) {
      */
     @ColorInt
     fun getColorsForLightness(lightnessIndex: Int): IntArray {
-        var colorLightnesses: TypedArray
-        val allColors = resources.obtainTypedArray(R.array.drawing_colors)
-        @ColorInt val lightnesscolors = IntArray(allColors.length())
-        var i = 0
-        val size = allColors.length()
-        while (i < size) {
-            colorLightnesses = resources.obtainTypedArray(
-                    allColors.getResourceId(i, R.array.drawing_color_grey))
-            lightnesscolors[i] = colorLightnesses.getColor(lightnessIndex, Color.BLACK)
-            colorLightnesses.recycle()
-            i++
-        }
-        allColors.recycle()
-        return lightnesscolors
+        return IntArray(colors.size) { colorIndex -> getColorWithLightness(colorIndex, lightnessIndex) }
     }
 
     /**
@@ -56,19 +48,7 @@ class DrawingColorsPalette(private val resources: Resources) {
      */
     @ColorInt
     fun getLightnessesForColor(colorIndex: Int): IntArray {
-        val allColors = resources.obtainTypedArray(R.array.drawing_colors)
-        val colorLightnesses = resources.obtainTypedArray(
-                allColors.getResourceId(colorIndex, R.array.drawing_color_grey))
-        allColors.recycle()
-        @ColorInt val colors = IntArray(colorLightnesses.length())
-        var i = 0
-        val size = colorLightnesses.length()
-        while (i < size) {
-            colors[i] = colorLightnesses.getColor(i, Color.BLACK)
-            i++
-        }
-        colorLightnesses.recycle()
-        return colors
+        return colors[colorIndex].copyOf()
     }
 
     /**
@@ -76,13 +56,23 @@ class DrawingColorsPalette(private val resources: Resources) {
      */
     @ColorInt
     fun getColorWithLightness(colorIndex: Int, lightnessIndex: Int): Int {
+        val colorLightnesses = colors[colorIndex]
+        return if (lightnessIndex < colorLightnesses.size) colorLightnesses[lightnessIndex] else Color.BLACK
+    }
+
+    private fun loadColors(resources: Resources): Array<IntArray> {
         val allColors = resources.obtainTypedArray(R.array.drawing_colors)
-        val colorLightnesses = resources.obtainTypedArray(
-                allColors.getResourceId(colorIndex, R.array.drawing_color_grey))
-        @ColorInt val colorForLightness = colorLightnesses.getColor(lightnessIndex, Color.BLACK)
-        colorLightnesses.recycle()
+        val loadedColors = Array(allColors.length()) { colorIndex ->
+            val colorLightnesses: TypedArray = resources.obtainTypedArray(
+                    allColors.getResourceId(colorIndex, R.array.drawing_color_grey))
+            val lightnesses = IntArray(colorLightnesses.length()) { lightnessIndex ->
+                colorLightnesses.getColor(lightnessIndex, Color.BLACK)
+            }
+            colorLightnesses.recycle()
+            lightnesses
+        }
         allColors.recycle()
-        return colorForLightness
+        return loadedColors
     }
 
     companion object {
@@ -0,0 +1,665 @@
+package app.anidro.models;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * A drawing stroke approximated by a chain of cubic Bezier pieces. Each piece also carries its own
+ * timing as a cubic Bezier of the time over the same curve parameter, so the curve can be replayed
+ * with the timing of the original points. A few pieces replace the hundreds of raw points of a
+ * long stroke, and renderers draw the pieces directly instead of a line per point.
+ * <p/>
+ * The pieces are fitted with the algorithm of Philip J. Schneider from Graphics Gems, treating
+ * the time as a third coordinate scaled so that the time tolerance has the same weight as the
+ * distance tolerance. A piece is split at its worst fitted point until every point is within the
+ * tolerance of the fitted curve.
+ */
+public class CubicBezierStroke {
+    /**
+     * The maximum distance in pixels between two vertices of a flattened piece
+     */
+    private static final float CURVE_FLATTENING_STEP = 4f;
+    private static final int MAX_CURVE_STEPS = 32;
+    // Enough bisection steps to place the cut of a piece to a fraction of a pixel
+    private static final int PARAMETER_SEARCH_STEPS = 16;
+
+    // The start point and then the two control points and the end point of every piece
+    private final float[] controlXs;
+    private final float[] controlYs;
+    // The time of each control point in milliseconds after the start timestamp
+    private final float[] controlTimes;
+    private final long startTimestamp;
+    private final int piecesCount;
+
+    private CubicBezierStroke(float[] controlXs, float[] controlYs, float[] controlTimes,
+                              long startTimestamp, int piecesCount) {
+        this.controlXs = controlXs;
+        this.controlYs = controlYs;
+        this.controlTimes = controlTimes;
+        this.startTimestamp = startTimestamp;
+        this.piecesCount = piecesCount;
+    }
+
+    /**
+     * Fits cubic Bezier pieces through the input points of a stroke
+     *
+     * @param xs
+     *      The x coordinates of the points
+     * @param ys
+     *      The y coordinates of the points
+     * @param timestamps
+     *      The never decreasing timestamps of the points
+     * @param pointsCount
+     *      The number of points, at least one
+     * @param tolerance
+     *      The maximum distance in pixels between a point and the fitted curve
+     * @param timeTolerance
+     *      The maximum difference in milliseconds between the time of a point and the fitted time,
+     *      for a point lying on the curve
+     */
+    @NonNull
+    public static CubicBezierStroke fit(@NonNull float[] xs, @NonNull float[] ys, @NonNull long[] timestamps,
+                                        int pointsCount, float tolerance, float timeTolerance) {
+        if (pointsCount <= 0 || tolerance <= 0 || timeTolerance <= 0) {
+            throw new IllegalArgumentException("Cannot fit " + pointsCount + " points with tolerance "
+                    + tolerance + " and time tolerance " + timeTolerance);
+        }
+        return new Fitter(xs, ys, timestamps, pointsCount, tolerance, tolerance / timeTolerance).fit();
+    }
+
+    public int getPiecesCount() {
+        return piecesCount;
+    }
+
+    /**
+     * Returns the number of the piece ends, which lie on the original stroke
+     */
+    public int getKnotsCount() {
+        return piecesCount + 1;
+    }
+
+    public float getKnotX(int knot) {
+        return controlXs[knot * 3];
+    }
+
+    public float getKnotY(int knot) {
+        return controlYs[knot * 3];
+    }
+
+    public long getKnotTimestamp(int knot) {
+        return startTimestamp + Math.round(controlTimes[knot * 3]);
+    }
+
+    /**
+     * Returns the x coordinate of a control point. The control points are the start of the stroke
+     * and then the two inner control points and the end of every piece, so piece N is defined by
+     * the control points from 3 * N to 3 * N + 3.
+     */
+    public float getControlX(int controlPoint) {
+        return controlXs[controlPoint];
+    }
+
+    /**
+     * Returns the y coordinate of a control point, see {@link #getControlX(int)}
+     */
+    public float getControlY(int controlPoint) {
+        return controlYs[controlPoint];
+    }
+
+    /**
+     * Returns the number of control points of all pieces, i.e. the start of the stroke and three
+     * control points per piece
+     */
+    public int getControlPointsCount() {
+        return piecesCount * 3 + 1;
+    }
+
+    /**
+     * Returns the number of floats needed to hold any part of the stroke extracted with
+     * {@link #extract(long, long, float[])}
+     */
+    public int getMaxExtractSize() {
+        return getControlPointsCount() * 2;
+    }
+
+    /**
+     * Writes the control points of the part of the stroke drawn between two timestamps into the
+     * output array as x and y pairs, in the same order as {@link #getControlX(int)}. The pieces at
+     * both ends of the part are cut at the curve parameter their fitted time reaches the timestamps.
+     * The output has to be at least {@link #getMaxExtractSize()} floats long.
+     *
+     * @param fromTimestamp
+     *      The timestamp the part starts at when the stroke reaches it for the first time
+     * @param toTimestamp
+     *      The timestamp the part ends at when the stroke leaves it for the last time
+     * @return
+     *      The number of pieces of the part. A part without pieces is a single point.
+     */
+    public int extract(long fromTimestamp, long toTimestamp, @NonNull float[] out) {
+        final float fromTime = fromTimestamp - startTimestamp;
+        final float toTime = toTimestamp - startTimestamp;
+
+        if (piecesCount == 0) {
+            out[0] = controlXs[0];
+            out[1] = controlYs[0];
+            return 0;
+        }
+        if (toTime <= fromTime || toTime < controlTimes[0] || fromTime > controlTimes[piecesCount * 3]) {
+            // A single point at the start time, a time outside the stroke lies at its nearest end
+            final int piece = Math.max(0, Math.min(piecesCount - 1, findFirstKnotAtOrAfter(fromTime) - 1));
+            final float t = findParameter(piece, fromTime);
+            out[0] = blossom(controlXs, piece * 3, t, t, t);
+            out[1] = blossom(controlYs, piece * 3, t, t, t);
+            return 0;
+        }
+
+        // The pieces the stroke reaches the start time in and leaves the end time in
+        int startPiece = Math.max(0, findFirstKnotAtOrAfter(fromTime) - 1);
+        int lastPiece = Math.min(piecesCount - 1, findLastKnotAtOrBefore(toTime));
+        if (startPiece < lastPiece && controlTimes[(startPiece + 1) * 3] <= fromTime) {
+            // The start time is at the end knot of the piece, start with the next one
+            startPiece++;
+        }
+        if (lastPiece > startPiece && controlTimes[lastPiece * 3] >= toTime) {
+            // The end time is at the start knot of the piece, end with the previous one
+            lastPiece--;
+        }
+
+        int count = 0;
+        for (int piece = startPiece; piece <= lastPiece; piece++) {
+            final int i = piece * 3;
+            final float from = piece == startPiece ? findParameter(piece, fromTime) : 0;
+            final float to = piece == lastPiece ? findParameter(piece, toTime) : 1;
+            if (piece == startPiece) {
+                out[0] = blossom(controlXs, i, from, from, from);
+                out[1] = blossom(controlYs, i, from, from, from);
+            }
+            // The control points of the piece between both parameters are its blossom values
+            final int offset = (count * 3 + 1) * 2;
+            out[offset] = blossom(controlXs, i, from, from, to);
+            out[offset + 1] = blossom(controlYs, i, from, from, to);
+            out[offset + 2] = blossom(controlXs, i, from, to, to);
+            out[offset + 3] = blossom(controlYs, i, from, to, to);
+            out[offset + 4] = blossom(controlXs, i, to, to, to);
+            out[offset + 5] = blossom(controlYs, i, to, to, to);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns a copy of the stroke with all control points transformed by an affine matrix.
+     * The pieces of a cubic Bezier are affine invariant, so the copy follows the transformed curve.
+     * <p/>
+     * x' = scaleX * x + skewX * y + translateX, y' = skewY * x + scaleY * y + translateY
+     */
+    @NonNull
+    public CubicBezierStroke transform(float scaleX, float skewX, float translateX,
+                                       float skewY, float scaleY, float translateY) {
+        final int count = getControlPointsCount();
+        final float[] xs = new float[count];
+        final float[] ys = new float[count];
+        for (int i = 0; i < count; i++) {
+            final float x = controlXs[i];
+            final float y = controlYs[i];
+            xs[i] = scaleX * x + skewX * y + translateX;
+            ys[i] = skewY * x + scaleY * y + translateY;
+        }
+        return new CubicBezierStroke(xs, ys, controlTimes, startTimestamp, piecesCount);
+    }
+
+    /**
+     * Flattens the pieces into a polyline and builds its geometry. Every vertex gets the time of
+     * its piece at its curve parameter, so the geometry follows the timing of the original stroke.
+     */
+    @NonNull
+    public StrokeGeometry buildGeometry() {
+        int verticesCount = 1;
+        for (int piece = 0; piece < piecesCount; piece++) {
+            verticesCount += getFlatteningSteps(piece);
+        }
+
+        final float[] xs = new float[verticesCount];
+        final float[] ys = new float[verticesCount];
+        final long[] timestamps = new long[verticesCount];
+        xs[0] = controlXs[0];
+        ys[0] = controlYs[0];
+        timestamps[0] = startTimestamp + Math.round(controlTimes[0]);
+
+        int count = 1;
+        for (int piece = 0; piece < piecesCount; piece++) {
+            final int i = piece * 3;
+            final int steps = getFlatteningSteps(piece);
+            final long pieceEndTimestamp = startTimestamp + Math.round(controlTimes[i + 3]);
+            for (int step = 1; step <= steps; step++) {
+                final float t = step / (float) steps;
+                xs[count] = evaluate(controlXs, i, t);
+                ys[count] = evaluate(controlYs, i, t);
+                // The fitted time may slightly overshoot, keep it never decreasing within the piece
+                final long timestamp = startTimestamp + Math.round(evaluate(controlTimes, i, t));
+                timestamps[count] = Math.min(pieceEndTimestamp, Math.max(timestamps[count - 1], timestamp));
+                count++;
+            }
+        }
+        return StrokeGeometry.fromPolyline(xs, ys, timestamps);
+    }
+
+    private int getFlatteningSteps(int piece) {
+        final int i = piece * 3;
+        float controlPolygonLength = 0;
+        for (int j = i; j < i + 3; j++) {
+            final float dx = controlXs[j + 1] - controlXs[j];
+            final float dy = controlYs[j + 1] - controlYs[j];
+            controlPolygonLength += (float) Math.sqrt(dx * dx + dy * dy);
+        }
+        return Math.max(1, Math.min(MAX_CURVE_STEPS, (int) Math.ceil(controlPolygonLength / CURVE_FLATTENING_STEP)));
+    }
+
+    /**
+     * Returns the index of the first knot with a time at or after the input one, or the knots
+     * count if there is none. The fitted times of the knots are the times of original points,
+     * so they are never decreasing.
+     */
+    private int findFirstKnotAtOrAfter(float time) {
+        int low = 0;
+        int high = piecesCount + 1;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (controlTimes[middle * 3] < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the last knot with a time at or before the input one, or -1 if there is none
+     */
+    private int findLastKnotAtOrBefore(float time) {
+        int low = -1;
+        int high = piecesCount;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (controlTimes[middle * 3] > time) {
+                high = middle - 1;
+            } else {
+                low = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the curve parameter at which the fitted time of a piece reaches the input time. The
+     * fitted time may slightly overshoot between the knots, so it is searched by bisection of the
+     * time clamped to the times of both knots of the piece.
+     */
+    private float findParameter(int piece, float time) {
+        final int i = piece * 3;
+        final float startTime = controlTimes[i];
+        final float endTime = controlTimes[i + 3];
+        if (time <= startTime) {
+            return 0;
+        }
+        if (time >= endTime) {
+            return 1;
+        }
+        float low = 0;
+        float high = 1;
+        for (int step = 0; step < PARAMETER_SEARCH_STEPS; step++) {
+            final float middle = (low + high) / 2;
+            if (evaluate(controlTimes, i, middle) < time) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    /**
+     * Evaluates the polar form of a cubic piece. With three equal parameters it is the point of
+     * the piece at that parameter, with the parameters (a, a, b) and (a, b, b) it gives the inner
+     * control points of the part of the piece between a and b.
+     */
+    private static float blossom(float[] values, int offset, float t1, float t2, float t3) {
+        final float a = lerp(values[offset], values[offset + 1], t1);
+        final float b = lerp(values[offset + 1], values[offset + 2], t1);
+        final float c = lerp(values[offset + 2], values[offset + 3], t1);
+        return lerp(lerp(a, b, t2), lerp(b, c, t2), t3);
+    }
+
+    private static float lerp(float first, float second, float t) {
+        return first + t * (second - first);
+    }
+
+    private static float evaluate(float[] values, int offset, float t) {
+        final float u = 1 - t;
+        return u * u * u * values[offset]
+                + 3 * u * u * t * values[offset + 1]
+                + 3 * u * t * t * values[offset + 2]
+                + t * t * t * values[offset + 3];
+    }
+
+    /**
+     * Fits the pieces of a single stroke. The points are kept in three dimensions, the third one
+     * being the time since the stroke start scaled to pixels.
+     */
+    private static class Fitter {
+        private static final int DIMENSIONS = 3;
+        private static final int MAX_REPARAMETERIZATIONS = 4;
+        // Pieces with an error below this multiple of the tolerance are improved before splitting
+        private static final double REPARAMETERIZATION_ERROR_FACTOR = 4;
+
+        private final double[] points;
+        private final int pointsCount;
+        private final long startTimestamp;
+        private final double squaredTolerance;
+        private final double timeScale;
+
+        // The parameters of the points of the fitted piece on the curve
+        private final double[] parameters;
+        // The control points of the fitted piece
+        private final double[] piece = new double[4 * DIMENSIONS];
+        private final double[] leftTangent = new double[DIMENSIONS];
+        private final double[] rightTangent = new double[DIMENSIONS];
+        private int splitPoint;
+
+        private float[] controlXs;
+        private float[] controlYs;
+        private float[] controlTimes;
+        private int controlPointsCount;
+
+        Fitter(float[] xs, float[] ys, long[] timestamps, int count, float tolerance, double timeScale) {
+            this.startTimestamp = timestamps[0];
+            this.squaredTolerance = (double) tolerance * tolerance;
+            this.timeScale = timeScale;
+
+            // Equal consecutive points make the tangents undefined, keep only one of them
+            points = new double[count * DIMENSIONS];
+            int unique = 0;
+            for (int i = 0; i < count; i++) {
+                final double x = xs[i];
+                final double y = ys[i];
+                final double time = (timestamps[i] - startTimestamp) * timeScale;
+                if (unique > 0 && x == points[(unique - 1) * DIMENSIONS]
+                        && y == points[(unique - 1) * DIMENSIONS + 1]
+                        && time == points[(unique - 1) * DIMENSIONS + 2]) {
+                    continue;
+                }
+                points[unique * DIMENSIONS] = x;
+                points[unique * DIMENSIONS + 1] = y;
+                points[unique * DIMENSIONS + 2] = time;
+                unique++;
+            }
+            pointsCount = unique;
+            parameters = new double[unique];
+
+            controlXs = new float[Math.max(4, unique)];
+            controlYs = new float[controlXs.length];
+            controlTimes = new float[controlXs.length];
+        }
+
+        CubicBezierStroke fit() {
+            appendControlPoint(points, 0);
+            if (pointsCount == 1) {
+                return new CubicBezierStroke(controlXs, controlYs, controlTimes, startTimestamp, 0);
+            }
+
+            // The pieces still to fit as first and last point, the leftmost one on top
+            int[] stack = new int[16];
+            int stackSize = 0;
+            stack[stackSize++] = 0;
+            stack[stackSize++] = pointsCount - 1;
+
+            while (stackSize > 0) {
+                final int last = stack[--stackSize];
+                final int first = stack[--stackSize];
+
+                if (fitPiece(first, last)) {
+                    for (int i = 1; i <= 3; i++) {
+                        appendControlPoint(piece, i * DIMENSIONS);
+                    }
+                    continue;
+                }
+
+                final int split = splitPoint;
+                if (stackSize + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[stackSize++] = split;
+                stack[stackSize++] = last;
+                stack[stackSize++] = first;
+                stack[stackSize++] = split;
+            }
+
+            return new CubicBezierStroke(
+                    Arrays.copyOf(controlXs, controlPointsCount),
+                    Arrays.copyOf(controlYs, controlPointsCount),
+                    Arrays.copyOf(controlTimes, controlPointsCount),
+                    startTimestamp,
+                    (controlPointsCount - 1) / 3);
+        }
+
+        /**
+         * Fits a single piece through the input range of points
+         *
+         * @return
+         *      True if the fitted piece is within the tolerance, false if the range has to be
+         *      split at {@link #splitPoint}
+         */
+        private boolean fitPiece(int first, int last) {
+            // Both tangents point into the piece
+            computeTangent(first, first + 1, first > 0 ? first - 1 : first, first + 1, leftTangent);
+            computeTangent(last, last - 1, last + 1 < pointsCount ? last + 1 : last, last - 1, rightTangent);
+
+            if (last - first == 1) {
+                final double distance = Math.sqrt(squaredDistance(first, last)) / 3;
+                setPiece(first, last, distance, distance);
+                return true;
+            }
+
+            computeChordLengthParameters(first, last);
+            generatePiece(first, last);
+            double maxError = computeMaxError(first, last);
+            if (maxError <= squaredTolerance) {
+                return true;
+            }
+
+            if (maxError <= squaredTolerance * REPARAMETERIZATION_ERROR_FACTOR * REPARAMETERIZATION_ERROR_FACTOR) {
+                for (int i = 0; i < MAX_REPARAMETERIZATIONS; i++) {
+                    reparameterize(first, last);
+                    generatePiece(first, last);
+                    maxError = computeMaxError(first, last);
+                    if (maxError <= squaredTolerance) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Computes the unit direction of a piece end towards the next point of the piece. Split
+         * points in the middle of the stroke use the direction between their neighbours instead,
+         * so both pieces around them join smoothly.
+         */
+        private void computeTangent(int end, int next, int before, int after, double[] out) {
+            if (!computeDirection(before, after, out)) {
+                computeDirection(end, next, out);
+            }
+        }
+
+        private boolean computeDirection(int from, int to, double[] out) {
+            double length = 0;
+            for (int d = 0; d < DIMENSIONS; d++) {
+                out[d] = points[to * DIMENSIONS + d] - points[from * DIMENSIONS + d];
+                length += out[d] * out[d];
+            }
+            if (length == 0) {
+                return false;
+            }
+            length = Math.sqrt(length);
+            for (int d = 0; d < DIMENSIONS; d++) {
+                out[d] /= length;
+            }
+            return true;
+        }
+
+        private void computeChordLengthParameters(int first, int last) {
+            parameters[first] = 0;
+            for (int i = first + 1; i <= last; i++) {
+                parameters[i] = parameters[i - 1] + Math.sqrt(squaredDistance(i - 1, i));
+            }
+            final double total = parameters[last];
+            for (int i = first + 1; i <= last; i++) {
+                parameters[i] = total > 0 ? parameters[i] / total : (i - first) / (double) (last - first);
+            }
+        }
+
+        /**
+         * Finds the control points which fit the range of points with their current parameters
+         * best in the least squares sense, keeping the ends and the end tangents
+         */
+        private void generatePiece(int first, int last) {
+            double c00 = 0;
+            double c01 = 0;
+            double c11 = 0;
+            double x0 = 0;
+            double x1 = 0;
+
+            for (int i = first; i <= last; i++) {
+                final double t = parameters[i];
+                final double u = 1 - t;
+                final double b0 = u * u * u;
+                final double b1 = 3 * u * u * t;
+                final double b2 = 3 * u * t * t;
+                final double b3 = t * t * t;
+
+                for (int d = 0; d < DIMENSIONS; d++) {
+                    final double a0 = leftTangent[d] * b1;
+                    final double a1 = rightTangent[d] * b2;
+                    final double rest = points[i * DIMENSIONS + d]
+                            - points[first * DIMENSIONS + d] * (b0 + b1)
+                            - points[last * DIMENSIONS + d] * (b2 + b3);
+                    c00 += a0 * a0;
+                    c01 += a0 * a1;
+                    c11 += a1 * a1;
+                    x0 += a0 * rest;
+                    x1 += a1 * rest;
+                }
+            }
+
+            final double determinant = c00 * c11 - c01 * c01;
+            double leftDistance = determinant != 0 ? (x0 * c11 - x1 * c01) / determinant : 0;
+            double rightDistance = determinant != 0 ? (c00 * x1 - c01 * x0) / determinant : 0;
+
+            // Fall back to the simple heuristic for degenerate fits
+            final double chordLength = Math.sqrt(squaredDistance(first, last));
+            final double epsilon = 1e-6 * chordLength;
+            if (leftDistance < epsilon || rightDistance < epsilon) {
+                leftDistance = chordLength / 3;
+                rightDistance = chordLength / 3;
+            }
+            setPiece(first, last, leftDistance, rightDistance);
+        }
+
+        private void setPiece(int first, int last, double leftDistance, double rightDistance) {
+            for (int d = 0; d < DIMENSIONS; d++) {
+                final double start = points[first * DIMENSIONS + d];
+                final double end = points[last * DIMENSIONS + d];
+                piece[d] = start;
+                piece[DIMENSIONS + d] = start + leftTangent[d] * leftDistance;
+                piece[2 * DIMENSIONS + d] = end + rightTangent[d] * rightDistance;
+                piece[3 * DIMENSIONS + d] = end;
+            }
+        }
+
+        /**
+         * Returns the largest squared distance between a point and the fitted piece and stores
+         * the point with that distance as the split point
+         */
+        private double computeMaxError(int first, int last) {
+            double maxError = 0;
+            splitPoint = (first + last) / 2;
+            for (int i = first + 1; i < last; i++) {
+                double error = 0;
+                for (int d = 0; d < DIMENSIONS; d++) {
+                    final double difference = evaluatePiece(d, parameters[i]) - points[i * DIMENSIONS + d];
+                    error += difference * difference;
+                }
+                if (error > maxError) {
+                    maxError = error;
+                    splitPoint = i;
+                }
+            }
+            return maxError;
+        }
+
+        /**
+         * Moves the parameter of each point closer to the nearest position on the fitted piece
+         * with a single Newton-Raphson step
+         */
+        private void reparameterize(int first, int last) {
+            for (int i = first + 1; i < last; i++) {
+                final double t = parameters[i];
+                double numerator = 0;
+                double denominator = 0;
+                for (int d = 0; d < DIMENSIONS; d++) {
+                    final double difference = evaluatePiece(d, t) - points[i * DIMENSIONS + d];
+                    final double firstDerivative = evaluateFirstDerivative(d, t);
+                    numerator += difference * firstDerivative;
+                    denominator += firstDerivative * firstDerivative + difference * evaluateSecondDerivative(d, t);
+                }
+                if (denominator != 0) {
+                    parameters[i] = Math.max(0, Math.min(1, t - numerator / denominator));
+                }
+            }
+        }
+
+        private double evaluatePiece(int d, double t) {
+            final double u = 1 - t;
+            return u * u * u * piece[d]
+                    + 3 * u * u * t * piece[DIMENSIONS + d]
+                    + 3 * u * t * t * piece[2 * DIMENSIONS + d]
+                    + t * t * t * piece[3 * DIMENSIONS + d];
+        }
+
+        private double evaluateFirstDerivative(int d, double t) {
+            final double u = 1 - t;
+            return 3 * u * u * (piece[DIMENSIONS + d] - piece[d])
+                    + 6 * u * t * (piece[2 * DIMENSIONS + d] - piece[DIMENSIONS + d])
+                    + 3 * t * t * (piece[3 * DIMENSIONS + d] - piece[2 * DIMENSIONS + d]);
+        }
+
+        private double evaluateSecondDerivative(int d, double t) {
+            return 6 * (1 - t) * (piece[2 * DIMENSIONS + d] - 2 * piece[DIMENSIONS + d] + piece[d])
+                    + 6 * t * (piece[3 * DIMENSIONS + d] - 2 * piece[2 * DIMENSIONS + d] + piece[DIMENSIONS + d]);
+        }
+
+        private double squaredDistance(int first, int second) {
+            double distance = 0;
+            for (int d = 0; d < DIMENSIONS; d++) {
+                final double difference = points[second * DIMENSIONS + d] - points[first * DIMENSIONS + d];
+                distance += difference * difference;
+            }
+            return distance;
+        }
+
+        private void appendControlPoint(double[] source, int offset) {
+            if (controlPointsCount == controlXs.length) {
+                final int capacity = controlXs.length * 2;
+                controlXs = Arrays.copyOf(controlXs, capacity);
+                controlYs = Arrays.copyOf(controlYs, capacity);
+                controlTimes = Arrays.copyOf(controlTimes, capacity);
+            }
+            controlXs[controlPointsCount] = (float) source[offset];
+            controlYs[controlPointsCount] = (float) source[offset + 1];
+            controlTimes[controlPointsCount] = (float) (source[offset + 2] / timeScale);
+            controlPointsCount++;
+        }
+    }
+}
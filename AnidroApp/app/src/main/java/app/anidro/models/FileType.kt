@@ -6,15 +6,16 @@ enum class FileType {
     NONE,
     IMAGE,
     GIF,
-    VIDEO;
+    VIDEO,
+    POSTER;
 
     companion object {
 
         @JvmStatic
         val availableFileTypes: List<FileType> = if (Build.VERSION.SDK_INT < 18) {
-            listOf(IMAGE, GIF)
+            listOf(IMAGE, GIF, POSTER)
         } else {
-            listOf(IMAGE, GIF, VIDEO)
+            listOf(IMAGE, GIF, VIDEO, POSTER)
         }
     }
 }
\ No newline at end of file
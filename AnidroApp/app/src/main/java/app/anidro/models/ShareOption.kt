@@ -0,0 +1,21 @@
+package app.anidro.models
+
+/**
+ * An option offered to the user for sharing a drawing. An option may export several
+ * file types at once, the first one of them drives the export progress.
+ */
+enum class ShareOption(val fileTypes: List<FileType>) {
+    IMAGE(listOf(FileType.IMAGE)),
+    GIF(listOf(FileType.GIF)),
+    VIDEO(listOf(FileType.VIDEO)),
+    GIF_SIZES(listOf(FileType.GIF)),
+    GIF_AND_VIDEO(listOf(FileType.GIF, FileType.VIDEO)),
+    POSTER(listOf(FileType.POSTER));
+
+    companion object {
+
+        @JvmStatic
+        val availableShareOptions: List<ShareOption> =
+                values().filter { FileType.availableFileTypes.containsAll(it.fileTypes) }
+    }
+}
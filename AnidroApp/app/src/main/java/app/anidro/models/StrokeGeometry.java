@@ -0,0 +1,267 @@
+package app.anidro.models;
+
+import androidx.annotation.NonNull;
+
+/**
+ * This class contains the smoothed shape of a single drawing stroke, flattened into a polyline,
+ * together with an index mapping the timestamp of each stroke point to the arc length of the
+ * polyline at this point. It is built once per stroke and allows extracting the part of the
+ * stroke drawn between two timestamps without building any intermediate objects.
+ * <p/>
+ * The shape follows the one the renderers used to build from the stroke points: a quadratic curve
+ * through the first three points, using the second one as a control point, and straight lines
+ * through all remaining points.
+ */
+public class StrokeGeometry {
+    /**
+     * The maximum distance in pixels between two vertices of a flattened curve
+     */
+    private static final float CURVE_FLATTENING_STEP = 4f;
+    private static final int MAX_CURVE_STEPS = 32;
+
+    private final long[] timestamps;
+    private final float[] vertices;
+    private final float[] vertexLengths;
+    private final int vertexCount;
+    private final float[] pointLengths;
+
+    /**
+     * @param xs
+     *      The x coordinates of the stroke points
+     * @param ys
+     *      The y coordinates of the stroke points
+     * @param timestamps
+     *      The timestamps of the stroke points. The array is kept without copying it, so it must
+     *      not be changed afterwards, like the timestamps of an immutable {@link TimedSegment}.
+     */
+    public StrokeGeometry(@NonNull float[] xs, @NonNull float[] ys, @NonNull long[] timestamps) {
+        this(xs, ys, timestamps, true);
+    }
+
+    /**
+     * Builds the geometry of a stroke which is already a flattened polyline, i.e. straight lines
+     * through all points without the curve at the start
+     */
+    @NonNull
+    public static StrokeGeometry fromPolyline(@NonNull float[] xs, @NonNull float[] ys, @NonNull long[] timestamps) {
+        return new StrokeGeometry(xs, ys, timestamps, false);
+    }
+
+    private StrokeGeometry(float[] xs, float[] ys, long[] timestamps, boolean hasStartCurve) {
+        final int pointsCount = timestamps.length;
+        this.timestamps = timestamps;
+        this.pointLengths = new float[pointsCount];
+
+        if (pointsCount == 0) {
+            vertices = new float[0];
+            vertexLengths = new float[0];
+            vertexCount = 0;
+            return;
+        }
+
+        final boolean isStartCurved = hasStartCurve && pointsCount > 2;
+        int curveSteps = 0;
+        if (isStartCurved) {
+            final float controlPolygonLength = distance(xs[0], ys[0], xs[1], ys[1])
+                    + distance(xs[1], ys[1], xs[2], ys[2]);
+            curveSteps = Math.max(2, Math.min(MAX_CURVE_STEPS,
+                    (int) Math.ceil(controlPolygonLength / CURVE_FLATTENING_STEP)));
+            // Make the curve middle a vertex, it stands for the control point
+            curveSteps += curveSteps & 1;
+        }
+
+        final int capacity = isStartCurved ? curveSteps + pointsCount - 2 : pointsCount;
+        vertices = new float[capacity * 2];
+        vertexLengths = new float[capacity];
+
+        int count = 0;
+        vertices[0] = xs[0];
+        vertices[1] = ys[0];
+        count++;
+
+        int nextPoint = 1;
+        if (isStartCurved) {
+            for (int step = 1; step <= curveSteps; step++) {
+                final float t = step / (float) curveSteps;
+                final float u = 1 - t;
+                final float x = u * u * xs[0] + 2 * u * t * xs[1] + t * t * xs[2];
+                final float y = u * u * ys[0] + 2 * u * t * ys[1] + t * t * ys[2];
+                count = appendVertex(count, x, y);
+                if (step * 2 == curveSteps) {
+                    pointLengths[1] = vertexLengths[count - 1];
+                }
+            }
+            pointLengths[2] = vertexLengths[count - 1];
+            nextPoint = 3;
+        }
+
+        for (int i = nextPoint; i < pointsCount; i++) {
+            count = appendVertex(count, xs[i], ys[i]);
+            pointLengths[i] = vertexLengths[count - 1];
+        }
+
+        vertexCount = count;
+    }
+
+    /**
+     * Returns the total arc length of the stroke
+     */
+    public float getLength() {
+        return vertexCount > 0 ? vertexLengths[vertexCount - 1] : 0;
+    }
+
+    /**
+     * Returns the number of floats needed to hold any extracted part of the stroke
+     */
+    public int getMaxExtractSize() {
+        return (vertexCount + 2) * 2;
+    }
+
+    /**
+     * Returns the arc length at which the stroke reaches the input timestamp for the first time
+     */
+    public float getLengthAtOrAfter(long timestamp) {
+        final int pointsCount = timestamps.length;
+        if (pointsCount == 0 || timestamp <= timestamps[0]) {
+            return 0;
+        }
+        if (timestamp > timestamps[pointsCount - 1]) {
+            return getLength();
+        }
+        // First point with a timestamp not before the input one
+        int low = 1;
+        int high = pointsCount - 1;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (timestamps[middle] < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return interpolateLength(low - 1, low, timestamp);
+    }
+
+    /**
+     * Returns the arc length at which the stroke leaves the input timestamp for the last time
+     */
+    public float getLengthAtOrBefore(long timestamp) {
+        final int pointsCount = timestamps.length;
+        if (pointsCount == 0 || timestamp < timestamps[0]) {
+            return 0;
+        }
+        if (timestamp >= timestamps[pointsCount - 1]) {
+            return getLength();
+        }
+        // Last point with a timestamp not after the input one
+        int low = 0;
+        int high = pointsCount - 2;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (timestamps[middle] > timestamp) {
+                high = middle - 1;
+            } else {
+                low = middle;
+            }
+        }
+        return interpolateLength(low, low + 1, timestamp);
+    }
+
+    /**
+     * Writes the x and y of the stroke position at the input arc length into the output array
+     */
+    public void getPosition(float length, @NonNull float[] out) {
+        if (vertexCount == 0) {
+            return;
+        }
+        final int index = findVertexSegment(length);
+        if (index >= vertexCount - 1) {
+            out[0] = vertices[(vertexCount - 1) * 2];
+            out[1] = vertices[(vertexCount - 1) * 2 + 1];
+            return;
+        }
+        interpolateVertex(index, length, out, 0);
+    }
+
+    /**
+     * Writes the vertices of the part of the stroke between two arc lengths into the output
+     * array as x and y pairs and returns the number of written vertices. The output has to be
+     * at least {@link #getMaxExtractSize()} floats long.
+     */
+    public int extract(float fromLength, float toLength, @NonNull float[] out) {
+        if (vertexCount == 0) {
+            return 0;
+        }
+        if (vertexCount == 1 || toLength <= fromLength) {
+            getPosition(fromLength, out);
+            return 1;
+        }
+
+        final int firstIndex = findVertexSegment(fromLength);
+        final int lastIndex = findVertexSegment(toLength);
+
+        int count = 0;
+        interpolateVertex(Math.min(firstIndex, vertexCount - 2), fromLength, out, 0);
+        count++;
+        for (int i = firstIndex + 1; i <= lastIndex && i < vertexCount; i++) {
+            out[count * 2] = vertices[i * 2];
+            out[count * 2 + 1] = vertices[i * 2 + 1];
+            count++;
+        }
+        if (lastIndex < vertexCount - 1) {
+            interpolateVertex(lastIndex, toLength, out, count * 2);
+            count++;
+        }
+        return count;
+    }
+
+    private int appendVertex(int count, float x, float y) {
+        final float previousX = vertices[(count - 1) * 2];
+        final float previousY = vertices[(count - 1) * 2 + 1];
+        vertices[count * 2] = x;
+        vertices[count * 2 + 1] = y;
+        vertexLengths[count] = vertexLengths[count - 1] + distance(previousX, previousY, x, y);
+        return count + 1;
+    }
+
+    private float interpolateLength(int firstPoint, int secondPoint, long timestamp) {
+        final long firstTimestamp = timestamps[firstPoint];
+        final long secondTimestamp = timestamps[secondPoint];
+        if (secondTimestamp == firstTimestamp) {
+            return pointLengths[secondPoint];
+        }
+        final float coef = (timestamp - firstTimestamp) / (float) (secondTimestamp - firstTimestamp);
+        return pointLengths[firstPoint] + coef * (pointLengths[secondPoint] - pointLengths[firstPoint]);
+    }
+
+    /**
+     * Returns the index of the last vertex at or before the input arc length
+     */
+    private int findVertexSegment(float length) {
+        int low = 0;
+        int high = vertexCount - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (vertexLengths[middle] > length) {
+                high = middle - 1;
+            } else {
+                low = middle;
+            }
+        }
+        return low;
+    }
+
+    private void interpolateVertex(int index, float length, float[] out, int offset) {
+        final float segmentLength = vertexLengths[index + 1] - vertexLengths[index];
+        float coef = segmentLength > 0 ? (length - vertexLengths[index]) / segmentLength : 0;
+        coef = Math.max(0, Math.min(1, coef));
+        out[offset] = vertices[index * 2] + coef * (vertices[(index + 1) * 2] - vertices[index * 2]);
+        out[offset + 1] = vertices[index * 2 + 1] + coef * (vertices[(index + 1) * 2 + 1] - vertices[index * 2 + 1]);
+    }
+
+    private static float distance(float x1, float y1, float x2, float y2) {
+        final float dx = x2 - x1;
+        final float dy = y2 - y1;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+}
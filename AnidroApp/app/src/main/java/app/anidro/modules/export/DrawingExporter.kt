@@ -17,23 +17,33 @@ import app.anidro.modules.export.files.DrawingsFileHelper
 import app.anidro.modules.export.writers.ExportFileWriter
 import app.anidro.modules.export.writers.ExportGifWriter
 import app.anidro.modules.export.writers.ExportImageWriter
+import app.anidro.modules.export.writers.ExportPosterWriter
 import app.anidro.modules.export.writers.ExportVideoWriter
 import app.anidro.modules.persistence.settings.SettingsPersistence
 import app.anidro.renderers.FixedFrameRateRenderer
+import app.anidro.renderers.FrameSource
+import app.anidro.renderers.ParallelFrameRenderer
 import app.anidro.renderers.SequentialTimeNormalizer
+import app.anidro.renderers.SharedFrameRenderer
 import app.anidro.renderers.SingleFrameTimeNormalizer
+import app.anidro.renderers.TiledPosterRenderer
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.launch
 import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
 
 class DrawingExporter(private val applicationContext: Context,
                       private val settingsPersistence: SettingsPersistence) : ExportFileWriter.ExportFileWriterCallbackListener {
     private val exportStateMutableLiveData: MutableLiveData<ExportState> = MutableLiveData<ExportState>().apply { value = ExportState.Initial }
     private val exportScope = CoroutineScope(Dispatchers.IO)
     private var exportJob: Job? = null
-    private var fileWriter: ExportFileWriter? = null
+    private var fileWriters: List<ExportFileWriter> = emptyList()
     private var exportNotificationHelper: ExportNotificationPresenter? = null
 
     val exportStateLiveData: LiveData<ExportState> = exportStateMutableLiveData
@@ -56,9 +66,81 @@ class DrawingExporter(private val applicationContext: Context,
         }
     }
 
+    /**
+     * Exports the drawing as several animated file types at once. The drawing is rendered only
+     * once at the largest resolution and the highest frame rate of all file types and every file
+     * writer gets its own downscaled and decimated frames. The export progress follows the first
+     * file type, and the export finishes with all exported files once all of them are written,
+     * or fails if any of them fails.
+     */
+    fun startExport(drawing: List<TimedSegment>,
+                    @ColorInt backgroundColor: Int,
+                    drawingWidth: Int,
+                    drawingHeight: Int,
+                    fileTypes: List<FileType>) {
+        if (exportJob?.isActive == true) {
+            return
+        }
+
+        exportJob = exportScope.launch {
+            doSharedExport(drawing = drawing,
+                    backgroundColor = backgroundColor,
+                    drawingWidth = drawingWidth,
+                    drawingHeight = drawingHeight,
+                    rungs = fileTypes.distinct().map { ExportRung(it, getMaxExportDimension(it)) })
+        }
+    }
+
+    /**
+     * Exports the drawing as a ladder of animated files of different sizes, e.g. a small and a big
+     * GIF together with a video. The drawing is rendered only once at the size of the biggest rung
+     * and the frames of the smaller rungs are downscaled from it, so all files are finished in about
+     * the time needed for the biggest one. The export progress follows the first rung, and the export
+     * finishes with the files of all rungs once all of them are written, or fails if any of them fails.
+     */
+    fun startLadderExport(drawing: List<TimedSegment>,
+                          @ColorInt backgroundColor: Int,
+                          drawingWidth: Int,
+                          drawingHeight: Int,
+                          rungs: List<ExportRung>) {
+        if (exportJob?.isActive == true) {
+            return
+        }
+
+        exportJob = exportScope.launch {
+            doSharedExport(drawing = drawing,
+                    backgroundColor = backgroundColor,
+                    drawingWidth = drawingWidth,
+                    drawingHeight = drawingHeight,
+                    rungs = rungs)
+        }
+    }
+
+    /**
+     * Exports the whole drawing as a PNG image scaled up by the input factor. The image is rendered
+     * tile by tile and compressed while rendering, so it can be much bigger than the available memory.
+     */
+    fun startPosterExport(drawing: List<TimedSegment>,
+                          @ColorInt backgroundColor: Int,
+                          drawingWidth: Int,
+                          drawingHeight: Int,
+                          scaleFactor: Int) {
+        if (exportJob?.isActive == true) {
+            return
+        }
+
+        exportJob = exportScope.launch {
+            doPosterExport(drawing = drawing,
+                    backgroundColor = backgroundColor,
+                    drawingWidth = drawingWidth,
+                    drawingHeight = drawingHeight,
+                    scaleFactor = scaleFactor)
+        }
+    }
+
     fun cancelExport() {
         exportJob?.cancel()
-        fileWriter?.cancel()
+        fileWriters.forEach { it.cancel() }
     }
 
     //region ExportFileWriter.ExportFileWriterCallbackListener
@@ -85,25 +167,8 @@ class DrawingExporter(private val applicationContext: Context,
             return
         }
 
-        val fileContentUri = DrawingsFileHelper.getFileContentUri(applicationContext, file)
-        val mimeType = getFileMimeType(fileType)
-        exportNotificationHelper?.showExportNotificationEnd(fileContentUri, mimeType, lastFrame)
-        exportStateMutableLiveData.postValue(ExportState.Finished(uri = fileContentUri, mimeType = mimeType))
-
-        // If user setting is on and there is actually a granted permission for it,
-        // we make a copy to the external user folder
-        if (settingsPersistence.shouldCopyToExternal()) {
-            if (ContextCompat.checkSelfPermission(applicationContext,
-                            Manifest.permission.WRITE_EXTERNAL_STORAGE) == PackageManager.PERMISSION_GRANTED) {
-
-                val externalFile = DrawingsFileHelper.copyToExternal(file, fileType)
-                if (externalFile != null) {
-                    DrawingsFileHelper.mediaStorageScan(applicationContext, externalFile)
-                }
-            } else {
-                settingsPersistence.setCopyToExternal(false)
-            }
-        }
+        publishFinished(listOf(ExportedFile(file, fileType)), lastFrame)
+        copyToExternalIfNeeded(file, fileType)
     }
 
     @WorkerThread
@@ -122,6 +187,118 @@ class DrawingExporter(private val applicationContext: Context,
 
     //endregion ExportFileWriter.ExportFileWriterCallbackListener
 
+    /**
+     * A file written by an export
+     */
+    private class ExportedFile(val file: File, val fileType: FileType)
+
+    /**
+     * Collects the results of all file writers of a shared export, so the export state is only
+     * changed once all of them are done
+     */
+    private class SharedExportResults {
+        // The exported files by the index of their writer
+        val files = ConcurrentHashMap<Int, ExportedFile>()
+        // A copy of the last frame of the primary writer, since the frames of the shared renderer
+        // are recycled before the export finishes
+        @Volatile
+        var thumbnail: Bitmap? = null
+        val hasFailed = AtomicBoolean()
+        val isCancelled = AtomicBoolean()
+    }
+
+    /**
+     * Listens to a single file writer of a shared export. Only the first writer which could be built
+     * reports the export progress, and the export state is changed by [publishSharedExportResults] once all writers are done.
+     */
+    private inner class SharedWriterListener(private val results: SharedExportResults,
+                                             private val writer: Int) : ExportFileWriter.ExportFileWriterCallbackListener {
+        @WorkerThread
+        override fun onStart(total: Int) {
+            if (writer == 0) {
+                this@DrawingExporter.onStart(total)
+            }
+        }
+
+        @WorkerThread
+        override fun onProgress(current: Int, total: Int) {
+            if (writer == 0) {
+                this@DrawingExporter.onProgress(current, total)
+            }
+        }
+
+        @WorkerThread
+        override fun onFinished(file: File, fileType: FileType, lastFrame: Bitmap) {
+            results.files[writer] = ExportedFile(file, fileType)
+            if (writer == 0) {
+                results.thumbnail = lastFrame.copy(lastFrame.config, false)
+            }
+            if (exportJob?.isActive == true) {
+                copyToExternalIfNeeded(file, fileType)
+            }
+        }
+
+        @WorkerThread
+        override fun onFailed() {
+            results.hasFailed.set(true)
+        }
+
+        @WorkerThread
+        override fun onCancelled() {
+            // All writers are cancelled together, report it only once
+            if (results.isCancelled.compareAndSet(false, true)) {
+                this@DrawingExporter.onCancelled()
+            }
+        }
+    }
+
+    /**
+     * Shares the files of all writers of a shared export, or reports the export as failed
+     * if any of them has failed
+     */
+    @WorkerThread
+    private fun publishSharedExportResults(results: SharedExportResults, writersCount: Int) {
+        val thumbnail = results.thumbnail
+        when {
+            results.isCancelled.get() -> return
+            results.hasFailed.get() || results.files.size != writersCount || thumbnail == null -> onFailed()
+            else -> publishFinished((0 until writersCount).map { results.files.getValue(it) }, thumbnail)
+        }
+    }
+
+    /**
+     * Reports the exported files as finished, the first one is shown in the notification
+     */
+    @WorkerThread
+    private fun publishFinished(files: List<ExportedFile>, thumbnail: Bitmap) {
+        if (exportJob?.isActive != true) {
+            return
+        }
+
+        val fileContentUris = files.map { DrawingsFileHelper.getFileContentUri(applicationContext, it.file) }
+        val mimeTypes = files.map { getFileMimeType(it.fileType) }
+        exportNotificationHelper?.showExportNotificationEnd(fileContentUris, mimeTypes, thumbnail)
+        exportStateMutableLiveData.postValue(ExportState.Finished(uris = fileContentUris, mimeTypes = mimeTypes))
+    }
+
+    @WorkerThread
+    private fun copyToExternalIfNeeded(file: File, fileType: FileType) {
+        // If user setting is on and there is actually a granted permission for it,
+        // we make a copy to the external user folder
+        if (settingsPersistence.shouldCopyToExternal()) {
+            if (ContextCompat.checkSelfPermission(applicationContext,
+                            Manifest.permission.WRITE_EXTERNAL_STORAGE) == PackageManager.PERMISSION_GRANTED) {
+
+                val externalFile = DrawingsFileHelper.copyToExternal(file, fileType)
+                if (externalFile != null) {
+                    DrawingsFileHelper.mediaStorageScan(applicationContext, externalFile)
+                }
+            } else {
+                settingsPersistence.setCopyToExternal(false)
+            }
+        }
+    }
+
     @WorkerThread
     private fun doExport(drawing: List<TimedSegment>,
                          @ColorInt backgroundColor: Int,
@@ -136,24 +313,142 @@ class DrawingExporter(private val applicationContext: Context,
         // Init renderer
         val renderer = buildRenderer(drawing, backgroundColor, drawingWidth, drawingHeight, fileType)
 
+        // Render the big video frames on all cores
+        val threadsCount = minOf(MAX_RENDER_THREADS, Runtime.getRuntime().availableProcessors())
+        val parallelRenderer = if (fileType == FileType.VIDEO && threadsCount > 1) {
+            ParallelFrameRenderer(renderer, threadsCount, PARALLEL_RENDER_CHUNK_LENGTH)
+        } else {
+            null
+        }
+
         // Init file writer
-        when (fileType) {
-            FileType.GIF -> fileWriter = ExportGifWriter(applicationContext, renderer, this@DrawingExporter)
-            FileType.IMAGE -> fileWriter = ExportImageWriter(applicationContext, renderer, this@DrawingExporter)
+        val fileWriter = buildFileWriter(fileType, parallelRenderer ?: renderer, this@DrawingExporter)
+        if (fileWriter == null) {
+            parallelRenderer?.destroy() ?: renderer.destroy()
+            return
+        }
+        fileWriters = listOf(fileWriter)
+
+        // Export
+        try {
+            fileWriter.writeFile()
+        } finally {
+            // Stops the rendering threads
+            parallelRenderer?.destroy()
+        }
+    }
+
+    @WorkerThread
+    private suspend fun doSharedExport(drawing: List<TimedSegment>,
+                                       @ColorInt backgroundColor: Int,
+                                       drawingWidth: Int,
+                                       drawingHeight: Int,
+                                       rungs: List<ExportRung>) {
+        // Only animated file types share the same timeline
+        val animatedRungs = rungs.distinct().filter { it.fileType == FileType.GIF || it.fileType == FileType.VIDEO }
+        if (animatedRungs.isEmpty()) {
+            return
+        }
+
+        // Show notifications only if the user has not deactivated them
+        if (settingsPersistence.shouldShowExportNotification()) {
+            exportNotificationHelper = ExportNotificationPresenter(applicationContext, animatedRungs.first().fileType)
+        }
+
+        // Init the shared renderer with the biggest frame and the shortest frame length of all targets
+        val targetSizes = animatedRungs.map { limitExportResolution(drawingWidth, drawingHeight, it.maxDimension) }
+        val sharedWidth = targetSizes.maxOf { it.x }
+        val sharedHeight = targetSizes.maxOf { it.y }
+        val sharedRenderer = SharedFrameRenderer(drawing, backgroundColor, sharedWidth, sharedHeight,
+                SequentialTimeNormalizer(), animatedRungs.minOf { getFrameLength(it.fileType) })
+
+        // Init a target and a file writer per rung
+        val results = SharedExportResults()
+        val targets = mutableListOf<FrameSource>()
+        val writers = mutableListOf<ExportFileWriter>()
+        animatedRungs.forEachIndexed { index, rung ->
+            val fileType = rung.fileType
+            val size = targetSizes[index]
+            val finalFrameExtraDelay = if (fileType == FileType.VIDEO) FixedFrameRateRenderer.ANIMATION_FINAL_FRAME_EXTRA_LENGTH else 0L
+            val target = sharedRenderer.addTarget(size.x, size.y, getFrameLength(fileType),
+                    finalFrameExtraDelay, getFrameConfig(fileType))
+            val writer = buildFileWriter(fileType, target, SharedWriterListener(results, writers.size))
+            if (writer != null) {
+                // Rungs of the same file type must not end up in the same file
+                if (animatedRungs.count { it.fileType == fileType } > 1) {
+                    writer.setFileNameSuffix("_${size.x}x${size.y}")
+                }
+                targets.add(target)
+                writers.add(writer)
+            } else {
+                sharedRenderer.removeTarget(target)
+            }
+        }
+        fileWriters = writers
+        if (writers.isEmpty()) {
+            sharedRenderer.destroy()
+            onFailed()
+            return
+        }
+
+        // Export all files concurrently, every writer consumes its frames on its own thread
+        try {
+            coroutineScope {
+                writers.mapIndexed { index, writer ->
+                    async {
+                        try {
+                            writer.writeFile()
+                        } finally {
+                            // Do not keep the other writers waiting for this one
+                            sharedRenderer.removeTarget(targets[index])
+                        }
+                    }
+                }.awaitAll()
+            }
+        } finally {
+            sharedRenderer.destroy()
+        }
+        publishSharedExportResults(results, writers.size)
+    }
+
+    @WorkerThread
+    private fun doPosterExport(drawing: List<TimedSegment>,
+                               @ColorInt backgroundColor: Int,
+                               drawingWidth: Int,
+                               drawingHeight: Int,
+                               scaleFactor: Int) {
+        // Show notifications only if the user has not deactivated them
+        if (settingsPersistence.shouldShowExportNotification()) {
+            exportNotificationHelper = ExportNotificationPresenter(applicationContext, FileType.POSTER)
+        }
+
+        val previewSize = limitExportResolution(drawingWidth, drawingHeight, getMaxExportDimension(FileType.POSTER))
+        val renderer = TiledPosterRenderer(drawing, backgroundColor, drawingWidth, drawingHeight,
+                drawingWidth * scaleFactor, drawingHeight * scaleFactor,
+                previewSize.x, previewSize.y, POSTER_TILE_SIZE)
+
+        val fileWriter = ExportPosterWriter(applicationContext, renderer, this@DrawingExporter)
+        fileWriters = listOf(fileWriter)
+        fileWriter.writeFile()
+    }
+
+    private fun buildFileWriter(fileType: FileType,
+                                frameSource: FrameSource,
+                                listener: ExportFileWriter.ExportFileWriterCallbackListener): ExportFileWriter? {
+        return when (fileType) {
+            FileType.GIF -> ExportGifWriter(applicationContext, frameSource, listener)
+            FileType.IMAGE -> ExportImageWriter(applicationContext, frameSource, listener)
             FileType.VIDEO -> {
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
-                    fileWriter = ExportVideoWriter(applicationContext, renderer, this@DrawingExporter)
+                    ExportVideoWriter(applicationContext, frameSource, listener)
                 } else {
                     // No video support pre 4.3
-                    renderer.destroy()
+                    null
                 }
             }
-            FileType.NONE -> { // nothing to do
-            }
+            // Posters need their own tiled renderer
+            FileType.POSTER, FileType.NONE -> null
         }
-
-        // Export
-        fileWriter?.writeFile()
     }
 
 
@@ -168,20 +463,18 @@ class DrawingExporter(private val applicationContext: Context,
                         SingleFrameTimeNormalizer(), 100, Bitmap.Config.ARGB_8888)
             }
             FileType.VIDEO -> {
-                // Reduce size of the frame for videos because of crashes in the codec and size concerns
-                val size = limitExportResolution(drawingWidth, drawingHeight, 1280)
+                val size = limitExportResolution(drawingWidth, drawingHeight, getMaxExportDimension(fileType))
 
                 val renderer = FixedFrameRateRenderer(drawing, backgroundColor, size.x, size.y,
-                        SequentialTimeNormalizer(), FixedFrameRateRenderer.VIDEO_FRAME_LENGTH, Bitmap.Config.ARGB_8888)
+                        SequentialTimeNormalizer(), getFrameLength(fileType), getFrameConfig(fileType))
                 renderer.addFinalFrameExtraDelay(FixedFrameRateRenderer.ANIMATION_FINAL_FRAME_EXTRA_LENGTH)
                 return renderer
             }
             FileType.GIF -> {
-                // Reduce size of the frame for GIFs because of really bad performance for higher resolution
-                val size = limitExportResolution(drawingWidth, drawingHeight, 480)
+                val size = limitExportResolution(drawingWidth, drawingHeight, getMaxExportDimension(fileType))
 
                 return FixedFrameRateRenderer(drawing, backgroundColor, size.x, size.y,
-                        SequentialTimeNormalizer(), FixedFrameRateRenderer.GIF_FRAME_LENGTH, Bitmap.Config.RGB_565)
+                        SequentialTimeNormalizer(), getFrameLength(fileType), getFrameConfig(fileType))
             }
             else -> {
                 val size = limitExportResolution(drawingWidth, drawingHeight, 480)
@@ -190,6 +483,26 @@ class DrawingExporter(private val applicationContext: Context,
         }
     }
 
+    private fun getMaxExportDimension(fileType: FileType) =
+            when (fileType) {
+                // Reduce size of the frame for videos because of crashes in the codec and size concerns
+                FileType.VIDEO -> 1280
+                // Reduce size of the frame for GIFs because of really bad performance for higher resolution
+                else -> 480
+            }
+
+    private fun getFrameLength(fileType: FileType) =
+            when (fileType) {
+                FileType.VIDEO -> FixedFrameRateRenderer.VIDEO_FRAME_LENGTH
+                else -> FixedFrameRateRenderer.GIF_FRAME_LENGTH
+            }
+
+    private fun getFrameConfig(fileType: FileType) =
+            when (fileType) {
+                FileType.VIDEO -> Bitmap.Config.ARGB_8888
+                else -> Bitmap.Config.RGB_565
+            }
+
     private fun limitExportResolution(width: Int, height: Int, maxBiggerDimension: Int): Point {
         val coef = width.toDouble() / height.toDouble()
         if (width > height) {
@@ -211,6 +524,13 @@ class DrawingExporter(private val applicationContext: Context,
                 FileType.GIF -> "image/gif"
                 FileType.VIDEO -> "video/mp4"
                 FileType.IMAGE -> "image/jpeg"
+                FileType.POSTER -> "image/png"
                 else -> "image/jpeg"
             }
-}
\ No newline at end of file
+
+    companion object {
+        private const val MAX_RENDER_THREADS = 4
+        private const val PARALLEL_RENDER_CHUNK_LENGTH = 2
+        private const val POSTER_TILE_SIZE = 256
+    }
+}
@@ -13,6 +13,7 @@ import androidx.annotation.RequiresApi;
 import androidx.core.app.NotificationCompat;
 import androidx.core.content.res.ResourcesCompat;
 
+import java.util.List;
 import java.util.Random;
 
 import app.anidro.R;
@@ -65,6 +66,7 @@ public class ExportNotificationPresenter {
     public void updateExportNotificationProgress(int current, int max) {
         switch (fileType) {
             case IMAGE:
+            case POSTER:
                 notifBuilder.setContentText(context.getString(R.string.export_notification_image_text))
                         .setProgress(0, 0, true);
                 break;
@@ -89,32 +91,41 @@ public class ExportNotificationPresenter {
         notifManager.notify(notificationId, notifBuilder.build());
     }
 
-    public void showExportNotificationEnd(Uri fileUri, String mimeType, Bitmap thumbnail) {
-        switch (fileType) {
-            case IMAGE:
-                notifBuilder.setContentText(context.getString(R.string.export_notification_image_done_text));
-                break;
-            case GIF:
-                notifBuilder.setContentText(context.getString(R.string.export_notification_gif_done_text));
-                break;
-            case VIDEO:
-                notifBuilder.setContentText(context.getString(R.string.export_notification_video_done_text));
-                break;
-            default:
-                return;
+    /**
+     * Shows the end of an export, tapping the notification views the first exported file
+     * and its action shares all of them
+     */
+    public void showExportNotificationEnd(List<Uri> fileUris, List<String> mimeTypes, Bitmap thumbnail) {
+        if (fileUris.size() > 1) {
+            notifBuilder.setContentText(context.getString(R.string.export_notification_files_done_text, fileUris.size()));
+        } else {
+            switch (fileType) {
+                case IMAGE:
+                case POSTER:
+                    notifBuilder.setContentText(context.getString(R.string.export_notification_image_done_text));
+                    break;
+                case GIF:
+                    notifBuilder.setContentText(context.getString(R.string.export_notification_gif_done_text));
+                    break;
+                case VIDEO:
+                    notifBuilder.setContentText(context.getString(R.string.export_notification_video_done_text));
+                    break;
+                default:
+                    return;
+            }
         }
 
         notifBuilder.setProgress(0, 0, false);
 
-        if (fileUri != null && thumbnail != null) {
+        if (!fileUris.isEmpty() && thumbnail != null) {
             notifBuilder.setStyle(new NotificationCompat.BigPictureStyle()
                     .bigPicture(thumbnail));
 
-            Intent viewIntent = ExportedDrawingsIntentsHelper.getViewDrawingIntent(fileUri, mimeType);
+            Intent viewIntent = ExportedDrawingsIntentsHelper.getViewDrawingIntent(fileUris.get(0), mimeTypes.get(0));
             PendingIntent pendingIntent = PendingIntent.getActivity(context, notificationId, viewIntent, PendingIntent.FLAG_CANCEL_CURRENT);
             notifBuilder.setContentIntent(pendingIntent);
 
-            Intent shareIntent = ExportedDrawingsIntentsHelper.getShareDrawingIntent(context.getString(R.string.share_to), fileUri, mimeType);
+            Intent shareIntent = ExportedDrawingsIntentsHelper.getShareDrawingsIntent(context.getString(R.string.share_to), fileUris, mimeTypes);
             PendingIntent sharePendingIntent = PendingIntent.getActivity(context, notificationId, shareIntent, PendingIntent.FLAG_CANCEL_CURRENT);
 
             if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.LOLLIPOP) {
@@ -0,0 +1,9 @@
+package app.anidro.modules.export
+
+import app.anidro.models.FileType
+
+/**
+ * A single size of a ladder export, i.e. an animated file type limited to the input
+ * maximum width or height
+ */
+data class ExportRung(val fileType: FileType, val maxDimension: Int)
@@ -7,5 +7,5 @@ sealed class ExportState {
     data class InProgress(val totalFramesCount: Int, val currentFrameNumber: Int) : ExportState()
     object Failed : ExportState()
     object Cancelled : ExportState()
-    data class Finished(val uri: Uri, val mimeType: String) : ExportState()
+    data class Finished(val uris: List<Uri>, val mimeTypes: List<String>) : ExportState()
 }
\ No newline at end of file
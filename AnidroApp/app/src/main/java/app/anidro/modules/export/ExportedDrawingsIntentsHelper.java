@@ -3,6 +3,9 @@ package app.anidro.modules.export;
 import android.content.Intent;
 import android.net.Uri;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * A helper class which builds the {@link Intent} instances for sharing and viewing an exported drawing.
  * <p/>
@@ -19,6 +22,40 @@ public class ExportedDrawingsIntentsHelper {
         return Intent.createChooser(shareIntent, shareText);
     }
 
+    /**
+     * Builds an intent for sharing several exported drawings at once, which falls back to
+     * {@link #getShareDrawingIntent(String, Uri, String)} for a single drawing
+     */
+    public static Intent getShareDrawingsIntent(String shareText, List<Uri> contentUris, List<String> mimeTypes) {
+        if (contentUris.size() == 1) {
+            return getShareDrawingIntent(shareText, contentUris.get(0), mimeTypes.get(0));
+        }
+        Intent shareIntent = new Intent()
+                .setAction(Intent.ACTION_SEND_MULTIPLE)
+                .putParcelableArrayListExtra(Intent.EXTRA_STREAM, new ArrayList<>(contentUris))
+                .setType(getCommonMimeType(mimeTypes))
+                .addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        return Intent.createChooser(shareIntent, shareText);
+    }
+
+    /**
+     * Finds the most specific MIME type matching all given ones, e.g. image/* for a GIF and a PNG
+     */
+    static String getCommonMimeType(List<String> mimeTypes) {
+        String commonMimeType = mimeTypes.get(0);
+        for (String mimeType : mimeTypes) {
+            if (mimeType.equals(commonMimeType)) {
+                continue;
+            }
+            String topLevelType = mimeType.substring(0, mimeType.indexOf('/'));
+            if (!commonMimeType.startsWith(topLevelType + "/")) {
+                return "*/*";
+            }
+            commonMimeType = topLevelType + "/*";
+        }
+        return commonMimeType;
+    }
+
     public static Intent getViewDrawingIntent(Uri contentUri, String mimeType) {
         return new Intent()
                 .setAction(android.content.Intent.ACTION_VIEW)
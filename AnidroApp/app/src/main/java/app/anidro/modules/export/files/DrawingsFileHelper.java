@@ -36,6 +36,7 @@ public class DrawingsFileHelper {
     private static final String DRAWING_FILE_SUFFIX_GIF = ".gif";
     private static final String DRAWING_FILE_SUFFIX_IMAGE = ".jpg";
     private static final String DRAWING_FILE_SUFFIX_VIDEO = ".mp4";
+    private static final String DRAWING_FILE_SUFFIX_POSTER = ".png";
 
     /**
      * Creates a content Uri from a file, using the Anidro {@link FileProvider}
@@ -69,10 +70,11 @@ public class DrawingsFileHelper {
     }
 
     /**
-     * Creates a new file with unique name for the input file type under the internal files folder
+     * Creates a new file with unique name for the input file type under the internal files folder.
+     * The input suffix is appended to the name before the file extension.
      */
     @NonNull
-    public static File getFreshDrawingFile(Context context, FileType fileType) {
+    public static File getFreshDrawingFile(Context context, FileType fileType, @NonNull String nameSuffix) {
         File drawingsDir = new File(context.getFilesDir() + File.separator
                 + INTERNAL_DRAWINGS_DIR);
         
@@ -82,7 +84,7 @@ public class DrawingsFileHelper {
         }
 
         String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
-        String fileName = DRAWING_FILE_PREFIX + timeStamp;
+        String fileName = DRAWING_FILE_PREFIX + timeStamp + nameSuffix;
         switch (fileType) {
             case IMAGE:
                 fileName += DRAWING_FILE_SUFFIX_IMAGE;
@@ -93,6 +95,9 @@ public class DrawingsFileHelper {
             case VIDEO:
                 fileName += DRAWING_FILE_SUFFIX_VIDEO;
                 break;
+            case POSTER:
+                fileName += DRAWING_FILE_SUFFIX_POSTER;
+                break;
         }
         
         return new File(drawingsDir, fileName);
@@ -184,6 +189,7 @@ public class DrawingsFileHelper {
                 break;
             case IMAGE:
             case GIF:
+            case POSTER:
             default:
                 publicDirType = Environment.DIRECTORY_PICTURES;
                 break;
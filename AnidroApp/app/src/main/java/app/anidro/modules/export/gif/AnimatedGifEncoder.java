@@ -58,6 +58,14 @@ public class AnimatedGifEncoder {
 
     protected int sample = 10; // default sample interval for quantizer
 
+    protected int frameX = 0; // region of the image encoded in the current frame
+
+    protected int frameY = 0;
+
+    protected int frameWidth;
+
+    protected int frameHeight;
+
     /**
      * Sets the delay time between each frame, or changes it for subsequent frames
      * (applies to last frame added).
@@ -123,6 +131,31 @@ public class AnimatedGifEncoder {
      * @return true if successful.
      */
     public boolean addFrame(Bitmap im) {
+        if (im == null) {
+            return false;
+        }
+        return addFrame(im, 0, 0, im.getWidth(), im.getHeight());
+    }
+
+    /**
+     * Adds next GIF frame containing only a region of the input image. The
+     * region is drawn over the previous frame, so only the changed part of
+     * the image has to be quantized and encoded. The first frame always
+     * contains the whole image.
+     *
+     * @param im
+     *          Bitmap containing frame to write.
+     * @param regionX
+     *          int x of the encoded region.
+     * @param regionY
+     *          int y of the encoded region.
+     * @param regionWidth
+     *          int width of the encoded region.
+     * @param regionHeight
+     *          int height of the encoded region.
+     * @return true if successful.
+     */
+    public boolean addFrame(Bitmap im, int regionX, int regionY, int regionWidth, int regionHeight) {
         if ((im == null) || !started) {
             return false;
         }
@@ -134,6 +167,18 @@ public class AnimatedGifEncoder {
             }
             image = im;
 
+            if (firstFrame || regionWidth <= 0 || regionHeight <= 0) {
+                frameX = 0;
+                frameY = 0;
+                frameWidth = width;
+                frameHeight = height;
+            } else {
+                frameX = Math.max(0, regionX);
+                frameY = Math.max(0, regionY);
+                frameWidth = Math.min(width - frameX, regionWidth);
+                frameHeight = Math.min(height - frameY, regionHeight);
+            }
+
 
             getImagePixels(); // convert to correct format if necessary
             analyzePixels(); // build color table & map pixels
@@ -368,14 +413,15 @@ public class AnimatedGifEncoder {
         if (mImagePixelsArray == null) {
             mImagePixelsArray = new int[width * height];
         }
-        if (pixels == null) {
-            pixels = new byte[width * height * 3];
+        final int framePixelsCount = frameWidth * frameHeight;
+        if (pixels == null || pixels.length != framePixelsCount * 3) {
+            pixels = new byte[framePixelsCount * 3];
         }
         int td, tind;
 
-        image.getPixels(mImagePixelsArray, 0, width, 0, 0, width, height);
+        image.getPixels(mImagePixelsArray, 0, frameWidth, frameX, frameY, frameWidth, frameHeight);
 
-        for (int i = 0, size = mImagePixelsArray.length; i < size; i++) {
+        for (int i = 0; i < framePixelsCount; i++) {
             td = mImagePixelsArray[i];
             tind = i * 3;
             pixels[tind++] = (byte) ((td >> 0) & 0xFF);
@@ -429,10 +475,10 @@ public class AnimatedGifEncoder {
      */
     protected void writeImageDesc() throws IOException {
         out.write(0x2c); // image separator
-        writeShort(x); // image position x,y = 0,0
-        writeShort(y);
-        writeShort(width); // image size
-        writeShort(height);
+        writeShort(x + frameX); // image position x,y = 0,0
+        writeShort(y + frameY);
+        writeShort(frameWidth); // image size
+        writeShort(frameHeight);
         // packed fields
         if (firstFrame) {
             // no LCT - GCT is used for first (or only) frame
@@ -493,7 +539,7 @@ public class AnimatedGifEncoder {
      * Encodes and writes pixel data
      */
     protected void writePixels() throws IOException {
-        LZWEncoder encoder = new LZWEncoder(width, height, indexedPixels, colorDepth);
+        LZWEncoder encoder = new LZWEncoder(frameWidth, frameHeight, indexedPixels, colorDepth);
         encoder.encode(out);
     }
 
@@ -0,0 +1,214 @@
+package app.anidro.modules.export.png;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes an opaque 8-bit RGB PNG image row by row. The rows are filtered and compressed with a
+ * {@link Deflater} as soon as they are written and the compressed data is split into IDAT chunks
+ * of a fixed size, so only a couple of rows are kept in memory regardless of the image size.
+ * <p/>
+ * Every row is filtered with the one of the None, Sub and Up filters giving the smallest sum of
+ * absolute differences, which is the usual heuristic for choosing PNG filters.
+ */
+public class StreamingPngWriter {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int IDAT_CHUNK_SIZE = 64 * 1024;
+    private static final int BYTES_PER_PIXEL = 3;
+
+    private static final byte FILTER_NONE = 0;
+    private static final byte FILTER_SUB = 1;
+    private static final byte FILTER_UP = 2;
+
+    private final OutputStream outputStream;
+    private final int width;
+    private final int height;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+
+    private byte[] currentRow;
+    private byte[] previousRow;
+    private final byte[] subRow;
+    private final byte[] upRow;
+    private final byte[] chunkBuffer = new byte[IDAT_CHUNK_SIZE];
+    private int chunkBufferSize;
+    private int writtenRowsCount;
+
+    /**
+     * Creates the writer and writes the PNG header to the output stream
+     */
+    public StreamingPngWriter(OutputStream outputStream, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        }
+
+        this.outputStream = outputStream;
+        this.width = width;
+        this.height = height;
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+        // Each filtered row starts with its filter type
+        final int rowSize = 1 + width * BYTES_PER_PIXEL;
+        currentRow = new byte[rowSize];
+        previousRow = new byte[rowSize];
+        subRow = new byte[rowSize];
+        upRow = new byte[rowSize];
+
+        outputStream.write(SIGNATURE);
+        final byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8; // bit depth
+        header[9] = 2; // color type RGB
+        header[10] = 0; // deflate compression
+        header[11] = 0; // adaptive filtering
+        header[12] = 0; // no interlacing
+        writeChunk("IHDR", header, header.length);
+    }
+
+    /**
+     * Writes consecutive rows of the image from ARGB pixels. The alpha channel is ignored.
+     *
+     * @param pixels
+     *      The ARGB pixels of the rows
+     * @param offset
+     *      The index of the first pixel of the first row
+     * @param stride
+     *      The number of pixels between the starts of two consecutive rows
+     * @param rowsCount
+     *      The number of rows to write
+     */
+    public void writeRows(int[] pixels, int offset, int stride, int rowsCount) throws IOException {
+        if (writtenRowsCount + rowsCount > height) {
+            throw new IllegalStateException("Writing " + rowsCount + " rows exceeds the image height " + height);
+        }
+
+        for (int row = 0; row < rowsCount; row++) {
+            final int rowOffset = offset + row * stride;
+            int position = 1;
+            for (int column = 0; column < width; column++) {
+                final int pixel = pixels[rowOffset + column];
+                currentRow[position++] = (byte) (pixel >> 16);
+                currentRow[position++] = (byte) (pixel >> 8);
+                currentRow[position++] = (byte) pixel;
+            }
+            writeFilteredRow();
+            writtenRowsCount++;
+        }
+    }
+
+    /**
+     * Flushes the remaining compressed data and writes the end of the image.
+     * The output stream is not closed.
+     */
+    public void finish() throws IOException {
+        if (writtenRowsCount != height) {
+            throw new IllegalStateException("Only " + writtenRowsCount + " of " + height + " rows were written");
+        }
+
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflate();
+        }
+        flushChunkBuffer();
+        writeChunk("IEND", chunkBuffer, 0);
+        outputStream.flush();
+        deflater.end();
+    }
+
+    /**
+     * Releases the compressor without finishing the image, e.g. if the writing was cancelled
+     */
+    public void release() {
+        deflater.end();
+    }
+
+    /**
+     * Picks the filter of the current row, compresses the filtered row and swaps the row buffers
+     */
+    private void writeFilteredRow() throws IOException {
+        final int rowSize = currentRow.length;
+        long noneSum = 0;
+        long subSum = 0;
+        long upSum = 0;
+        for (int i = 1; i < rowSize; i++) {
+            final int value = currentRow[i];
+            final int left = i > BYTES_PER_PIXEL ? currentRow[i - BYTES_PER_PIXEL] : 0;
+            final int up = previousRow[i];
+
+            final byte sub = (byte) (value - left);
+            final byte upFiltered = (byte) (value - up);
+            subRow[i] = sub;
+            upRow[i] = upFiltered;
+
+            // Filtered bytes are summed as signed values, small in both directions is what compresses best
+            noneSum += Math.abs((byte) value);
+            subSum += Math.abs(sub);
+            upSum += Math.abs(upFiltered);
+        }
+
+        final byte[] filteredRow;
+        if (writtenRowsCount > 0 && upSum < subSum && upSum < noneSum) {
+            upRow[0] = FILTER_UP;
+            filteredRow = upRow;
+        } else if (subSum < noneSum) {
+            subRow[0] = FILTER_SUB;
+            filteredRow = subRow;
+        } else {
+            currentRow[0] = FILTER_NONE;
+            filteredRow = currentRow;
+        }
+
+        deflater.setInput(filteredRow, 0, rowSize);
+        while (!deflater.needsInput()) {
+            deflate();
+        }
+
+        final byte[] swap = previousRow;
+        previousRow = currentRow;
+        currentRow = swap;
+    }
+
+    /**
+     * Moves compressed data into the chunk buffer and writes a chunk whenever the buffer is full
+     */
+    private void deflate() throws IOException {
+        final int compressedSize = deflater.deflate(chunkBuffer, chunkBufferSize, IDAT_CHUNK_SIZE - chunkBufferSize);
+        chunkBufferSize += compressedSize;
+        if (chunkBufferSize == IDAT_CHUNK_SIZE) {
+            flushChunkBuffer();
+        }
+    }
+
+    private void flushChunkBuffer() throws IOException {
+        if (chunkBufferSize > 0) {
+            writeChunk("IDAT", chunkBuffer, chunkBufferSize);
+            chunkBufferSize = 0;
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        final byte[] typeBytes = {(byte) type.charAt(0), (byte) type.charAt(1), (byte) type.charAt(2), (byte) type.charAt(3)};
+        final byte[] intBuffer = new byte[4];
+
+        putInt(intBuffer, 0, length);
+        outputStream.write(intBuffer);
+        outputStream.write(typeBytes);
+        outputStream.write(data, 0, length);
+
+        crc.reset();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        putInt(intBuffer, 0, (int) crc.getValue());
+        outputStream.write(intBuffer);
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,294 @@
+package app.anidro.modules.export.video;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites an MP4 file produced by the {@link android.media.MediaMuxer} so that it can be
+ * played while it is still being streamed. The muxer writes the "moov" index box after the
+ * "mdat" payload box, so players need the whole file before starting playback. This class moves
+ * the "moov" box in front of the first "mdat" box and patches all chunk offsets in the
+ * "stco" and "co64" boxes accordingly.
+ * <p/>
+ * Only the "moov" box is read into memory, the rest of the file is copied with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+ */
+public class Mp4FastStart {
+
+    /**
+     * The maximum size of a "moov" box we are willing to load in memory
+     */
+    private static final long MAX_MOOV_SIZE = 32 * 1024 * 1024;
+
+    private static final String TEMP_FILE_SUFFIX = ".faststart";
+    private static final String BACKUP_FILE_SUFFIX = ".original";
+
+    private static final int TYPE_MOOV = fourCC("moov");
+    private static final int TYPE_MDAT = fourCC("mdat");
+    private static final int TYPE_TRAK = fourCC("trak");
+    private static final int TYPE_MDIA = fourCC("mdia");
+    private static final int TYPE_MINF = fourCC("minf");
+    private static final int TYPE_STBL = fourCC("stbl");
+    private static final int TYPE_STCO = fourCC("stco");
+    private static final int TYPE_CO64 = fourCC("co64");
+
+    /**
+     * A single box header found in the file
+     */
+    private static class Box {
+        final int type;
+        final long offset;
+        final long size;
+
+        Box(int type, long offset, long size) {
+            this.type = type;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    private Mp4FastStart() {
+    }
+
+    /**
+     * Moves the "moov" box of the input file in front of its "mdat" box, replacing the file.
+     *
+     * @return
+     *      True if the file was rewritten, false if it is already suitable for streaming
+     *      or it cannot be rewritten safely. In the latter case the file is left untouched.
+     * @throws IOException
+     *      If the file is not a valid MP4 file or cannot be read or written. The original file
+     *      is left in place in this case.
+     */
+    public static boolean process(File file) throws IOException {
+        final File tempFile = new File(file.getPath() + TEMP_FILE_SUFFIX);
+
+        boolean rewritten = false;
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            final FileChannel input = inputStream.getChannel();
+            final List<Box> boxes = readTopLevelBoxes(input);
+
+            Box moov = null;
+            Box firstMdat = null;
+            for (Box box : boxes) {
+                if (box.type == TYPE_MDAT && firstMdat == null) {
+                    firstMdat = box;
+                } else if (box.type == TYPE_MOOV) {
+                    moov = box;
+                }
+            }
+
+            if (moov == null || firstMdat == null || moov.offset < firstMdat.offset || moov.size > MAX_MOOV_SIZE) {
+                return false;
+            }
+
+            final ByteBuffer moovBuffer = ByteBuffer.allocate((int) moov.size);
+            readFully(input, moovBuffer, moov.offset);
+
+            final long insertPosition = firstMdat.offset;
+            if (!patchChunkOffsets(moovBuffer, 0, moovBuffer.limit(), insertPosition, moov.offset, moov.size)) {
+                return false;
+            }
+
+            try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+                final FileChannel output = outputStream.getChannel();
+                transferFully(input, 0, insertPosition, output);
+                moovBuffer.rewind();
+                while (moovBuffer.hasRemaining()) {
+                    output.write(moovBuffer);
+                }
+                transferFully(input, insertPosition, moov.offset - insertPosition, output);
+                final long moovEnd = moov.offset + moov.size;
+                transferFully(input, moovEnd, input.size() - moovEnd, output);
+                output.force(false);
+            }
+            rewritten = true;
+        } finally {
+            if (!rewritten && tempFile.exists()) {
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.delete();
+            }
+        }
+
+        replaceFile(file, tempFile);
+        return true;
+    }
+
+    /**
+     * Replaces the file with the rewritten one. The original file is only moved aside to a backup
+     * and is restored if the rewritten file cannot take its place, so a failure never loses the video.
+     *
+     * @throws IOException
+     *      If the file could not be replaced. The original file is left in place and the
+     *      rewritten one is deleted.
+     */
+    private static void replaceFile(File file, File tempFile) throws IOException {
+        // Replaces the file atomically on all file systems used by Android
+        if (tempFile.renameTo(file)) {
+            return;
+        }
+
+        final File backupFile = new File(file.getPath() + BACKUP_FILE_SUFFIX);
+        if (!file.renameTo(backupFile)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw new IOException("Could not replace " + file + " with its fast start version");
+        }
+        if (!tempFile.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            if (!backupFile.renameTo(file)) {
+                throw new IOException("Could not restore " + file + " from " + backupFile);
+            }
+            throw new IOException("Could not replace " + file + " with its fast start version");
+        }
+        //noinspection ResultOfMethodCallIgnored
+        backupFile.delete();
+    }
+
+    /**
+     * Reads the headers of all top level boxes in the file
+     */
+    private static List<Box> readTopLevelBoxes(FileChannel input) throws IOException {
+        final List<Box> boxes = new ArrayList<>();
+        final ByteBuffer header = ByteBuffer.allocate(16);
+        final long fileSize = input.size();
+
+        long offset = 0;
+        while (offset + 8 <= fileSize) {
+            header.clear();
+            header.limit(8);
+            readFully(input, header, offset);
+            long size = header.getInt(0) & 0xFFFFFFFFL;
+            final int type = header.getInt(4);
+
+            if (size == 1) {
+                // 64-bit large size follows the type
+                header.clear();
+                header.limit(8);
+                readFully(input, header, offset + 8);
+                size = header.getLong(0);
+                if (size < 16) {
+                    throw new IOException("Invalid large box size " + size + " at " + offset);
+                }
+            } else if (size == 0) {
+                // The box extends to the end of the file
+                size = fileSize - offset;
+            } else if (size < 8) {
+                throw new IOException("Invalid box size " + size + " at " + offset);
+            }
+
+            if (offset + size > fileSize) {
+                throw new IOException("Box at " + offset + " exceeds the file size");
+            }
+
+            boxes.add(new Box(type, offset, size));
+            offset += size;
+        }
+        return boxes;
+    }
+
+    /**
+     * Walks recursively all boxes between start and end in the buffer and shifts the chunk
+     * offsets pointing into the interval [insertPosition, moovOffset) by the size of the moved
+     * "moov" box. Offsets after the original "moov" box stay the same, since the box is only moved.
+     *
+     * @return
+     *      False if a 32-bit chunk offset would overflow after the move
+     */
+    private static boolean patchChunkOffsets(ByteBuffer buffer, int start, int end,
+                                             long insertPosition, long moovOffset, long moovSize) throws IOException {
+        int position = start;
+        while (position + 8 <= end) {
+            long size = buffer.getInt(position) & 0xFFFFFFFFL;
+            final int type = buffer.getInt(position + 4);
+            int headerSize = 8;
+
+            if (size == 1) {
+                size = buffer.getLong(position + 8);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = end - position;
+            }
+
+            if (size < headerSize || position + size > end) {
+                throw new IOException("Invalid box size " + size + " inside moov");
+            }
+
+            final int payloadStart = position + headerSize;
+            final int payloadEnd = (int) (position + size);
+
+            if (type == TYPE_MOOV || type == TYPE_TRAK || type == TYPE_MDIA
+                    || type == TYPE_MINF || type == TYPE_STBL) {
+                if (!patchChunkOffsets(buffer, payloadStart, payloadEnd, insertPosition, moovOffset, moovSize)) {
+                    return false;
+                }
+            } else if (type == TYPE_STCO) {
+                // version and flags, then the entries count
+                final int count = buffer.getInt(payloadStart + 4);
+                int entry = payloadStart + 8;
+                if (count < 0 || entry + 4L * count > payloadEnd) {
+                    throw new IOException("Invalid stco entries count " + count);
+                }
+                for (int i = 0; i < count; i++, entry += 4) {
+                    final long chunkOffset = buffer.getInt(entry) & 0xFFFFFFFFL;
+                    final long patched = shiftOffset(chunkOffset, insertPosition, moovOffset, moovSize);
+                    if (patched > 0xFFFFFFFFL) {
+                        return false;
+                    }
+                    buffer.putInt(entry, (int) patched);
+                }
+            } else if (type == TYPE_CO64) {
+                final int count = buffer.getInt(payloadStart + 4);
+                int entry = payloadStart + 8;
+                if (count < 0 || entry + 8L * count > payloadEnd) {
+                    throw new IOException("Invalid co64 entries count " + count);
+                }
+                for (int i = 0; i < count; i++, entry += 8) {
+                    buffer.putLong(entry, shiftOffset(buffer.getLong(entry), insertPosition, moovOffset, moovSize));
+                }
+            }
+
+            position = payloadEnd;
+        }
+        return true;
+    }
+
+    private static long shiftOffset(long offset, long insertPosition, long moovOffset, long moovSize) {
+        if (offset >= insertPosition && offset < moovOffset) {
+            return offset + moovSize;
+        }
+        return offset;
+    }
+
+    private static void readFully(FileChannel input, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int read = input.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file at " + position);
+            }
+            position += read;
+        }
+    }
+
+    private static void transferFully(FileChannel input, long position, long count, FileChannel output) throws IOException {
+        while (count > 0) {
+            final long transferred = input.transferTo(position, count, output);
+            if (transferred <= 0) {
+                throw new IOException("Could not transfer data at " + position);
+            }
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+    private static int fourCC(String type) {
+        return (type.charAt(0) << 24) | (type.charAt(1) << 16) | (type.charAt(2) << 8) | type.charAt(3);
+    }
+}
@@ -31,9 +31,9 @@ import java.nio.ByteBuffer;
 import timber.log.Timber;
 
 /**
- * This class wraps up the core components used for surface-input video encoding.
+ * This class wraps up the core components used for surface-input or ByteBuffer-input video encoding.
  * <p>
- * Once created, frames are fed to the input surface.  Remember to provide the presentation
+ * Once created, frames are fed to the input surface or queued as YUV ByteBuffers.  Remember to provide the presentation
  * time stamp, and always call drainEncoder() before swapBuffers() to ensure that the
  * producer side doesn't get backed up.
  * <p>
@@ -47,8 +47,15 @@ public class VideoEncoderCore {
     private static final String MIME_TYPE = "video/avc";    // H.264 Advanced Video Coding
     private static final int FRAME_RATE = 30;               // 30fps
     private static final int IFRAME_INTERVAL = 5;           // 5 seconds between I-frames
+    // The values of MediaFormat.KEY_STRIDE and KEY_SLICE_HEIGHT, which are public only since API 23
+    private static final String KEY_STRIDE = "stride";
+    private static final String KEY_SLICE_HEIGHT = "slice-height";
 
     private Surface mInputSurface;
+    private Yuv420Converter.Layout mInputLayout;
+    private int mInputStride;
+    private int mInputSliceHeight;
+    private ByteBuffer[] mInputBuffers;
     private MediaMuxer mMuxer;
     private MediaCodec mEncoder;
     private MediaCodec.BufferInfo mBufferInfo;
@@ -61,47 +68,116 @@ public class VideoEncoderCore {
      */
     public VideoEncoderCore(int width, int height, int bitRate, File outputFile)
             throws IOException {
+        this(width, height, bitRate, outputFile, false);
+    }
+
+    /**
+     * Configures encoder and muxer state. If byteBufferInput is set, the encoder is configured
+     * with a YUV 4:2:0 color format and frames have to be fed through {@link #queueInputFrame},
+     * otherwise the input Surface is prepared.
+     */
+    public VideoEncoderCore(int width, int height, int bitRate, File outputFile, boolean byteBufferInput)
+            throws IOException {
         mBufferInfo = new MediaCodec.BufferInfo();
+        mInputStride = width;
+        mInputSliceHeight = height;
 
         MediaFormat format = MediaFormat.createVideoFormat(MIME_TYPE, width, height);
 
-        // Set some properties.  Failing to specify some of these can cause the MediaCodec
-        // configure() call to throw an unhelpful exception.
-        format.setInteger(MediaFormat.KEY_COLOR_FORMAT,
-                MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
-        format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
-        format.setInteger(MediaFormat.KEY_FRAME_RATE, FRAME_RATE);
-        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, IFRAME_INTERVAL);
-        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, IFRAME_INTERVAL);
-        Timber.d("format: " + format);
-
-        // Create a MediaCodec encoder, and configure it with our format.  Get a Surface
-        // we can use for input and wrap it with a class that handles the EGL work.
         mEncoder = MediaCodec.createEncoderByType(MIME_TYPE);
-        mEncoder.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
-        mInputSurface = mEncoder.createInputSurface();
-        mEncoder.start();
-
-        // Create a MediaMuxer.  We can't add the video track and start() the muxer here,
-        // because our MediaFormat doesn't have the Magic Goodies.  These can only be
-        // obtained from the encoder after it has started processing data.
-        //
-        // We're not actually interested in multiplexing audio.  We just want to convert
-        // the raw H.264 elementary stream we get from MediaCodec into a .mp4 file.
-        mMuxer = new MediaMuxer(outputFile.toString(),
-                MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        try {
+            // Set some properties.  Failing to specify some of these can cause the MediaCodec
+            // configure() call to throw an unhelpful exception.
+            if (byteBufferInput) {
+                format.setInteger(MediaFormat.KEY_COLOR_FORMAT, selectYuvColorFormat());
+            } else {
+                format.setInteger(MediaFormat.KEY_COLOR_FORMAT,
+                        MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+            }
+            format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
+            format.setInteger(MediaFormat.KEY_FRAME_RATE, FRAME_RATE);
+            format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, IFRAME_INTERVAL);
+            format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, IFRAME_INTERVAL);
+            Timber.d("format: " + format);
+
+            // Configure the MediaCodec encoder with our format.  Get a Surface
+            // we can use for input, unless the frames come as ByteBuffers.
+            mEncoder.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            if (!byteBufferInput) {
+                mInputSurface = mEncoder.createInputSurface();
+            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                readInputPlanesLayout(mEncoder.getInputFormat());
+            }
+            mEncoder.start();
+            if (byteBufferInput && Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+                //noinspection deprecation
+                mInputBuffers = mEncoder.getInputBuffers();
+            }
+
+            // Create a MediaMuxer.  We can't add the video track and start() the muxer here,
+            // because our MediaFormat doesn't have the Magic Goodies.  These can only be
+            // obtained from the encoder after it has started processing data.
+            //
+            // We're not actually interested in multiplexing audio.  We just want to convert
+            // the raw H.264 elementary stream we get from MediaCodec into a .mp4 file.
+            mMuxer = new MediaMuxer(outputFile.toString(),
+                    MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        } catch (IOException | RuntimeException e) {
+            // The caller never gets an instance to release, so the codec must not leak here
+            releaseAfterFailure();
+            throw e;
+        }
 
         mTrackIndex = -1;
         mMuxerStarted = false;
     }
 
     /**
-     * Returns the encoder's input surface.
+     * Returns the encoder's input surface, or null if the encoder expects ByteBuffer input.
      */
     public Surface getInputSurface() {
         return mInputSurface;
     }
 
+    /**
+     * Returns the YUV layout expected by {@link #queueInputFrame},
+     * or null if the encoder expects Surface input.
+     */
+    public Yuv420Converter.Layout getInputLayout() {
+        return mInputLayout;
+    }
+
+    /**
+     * Copies a single YUV frame converted by the given converter into the next free encoder input
+     * buffer, laid out with the stride and slice height of the encoder, and queues it with the given
+     * presentation time. The output is drained while waiting for a free buffer,
+     * so that the encoder never gets backed up.
+     */
+    public void queueInputFrame(Yuv420Converter converter, byte[] frame, long presentationTimeUs, boolean endOfStream) {
+        final int TIMEOUT_USEC = 10000;
+
+        int inputBufferIndex;
+        while ((inputBufferIndex = mEncoder.dequeueInputBuffer(TIMEOUT_USEC)) < 0) {
+            drainEncoder(false);
+        }
+
+        ByteBuffer inputBuffer;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            inputBuffer = mEncoder.getInputBuffer(inputBufferIndex);
+        } else {
+            inputBuffer = mInputBuffers[inputBufferIndex];
+        }
+
+        if (inputBuffer == null) {
+            throw new RuntimeException("encoderInputBuffer " + inputBufferIndex + " was null");
+        }
+
+        inputBuffer.clear();
+        int size = converter.copyToBuffer(frame, inputBuffer, mInputStride, mInputSliceHeight);
+        mEncoder.queueInputBuffer(inputBufferIndex, 0, size, presentationTimeUs,
+                endOfStream ? MediaCodec.BUFFER_FLAG_END_OF_STREAM : 0);
+    }
+
     /**
      * Releases encoder resources.
      */
@@ -113,14 +189,71 @@ public class VideoEncoderCore {
             mEncoder = null;
         }
         if (mMuxer != null) {
-            // TODO: stop() throws an exception if you haven't fed it any data.  Keep track
-            //       of frames submitted, and don't call stop() if we haven't written anything.
-            mMuxer.stop();
+            // stop() throws an exception if you haven't fed it any data
+            if (mMuxerStarted) {
+                mMuxer.stop();
+            }
             mMuxer.release();
             mMuxer = null;
         }
     }
 
+    /**
+     * Releases the codec of a partially constructed encoder. The codec may not have been started yet,
+     * so it is not stopped.
+     */
+    private void releaseAfterFailure() {
+        if (mInputSurface != null) {
+            mInputSurface.release();
+            mInputSurface = null;
+        }
+        if (mEncoder != null) {
+            mEncoder.release();
+            mEncoder = null;
+        }
+    }
+
+    /**
+     * Reads the padding of the input planes, which many hardware encoders align to 16 or more rows and
+     * columns. The keys are only reported since Android 6.0 and the frame size is kept if they are missing.
+     */
+    private void readInputPlanesLayout(MediaFormat inputFormat) {
+        if (inputFormat == null) {
+            return;
+        }
+        if (inputFormat.containsKey(KEY_STRIDE)) {
+            mInputStride = Math.max(mInputStride, inputFormat.getInteger(KEY_STRIDE));
+        }
+        if (inputFormat.containsKey(KEY_SLICE_HEIGHT)) {
+            mInputSliceHeight = Math.max(mInputSliceHeight, inputFormat.getInteger(KEY_SLICE_HEIGHT));
+        }
+        Timber.d("input stride " + mInputStride + ", slice height " + mInputSliceHeight);
+    }
+
+    /**
+     * Picks the YUV 4:2:0 color format supported by the encoder,
+     * preferring the semi planar one, which is the most common among hardware encoders.
+     */
+    private int selectYuvColorFormat() {
+        MediaCodecInfo.CodecCapabilities capabilities =
+                mEncoder.getCodecInfo().getCapabilitiesForType(MIME_TYPE);
+        boolean supportsPlanar = false;
+        for (int colorFormat : capabilities.colorFormats) {
+            if (colorFormat == MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420SemiPlanar) {
+                mInputLayout = Yuv420Converter.Layout.NV12;
+                return colorFormat;
+            }
+            if (colorFormat == MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Planar) {
+                supportsPlanar = true;
+            }
+        }
+        if (supportsPlanar) {
+            mInputLayout = Yuv420Converter.Layout.I420;
+            return MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Planar;
+        }
+        throw new IllegalStateException("Encoder " + mEncoder.getName() + " has no supported YUV input format");
+    }
+
     /**
      * Extracts all pending data from the encoder and forwards it to the muxer.
      * <p>
@@ -135,7 +268,8 @@ public class VideoEncoderCore {
         final int TIMEOUT_USEC = 10000;
         Timber.d("drainEncoder(" + endOfStream + ")");
 
-        if (endOfStream) {
+        if (endOfStream && mInputSurface != null) {
+            // With ByteBuffer input the EOS flag is queued together with the last frame
             Timber.d("sending EOS to encoder");
             mEncoder.signalEndOfInputStream();
         }
@@ -0,0 +1,271 @@
+package app.anidro.modules.export.video;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Converts ARGB_8888 pixels into one of the YUV 4:2:0 layouts accepted by the
+ * {@link android.media.MediaCodec} ByteBuffer input. The conversion uses the BT.601
+ * limited range integer coefficients and averages every 2x2 block of pixels for the chroma planes.
+ * <p/>
+ * The converter does not depend on any Android class, does not allocate while converting
+ * and can split every frame into bands of rows converted in parallel. Frames are converted
+ * tightly packed and copied plane by plane into the encoder input buffer by {@link #copyToBuffer},
+ * which honors the row stride and slice height the encoder expects.
+ */
+public class Yuv420Converter {
+
+    /**
+     * The supported YUV 4:2:0 memory layouts
+     */
+    public enum Layout {
+        /**
+         * A full Y plane followed by a half resolution plane of interleaved U and V samples
+         */
+        NV12,
+        /**
+         * A full Y plane followed by a half resolution U plane and a half resolution V plane
+         */
+        I420
+    }
+
+    private final int width;
+    private final int height;
+    private final Layout layout;
+    private final int chromaWidth;
+    private final int chromaHeight;
+    private final int frameSize;
+
+    private final ExecutorService executor;
+    private final List<Callable<Void>> bands;
+    private int[] argb;
+    private byte[] yuv;
+
+    public Yuv420Converter(int width, int height, Layout layout, int threadsCount) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid frame size " + width + "x" + height);
+        }
+
+        this.width = width;
+        this.height = height;
+        this.layout = layout;
+        this.chromaWidth = (width + 1) / 2;
+        this.chromaHeight = (height + 1) / 2;
+        this.frameSize = width * height + 2 * chromaWidth * chromaHeight;
+
+        // Every band must start on an even row, so that it owns complete chroma rows
+        int bandsCount = Math.max(1, Math.min(threadsCount, chromaHeight));
+        if (bandsCount > 1) {
+            executor = Executors.newFixedThreadPool(bandsCount);
+            bands = new ArrayList<>(bandsCount);
+            int chromaRowsPerBand = (chromaHeight + bandsCount - 1) / bandsCount;
+            for (int chromaRowStart = 0; chromaRowStart < chromaHeight; chromaRowStart += chromaRowsPerBand) {
+                final int rowStart = chromaRowStart * 2;
+                final int rowEnd = Math.min(height, (chromaRowStart + chromaRowsPerBand) * 2);
+                bands.add(() -> {
+                    convertRows(argb, yuv, rowStart, rowEnd);
+                    return null;
+                });
+            }
+        } else {
+            executor = null;
+            bands = null;
+        }
+    }
+
+    /**
+     * Returns the number of bytes a single converted frame occupies
+     */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Converts a whole frame. The input must contain width * height tightly packed ARGB pixels
+     * and the output must have room for at least {@link #getFrameSize()} bytes.
+     */
+    public void convert(int[] argb, byte[] yuv) throws InterruptedException {
+        checkBuffers(argb, yuv);
+
+        if (executor == null) {
+            convertRows(argb, yuv, 0, height);
+            return;
+        }
+
+        this.argb = argb;
+        this.yuv = yuv;
+        try {
+            for (Future<Void> band : executor.invokeAll(bands)) {
+                band.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("YUV conversion failed", e.getCause());
+        } finally {
+            this.argb = null;
+            this.yuv = null;
+        }
+    }
+
+    /**
+     * Converts the rows in the interval [rowStart, rowEnd). The row start must be even,
+     * because each chroma sample covers two consecutive rows.
+     */
+    public void convertRows(int[] argb, byte[] yuv, int rowStart, int rowEnd) {
+        if ((rowStart & 1) != 0) {
+            throw new IllegalArgumentException("Band must start on an even row, got " + rowStart);
+        }
+        checkBuffers(argb, yuv);
+
+        final int lumaSize = width * height;
+        final int chromaPlaneSize = chromaWidth * chromaHeight;
+
+        for (int row = rowStart; row < rowEnd; row += 2) {
+            final int nextRow = row + 1 < height ? row + 1 : row;
+            final int topOffset = row * width;
+            final int bottomOffset = nextRow * width;
+            final int chromaRow = row >> 1;
+
+            for (int column = 0; column < width; column += 2) {
+                final int nextColumn = column + 1 < width ? column + 1 : column;
+
+                final int p00 = argb[topOffset + column];
+                final int p01 = argb[topOffset + nextColumn];
+                final int p10 = argb[bottomOffset + column];
+                final int p11 = argb[bottomOffset + nextColumn];
+
+                yuv[topOffset + column] = luma(p00);
+                if (nextColumn != column) {
+                    yuv[topOffset + nextColumn] = luma(p01);
+                }
+                if (nextRow != row) {
+                    yuv[bottomOffset + column] = luma(p10);
+                    if (nextColumn != column) {
+                        yuv[bottomOffset + nextColumn] = luma(p11);
+                    }
+                }
+
+                final int r = (((p00 >> 16) & 0xFF) + ((p01 >> 16) & 0xFF)
+                        + ((p10 >> 16) & 0xFF) + ((p11 >> 16) & 0xFF) + 2) >> 2;
+                final int g = (((p00 >> 8) & 0xFF) + ((p01 >> 8) & 0xFF)
+                        + ((p10 >> 8) & 0xFF) + ((p11 >> 8) & 0xFF) + 2) >> 2;
+                final int b = ((p00 & 0xFF) + (p01 & 0xFF)
+                        + (p10 & 0xFF) + (p11 & 0xFF) + 2) >> 2;
+
+                final byte u = (byte) (((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+                final byte v = (byte) (((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+
+                final int chromaColumn = column >> 1;
+                if (layout == Layout.NV12) {
+                    final int uvOffset = lumaSize + chromaRow * chromaWidth * 2 + chromaColumn * 2;
+                    yuv[uvOffset] = u;
+                    yuv[uvOffset + 1] = v;
+                } else {
+                    final int chromaOffset = chromaRow * chromaWidth + chromaColumn;
+                    yuv[lumaSize + chromaOffset] = u;
+                    yuv[lumaSize + chromaPlaneSize + chromaOffset] = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies a tightly packed converted frame into a buffer whose planes are padded to the given
+     * stride and slice height. The luma plane and the interleaved chroma plane of NV12 have rows of
+     * stride bytes, while each chroma plane of I420 has rows of half the stride. The chroma planes
+     * start after slice height rows of the plane before them. The padding bytes are left as they are.
+     *
+     * @param stride
+     *      The number of bytes between the starts of two luma rows, at least the frame width
+     * @param sliceHeight
+     *      The number of luma rows before the chroma planes start, at least the frame height
+     * @return
+     *      The number of bytes occupied by the frame in the buffer, starting at its position
+     */
+    public int copyToBuffer(byte[] yuv, ByteBuffer buffer, int stride, int sliceHeight) {
+        if (stride < width || sliceHeight < height) {
+            throw new IllegalArgumentException("Invalid plane layout, stride " + stride
+                    + ", slice height " + sliceHeight + " for frame " + width + "x" + height);
+        }
+
+        final int start = buffer.position();
+        final int chromaSliceHeight = (sliceHeight + 1) / 2;
+        final int chromaStart = start + stride * sliceHeight;
+        final int size;
+        // The padding after the last chroma row may be missing, but all samples must fit
+        final int required;
+        if (layout == Layout.NV12) {
+            size = stride * sliceHeight + stride * chromaSliceHeight;
+            required = stride * sliceHeight + stride * (chromaHeight - 1) + chromaWidth * 2;
+        } else {
+            final int chromaStride = (stride + 1) / 2;
+            size = stride * sliceHeight + 2 * chromaStride * chromaSliceHeight;
+            required = stride * sliceHeight + chromaStride * (chromaSliceHeight + chromaHeight - 1) + chromaWidth;
+        }
+        if (buffer.limit() - start < required) {
+            throw new IllegalArgumentException("Encoder input buffer too small: " + (buffer.limit() - start));
+        }
+
+        copyPlane(yuv, 0, width, height, buffer, start, stride);
+        if (layout == Layout.NV12) {
+            copyPlane(yuv, width * height, chromaWidth * 2, chromaHeight, buffer, chromaStart, stride);
+        } else {
+            final int chromaStride = (stride + 1) / 2;
+            final int chromaPlaneSize = chromaWidth * chromaHeight;
+            copyPlane(yuv, width * height, chromaWidth, chromaHeight, buffer, chromaStart, chromaStride);
+            copyPlane(yuv, width * height + chromaPlaneSize, chromaWidth, chromaHeight,
+                    buffer, chromaStart + chromaStride * chromaSliceHeight, chromaStride);
+        }
+
+        final int written = Math.min(size, buffer.limit() - start);
+        buffer.position(start + written);
+        return written;
+    }
+
+    private static void copyPlane(byte[] source, int sourceOffset, int rowLength, int rowsCount,
+                                  ByteBuffer buffer, int bufferOffset, int stride) {
+        if (stride == rowLength) {
+            buffer.position(bufferOffset);
+            buffer.put(source, sourceOffset, rowLength * rowsCount);
+            return;
+        }
+        for (int row = 0; row < rowsCount; row++) {
+            buffer.position(bufferOffset + row * stride);
+            buffer.put(source, sourceOffset + row * rowLength, rowLength);
+        }
+    }
+
+    /**
+     * Stops the worker threads, if any. The converter can no longer be used afterwards.
+     */
+    public void release() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static byte luma(int pixel) {
+        final int r = (pixel >> 16) & 0xFF;
+        final int g = (pixel >> 8) & 0xFF;
+        final int b = pixel & 0xFF;
+        return (byte) (((66 * r + 129 * g + 25 * b + 128) >> 8) + 16);
+    }
+
+    private void checkBuffers(int[] argb, byte[] yuv) {
+        if (argb.length < width * height) {
+            throw new IllegalArgumentException("ARGB buffer too small: " + argb.length);
+        }
+        if (yuv.length < frameSize) {
+            throw new IllegalArgumentException("YUV buffer too small: " + yuv.length);
+        }
+    }
+}
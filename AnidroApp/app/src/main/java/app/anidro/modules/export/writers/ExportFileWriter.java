@@ -2,6 +2,7 @@ package app.anidro.modules.export.writers;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 
 import androidx.annotation.NonNull;
 
@@ -9,7 +10,7 @@ import java.io.File;
 
 import app.anidro.models.FileType;
 import app.anidro.modules.export.files.DrawingsFileHelper;
-import app.anidro.renderers.FixedFrameRateRenderer;
+import app.anidro.renderers.FrameSource;
 import timber.log.Timber;
 
 /**
@@ -20,10 +21,11 @@ import timber.log.Timber;
  * Created by luboganev on 27/09/15.
  */
 public abstract class ExportFileWriter {
-    private final FixedFrameRateRenderer frameRenderer;
+    private final FrameSource frameRenderer;
     private final ExportFileWriterCallbackListener listener;
     private final Context applicationContext;
     private boolean isCancelled;
+    private String fileNameSuffix = "";
 
     /**
      * A callback to be implemented by the caller of the exporting
@@ -36,7 +38,7 @@ public abstract class ExportFileWriter {
         void onCancelled();
     }
 
-    public ExportFileWriter(@NonNull Context applicationContext, @NonNull FixedFrameRateRenderer frameRenderer, @NonNull ExportFileWriterCallbackListener listener) {
+    public ExportFileWriter(@NonNull Context applicationContext, @NonNull FrameSource frameRenderer, @NonNull ExportFileWriterCallbackListener listener) {
         this.frameRenderer = frameRenderer;
         this.listener = listener;
         this.isCancelled = false;
@@ -50,6 +52,21 @@ public abstract class ExportFileWriter {
         isCancelled = true;
     }
 
+    /**
+     * Sets a suffix appended to the name of the exported file, so that several files of the same
+     * type can be exported at the same time
+     */
+    public void setFileNameSuffix(@NonNull String fileNameSuffix) {
+        this.fileNameSuffix = fileNameSuffix;
+    }
+
+    /**
+     * Checks if the running export has been cancelled
+     */
+    protected boolean isCancelled() {
+        return isCancelled;
+    }
+
     /**
      * Called initially when and export operation starts and the file is ready for writing.
      * @throws Exception
@@ -76,6 +93,14 @@ public abstract class ExportFileWriter {
      */
     protected abstract FileType getFileType();
 
+    /**
+     * Returns the area of the current frame which changed since the previous written frame.
+     * It is empty if the frame is identical to the previous one.
+     */
+    protected Rect getCurrentFrameDirtyRect() {
+        return frameRenderer.getCurrentFrameDirtyRect();
+    }
+
     /**
      * Starts the exporting of the drawing.
      */
@@ -84,7 +109,7 @@ public abstract class ExportFileWriter {
         isCancelled = false;
 
         DrawingsFileHelper.deleteDrawingsOlderThanOneDay(applicationContext);
-        File file = DrawingsFileHelper.getFreshDrawingFile(applicationContext, getFileType());
+        File file = DrawingsFileHelper.getFreshDrawingFile(applicationContext, getFileType(), fileNameSuffix);
 
         if (file == null) {
             listener.onFailed();
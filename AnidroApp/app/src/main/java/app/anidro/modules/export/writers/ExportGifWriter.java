@@ -2,6 +2,7 @@ package app.anidro.modules.export.writers;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -9,10 +10,12 @@ import java.io.FileOutputStream;
 import app.anidro.models.FileType;
 import app.anidro.modules.export.gif.AnimatedGifEncoder;
 import app.anidro.renderers.FixedFrameRateRenderer;
+import app.anidro.renderers.FrameSource;
 
 /**
  * An exported which encodes each frame as a frame of a GIF image.
- * It adds some extra delay for the last frame.
+ * It adds some extra delay for the last frame. Every frame after the first one only encodes
+ * the area which changed since the previous frame and keeps the rest of the previous frame.
  * <p/>
  * Created by luboganev on 27/09/15.
  */
@@ -20,11 +23,13 @@ public class ExportGifWriter extends ExportFileWriter {
     private final AnimatedGifEncoder encoder;
     private FileOutputStream fos;
 
-    public ExportGifWriter(Context applicationContext, FixedFrameRateRenderer frameRenderer, ExportFileWriterCallbackListener listener) {
+    public ExportGifWriter(Context applicationContext, FrameSource frameRenderer, ExportFileWriterCallbackListener listener) {
         super(applicationContext, frameRenderer, listener);
         encoder = new AnimatedGifEncoder();
         encoder.setDelay((int) FixedFrameRateRenderer.GIF_FRAME_LENGTH);
         encoder.setRepeat(0);
+        // Leave each frame in place, so the next one only has to cover the changed area
+        encoder.setDispose(1);
     }
 
     @Override
@@ -54,7 +59,13 @@ public class ExportGifWriter extends ExportFileWriter {
             encoder.setDelay((int)(FixedFrameRateRenderer.GIF_FRAME_LENGTH +
                         FixedFrameRateRenderer.ANIMATION_FINAL_FRAME_EXTRA_LENGTH));
         }
-        encoder.addFrame(currentFrame);
+        final Rect dirtyRect = getCurrentFrameDirtyRect();
+        if (dirtyRect.isEmpty()) {
+            // Nothing changed, a single pixel frame still carries the frame delay
+            encoder.addFrame(currentFrame, 0, 0, 1, 1);
+        } else {
+            encoder.addFrame(currentFrame, dirtyRect.left, dirtyRect.top, dirtyRect.width(), dirtyRect.height());
+        }
     }
 
     @Override
@@ -7,7 +7,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 
 import app.anidro.models.FileType;
-import app.anidro.renderers.FixedFrameRateRenderer;
+import app.anidro.renderers.FrameSource;
 
 /**
  * A simple writer which encodes the frame as a simple JPG image
@@ -17,7 +17,7 @@ import app.anidro.renderers.FixedFrameRateRenderer;
 public class ExportImageWriter extends ExportFileWriter {
     private FileOutputStream fos;
 
-    public ExportImageWriter(Context applicationContext, FixedFrameRateRenderer frameRenderer, ExportFileWriterCallbackListener listener) {
+    public ExportImageWriter(Context applicationContext, FrameSource frameRenderer, ExportFileWriterCallbackListener listener) {
         super(applicationContext, frameRenderer, listener);
     }
 
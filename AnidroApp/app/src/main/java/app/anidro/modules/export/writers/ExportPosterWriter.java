@@ -0,0 +1,68 @@
+package app.anidro.modules.export.writers;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import app.anidro.models.FileType;
+import app.anidro.modules.export.png.StreamingPngWriter;
+import app.anidro.renderers.TiledPosterRenderer;
+
+/**
+ * A writer which encodes the whole drawing as a PNG image of any size. The image is rendered
+ * tile by tile by the {@link TiledPosterRenderer} and every band of tiles is compressed right away
+ * by the {@link StreamingPngWriter}, so the memory usage does not depend on the image height.
+ * The single frame of the renderer is only a preview of the image.
+ */
+public class ExportPosterWriter extends ExportFileWriter {
+    private final TiledPosterRenderer posterRenderer;
+    private FileOutputStream fos;
+    private StreamingPngWriter pngWriter;
+
+    public ExportPosterWriter(Context applicationContext, TiledPosterRenderer posterRenderer, ExportFileWriterCallbackListener listener) {
+        super(applicationContext, posterRenderer, listener);
+        this.posterRenderer = posterRenderer;
+    }
+
+    @Override
+    protected void startWrite(File file) throws Exception {
+        fos = new FileOutputStream(file);
+        pngWriter = new StreamingPngWriter(new BufferedOutputStream(fos),
+                posterRenderer.getPosterWidth(), posterRenderer.getPosterHeight());
+    }
+
+    @Override
+    protected void endWrite() throws Exception {
+        if (pngWriter != null) {
+            pngWriter.release();
+        }
+        if (fos == null) {
+            return;
+        }
+        fos.close();
+    }
+
+    @Override
+    protected void writeFrame(Bitmap currentFrame, boolean isLastFrame) throws Exception {
+        if (pngWriter == null) {
+            return;
+        }
+
+        posterRenderer.renderPoster((pixels, offset, stride, rowsCount) -> {
+            pngWriter.writeRows(pixels, offset, stride, rowsCount);
+            return !isCancelled();
+        });
+
+        if (!isCancelled()) {
+            pngWriter.finish();
+        }
+    }
+
+    @Override
+    protected FileType getFileType() {
+        return FileType.POSTER;
+    }
+}
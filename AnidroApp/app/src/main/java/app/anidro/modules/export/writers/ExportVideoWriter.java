@@ -4,6 +4,7 @@ import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.media.MediaCodec;
 import android.os.Build;
 import android.util.Size;
@@ -12,10 +13,15 @@ import android.view.Surface;
 import androidx.annotation.RequiresApi;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 
 import app.anidro.models.FileType;
+import app.anidro.modules.export.video.Mp4FastStart;
 import app.anidro.modules.export.video.VideoEncoderCore;
-import app.anidro.renderers.FixedFrameRateRenderer;
+import app.anidro.modules.export.video.Yuv420Converter;
+import app.anidro.renderers.FrameSource;
+import timber.log.Timber;
 
 /**
  * An exported which encodes each frame as a frame of a video.
@@ -23,61 +29,131 @@ import app.anidro.renderers.FixedFrameRateRenderer;
  * only for Android 4.3 and newer, since the used video encoding api is not
  * available for older devices.
  * <p/>
+ * Frames are either drawn onto the input {@link Surface} of the encoder, or converted
+ * to YUV by the {@link Yuv420Converter} and queued as ByteBuffers with exact timestamps.
+ * The latter is also used as a fallback if the encoder fails to provide an input surface.
+ * Once the encoding is done, the "moov" index is moved to the front of the file
+ * by the {@link Mp4FastStart}, so that the video can start playing while being streamed.
+ * <p/>
  * Created by luboganev on 27/09/15.
  */
 @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
 public class ExportVideoWriter extends ExportFileWriter {
 
+    /**
+     * The way rendered frames are fed to the video encoder
+     */
+    public enum InputMode {
+        SURFACE,
+        BYTE_BUFFER
+    }
+
     private static final int BIT_RATE = 2000000;
+    private static final int MAX_CONVERTER_THREADS = 4;
 
     private VideoEncoderCore encoder;
     private Surface encoderSurface;
+    private InputMode inputMode;
     private final int width;
     private final int height;
+    private final long frameLength;
+    private int encoderWidth;
+    private int encoderHeight;
     private int left = 0;
     private int top = 0;
 
+    private Yuv420Converter yuvConverter;
+    private int[] argbFrame;
+    private byte[] yuvFrame;
+    private int writtenFramesCount;
+    private File outputFile;
+
     private final static float SUPPORTED_RATIO = 4.0F / 3.0F;
     private final static float SUPPORTED_RATIO_SQUARE = 16.0F / 9.0F;
 
-    public ExportVideoWriter(Context applicationContext, FixedFrameRateRenderer frameRenderer, ExportFileWriterCallbackListener listener) {
+    public ExportVideoWriter(Context applicationContext, FrameSource frameRenderer, ExportFileWriterCallbackListener listener) {
+        this(applicationContext, frameRenderer, listener, InputMode.SURFACE);
+    }
+
+    public ExportVideoWriter(Context applicationContext, FrameSource frameRenderer,
+                             ExportFileWriterCallbackListener listener, InputMode inputMode) {
         super(applicationContext, frameRenderer, listener);
         width = frameRenderer.getFrameWidth();
         height = frameRenderer.getFrameHeight();
+        frameLength = frameRenderer.getFrameLength();
+        this.inputMode = inputMode;
     }
 
     @Override
     protected void startWrite(File file) throws Exception {
+        writtenFramesCount = 0;
+        outputFile = file;
+
+        if (inputMode == InputMode.SURFACE) {
+            try {
+                setupVideoEncoder(file, false);
+                encoderSurface = encoder.getInputSurface();
+            } catch (IllegalStateException e) {
+                Timber.w(e, "Surface input not available, falling back to ByteBuffer input");
+                if (encoder != null) {
+                    encoder.release();
+                    encoder = null;
+                }
+                inputMode = InputMode.BYTE_BUFFER;
+            }
+        }
+
+        if (inputMode == InputMode.BYTE_BUFFER) {
+            setupVideoEncoder(file, true);
+            setupByteBufferInput();
+        }
+    }
+
+    private void setupVideoEncoder(File file, boolean byteBufferInput) throws Exception {
+        encoderWidth = width;
+        encoderHeight = height;
+        left = 0;
+        top = 0;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            lollipopSetupVideoEncoder(file);
+            lollipopSetupVideoEncoder(file, byteBufferInput);
         } else {
-            encoder = new VideoEncoderCore(width, height, BIT_RATE, file);
+            encoder = new VideoEncoderCore(width, height, BIT_RATE, file, byteBufferInput);
         }
-        encoderSurface = encoder.getInputSurface();
     }
 
-
     @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
-    private void lollipopSetupVideoEncoder(File file) throws Exception {
+    private void lollipopSetupVideoEncoder(File file, boolean byteBufferInput) throws Exception {
         try {
             // try the current dimensions
-            encoder = new VideoEncoderCore(width, height, BIT_RATE, file);
+            encoder = new VideoEncoderCore(width, height, BIT_RATE, file, byteBufferInput);
         } catch (MediaCodec.CodecException e) {
             Size fallbackSize = calculateNewFrameSize(width, height, 4.0f / 3.0f);
             // try 4:3 or 3:4 aspect ratio (with black lines)
             try {
-                encoder = new VideoEncoderCore(fallbackSize.getWidth(), fallbackSize.getHeight(), BIT_RATE, file);
+                encoder = new VideoEncoderCore(fallbackSize.getWidth(), fallbackSize.getHeight(), BIT_RATE, file, byteBufferInput);
             } catch (MediaCodec.CodecException ex) {
                 fallbackSize = calculateNewFrameSize(width, height, 16.0f / 9.0f);
                 // try 16:9 or 9:16 aspect ratio (with black lines)
-                encoder = new VideoEncoderCore(fallbackSize.getWidth(), fallbackSize.getHeight(), BIT_RATE, file);
+                encoder = new VideoEncoderCore(fallbackSize.getWidth(), fallbackSize.getHeight(), BIT_RATE, file, byteBufferInput);
             }
 
-            left = (fallbackSize.getWidth() - width) / 2;
-            top = (fallbackSize.getHeight() - height) / 2;
+            encoderWidth = fallbackSize.getWidth();
+            encoderHeight = fallbackSize.getHeight();
+            left = (encoderWidth - width) / 2;
+            top = (encoderHeight - height) / 2;
         }
+    }
 
-
+    /**
+     * Prepares the reused buffers for the YUV conversion. The ARGB buffer has the size of the
+     * encoder frame, so any black lines around the rendered frame are filled only once here.
+     */
+    private void setupByteBufferInput() {
+        int threadsCount = Math.min(MAX_CONVERTER_THREADS, Runtime.getRuntime().availableProcessors());
+        yuvConverter = new Yuv420Converter(encoderWidth, encoderHeight, encoder.getInputLayout(), threadsCount);
+        argbFrame = new int[encoderWidth * encoderHeight];
+        Arrays.fill(argbFrame, Color.BLACK);
+        yuvFrame = new byte[yuvConverter.getFrameSize()];
     }
 
     @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
@@ -109,15 +185,34 @@ public class ExportVideoWriter extends ExportFileWriter {
 
     @Override
     protected void endWrite() throws Exception {
+        if (yuvConverter != null) {
+            yuvConverter.release();
+            yuvConverter = null;
+        }
         if (encoder == null) {
             return;
         }
         encoder.release();
+        encoder = null;
+
+        if (writtenFramesCount > 0) {
+            try {
+                Mp4FastStart.process(outputFile);
+            } catch (IOException e) {
+                // The original video is left in place, it just cannot be played before it is fully downloaded
+                Timber.w(e, "Could not move the moov box to the front of the video");
+            }
+        }
     }
 
     @Override
     protected void writeFrame(Bitmap currentFrame, boolean isLastFrame) throws Exception {
-        writeFrameToSurface(currentFrame, isLastFrame);
+        if (inputMode == InputMode.BYTE_BUFFER) {
+            writeFrameToByteBuffer(currentFrame, isLastFrame);
+        } else {
+            writeFrameToSurface(currentFrame, isLastFrame);
+        }
+        writtenFramesCount++;
     }
 
     @Override
@@ -137,4 +232,17 @@ public class ExportVideoWriter extends ExportFileWriter {
         encoderSurface.unlockCanvasAndPost(canvas);
         encoder.drainEncoder(isLastFrame);
     }
+
+    private void writeFrameToByteBuffer(Bitmap currentFrame, boolean isLastFrame) throws InterruptedException {
+        if (encoder == null || yuvConverter == null) {
+            return;
+        }
+
+        currentFrame.getPixels(argbFrame, top * encoderWidth + left, encoderWidth, 0, 0, width, height);
+        yuvConverter.convert(argbFrame, yuvFrame);
+
+        long presentationTimeUs = writtenFramesCount * frameLength * 1000L;
+        encoder.queueInputFrame(yuvConverter, yuvFrame, presentationTimeUs, isLastFrame);
+        encoder.drainEncoder(isLastFrame);
+    }
 }
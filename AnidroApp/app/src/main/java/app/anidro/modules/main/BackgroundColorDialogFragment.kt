@@ -12,6 +12,7 @@ import app.anidro.common.DrawingColorsPalette
 import app.anidro.common.viewBinding
 import app.anidro.databinding.FragmentBackgroundColorBinding
 import app.anidro.modules.main.views.ColorPickerView.OnColorSelectedCallbackListener
+import org.koin.android.ext.android.inject
 
 /**
  * A dialog for selecting the background color of the drawing. It contains a custom color picker.
@@ -19,7 +20,7 @@ import app.anidro.modules.main.views.ColorPickerView.OnColorSelectedCallbackList
 class BackgroundColorDialogFragment : DialogFragment() {
     private val viewBinding by viewBinding(FragmentBackgroundColorBinding::bind)
 
-    private val drawingColorsPalette by lazy { DrawingColorsPalette(resources) }
+    private val drawingColorsPalette: DrawingColorsPalette by inject()
 
     // Local state
     private var currentColorIndex = 0
@@ -15,6 +15,7 @@ import app.anidro.common.DrawingPaintBuilder
 import app.anidro.common.viewBinding
 import app.anidro.databinding.FragmentBrushSetupBinding
 import app.anidro.modules.main.views.ColorPickerView.OnColorSelectedCallbackListener
+import org.koin.android.ext.android.inject
 
 /**
  * A dialog for selecting the drawing brush color and size. It contains a custom color picker,
@@ -23,7 +24,7 @@ import app.anidro.modules.main.views.ColorPickerView.OnColorSelectedCallbackList
 class BrushSetupDialogFragment : DialogFragment() {
     private val viewBinding by viewBinding(FragmentBrushSetupBinding::bind)
 
-    private val drawingColorsPalette by lazy { DrawingColorsPalette(resources) }
+    private val drawingColorsPalette: DrawingColorsPalette by inject()
 
     // Local state
     private var currentSize = 0
@@ -0,0 +1,179 @@
+package app.anidro.modules.main;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import app.anidro.common.ScreenOrientationSensor;
+import app.anidro.models.CubicBezierStroke;
+
+/**
+ * Maps the points of strokes drawn on a canvas in one screen orientation onto the current canvas
+ * in the current screen orientation. The mapping between two canvases is a single affine matrix,
+ * which is computed once for a pair of canvases and then applied to whole strokes in a single loop.
+ * <p/>
+ * The matrix rotates the points by the difference between both orientations in quarter turns and
+ * scales the rotated points to the current canvas. Points of strokes drawn without rotation keep
+ * their positions on their own canvas. The points are read as the fixed point fractions of their
+ * canvas stored in {@link TouchPointChunks}, the conversion to pixels is part of the matrix.
+ * <p/>
+ * Curves fitted through the points of a stroke in the pixels of its own canvas are mapped with
+ * the same rotation and scale applied to their control points, without the fixed point conversion.
+ */
+class CanvasOrientationTransform {
+    private static final int NO_ORIENTATION = -1;
+
+    // The current canvas
+    private int targetOrientation = NO_ORIENTATION;
+    private int targetWidth;
+    private int targetHeight;
+
+    // The canvas of the last mapped stroke, for which the matrix is computed
+    private int sourceOrientation = NO_ORIENTATION;
+    private int sourceWidth;
+    private int sourceHeight;
+    private boolean isMatrixValid;
+
+    // x' = scaleX * x + skewX * y + translateX, y' = skewY * x + scaleY * y + translateY,
+    // where x and y are the fixed point coordinates
+    private float scaleX;
+    private float skewX;
+    private float translateX;
+    private float skewY;
+    private float scaleY;
+    private float translateY;
+
+    // The same mapping for the pixels of the source canvas
+    private float pixelsScaleX;
+    private float pixelsSkewX;
+    private float pixelsTranslateX;
+    private float pixelsSkewY;
+    private float pixelsScaleY;
+    private float pixelsTranslateY;
+
+    /**
+     * Sets the current canvas all points are mapped onto
+     */
+    void setTarget(@Nullable ScreenOrientationSensor.ScreenOrientation orientation, int width, int height) {
+        final int newOrientation = toIndex(orientation);
+        if (newOrientation != targetOrientation || width != targetWidth || height != targetHeight) {
+            targetOrientation = newOrientation;
+            targetWidth = width;
+            targetHeight = height;
+            isMatrixValid = false;
+        }
+    }
+
+    /**
+     * Maps points drawn on the input canvas onto the current canvas
+     *
+     * @param orientation
+     *      The screen orientation the points were drawn in
+     * @param width
+     *      The width of the canvas the points were drawn on
+     * @param height
+     *      The height of the canvas the points were drawn on
+     * @param xs
+     *      The fixed point x coordinates of the points
+     * @param ys
+     *      The fixed point y coordinates of the points
+     * @param offset
+     *      The index of the first mapped point
+     * @param count
+     *      The number of mapped points
+     * @param outXs
+     *      Receives the mapped x coordinates
+     * @param outYs
+     *      Receives the mapped y coordinates
+     * @param outOffset
+     *      The index of the first mapped point in the output coordinates
+     */
+    void map(@Nullable ScreenOrientationSensor.ScreenOrientation orientation, int width, int height,
+             @NonNull char[] xs, @NonNull char[] ys, int offset, int count,
+             @NonNull float[] outXs, @NonNull float[] outYs, int outOffset) {
+        setSource(toIndex(orientation), width, height);
+
+        for (int i = 0; i < count; i++) {
+            final float x = xs[offset + i];
+            final float y = ys[offset + i];
+            outXs[outOffset + i] = scaleX * x + skewX * y + translateX;
+            outYs[outOffset + i] = skewY * x + scaleY * y + translateY;
+        }
+    }
+
+    /**
+     * Maps a curve fitted through points in the pixels of the input canvas onto the current canvas
+     *
+     * @param orientation
+     *      The screen orientation the points of the curve were drawn in
+     * @param width
+     *      The width of the canvas the points were drawn on
+     * @param height
+     *      The height of the canvas the points were drawn on
+     */
+    @NonNull
+    CubicBezierStroke mapCurve(@Nullable ScreenOrientationSensor.ScreenOrientation orientation, int width, int height,
+                               @NonNull CubicBezierStroke curve) {
+        setSource(toIndex(orientation), width, height);
+        return curve.transform(pixelsScaleX, pixelsSkewX, pixelsTranslateX, pixelsSkewY, pixelsScaleY, pixelsTranslateY);
+    }
+
+    private void setSource(int orientation, int width, int height) {
+        if (isMatrixValid && orientation == sourceOrientation && width == sourceWidth && height == sourceHeight) {
+            return;
+        }
+        sourceOrientation = orientation;
+        sourceWidth = width;
+        sourceHeight = height;
+        isMatrixValid = true;
+
+        // The clockwise quarter turns from the source to the target orientation
+        final int quarterTurns = orientation != NO_ORIENTATION && targetOrientation != NO_ORIENTATION
+                ? (targetOrientation - orientation + 4) % 4
+                : 0;
+
+        final float widthScale = targetWidth / (float) height;
+        final float heightScale = targetHeight / (float) width;
+        switch (quarterTurns) {
+            case 1:
+                setMatrix(0, widthScale, 0, -heightScale, 0, targetHeight);
+                break;
+            case 2:
+                setMatrix(-1, 0, targetWidth, 0, -1, targetHeight);
+                break;
+            case 3:
+                setMatrix(0, -widthScale, targetWidth, heightScale, 0, 0);
+                break;
+            default:
+                setMatrix(1, 0, 0, 0, 1, 0);
+                break;
+        }
+
+        pixelsScaleX = scaleX;
+        pixelsSkewX = skewX;
+        pixelsTranslateX = translateX;
+        pixelsSkewY = skewY;
+        pixelsScaleY = scaleY;
+        pixelsTranslateY = translateY;
+
+        // Read the fixed point coordinates as pixels of the source canvas first
+        final float pixelScaleX = width / TouchPointChunks.FIXED_POINT_ONE;
+        final float pixelScaleY = height / TouchPointChunks.FIXED_POINT_ONE;
+        final float pixelOffsetX = -TouchPointChunks.FIXED_POINT_ORIGIN * width;
+        final float pixelOffsetY = -TouchPointChunks.FIXED_POINT_ORIGIN * height;
+        setMatrix(scaleX * pixelScaleX, skewX * pixelScaleY, scaleX * pixelOffsetX + skewX * pixelOffsetY + translateX,
+                skewY * pixelScaleX, scaleY * pixelScaleY, skewY * pixelOffsetX + scaleY * pixelOffsetY + translateY);
+    }
+
+    private void setMatrix(float scaleX, float skewX, float translateX, float skewY, float scaleY, float translateY) {
+        this.scaleX = scaleX;
+        this.skewX = skewX;
+        this.translateX = translateX;
+        this.skewY = skewY;
+        this.scaleY = scaleY;
+        this.translateY = translateY;
+    }
+
+    private static int toIndex(@Nullable ScreenOrientationSensor.ScreenOrientation orientation) {
+        return orientation != null ? orientation.ordinal() : NO_ORIENTATION;
+    }
+}
@@ -1,6 +1,7 @@
 package app.anidro.modules.main
 
 import android.graphics.Canvas
+import android.view.MotionEvent
 
 /**
  * This interface defines the drawing delegate which is needed by the
@@ -10,18 +11,16 @@ import android.graphics.Canvas
  */
 interface DrawingDelegate {
     /**
-     * Method to be called on each touch event while drawing
+     * Method to be called on each touch event while drawing. All touch points of the event are
+     * recorded at once, including the historical ones batched into a move event, each with its own
+     * event time.
      *
-     * @param touchX
-     * The x of the touch event
-     * @param touchY
-     * The y of the touch event
-     * @param touchActionMasked
-     * The action of the touch event
+     * @param event
+     * The touch event
      * @return
      * Whether this is a valid drawing event which should be processed
      */
-    fun onTouchEvent(touchX: Float, touchY: Float, touchActionMasked: Int): Boolean
+    fun onTouchEvent(event: MotionEvent): Boolean
 
     /**
      * Redraws the current drawing using the provided canvas and path
@@ -27,7 +27,7 @@ import app.anidro.common.BaseAnidroActivity;
 import app.anidro.common.ScreenOrientationFlipSensor;
 import app.anidro.common.ScreenOrientationSensor;
 import app.anidro.databinding.ActivityMainBinding;
-import app.anidro.models.FileType;
+import app.anidro.models.ShareOption;
 import app.anidro.models.TimedSegment;
 import app.anidro.modules.main.terms.AcceptTermsCallback;
 import app.anidro.modules.main.terms.AcceptTermsDialogFragment;
@@ -70,6 +70,7 @@ public class MainActivity extends BaseAnidroActivity implements MainPresenterOut
     private ShowHideAnimator actionSetupBrushAnimator;
     private ShowHideAnimator actionSetupBackgroundAnimator;
     private ShowHideAnimator actionUndoAnimator;
+    private ShowHideAnimator actionRedoAnimator;
     private ShowHideAnimator actionBackAnimator;
     private ShowHideAnimator actionSettingsAnimator;
     private ShowHideAnimator maxDrawingTimeWarningAnimator;
@@ -81,7 +82,9 @@ public class MainActivity extends BaseAnidroActivity implements MainPresenterOut
     private ScreenOrientationFlipSensor screenOrientationFlipSensor;
 
     /* State */
-    private FileType selectedExportFileType = FileType.NONE;
+    @Nullable
+    private ShareOption selectedShareOption;
+    private boolean canRedo;
 
     /* Activity methods */
 
@@ -105,6 +108,7 @@ public class MainActivity extends BaseAnidroActivity implements MainPresenterOut
         actionSetupBrushAnimator = new ShowHideAnimator(viewBinding.actionSetupBrush);
         actionSetupBackgroundAnimator = new ShowHideAnimator(viewBinding.actionSetupBackground);
         actionUndoAnimator = new ShowHideAnimator(viewBinding.actionUndo);
+        actionRedoAnimator = new ShowHideAnimator(viewBinding.actionRedo);
         actionBackAnimator = new ShowHideAnimator(viewBinding.actionBack);
         actionSettingsAnimator = new ShowHideAnimator(viewBinding.actionSettings);
         maxDrawingTimeWarningAnimator = new ShowHideAnimator(viewBinding.maxDrawingTimeWarning);
@@ -139,6 +143,12 @@ public class MainActivity extends BaseAnidroActivity implements MainPresenterOut
         }
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        presenter.onTrimMemory(level);
+    }
+
     @Override
     public void onBackPressed() {
         if (presenter.onBackPressed()) {
@@ -194,7 +204,8 @@ public class MainActivity extends BaseAnidroActivity implements MainPresenterOut
     }
 
     @Override
-    public void updateDrawingUIVisibility(boolean isDrawing, boolean isDrawingEmpty, boolean animate) {
+    public void updateDrawingUIVisibility(boolean isDrawing, boolean isDrawingEmpty, boolean canRedo, boolean animate) {
+        this.canRedo = canRedo;
         if (isDrawing) {
             viewBinding.drawingView.redraw();
             viewBinding.drawingView.setVisibility(View.VISIBLE);
@@ -204,9 +215,11 @@ public class MainActivity extends BaseAnidroActivity implements MainPresenterOut
                 hideNonEmptyDrawingButtons(false);
             }
             showDrawingButtons(animate);
+            updateRedoButton(animate);
         } else {
             viewBinding.drawingView.setVisibility(View.INVISIBLE);
             hideDrawingButtons(false);
+            actionRedoAnimator.hide(false);
             hideNonEmptyDrawingButtons(false);
             maxDrawingTimeWarningAnimator.hide(false);
         }
@@ -246,16 +259,28 @@ public class MainActivity extends BaseAnidroActivity implements MainPresenterOut
 
     @Override
     public void notifyDrawingCleared() {
+        canRedo = false;
         hideNonEmptyDrawingButtons(true);
+        actionRedoAnimator.hide(true);
         viewBinding.drawingView.clearCanvas();
     }
 
     @Override
-    public void notifyLastDrawingSegmentRemoved(boolean isDrawingEmpty) {
+    public void notifyLastDrawingSegmentRemoved(boolean isDrawingEmpty, boolean canRedo) {
+        this.canRedo = canRedo;
         viewBinding.drawingView.redraw();
         if (isDrawingEmpty) {
             hideNonEmptyDrawingButtons(true);
         }
+        updateRedoButton(true);
+    }
+
+    @Override
+    public void notifyLastDrawingSegmentRestored(boolean canRedo) {
+        this.canRedo = canRedo;
+        viewBinding.drawingView.redraw();
+        showNonEmptyDrawingButtons(true);
+        updateRedoButton(true);
     }
 
     @Override
@@ -274,7 +299,8 @@ public class MainActivity extends BaseAnidroActivity implements MainPresenterOut
     }
 
     @Override
-    public void showUIAfterDrawingStops(boolean immediately) {
+    public void showUIAfterDrawingStops(boolean immediately, boolean canRedo) {
+        this.canRedo = canRedo;
         if (viewBinding.fabPlayButton.getVisibility() != View.VISIBLE) {
             viewBinding.drawingView.removeCallbacks(mDelayedShowDrawingUIRunnable);
             if (immediately) {
@@ -290,6 +316,7 @@ public class MainActivity extends BaseAnidroActivity implements MainPresenterOut
         viewBinding.drawingView.removeCallbacks(mDelayedShowDrawingUIRunnable);
         hideNonEmptyDrawingButtons(true);
         hideDrawingButtons(true);
+        actionRedoAnimator.hide(true);
     }
 
     @Override
@@ -347,6 +374,7 @@ public class MainActivity extends BaseAnidroActivity implements MainPresenterOut
         viewBinding.actionSetupBrush.setOnClickListener(view -> onSetupBrushClick());
         viewBinding.actionSetupBackground.setOnClickListener(view -> onSetupBackgroundClick());
         viewBinding.actionUndo.setOnClickListener(view -> onActionUndoClick());
+        viewBinding.actionRedo.setOnClickListener(view -> onActionRedoClick());
         viewBinding.fabCancelExport.setOnClickListener(view -> onFabCancelExport());
     }
 
@@ -389,6 +417,10 @@ public class MainActivity extends BaseAnidroActivity implements MainPresenterOut
         presenter.onActionUndoClicked();
     }
 
+    private void onActionRedoClick() {
+        presenter.onActionRedoClicked();
+    }
+
     private void onFabCancelExport() {
         presenter.onCancelExportClicked();
     }
@@ -431,6 +463,14 @@ public class MainActivity extends BaseAnidroActivity implements MainPresenterOut
         viewBinding.fabPlayButton.hide(animate);
     }
 
+    private void updateRedoButton(boolean animate) {
+        if (canRedo) {
+            actionRedoAnimator.show(animate);
+        } else {
+            actionRedoAnimator.hide(animate);
+        }
+    }
+
     private void setupSharePopupWindow() {
         sharePopupWindow = new ListPopupWindow(this);
         sharePopupWindow.setAnchorView(viewBinding.sharePopupAnchor);
@@ -439,7 +479,7 @@ public class MainActivity extends BaseAnidroActivity implements MainPresenterOut
         sharePopupWindow.setOnDismissListener(() -> viewBinding.dimmedBackground.setVisibility(View.INVISIBLE));
         sharePopupWindow.setOnItemClickListener((parent, view, position, id) -> {
             sharePopupWindow.dismiss();
-            selectedExportFileType = (FileType) view.getTag();
+            selectedShareOption = (ShareOption) view.getTag();
 
             // If copy to external setting is on, then we need to ask
             // permission on Android M and newer versions
@@ -458,22 +498,16 @@ public class MainActivity extends BaseAnidroActivity implements MainPresenterOut
     }
 
     private void continueExport() {
-        switch (selectedExportFileType) {
-            case IMAGE:
-            case GIF:
-            case VIDEO:
-                //noinspection ResourceType
-                presenter.onShareFileTypeSelected(selectedExportFileType);
-                break;
-            default:
-                break;
+        if (selectedShareOption != null) {
+            presenter.onShareOptionSelected(selectedShareOption);
         }
-        selectedExportFileType = FileType.NONE;
+        selectedShareOption = null;
     }
 
     private Runnable mDelayedShowDrawingUIRunnable = () -> {
         showDrawingButtons(true);
         showNonEmptyDrawingButtons(true);
+        updateRedoButton(true);
     };
 
     @Override
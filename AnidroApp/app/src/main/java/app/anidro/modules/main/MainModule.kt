@@ -8,9 +8,12 @@ import app.anidro.common.DisplayMetricsConverter
 import app.anidro.common.DrawingColorsPalette
 import org.koin.android.ext.koin.androidContext
 import org.koin.dsl.module
+import java.io.File
+
+private const val TOUCH_POINTS_SPILL_FILE_NAME = "touch_points.chunks"
 
 val mainModule = module {
-    factory { DrawingColorsPalette(get()) }
+    single { DrawingColorsPalette(get()) }
     single { DisplayMetricsConverter(get()) }
     single { androidContext().getSystemService(Context.VIBRATOR_SERVICE) as Vibrator }
 }
@@ -19,13 +22,15 @@ val mainPresenterModule = module {
     single<MainPresenterInput> {
         val resources: Resources = get()
         MainPresenter(
+                get(),
                 get(),
                 get(),
                 resources.getString(R.string.share_to),
                 get(),
                 get(),
                 get(),
-                get()
+                get(),
+                File(androidContext().filesDir, TOUCH_POINTS_SPILL_FILE_NAME)
         )
     }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package app.anidro.modules.main;
 
+import android.content.ComponentCallbacks2;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.net.Uri;
@@ -8,7 +9,9 @@ import android.os.Vibrator;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import app.anidro.common.DisplayMetricsConverter;
@@ -16,10 +19,13 @@ import app.anidro.common.DrawingColorsPalette;
 import app.anidro.common.Navigator;
 import app.anidro.common.ScreenOrientationSensor;
 import app.anidro.models.FileType;
+import app.anidro.models.ShareOption;
 import app.anidro.models.TimedSegment;
 import app.anidro.modules.export.DrawingExporter;
+import app.anidro.modules.export.ExportRung;
 import app.anidro.modules.export.ExportState;
 import app.anidro.modules.export.ExportedDrawingsIntentsHelper;
+import app.anidro.modules.persistence.settings.SettingsPersistence;
 import app.anidro.modules.persistence.terms.AcceptTermsPersistence;
 import app.anidro.renderers.FixedFrameRateRenderer;
 import app.anidro.renderers.SequentialTimeNormalizer;
@@ -35,6 +41,28 @@ public class MainPresenter implements MainPresenterInput, TimedDrawingManager.Ti
 
     /* Declarations */
 
+    /**
+     * The time between the frames of the export progress preview kept as keyframes, so that showing
+     * an earlier or the same progress again, e.g. when the view is attached again, does not replay
+     * the drawing from its first frame
+     */
+    private static final long EXPORT_PROGRESS_KEYFRAME_INTERVAL = 1000;
+    /**
+     * The part of the maximum heap size the keyframes of the export progress preview may take
+     */
+    private static final int EXPORT_PROGRESS_KEYFRAMES_HEAP_DIVISOR = 16;
+    /**
+     * How many times a poster is bigger than the drawing canvas in each direction
+     */
+    private static final int POSTER_SCALE_FACTOR = 4;
+    /**
+     * The sizes of the animations exported together when sharing in two sizes, the first one
+     * drives the export progress and both are shared together
+     */
+    private static final List<ExportRung> GIF_SIZES_RUNGS = Arrays.asList(
+            new ExportRung(FileType.GIF, 480),
+            new ExportRung(FileType.GIF, 240));
+
     private enum UIMode {
         DRAW,
         PRESENT,
@@ -50,6 +78,8 @@ public class MainPresenter implements MainPresenterInput, TimedDrawingManager.Ti
     private final @NonNull
     AcceptTermsPersistence acceptTermsPersistence;
     private final @NonNull
+    SettingsPersistence settingsPersistence;
+    private final @NonNull
     String shareIntentPickerTitle;
     private final @Nullable
     Vibrator vibrator;
@@ -58,17 +88,21 @@ public class MainPresenter implements MainPresenterInput, TimedDrawingManager.Ti
 
     public MainPresenter(@NonNull Navigator navigator,
                          @NonNull AcceptTermsPersistence acceptTermsPersistence,
+                         @NonNull SettingsPersistence settingsPersistence,
                          @NonNull String shareIntentPickerTitle,
                          @Nullable Vibrator vibrator,
                          @NonNull DrawingColorsPalette drawingColorsPalette,
                          @NonNull DisplayMetricsConverter displayMetricsConverter,
-                         @NonNull DrawingExporter drawingExporter) {
+                         @NonNull DrawingExporter drawingExporter,
+                         @Nullable File touchPointsSpillFile) {
         this.navigator = navigator;
         this.acceptTermsPersistence = acceptTermsPersistence;
+        this.settingsPersistence = settingsPersistence;
         this.shareIntentPickerTitle = shareIntentPickerTitle;
         this.vibrator = vibrator;
         this.drawingExporter = drawingExporter;
-        this.timedDrawingManager = new TimedDrawingManager(drawingColorsPalette, displayMetricsConverter);
+        this.timedDrawingManager = new TimedDrawingManager(drawingColorsPalette, displayMetricsConverter,
+                touchPointsSpillFile);
         this.timedDrawingManager.setListener(this);
     }
 
@@ -124,7 +158,7 @@ public class MainPresenter implements MainPresenterInput, TimedDrawingManager.Ti
 
                 setUIMode(UIMode.DRAW, true);
                 ExportState.Finished state = (ExportState.Finished) exportState;
-                createShareIntent(state.getUri(), state.getMimeType());
+                createShareIntent(state.getUris(), state.getMimeTypes());
                 showShareIntentIfNecessary();
             }
         });
@@ -133,6 +167,10 @@ public class MainPresenter implements MainPresenterInput, TimedDrawingManager.Ti
     @Override
     public void onViewShow() {
         isViewVisible = true;
+        timedDrawingManager.readBackTouchPoints();
+        // The setting may have been changed while the view was hidden
+        timedDrawingManager.setSimplificationTolerance(settingsPersistence.shouldSimplifyStrokes()
+                ? TimedDrawingManager.DEFAULT_SIMPLIFICATION_TOLERANCE_DP : 0);
         setUIMode(uiMode, false);
         showShareIntentIfNecessary();
     }
@@ -144,6 +182,17 @@ public class MainPresenter implements MainPresenterInput, TimedDrawingManager.Ti
 
     @Override
     public void onDestroy() {
+        timedDrawingManager.release();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            timedDrawingManager.trimMemory();
+            if (exportProgressRenderer != null) {
+                exportProgressRenderer.disableKeyframeCache();
+            }
+        }
     }
 
     @Override
@@ -218,7 +267,19 @@ public class MainPresenter implements MainPresenterInput, TimedDrawingManager.Ti
 
         vibrateShort();
         timedDrawingManager.removeLastDrawingSegment();
-        this.view.notifyLastDrawingSegmentRemoved(timedDrawingManager.isDrawingEmpty());
+        this.view.notifyLastDrawingSegmentRemoved(timedDrawingManager.isDrawingEmpty(),
+                timedDrawingManager.canRedoDrawingSegment());
+    }
+
+    @Override
+    public void onActionRedoClicked() {
+        if (uiMode != UIMode.DRAW || !timedDrawingManager.canRedoDrawingSegment()) {
+            return;
+        }
+
+        vibrateShort();
+        timedDrawingManager.redoLastDrawingSegment();
+        this.view.notifyLastDrawingSegmentRestored(timedDrawingManager.canRedoDrawingSegment());
     }
 
     @Override
@@ -232,7 +293,7 @@ public class MainPresenter implements MainPresenterInput, TimedDrawingManager.Ti
     }
 
     @Override
-    public void onShareFileTypeSelected(FileType fileType) {
+    public void onShareOptionSelected(@NonNull ShareOption shareOption) {
         if (uiMode != UIMode.PRESENT) {
             return;
         }
@@ -244,8 +305,12 @@ public class MainPresenter implements MainPresenterInput, TimedDrawingManager.Ti
 
         List<TimedSegment> drawing = timedDrawingManager.getTimedSegments();
 
+        // The progress follows the first exported file type
+        List<FileType> fileTypes = shareOption.getFileTypes();
+        FileType fileType = fileTypes.get(0);
         switch (fileType) {
             case IMAGE:
+            case POSTER:
                 exportProgressRenderer = new FixedFrameRateRenderer(drawing,
                         timedDrawingManager.getBackgroundColor(),
                         timedDrawingManager.getCanvasWidth(),
@@ -269,13 +334,41 @@ public class MainPresenter implements MainPresenterInput, TimedDrawingManager.Ti
                         Bitmap.Config.ARGB_8888);
                 break;
         }
+        if (fileType != FileType.IMAGE && fileType != FileType.POSTER) {
+            enableExportProgressKeyframes();
+        }
 
         if (!(drawingExporter.getExportStateLiveData().getValue() instanceof ExportState.InProgress)) {
-            drawingExporter.startExport(drawing,
-                    timedDrawingManager.getBackgroundColor(),
-                    timedDrawingManager.getCanvasWidth(),
-                    timedDrawingManager.getCanvasHeight(),
-                    fileType);
+            switch (shareOption) {
+                case POSTER:
+                    drawingExporter.startPosterExport(drawing,
+                            timedDrawingManager.getBackgroundColor(),
+                            timedDrawingManager.getCanvasWidth(),
+                            timedDrawingManager.getCanvasHeight(),
+                            POSTER_SCALE_FACTOR);
+                    break;
+                case GIF_SIZES:
+                    drawingExporter.startLadderExport(drawing,
+                            timedDrawingManager.getBackgroundColor(),
+                            timedDrawingManager.getCanvasWidth(),
+                            timedDrawingManager.getCanvasHeight(),
+                            GIF_SIZES_RUNGS);
+                    break;
+                case GIF_AND_VIDEO:
+                    drawingExporter.startExport(drawing,
+                            timedDrawingManager.getBackgroundColor(),
+                            timedDrawingManager.getCanvasWidth(),
+                            timedDrawingManager.getCanvasHeight(),
+                            fileTypes);
+                    break;
+                default:
+                    drawingExporter.startExport(drawing,
+                            timedDrawingManager.getBackgroundColor(),
+                            timedDrawingManager.getCanvasWidth(),
+                            timedDrawingManager.getCanvasHeight(),
+                            fileType);
+                    break;
+            }
             this.view.updateExportProgressPercent(0);
             setUIMode(UIMode.EXPORT, true);
         }
@@ -364,7 +457,7 @@ public class MainPresenter implements MainPresenterInput, TimedDrawingManager.Ti
         }
 
         limitExceededRetryCount++;
-        this.view.showUIAfterDrawingStops(true);
+        this.view.showUIAfterDrawingStops(true, timedDrawingManager.canRedoDrawingSegment());
         this.view.showDrawingTimeExceeded();
         vibrateLong();
     }
@@ -385,7 +478,7 @@ public class MainPresenter implements MainPresenterInput, TimedDrawingManager.Ti
             return;
         }
 
-        this.view.showUIAfterDrawingStops(false);
+        this.view.showUIAfterDrawingStops(false, timedDrawingManager.canRedoDrawingSegment());
     }
 
     /* Helper methods */
@@ -399,17 +492,20 @@ public class MainPresenter implements MainPresenterInput, TimedDrawingManager.Ti
                 this.view.updatePresentationUIVisibility(false, animate, new ArrayList<>(),
                         timedDrawingManager.getBackgroundColor());
                 this.view.updateExportUIVisibility(false, animate);
-                this.view.updateDrawingUIVisibility(true, timedDrawingManager.isDrawingEmpty(), animate);
+                this.view.updateDrawingUIVisibility(true, timedDrawingManager.isDrawingEmpty(),
+                        timedDrawingManager.canRedoDrawingSegment(), animate);
                 break;
             case PRESENT:
-                this.view.updateDrawingUIVisibility(false, timedDrawingManager.isDrawingEmpty(), animate);
+                this.view.updateDrawingUIVisibility(false, timedDrawingManager.isDrawingEmpty(),
+                        timedDrawingManager.canRedoDrawingSegment(), animate);
                 this.view.updateExportUIVisibility(false, animate);
                 this.view.updatePresentationUIVisibility(true, animate,
                         timedDrawingManager.getTimedSegments(),
                         timedDrawingManager.getBackgroundColor());
                 break;
             case EXPORT:
-                this.view.updateDrawingUIVisibility(false, timedDrawingManager.isDrawingEmpty(), animate);
+                this.view.updateDrawingUIVisibility(false, timedDrawingManager.isDrawingEmpty(),
+                        timedDrawingManager.canRedoDrawingSegment(), animate);
                 this.view.updatePresentationUIVisibility(false, animate, new ArrayList<>(),
                         timedDrawingManager.getBackgroundColor());
                 this.view.updateExportUIVisibility(true, animate);
@@ -417,6 +513,12 @@ public class MainPresenter implements MainPresenterInput, TimedDrawingManager.Ti
         }
     }
 
+    private void enableExportProgressKeyframes() {
+        int keyframeInterval = (int) Math.max(1, EXPORT_PROGRESS_KEYFRAME_INTERVAL / exportProgressRenderer.getFrameLength());
+        long memoryBudget = Runtime.getRuntime().maxMemory() / EXPORT_PROGRESS_KEYFRAMES_HEAP_DIVISOR;
+        exportProgressRenderer.enableKeyframeCache(keyframeInterval, memoryBudget);
+    }
+
     private void vibrateShort() {
         if (vibrator != null && vibrator.hasVibrator()) {
             vibrator.vibrate(50);
@@ -429,8 +531,8 @@ public class MainPresenter implements MainPresenterInput, TimedDrawingManager.Ti
         }
     }
 
-    private void createShareIntent(Uri fileUri, String fileMimeType) {
-        lastExportedFileShareIntent = ExportedDrawingsIntentsHelper.getShareDrawingIntent(shareIntentPickerTitle, fileUri, fileMimeType);
+    private void createShareIntent(List<Uri> fileUris, List<String> fileMimeTypes) {
+        lastExportedFileShareIntent = ExportedDrawingsIntentsHelper.getShareDrawingsIntent(shareIntentPickerTitle, fileUris, fileMimeTypes);
     }
 
     private void showShareIntentIfNecessary() {
@@ -1,7 +1,7 @@
 package app.anidro.modules.main
 
 import app.anidro.common.ScreenOrientationSensor.ScreenOrientation
-import app.anidro.models.FileType
+import app.anidro.models.ShareOption
 import app.anidro.modules.main.terms.AcceptTermsCallback
 
 interface MainPresenterInput : AcceptTermsCallback {
@@ -9,6 +9,7 @@ interface MainPresenterInput : AcceptTermsCallback {
     fun onViewShow()
     fun onViewHide()
     fun onDestroy()
+    fun onTrimMemory(level: Int)
     fun onBackPressed(): Boolean
     fun onPlayButtonClicked()
     fun onSettingsButtonClicked()
@@ -17,8 +18,9 @@ interface MainPresenterInput : AcceptTermsCallback {
     fun onActionBackgroundColorClicked()
     fun onActionDeleteClicked()
     fun onActionUndoClicked()
+    fun onActionRedoClicked()
     fun onAnimationClicked()
-    fun onShareFileTypeSelected(fileType: FileType?)
+    fun onShareOptionSelected(shareOption: ShareOption)
     fun onCancelExportClicked()
     fun onBrushSelected(size: Int, colorIndex: Int, lightnessIndex: Int)
     fun onBackgroundColorSelected(colorIndex: Int, lightnessIndex: Int)
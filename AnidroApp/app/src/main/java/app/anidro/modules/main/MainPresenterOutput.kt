@@ -8,15 +8,16 @@ import app.anidro.models.TimedSegment
 interface MainPresenterOutput : LifecycleOwner {
     fun attachDrawingDelegate(drawingDelegate: DrawingDelegate)
     fun showAcceptTermsDialog()
-    fun updateDrawingUIVisibility(isDrawing: Boolean, isDrawingEmpty: Boolean, animate: Boolean)
+    fun updateDrawingUIVisibility(isDrawing: Boolean, isDrawingEmpty: Boolean, canRedo: Boolean, animate: Boolean)
     fun updatePresentationUIVisibility(isPresenting: Boolean, animate: Boolean,
                                        segments: List<TimedSegment>, @ColorInt backgroundColor: Int)
     fun updateExportUIVisibility(isExporting: Boolean, animate: Boolean)
     fun notifyDrawingCleared()
-    fun notifyLastDrawingSegmentRemoved(isDrawingEmpty: Boolean)
+    fun notifyLastDrawingSegmentRemoved(isDrawingEmpty: Boolean, canRedo: Boolean)
+    fun notifyLastDrawingSegmentRestored(canRedo: Boolean)
     fun updateDrawingTimeWarning(drawingTimeProgress: Int, animate: Boolean)
     fun showDrawingTimeExceeded()
-    fun showUIAfterDrawingStops(immediately: Boolean)
+    fun showUIAfterDrawingStops(immediately: Boolean, canRedo: Boolean)
     fun hideUIWhenDrawingStarts()
     fun updateExportProgressView(frame: Bitmap)
     fun updateExportProgressPercent(exportProgressPercent: Int)
@@ -0,0 +1,144 @@
+package app.anidro.modules.main;
+
+/**
+ * Drops the touch points of a stroke which add neither visible geometry nor timing, while the
+ * stroke is being drawn. High rate touch panels report many almost collinear points moving at an
+ * almost constant speed, which can be replaced by the straight line between their neighbours.
+ * <p/>
+ * The last point of the stroke is kept as a pending point, which the next point may replace. It is
+ * replaced when the pending point and all points dropped since the last kept point are close to
+ * the position the line from the last kept point to the next point reaches at their timestamps.
+ * Measuring the distance at the same timestamp keeps the replay timing of the stroke as well as
+ * its shape within the tolerance. At most {@link #MAX_DROPPED_POINTS} consecutive points are
+ * dropped, so the work per point is bounded.
+ */
+class StrokeSimplifier {
+    private static final int MAX_DROPPED_POINTS = 32;
+
+    private float tolerance;
+    private boolean isStrokeStarted;
+
+    // The last kept point
+    private float anchorX;
+    private float anchorY;
+    private long anchorTimestamp;
+
+    // The last point of the stroke, which may still be replaced
+    private boolean hasPendingPoint;
+    private float pendingX;
+    private float pendingY;
+    private long pendingTimestamp;
+
+    // The points dropped since the last kept point
+    private final float[] droppedXs = new float[MAX_DROPPED_POINTS];
+    private final float[] droppedYs = new float[MAX_DROPPED_POINTS];
+    private final long[] droppedTimestamps = new long[MAX_DROPPED_POINTS];
+    private int droppedCount;
+
+    /**
+     * @param tolerance
+     *      The maximum distance in pixels between a dropped point and the simplified stroke.
+     *      No points are dropped with a tolerance of zero.
+     */
+    StrokeSimplifier(float tolerance) {
+        setTolerance(tolerance);
+    }
+
+    void setTolerance(float tolerance) {
+        this.tolerance = Math.max(0, tolerance);
+    }
+
+    /**
+     * Starts simplifying a new stroke with the input first point, which is always kept
+     */
+    void startStroke(float x, float y, long timestamp) {
+        anchorX = x;
+        anchorY = y;
+        anchorTimestamp = timestamp;
+        hasPendingPoint = false;
+        droppedCount = 0;
+        isStrokeStarted = true;
+    }
+
+    /**
+     * Stops simplifying the current stroke. No points are replaced until the next stroke is started.
+     */
+    void finishStroke() {
+        isStrokeStarted = false;
+    }
+
+    /**
+     * Adds the next point of the stroke
+     *
+     * @return
+     *      True if the next point should replace the last point of the stroke,
+     *      false if it should be appended after it
+     */
+    boolean addPoint(float x, float y, long timestamp) {
+        if (!isStrokeStarted) {
+            return false;
+        }
+        if (!hasPendingPoint) {
+            setPendingPoint(x, y, timestamp);
+            return false;
+        }
+
+        if (tolerance > 0 && droppedCount < MAX_DROPPED_POINTS
+                && isCloseToLine(pendingX, pendingY, pendingTimestamp, x, y, timestamp)
+                && areDroppedPointsCloseToLine(x, y, timestamp)) {
+            droppedXs[droppedCount] = pendingX;
+            droppedYs[droppedCount] = pendingY;
+            droppedTimestamps[droppedCount] = pendingTimestamp;
+            droppedCount++;
+            setPendingPoint(x, y, timestamp);
+            return true;
+        }
+
+        // The pending point is needed, it becomes the last kept point
+        anchorX = pendingX;
+        anchorY = pendingY;
+        anchorTimestamp = pendingTimestamp;
+        droppedCount = 0;
+        setPendingPoint(x, y, timestamp);
+        return false;
+    }
+
+    private void setPendingPoint(float x, float y, long timestamp) {
+        pendingX = x;
+        pendingY = y;
+        pendingTimestamp = timestamp;
+        hasPendingPoint = true;
+    }
+
+    private boolean areDroppedPointsCloseToLine(float endX, float endY, long endTimestamp) {
+        for (int i = 0; i < droppedCount; i++) {
+            if (!isCloseToLine(droppedXs[i], droppedYs[i], droppedTimestamps[i], endX, endY, endTimestamp)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a point is close enough to the position on the line from the last kept point
+     * to the input end point at the timestamp of the point. Points with the same timestamps as
+     * the line ends are compared to the nearest position on the line.
+     */
+    private boolean isCloseToLine(float x, float y, long timestamp, float endX, float endY, long endTimestamp) {
+        final long lineDuration = endTimestamp - anchorTimestamp;
+        final float lineX = endX - anchorX;
+        final float lineY = endY - anchorY;
+        final float squaredLength = lineX * lineX + lineY * lineY;
+
+        float coef = 0;
+        if (lineDuration > 0) {
+            coef = (timestamp - anchorTimestamp) / (float) lineDuration;
+        } else if (squaredLength > 0) {
+            coef = ((x - anchorX) * lineX + (y - anchorY) * lineY) / squaredLength;
+        }
+        coef = Math.max(0, Math.min(1, coef));
+        final float dx = anchorX + coef * lineX - x;
+        final float dy = anchorY + coef * lineY - y;
+        return dx * dx + dy * dy <= tolerance * tolerance;
+    }
+}
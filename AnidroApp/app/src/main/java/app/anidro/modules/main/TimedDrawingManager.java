@@ -3,8 +3,9 @@ package app.anidro.modules.main;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.PointF;
 import android.graphics.PorterDuff;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.format.DateUtils;
 import android.view.MotionEvent;
 
@@ -12,19 +13,44 @@ import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 
 import app.anidro.common.DisplayMetricsConverter;
 import app.anidro.common.DrawingColorsPalette;
 import app.anidro.common.DrawingPaintBuilder;
 import app.anidro.common.ScreenOrientationSensor;
-import app.anidro.models.TimedPoint;
+import app.anidro.models.CubicBezierStroke;
 import app.anidro.models.TimedSegment;
+import app.anidro.renderers.SequentialTimeNormalizer;
 
 /**
  * This class contains everything related to the state and configuration of the current drawing.
  * <p/>
+ * Touch events only queue their raw samples on the main thread. The samples are recorded by a
+ * background thread, which simplifies them, stores them and computes the drawing progress, and the
+ * listener is notified about the changes on the main thread. All drawing state is guarded by a
+ * single lock, so the methods changing the drawing first record the queued samples and then work on
+ * the up to date drawing, while the getters return the drawing as recorded so far. Samples are only
+ * taken from the queue while holding the lock, so draining the queue is serialized by it.
+ * <p/>
+ * The main thread decides on its own which samples are drawn, so every sample it accepts, and the
+ * drawing view draws, is recorded. It checks the drawing time limit with the drawing time published
+ * by the background thread and the times of the samples queued since, refuses touch events which do
+ * not fit into the queue and always keeps room for finishing the stroke being drawn.
+ * <p/>
+ * The background thread also fits the curves of finished strokes and builds their segments, which
+ * is done nowhere else. It copies the points of a stroke while holding the lock and does the rest
+ * without it, so touch samples keep being recorded meanwhile. The touch points are spilled to their
+ * file and read back from it on the background thread as well, and the file is never accessed
+ * while holding the lock.
+ * <p/>
+ * Only a bounded number of segment points is cached. The drawing snapshots build the evicted
+ * segments again from the touch points while they are rendered, the same way as the background
+ * thread, so the memory of a drawing grows only with its compact touch points.
+ * <p/>
  * Created by luboganev on 13/02/16.
  */
 public class TimedDrawingManager implements DrawingDelegate {
@@ -40,56 +66,81 @@ public class TimedDrawingManager implements DrawingDelegate {
         void onDrawingLimitExceeded();
     }
 
-    /**
-     * A helper class which also contains the touch event action type
-     */
-    private static class TouchTimedPoint {
-        final TimedPoint timedPoint;
-        final int touchEventAction;
-        final ScreenOrientationSensor.ScreenOrientation screenOrientation;
-        final float canvasWidth;
-        final float canvasHeight;
-
-        public TouchTimedPoint(TimedPoint timedPoint, int touchEventAction,
-                               ScreenOrientationSensor.ScreenOrientation screenOrientation,
-                               float canvasWidth, float canvasHeight) {
-            this.timedPoint = timedPoint;
-            this.touchEventAction = touchEventAction;
-            this.screenOrientation = screenOrientation;
-            this.canvasWidth = canvasWidth;
-            this.canvasHeight = canvasHeight;
-        }
-
-        public TouchTimedPoint(float x, float y, int touchEventAction, long timestamp,
-                               ScreenOrientationSensor.ScreenOrientation screenOrientation,
-                               float canvasWidth, float canvasHeight) {
-            this(
-                    new TimedPoint(x, y, timestamp),
-                    touchEventAction,
-                    screenOrientation,
-                    canvasWidth,
-                    canvasHeight);
-        }
-    }
-
     /* Constants */
-    private static final long MAX_DRAWING_TIME = 30 * DateUtils.SECOND_IN_MILLIS;
+    private static final long MAX_DRAWING_TIME = 5 * DateUtils.MINUTE_IN_MILLIS;
+    public static final float DEFAULT_SIMPLIFICATION_TOLERANCE_DP = 0.5f;
+    public static final float DEFAULT_CURVE_FITTING_TOLERANCE_DP = 0.5f;
+    // The maximum difference between the timing of the fitted curves and the original points
+    private static final float CURVE_FITTING_TIME_TOLERANCE = 8f;
+    // The maximum number of touch samples queued for recording, enough for several seconds of
+    // samples at the highest touch sampling rates
+    private static final int TOUCH_SAMPLES_CAPACITY = 4096;
+    // The maximum number of points kept by the cached segments, the other segments are built on demand
+    private static final int MAX_CACHED_SEGMENT_POINTS = 64 * 1024;
 
     /* Dependencies */
     private final DrawingColorsPalette drawingColorsPalette;
     private final DisplayMetricsConverter displayMetricsConverter;
 
 
+    /* Touch samples recording */
+    // Guards all drawing state below
+    private final Object drawingLock = new Object();
+    private final TouchSamplesRingBuffer touchSamples;
+    private final TouchSamplesRingBuffer.Consumer touchSampleRecorder = this::recordTouchSample;
+    private final Thread touchSamplesThread;
+    private final Handler mainHandler;
+    private volatile boolean isReleased;
+    // Requests for the background thread to spill the touch points or to read them back
+    private volatile boolean shouldSpillTouchPoints;
+    private volatile boolean shouldReadBackTouchPoints;
+    // The drawing time at which the next stroke starts and the number of samples recorded so far,
+    // read on the main thread without the lock for checking the drawing time limit
+    private volatile long recordedNextStrokeDrawingTime;
+    private volatile long recordedSamplesCount;
+    // The drawing time progress in percent, read on the main thread without the lock
+    private volatile int drawingProgress;
+    // Changed whenever strokes are removed or their curves are dropped, so a segment built without
+    // holding the lock is only added if its stroke has not changed meanwhile
+    private int strokesRevision;
+    // If the last stroke was dropped with lost points, so the next point has to start a new one
+    private boolean shouldStartNewStroke;
+    private final Runnable drawingStartedNotification = this::notifyDrawingStarted;
+    private final Runnable drawingStoppedNotification = this::notifyDrawingStopped;
+    private final Runnable drawingProgressNotification = this::notifyDrawingProgressChanged;
+
+
     /* State */
-    private List<TouchTimedPoint> touchTimedPoints;
-    private List<Integer> segmentColorIndexes;
-    private List<Integer> segmentColorLightnessIndexes;
-    private List<Integer> segmentStrokeDPWidths;
-    private long currentDrawingTime = 0;
+    private final TouchStrokesStore touchStrokesStore;
+    // The segments built from the finished strokes for the current canvas
+    private final TimedSegmentsCache timedSegmentsCache;
+    private final CanvasOrientationTransform canvasOrientationTransform;
+    private final StrokeSimplifier strokeSimplifier;
+    // The maximum distance in pixels between the fitted curves and the original points
+    private float curveFittingTolerance;
+    // Reused buffers with the points of a stroke adjusted for the current canvas
+    private float[] adjustedXs = new float[0];
+    private float[] adjustedYs = new float[0];
     private TimedDrawingCallbackListener listener;
 
     // If the callback for exceeded drawing time should be called
     private boolean shouldNotifyLimitExceeded;
+    // If a new stroke was queued since the last undo or redo, which discards the undone strokes
+    // once it is recorded. Only accessed on the UI thread.
+    private boolean isNewStrokeQueued;
+
+    /* Queued touch samples, only accessed on the UI thread */
+    private long queuedSamplesCount;
+    // The drawing time at which the next queued stroke starts
+    private long queuedNextStrokeDrawingTime;
+    // If the last queued stroke has not been finished yet
+    private boolean isQueuedStrokeOpen;
+    private long queuedStrokeStartTimestamp;
+    private long queuedStrokeStartDrawingTime;
+    // The last queued sample, for finishing the stroke when its touch events are cancelled
+    private float lastQueuedX;
+    private float lastQueuedY;
+    private long lastQueuedTimestamp;
 
     private int currentColorIndex;
     private int currentColorLightnessIndex;
@@ -103,7 +154,53 @@ public class TimedDrawingManager implements DrawingDelegate {
     @Nullable
     private ScreenOrientationSensor.ScreenOrientation screenOrientation;
 
-    public TimedDrawingManager(DrawingColorsPalette drawingColorsPalette, DisplayMetricsConverter displayMetricsConverter) {
+
+    /* Segment building, only used by the touch samples thread */
+    // The copy of the finished stroke its segment is built from
+    private final StrokeCopy finishedStrokeCopy = new StrokeCopy();
+
+    /**
+     * The points and the properties of a stroke, copied while holding the drawing lock, so the
+     * segment of the stroke can be built without holding it
+     */
+    private static class StrokeCopy {
+        // Map the points onto the canvas of the segment and onto the canvas of the stroke
+        final CanvasOrientationTransform segmentCanvasTransform = new CanvasOrientationTransform();
+        final CanvasOrientationTransform strokeCanvasTransform = new CanvasOrientationTransform();
+        int stroke;
+        int endPoint;
+        int pointsCount;
+        // The points on the canvas of the segment
+        float[] xs = new float[0];
+        float[] ys = new float[0];
+        // The points on the canvas of the stroke, for fitting its curve
+        float[] strokeXs = new float[0];
+        float[] strokeYs = new float[0];
+        long[] timestamps;
+        float curveFittingTolerance;
+        @Nullable
+        CubicBezierStroke curve;
+        boolean shouldFitCurve;
+        @Nullable
+        ScreenOrientationSensor.ScreenOrientation strokeOrientation;
+        int strokeCanvasWidth;
+        int strokeCanvasHeight;
+        int segmentCanvasWidth;
+        int segmentCanvasHeight;
+        @Nullable
+        ScreenOrientationSensor.ScreenOrientation segmentCanvasOrientation;
+        int color;
+        float strokeWidth;
+    }
+
+
+    /**
+     * @param touchPointsSpillFile
+     *      The app private file the touch points are spilled to when the system runs low on
+     *      memory, or null to keep all of them in memory
+     */
+    public TimedDrawingManager(DrawingColorsPalette drawingColorsPalette, DisplayMetricsConverter displayMetricsConverter,
+                               @Nullable File touchPointsSpillFile) {
         this.drawingColorsPalette = drawingColorsPalette;
         this.displayMetricsConverter = displayMetricsConverter;
 
@@ -113,15 +210,22 @@ public class TimedDrawingManager implements DrawingDelegate {
         this.backgroundColorLightnessIndex = DrawingColorsPalette.DEFAULT_BACKGROUND_COLOR_LIGHTNESS_INDEX;
         this.currentStrokeDPWidth = DrawingPaintBuilder.DEFAULT_STROKE_WIDTH_DP;
         this.shouldNotifyLimitExceeded = true;
-        this.currentDrawingTime = 0;
-        this.touchTimedPoints = new ArrayList<>();
-        this.segmentColorIndexes = new ArrayList<>();
-        this.segmentColorLightnessIndexes = new ArrayList<>();
-        this.segmentStrokeDPWidths = new ArrayList<>();
+        this.touchStrokesStore = new TouchStrokesStore(SequentialTimeNormalizer.SEGMENT_PAUSE, touchPointsSpillFile);
+        this.timedSegmentsCache = new TimedSegmentsCache(MAX_CACHED_SEGMENT_POINTS, this::loadSegment);
+        this.canvasOrientationTransform = new CanvasOrientationTransform();
+        this.strokeSimplifier = new StrokeSimplifier(
+                displayMetricsConverter.pixelsFromDp(DEFAULT_SIMPLIFICATION_TOLERANCE_DP));
+        this.curveFittingTolerance = displayMetricsConverter.pixelsFromDp(DEFAULT_CURVE_FITTING_TOLERANCE_DP);
         this.canvasWidth = 0;
         this.canvasHeight = 0;
         // no value first
         this.screenOrientation = null;
+
+        this.touchSamples = new TouchSamplesRingBuffer(TOUCH_SAMPLES_CAPACITY);
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.touchSamplesThread = new Thread(this::recordTouchSamplesLoop, "TouchSamplesRecorder");
+        this.touchSamplesThread.setDaemon(true);
+        this.touchSamplesThread.start();
     }
 
 
@@ -129,8 +233,11 @@ public class TimedDrawingManager implements DrawingDelegate {
     /* Public API */
 
     public void setColor(int colorIndex, int colorLightnessIndex) {
-        currentColorIndex = colorIndex;
-        currentColorLightnessIndex = colorLightnessIndex;
+        synchronized (drawingLock) {
+            recordQueuedTouchSamples();
+            currentColorIndex = colorIndex;
+            currentColorLightnessIndex = colorLightnessIndex;
+        }
     }
 
     public void setBackgroundColor(int colorIndex, int colorLightnessIndex) {
@@ -139,7 +246,37 @@ public class TimedDrawingManager implements DrawingDelegate {
     }
 
     public void setStrokeWidth(int strokeWidth) {
-        currentStrokeDPWidth = strokeWidth;
+        synchronized (drawingLock) {
+            recordQueuedTouchSamples();
+            currentStrokeDPWidth = strokeWidth;
+        }
+    }
+
+    /**
+     * Sets the maximum distance in DP between the recorded strokes and the dropped redundant
+     * touch points. No points are dropped with a tolerance of zero.
+     */
+    public void setSimplificationTolerance(float toleranceDP) {
+        synchronized (drawingLock) {
+            strokeSimplifier.setTolerance(displayMetricsConverter.pixelsFromDp(toleranceDP));
+        }
+    }
+
+    /**
+     * Sets the maximum distance in DP between the curves fitted through the finished strokes and
+     * the recorded points. Strokes are kept as recorded with a tolerance of zero.
+     */
+    public void setCurveFittingTolerance(float toleranceDP) {
+        final float tolerance = displayMetricsConverter.pixelsFromDp(toleranceDP);
+        synchronized (drawingLock) {
+            if (tolerance != curveFittingTolerance) {
+                curveFittingTolerance = tolerance;
+                touchStrokesStore.clearStrokeCurves();
+                timedSegmentsCache.truncate(0);
+                strokesRevision++;
+            }
+        }
+        LockSupport.unpark(touchSamplesThread);
     }
 
     public int getCurrentColorIndex() {
@@ -172,9 +309,15 @@ public class TimedDrawingManager implements DrawingDelegate {
             return;
         }
 
-        canvasWidth = newCanvasWidth;
-        canvasHeight = newCanvasHeight;
-        screenOrientation = newScreenOrientation;
+        synchronized (drawingLock) {
+            recordQueuedTouchSamples();
+            canvasWidth = newCanvasWidth;
+            canvasHeight = newCanvasHeight;
+            screenOrientation = newScreenOrientation;
+            canvasOrientationTransform.setTarget(screenOrientation, canvasWidth, canvasHeight);
+        }
+        // Rebuild the segments for the new canvas
+        LockSupport.unpark(touchSamplesThread);
     }
 
     public int getCanvasWidth() {
@@ -190,89 +333,174 @@ public class TimedDrawingManager implements DrawingDelegate {
         return screenOrientation;
     }
 
+    /**
+     * Returns an unmodifiable snapshot of the finished strokes of the current drawing. The segments
+     * are immutable, so the snapshot can be shared by several renderers running at the same time.
+     * <p/>
+     * The segments are only built by the background thread, once for the current canvas. This waits
+     * until the background thread has recorded the queued samples and built the segments of all
+     * finished strokes, without holding the drawing lock meanwhile.
+     */
     @NonNull
     public List<TimedSegment> getTimedSegments() {
-        List<TimedSegment> segments = new ArrayList<>();
+        LockSupport.unpark(touchSamplesThread);
+        synchronized (drawingLock) {
+            while (!isReleased && !areFinishedStrokeSegmentsBuilt()) {
+                try {
+                    drawingLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return timedSegmentsCache.snapshot();
+        }
+    }
 
-        List<TimedPoint> points = new ArrayList<>();
+    public void clear() {
+        synchronized (drawingLock) {
+            recordQueuedTouchSamples();
+            isNewStrokeQueued = false;
+            touchStrokesStore.clear();
+            strokeSimplifier.finishStroke();
+            timedSegmentsCache.truncate(0);
+            strokesRevision++;
+            updateDrawingProgress();
+        }
+        notifyDrawingProgressChanged();
+    }
 
-        int segmentIndex = -1;
-        for (int i = 0; i < touchTimedPoints.size(); i++) {
-            TouchTimedPoint p = adjustForCurrentCanvas(touchTimedPoints.get(i));
+    /**
+     * Spills the touch points of the drawing which are not being drawn to the spill file on the
+     * background thread and evicts the cached segments, which are built again when needed. The
+     * touch points are read back with {@link #readBackTouchPoints()}, or when they are needed before that.
+     */
+    public void trimMemory() {
+        shouldReadBackTouchPoints = false;
+        shouldSpillTouchPoints = true;
+        LockSupport.unpark(touchSamplesThread);
+    }
 
-            if (p.touchEventAction == MotionEvent.ACTION_DOWN && !points.isEmpty()) {
-                segmentIndex++;
-                segments.add(new TimedSegment(points, canvasWidth, canvasHeight, getSegmentPaint(segmentIndex)));
-                points.clear();
-            }
+    /**
+     * Reads the spilled touch points back into memory on the background thread, so the drawing
+     * does not wait for the spill file when it is shown again
+     */
+    public void readBackTouchPoints() {
+        shouldSpillTouchPoints = false;
+        shouldReadBackTouchPoints = true;
+        LockSupport.unpark(touchSamplesThread);
+    }
 
-            points.add(new TimedPoint(p.timedPoint.getX(), p.timedPoint.getY(), p.timedPoint.getTimestamp()));
+    /**
+     * Discards the drawing, stops recording touch samples and deletes the spill file, without
+     * notifying the listener. The manager cannot be used anymore afterwards.
+     */
+    public void release() {
+        isReleased = true;
+        LockSupport.unpark(touchSamplesThread);
+        mainHandler.removeCallbacksAndMessages(null);
+        synchronized (drawingLock) {
+            touchStrokesStore.clear();
+            strokeSimplifier.finishStroke();
+            timedSegmentsCache.truncate(0);
+            strokesRevision++;
+            drawingLock.notifyAll();
         }
+    }
 
-        if (!points.isEmpty()) {
-            segmentIndex++;
-            segments.add(new TimedSegment(points, canvasWidth, canvasHeight, getSegmentPaint(segmentIndex)));
+    /**
+     * Removes the last segment of the drawing and keeps it, so it can be restored with
+     * {@link #redoLastDrawingSegment()} until anything new is drawn
+     */
+    public boolean removeLastDrawingSegment() {
+        synchronized (drawingLock) {
+            recordQueuedTouchSamples();
+            isNewStrokeQueued = false;
+            if (touchStrokesStore.isEmpty()) {
+                return false;
+            }
+            touchStrokesStore.undoLastStroke();
+            strokeSimplifier.finishStroke();
+            timedSegmentsCache.truncate(touchStrokesStore.getStrokesCount());
+            strokesRevision++;
+            updateDrawingProgress();
         }
-
-        return segments;
+        notifyDrawingProgressChanged();
+        return true;
     }
 
-    public void clear() {
-        touchTimedPoints.clear();
-        segmentColorIndexes.clear();
-        segmentColorLightnessIndexes.clear();
-        segmentStrokeDPWidths.clear();
-        currentDrawingTime = 0;
+    /**
+     * Restores the last segment removed with {@link #removeLastDrawingSegment()}
+     */
+    public boolean redoLastDrawingSegment() {
+        synchronized (drawingLock) {
+            recordQueuedTouchSamples();
+            isNewStrokeQueued = false;
+            if (!touchStrokesStore.redoStroke()) {
+                return false;
+            }
+            strokeSimplifier.finishStroke();
+            updateDrawingProgress();
+        }
+        // Build the segment of the restored stroke
+        LockSupport.unpark(touchSamplesThread);
         notifyDrawingProgressChanged();
+        return true;
     }
 
-    public boolean removeLastDrawingSegment() {
-        boolean shouldRedraw = false;
-        if (!touchTimedPoints.isEmpty()) {
-            for (int i = touchTimedPoints.size() - 1; i >= 0; i--) {
-                if (touchTimedPoints.get(i).touchEventAction == MotionEvent.ACTION_DOWN) {
-                    if (i == 0) {
-                        touchTimedPoints.clear();
-                    } else {
-                        touchTimedPoints = touchTimedPoints.subList(0, i);
-                    }
-                    shouldRedraw = true;
-                    break;
-                }
-            }
-            segmentColorIndexes.remove(segmentColorIndexes.size() - 1);
-            segmentColorLightnessIndexes.remove(segmentColorLightnessIndexes.size() - 1);
-            segmentStrokeDPWidths.remove(segmentStrokeDPWidths.size() - 1);
-            recalculateDrawingTime();
+    public boolean canRedoDrawingSegment() {
+        if (isNewStrokeQueued) {
+            return false;
+        }
+        synchronized (drawingLock) {
+            return touchStrokesStore.canRedo();
+        }
+    }
+
+    /**
+     * Sets the maximum memory in bytes the removed segments kept for redo may take. By default
+     * all removed segments are kept.
+     */
+    public void setMaxRedoMemory(long maxRedoMemory) {
+        synchronized (drawingLock) {
+            touchStrokesStore.setMaxRedoMemory(maxRedoMemory);
         }
-        return shouldRedraw;
     }
 
     public boolean isDrawingEmpty() {
-        return touchTimedPoints.isEmpty();
+        synchronized (drawingLock) {
+            return touchStrokesStore.isEmpty();
+        }
     }
 
     public void setListener(TimedDrawingCallbackListener listener) {
         this.listener = listener;
     }
 
+    /**
+     * Returns the drawing time progress in percent of the recorded samples
+     */
     public int getDrawingProgress() {
-        if (currentDrawingTime > MAX_DRAWING_TIME) {
-            return 100;
-        }
-
-        return (int) Math.floor(
-                ((double) currentDrawingTime) /
-                        ((double) MAX_DRAWING_TIME)
-                        * 100.0d);
+        return drawingProgress;
     }
 
 
 
     /* DrawingDelegate implementation */
 
+    /**
+     * Queues all samples of the touch event for recording on the background thread. The event is
+     * either queued as a whole or refused, so the drawing view draws exactly the recorded samples.
+     * Events starting a stroke are refused once the drawing time limit is reached, and the event
+     * reaching it finishes the stroke being drawn.
+     */
     @Override
-    public boolean onTouchEvent(float touchX, float touchY, int touchActionMasked) {
+    public boolean onTouchEvent(@NonNull MotionEvent event) {
+        final int touchActionMasked = event.getActionMasked();
+        if (touchActionMasked == MotionEvent.ACTION_CANCEL) {
+            finishQueuedStroke();
+            return false;
+        }
         // Supported touch events
         if (touchActionMasked != MotionEvent.ACTION_DOWN
                 && touchActionMasked != MotionEvent.ACTION_UP
@@ -284,97 +512,112 @@ public class TimedDrawingManager implements DrawingDelegate {
             shouldNotifyLimitExceeded = true;
         }
 
-        if (currentDrawingTime > MAX_DRAWING_TIME) {
-            if (shouldNotifyLimitExceeded) {
-                shouldNotifyLimitExceeded = false;
-                if (listener != null) {
-                    listener.onDrawingLimitExceeded();
-                }
+        // Framework weird behavior, sending up or move action before down. Such events start a stroke as well.
+        final boolean startsStroke = touchActionMasked == MotionEvent.ACTION_DOWN || !isQueuedStrokeOpen;
+        final int historySize = touchActionMasked == MotionEvent.ACTION_MOVE ? event.getHistorySize() : 0;
+        final long firstTimestamp = historySize > 0 ? event.getHistoricalEventTime(0) : event.getEventTime();
+        if (startsStroke) {
+            syncQueuedDrawingTime();
+            if (queuedNextStrokeDrawingTime >= MAX_DRAWING_TIME) {
+                isQueuedStrokeOpen = false;
+                notifyDrawingLimitExceeded();
+                return false;
             }
+        }
+        final long strokeStartTimestamp = startsStroke ? firstTimestamp : queuedStrokeStartTimestamp;
+        final long strokeStartDrawingTime = startsStroke ? queuedNextStrokeDrawingTime : queuedStrokeStartDrawingTime;
+        final long lastDrawingTime = strokeStartDrawingTime + event.getEventTime() - strokeStartTimestamp;
+        final boolean isLimitReached = lastDrawingTime >= MAX_DRAWING_TIME;
+        final boolean finishesStroke = touchActionMasked == MotionEvent.ACTION_UP || isLimitReached;
+
+        // An up event starting a stroke is queued as a down sample followed by an up sample
+        final int samplesCount = historySize + (startsStroke && touchActionMasked == MotionEvent.ACTION_UP ? 2 : 1);
+        // Room for the up sample finishing the stroke is always kept
+        if (touchSamples.remainingCapacity() < samplesCount + (finishesStroke ? 0 : 1)) {
             return false;
         }
 
-        TouchTimedPoint lastTimedPoint = !touchTimedPoints.isEmpty() ? touchTimedPoints.get(touchTimedPoints.size() - 1) : null;
-
-        // Framework weird behavior, sending up or move action before down. We make sure this is not happening
-        if (lastTimedPoint == null && touchActionMasked != MotionEvent.ACTION_DOWN) {
-            touchActionMasked = MotionEvent.ACTION_DOWN;
+        int nextAction = startsStroke ? MotionEvent.ACTION_DOWN : MotionEvent.ACTION_MOVE;
+        for (int i = 0; i < historySize; i++) {
+            queueTouchSample(event.getHistoricalX(i), event.getHistoricalY(i), event.getHistoricalEventTime(i), nextAction);
+            nextAction = MotionEvent.ACTION_MOVE;
         }
-
-        TouchTimedPoint currentTimedPoint = new TouchTimedPoint(
-                touchX, touchY, touchActionMasked, System.currentTimeMillis(), screenOrientation, canvasWidth, canvasHeight);
-        touchTimedPoints.add(currentTimedPoint);
-
-        switch (touchActionMasked) {
-            case MotionEvent.ACTION_DOWN:
-                segmentColorIndexes.add(currentColorIndex);
-                segmentColorLightnessIndexes.add(currentColorLightnessIndex);
-                segmentStrokeDPWidths.add(currentStrokeDPWidth);
-                if (lastTimedPoint != null) {
-                    currentDrawingTime += 100;
-                    notifyDrawingProgressChanged();
-                }
-                if (listener != null) {
-                    listener.onDrawingStarted();
-                }
-                break;
-            case MotionEvent.ACTION_MOVE:
-                currentDrawingTime += currentTimedPoint.timedPoint.timeTo(lastTimedPoint.timedPoint);
-                notifyDrawingProgressChanged();
-                break;
-            case MotionEvent.ACTION_UP:
-                currentDrawingTime += currentTimedPoint.timedPoint.timeTo(lastTimedPoint.timedPoint);
-                if (listener != null) {
-                    listener.onDrawingStopped();
-                }
-                notifyDrawingProgressChanged();
-                break;
+        if (samplesCount - historySize == 2) {
+            queueTouchSample(event.getX(), event.getY(), event.getEventTime(), MotionEvent.ACTION_DOWN);
+            nextAction = MotionEvent.ACTION_UP;
+        } else if (nextAction != MotionEvent.ACTION_DOWN) {
+            nextAction = finishesStroke ? MotionEvent.ACTION_UP : touchActionMasked;
         }
+        queueTouchSample(event.getX(), event.getY(), event.getEventTime(), nextAction);
+        LockSupport.unpark(touchSamplesThread);
 
+        if (startsStroke) {
+            isNewStrokeQueued = true;
+            queuedStrokeStartTimestamp = strokeStartTimestamp;
+            queuedStrokeStartDrawingTime = strokeStartDrawingTime;
+        }
+        isQueuedStrokeOpen = !finishesStroke;
+        queuedNextStrokeDrawingTime = lastDrawingTime + SequentialTimeNormalizer.SEGMENT_PAUSE;
+        if (isLimitReached) {
+            notifyDrawingLimitExceeded();
+        }
         return true;
     }
 
+    /**
+     * Redraws the strokes recorded so far. The queued touch samples are drawn by the drawing view itself.
+     */
     public void redrawCurrentDrawing(Canvas drawCanvas) {
+        readBackSpilledTouchPoints();
+        synchronized (drawingLock) {
+            redrawStrokes(drawCanvas);
+            if (dropLostStrokes()) {
+                redrawStrokes(drawCanvas);
+            }
+        }
+    }
+
+    private void redrawStrokes(Canvas drawCanvas) {
         drawCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
         drawCanvas.drawColor(
                 drawingColorsPalette.getColorWithLightness(backgroundColorIndex, backgroundColorLightnessIndex));
-        if (!touchTimedPoints.isEmpty()) {
-
-            PointF previousDrawingPoint = null;
-            int segmentIndex = 0;
-            for (int i = 0; i < touchTimedPoints.size(); i++) {
-                TouchTimedPoint p = adjustForCurrentCanvas(touchTimedPoints.get(i));
-
-                if (previousDrawingPoint == null) {
+        for (int stroke = 0, strokesCount = touchStrokesStore.getStrokesCount(); stroke < strokesCount; stroke++) {
+            final int pointsCount = adjustForCurrentCanvas(stroke);
+            final int firstPoint = touchStrokesStore.getStrokeFirstPoint(stroke);
+            final Paint strokePaint = touchStrokesStore.getStrokePaint(stroke);
+
+            boolean hasPreviousDrawingPoint = false;
+            float previousX = 0;
+            float previousY = 0;
+            for (int i = 0; i < pointsCount; i++) {
+                final int action = touchStrokesStore.getAction(firstPoint + i);
+                final float x = adjustedXs[i];
+                final float y = adjustedYs[i];
+
+                if (!hasPreviousDrawingPoint || action == MotionEvent.ACTION_DOWN) {
                     // in case the action down is skipped for some reason
-                    previousDrawingPoint = new PointF(p.timedPoint.getX(), p.timedPoint.getY());
+                    previousX = x;
+                    previousY = y;
+                    hasPreviousDrawingPoint = true;
                 }
 
-                if (p.touchEventAction == MotionEvent.ACTION_DOWN) {
-                    previousDrawingPoint = new PointF(p.timedPoint.getX(), p.timedPoint.getY());
+                if (action == MotionEvent.ACTION_DOWN) {
                     continue;
                 }
 
-                if (p.touchEventAction == MotionEvent.ACTION_MOVE) {
-                    if (previousDrawingPoint.equals(p.timedPoint.getX(), p.timedPoint.getY())) {
-                        drawCanvas.drawPoint(p.timedPoint.getX(), p.timedPoint.getY(), getSegmentPaint(segmentIndex));
-                    } else {
-                        drawCanvas.drawLine(previousDrawingPoint.x, previousDrawingPoint.y, p.timedPoint.getX(), p.timedPoint.getY(), getSegmentPaint(segmentIndex));
-                    }
-                    previousDrawingPoint = new PointF(p.timedPoint.getX(), p.timedPoint.getY());
-                    continue;
+                if (previousX == x && previousY == y) {
+                    drawCanvas.drawPoint(x, y, strokePaint);
+                } else {
+                    drawCanvas.drawLine(previousX, previousY, x, y, strokePaint);
                 }
 
-                if (p.touchEventAction == MotionEvent.ACTION_UP) {
-                    if (previousDrawingPoint.equals(p.timedPoint.getX(), p.timedPoint.getY())) {
-                        drawCanvas.drawPoint(p.timedPoint.getX(), p.timedPoint.getY(), getSegmentPaint(segmentIndex));
-                    } else {
-                        drawCanvas.drawLine(previousDrawingPoint.x, previousDrawingPoint.y, p.timedPoint.getX(), p.timedPoint.getY(), getSegmentPaint(segmentIndex));
-                    }
+                if (action == MotionEvent.ACTION_MOVE) {
+                    previousX = x;
+                    previousY = y;
+                    continue;
                 }
 
-                previousDrawingPoint = null;
-                segmentIndex++;
+                hasPreviousDrawingPoint = false;
             }
         }
     }
@@ -404,147 +647,463 @@ public class TimedDrawingManager implements DrawingDelegate {
 
     /* Helper methods */
 
-    private Paint getSegmentPaint(int segmentIndex) {
-        return DrawingPaintBuilder.getPaint(
-
-                drawingColorsPalette.getColorWithLightness(
-                        segmentColorIndexes.get(segmentIndex),
-                        segmentColorLightnessIndexes.get(segmentIndex)),
+    /**
+     * Queues a touch sample. The room for it must have been checked before.
+     */
+    private void queueTouchSample(float touchX, float touchY, long timestamp, int touchActionMasked) {
+        touchSamples.offer(touchX, touchY, timestamp, touchActionMasked);
+        queuedSamplesCount++;
+        lastQueuedX = touchX;
+        lastQueuedY = touchY;
+        lastQueuedTimestamp = timestamp;
+    }
 
-                displayMetricsConverter.pixelsFromDp(segmentStrokeDPWidths.get(segmentIndex))
-        );
+    /**
+     * Queues an up sample at the last queued sample, if the last queued stroke is not finished yet.
+     * The room for it is always kept in the queue.
+     */
+    private void finishQueuedStroke() {
+        if (!isQueuedStrokeOpen) {
+            return;
+        }
+        queueTouchSample(lastQueuedX, lastQueuedY, lastQueuedTimestamp, MotionEvent.ACTION_UP);
+        LockSupport.unpark(touchSamplesThread);
+        isQueuedStrokeOpen = false;
     }
 
-    private TouchTimedPoint adjustForCurrentCanvas(TouchTimedPoint point) {
-        float x = point.timedPoint.getX();
-        float y = point.timedPoint.getY();
-
-        ScreenOrientationSensor.ScreenOrientation rotation = ScreenOrientationSensor.ScreenOrientation.ORIENTATION_0;
-
-        if (screenOrientation != null) {
-            switch (point.screenOrientation) {
-                case ORIENTATION_0:
-                    switch (screenOrientation) {
-                        case ORIENTATION_90:
-                            rotation = ScreenOrientationSensor.ScreenOrientation.ORIENTATION_90;
-                            break;
-                        case ORIENTATION_180:
-                            rotation = ScreenOrientationSensor.ScreenOrientation.ORIENTATION_180;
-                            break;
-                        case ORIENTATION_270:
-                            rotation = ScreenOrientationSensor.ScreenOrientation.ORIENTATION_270;
-                            break;
-                        case ORIENTATION_0:
-                            // no rotation
-                            break;
-                    }
-                    break;
-                case ORIENTATION_90:
-
-                    switch (screenOrientation) {
-                        case ORIENTATION_180:
-                            rotation = ScreenOrientationSensor.ScreenOrientation.ORIENTATION_90;
-                            break;
-                        case ORIENTATION_270:
-                            rotation = ScreenOrientationSensor.ScreenOrientation.ORIENTATION_180;
-                            break;
-                        case ORIENTATION_0:
-                            rotation = ScreenOrientationSensor.ScreenOrientation.ORIENTATION_270;
-                            break;
-                        case ORIENTATION_90:
-                            // no rotation
-                            break;
-                    }
+    /**
+     * Takes over the drawing time at which the next stroke starts from the background thread, once
+     * it has recorded all queued samples. Until then the queued drawing time is kept, which is never
+     * shorter than the recorded one.
+     */
+    private void syncQueuedDrawingTime() {
+        if (recordedSamplesCount == queuedSamplesCount) {
+            queuedNextStrokeDrawingTime = recordedNextStrokeDrawingTime;
+        }
+    }
 
-                    break;
-                case ORIENTATION_180:
-
-                    switch (screenOrientation) {
-                        case ORIENTATION_270:
-                            rotation = ScreenOrientationSensor.ScreenOrientation.ORIENTATION_90;
-                            break;
-                        case ORIENTATION_0:
-                            rotation = ScreenOrientationSensor.ScreenOrientation.ORIENTATION_180;
-                            break;
-                        case ORIENTATION_90:
-                            rotation = ScreenOrientationSensor.ScreenOrientation.ORIENTATION_270;
-                            break;
-                        case ORIENTATION_180:
-                            // no rotation
-                            break;
-                    }
+    private void notifyDrawingLimitExceeded() {
+        if (shouldNotifyLimitExceeded) {
+            shouldNotifyLimitExceeded = false;
+            if (listener != null) {
+                listener.onDrawingLimitExceeded();
+            }
+        }
+    }
 
-                    break;
-                case ORIENTATION_270:
-
-                    switch (screenOrientation) {
-                        case ORIENTATION_0:
-                            rotation = ScreenOrientationSensor.ScreenOrientation.ORIENTATION_90;
-                            break;
-                        case ORIENTATION_90:
-                            rotation = ScreenOrientationSensor.ScreenOrientation.ORIENTATION_180;
-                            break;
-                        case ORIENTATION_180:
-                            rotation = ScreenOrientationSensor.ScreenOrientation.ORIENTATION_270;
-                            break;
-                        case ORIENTATION_270:
-                            // no rotation
-                            break;
-                    }
-                    break;
+    /**
+     * Records the queued touch samples as soon as there are any, builds the segments of the finished
+     * strokes and spills or reads back the touch points when requested, until the manager is released
+     */
+    private void recordTouchSamplesLoop() {
+        while (!isReleased) {
+            if (shouldSpillTouchPoints) {
+                shouldSpillTouchPoints = false;
+                spillTouchPoints();
+                continue;
+            }
+            if (shouldReadBackTouchPoints) {
+                shouldReadBackTouchPoints = false;
+                readBackSpilledTouchPoints();
+                continue;
+            }
+            synchronized (drawingLock) {
+                recordQueuedTouchSamples();
+            }
+            buildFinishedStrokeSegments();
+            if (touchSamples.isEmpty() && !shouldSpillTouchPoints && !shouldReadBackTouchPoints) {
+                LockSupport.park(this);
             }
         }
+    }
 
-        switch (rotation) {
-            case ORIENTATION_0:
-                x = point.timedPoint.getX();
-                y = point.timedPoint.getY();
-                break;
-            case ORIENTATION_90:
-                x = point.timedPoint.getY() * ((float) canvasWidth) / point.canvasHeight;
-                y = canvasHeight - point.timedPoint.getX() * ((float) canvasHeight) / point.canvasWidth;
-                break;
-            case ORIENTATION_180:
-                x = canvasWidth - point.timedPoint.getX();
-                y = canvasHeight - point.timedPoint.getY();
+    /**
+     * Evicts the cached segments and spills the touch points which are not being drawn. The points
+     * are written to the spill file without holding the drawing lock.
+     */
+    private void spillTouchPoints() {
+        final TouchPointChunks.Transfer spill;
+        synchronized (drawingLock) {
+            recordQueuedTouchSamples();
+            timedSegmentsCache.trimMemory();
+            spill = touchStrokesStore.startSpill();
+        }
+        if (spill == null) {
+            return;
+        }
+        spill.run();
+        synchronized (drawingLock) {
+            touchStrokesStore.finishTransfer(spill);
+        }
+    }
+
+    /**
+     * Reads the spilled touch points back into memory and drops the strokes whose points could not
+     * be read back. The points are read from the spill file without holding the drawing lock.
+     */
+    private void readBackSpilledTouchPoints() {
+        final TouchPointChunks.Transfer readBack;
+        synchronized (drawingLock) {
+            readBack = touchStrokesStore.startReadBack();
+        }
+        if (readBack == null) {
+            return;
+        }
+        readBack.run();
+        synchronized (drawingLock) {
+            touchStrokesStore.finishTransfer(readBack);
+            dropLostStrokes();
+        }
+    }
+
+    /**
+     * Records all queued touch samples and notifies the listener on the main thread.
+     * Must be called while holding the drawing lock.
+     */
+    private void recordQueuedTouchSamples() {
+        final int recordedCount = touchSamples.drain(touchSampleRecorder);
+        if (recordedCount == 0) {
+            return;
+        }
+
+        // The segment of the extended stroke is built again once the stroke is finished
+        timedSegmentsCache.truncate(touchStrokesStore.getStrokesCount() - 1);
+        updateDrawingProgress();
+        dropLostStrokes();
+        // Published after the drawing time, so the main thread sees the drawing time of all counted samples
+        recordedSamplesCount += recordedCount;
+
+        mainHandler.removeCallbacks(drawingProgressNotification);
+        mainHandler.post(drawingProgressNotification);
+    }
+
+    /**
+     * Removes the strokes whose touch points could not be read back from the spill file and
+     * notifies the listener about the shorter drawing. Must be called while holding the drawing lock.
+     *
+     * @return
+     *      True if any strokes were removed
+     */
+    private boolean dropLostStrokes() {
+        if (!touchStrokesStore.dropLostStrokes()) {
+            return false;
+        }
+        strokeSimplifier.finishStroke();
+        shouldStartNewStroke = true;
+        timedSegmentsCache.truncate(touchStrokesStore.getStrokesCount());
+        strokesRevision++;
+        updateDrawingProgress();
+        mainHandler.removeCallbacks(drawingProgressNotification);
+        mainHandler.post(drawingProgressNotification);
+        return true;
+    }
+
+    private void recordTouchSample(float touchX, float touchY, long timestamp, int touchActionMasked) {
+        switch (addTouchPoint(touchX, touchY, timestamp, touchActionMasked)) {
+            case MotionEvent.ACTION_DOWN:
+                mainHandler.post(drawingStartedNotification);
                 break;
-            case ORIENTATION_270:
-                x = canvasWidth - point.timedPoint.getY() * ((float) canvasWidth) / point.canvasHeight;
-                y = point.timedPoint.getX() * ((float) canvasHeight) / point.canvasWidth;
+            case MotionEvent.ACTION_UP:
+                mainHandler.post(drawingStoppedNotification);
                 break;
         }
+    }
+
+    /**
+     * Publishes the drawing progress and the drawing time at which the next stroke starts.
+     * Must be called while holding the drawing lock.
+     */
+    private void updateDrawingProgress() {
+        final long drawingTime = touchStrokesStore.getDrawingTime();
+        recordedNextStrokeDrawingTime = touchStrokesStore.getNextStrokeStartDrawingTime();
+        drawingProgress = drawingTime >= MAX_DRAWING_TIME
+                ? 100
+                : (int) Math.floor(((double) drawingTime) / ((double) MAX_DRAWING_TIME) * 100.0d);
+    }
 
-        return new TouchTimedPoint(x, y, point.touchEventAction, point.timedPoint.getTimestamp(), screenOrientation, canvasWidth, canvasHeight);
+    /**
+     * Checks if the queued touch samples are recorded and the segments of all finished strokes
+     * are built for the current canvas. Must be called while holding the drawing lock.
+     */
+    private boolean areFinishedStrokeSegmentsBuilt() {
+        return touchSamples.isEmpty()
+                && timedSegmentsCache.isBuiltFor(canvasWidth, canvasHeight, screenOrientation)
+                && timedSegmentsCache.size() >= getFinishedStrokesCount();
     }
 
-    private void recalculateDrawingTime() {
-        currentDrawingTime = 0;
-        TouchTimedPoint point;
-        TouchTimedPoint lastPoint = null;
-        for (int i = 0, size = touchTimedPoints.size(); i < size; i++) {
-            point = touchTimedPoints.get(i);
+    /**
+     * Returns the number of strokes which are not being drawn anymore.
+     * Must be called while holding the drawing lock.
+     */
+    private int getFinishedStrokesCount() {
+        final int strokesCount = touchStrokesStore.getStrokesCount();
+        if (strokesCount == 0
+                || touchStrokesStore.getAction(touchStrokesStore.getPointsCount() - 1) == MotionEvent.ACTION_UP) {
+            return strokesCount;
+        }
+        return strokesCount - 1;
+    }
 
-            switch (point.touchEventAction) {
-                case MotionEvent.ACTION_DOWN:
-                    if (lastPoint != null) {
-                        currentDrawingTime += 100;
-                    }
-                    break;
-                case MotionEvent.ACTION_MOVE:
-                case MotionEvent.ACTION_UP:
-                    if (lastPoint != null) {
-                        currentDrawingTime += point.timedPoint.timeTo(lastPoint.timedPoint);
-                    }
-                    break;
+    /**
+     * Builds the segments of the finished strokes missing in the cache, one stroke at a time.
+     * The points of a stroke are copied while holding the lock, and its curve is fitted and its
+     * segment is built without holding it. The segment is only added if its stroke and the canvas
+     * have not changed meanwhile. Must be called on the touch samples thread.
+     */
+    private void buildFinishedStrokeSegments() {
+        final StrokeCopy copy = finishedStrokeCopy;
+        while (!isReleased) {
+            final int revision;
+            synchronized (drawingLock) {
+                if (!timedSegmentsCache.isBuiltFor(canvasWidth, canvasHeight, screenOrientation)) {
+                    timedSegmentsCache.reset(canvasWidth, canvasHeight, screenOrientation);
+                }
+                final int stroke = timedSegmentsCache.size();
+                if (stroke >= getFinishedStrokesCount()) {
+                    drawingLock.notifyAll();
+                    return;
+                }
+                revision = strokesRevision;
+                copyStroke(stroke, canvasWidth, canvasHeight, screenOrientation, copy);
+            }
+
+            final TimedSegment segment = buildSegment(copy);
+
+            synchronized (drawingLock) {
+                if (!isStrokeUnchanged(copy, revision)) {
+                    continue;
+                }
+                keepFittedCurve(copy);
+                if (timedSegmentsCache.size() == copy.stroke && timedSegmentsCache.isBuiltFor(
+                        copy.segmentCanvasWidth, copy.segmentCanvasHeight, copy.segmentCanvasOrientation)) {
+                    timedSegmentsCache.add(segment, touchStrokesStore.getStrokeStartDrawingTime(copy.stroke));
+                }
             }
-            lastPoint = point;
         }
-        notifyDrawingProgressChanged();
+    }
+
+    /**
+     * Builds the segment of a stroke evicted from the segments cache again for a drawing snapshot,
+     * on the thread rendering the snapshot. The stroke is copied while holding the lock and its
+     * segment is built without holding it.
+     *
+     * @return
+     *      The segment, or null if the stroke does not have the input start timestamp and duration anymore
+     */
+    @Nullable
+    private TimedSegment loadSegment(int stroke, long startTimestamp, long duration,
+                                     int segmentCanvasWidth, int segmentCanvasHeight,
+                                     @Nullable ScreenOrientationSensor.ScreenOrientation segmentOrientation) {
+        readBackSpilledTouchPoints();
+        final StrokeCopy copy = new StrokeCopy();
+        final int revision;
+        synchronized (drawingLock) {
+            if (stroke >= touchStrokesStore.getStrokesCount()
+                    || touchStrokesStore.getStrokeStartTimestamp(stroke) != startTimestamp
+                    || touchStrokesStore.getStrokeEndDrawingTime(stroke)
+                    - touchStrokesStore.getStrokeStartDrawingTime(stroke) != duration) {
+                return null;
+            }
+            revision = strokesRevision;
+            copyStroke(stroke, segmentCanvasWidth, segmentCanvasHeight, segmentOrientation, copy);
+        }
+
+        final TimedSegment segment = buildSegment(copy);
+
+        if (copy.shouldFitCurve) {
+            synchronized (drawingLock) {
+                if (isStrokeUnchanged(copy, revision)) {
+                    keepFittedCurve(copy);
+                }
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * Copies the points and the properties of a stroke for building its segment on the input canvas.
+     * Must be called while holding the drawing lock.
+     */
+    private void copyStroke(int stroke, int segmentCanvasWidth, int segmentCanvasHeight,
+                            @Nullable ScreenOrientationSensor.ScreenOrientation segmentOrientation,
+                            @NonNull StrokeCopy copy) {
+        final int pointsCount = touchStrokesStore.getStrokeEndPoint(stroke) - touchStrokesStore.getStrokeFirstPoint(stroke);
+        final boolean canFitCurve = curveFittingTolerance > 0 && pointsCount > 2;
+        copy.stroke = stroke;
+        copy.endPoint = touchStrokesStore.getStrokeEndPoint(stroke);
+        copy.pointsCount = pointsCount;
+        copy.curveFittingTolerance = curveFittingTolerance;
+        copy.curve = canFitCurve ? touchStrokesStore.getStrokeCurve(stroke) : null;
+        copy.shouldFitCurve = canFitCurve && copy.curve == null;
+        copy.strokeOrientation = touchStrokesStore.getStrokeOrientation(stroke);
+        copy.strokeCanvasWidth = touchStrokesStore.getStrokeCanvasWidth(stroke);
+        copy.strokeCanvasHeight = touchStrokesStore.getStrokeCanvasHeight(stroke);
+        copy.segmentCanvasWidth = segmentCanvasWidth;
+        copy.segmentCanvasHeight = segmentCanvasHeight;
+        copy.segmentCanvasOrientation = segmentOrientation;
+        final Paint strokePaint = touchStrokesStore.getStrokePaint(stroke);
+        copy.color = strokePaint.getColor();
+        copy.strokeWidth = strokePaint.getStrokeWidth();
+
+        if (copy.xs.length < pointsCount) {
+            copy.xs = new float[pointsCount];
+            copy.ys = new float[pointsCount];
+        }
+        copy.segmentCanvasTransform.setTarget(segmentOrientation, segmentCanvasWidth, segmentCanvasHeight);
+        touchStrokesStore.mapStroke(stroke, copy.segmentCanvasTransform, copy.xs, copy.ys);
+        if (copy.shouldFitCurve) {
+            if (copy.strokeXs.length < pointsCount) {
+                copy.strokeXs = new float[pointsCount];
+                copy.strokeYs = new float[pointsCount];
+            }
+            copy.strokeCanvasTransform.setTarget(copy.strokeOrientation, copy.strokeCanvasWidth, copy.strokeCanvasHeight);
+            touchStrokesStore.mapStroke(stroke, copy.strokeCanvasTransform, copy.strokeXs, copy.strokeYs);
+        }
+        copy.timestamps = new long[pointsCount];
+        touchStrokesStore.getStrokeTimestamps(stroke, copy.timestamps);
+    }
+
+    /**
+     * Builds the segment of a copied stroke, after fitting the curve of the stroke if it has none yet.
+     * Does not need the drawing lock.
+     */
+    @NonNull
+    private static TimedSegment buildSegment(@NonNull StrokeCopy copy) {
+        if (copy.shouldFitCurve) {
+            copy.curve = CubicBezierStroke.fit(copy.strokeXs, copy.strokeYs, copy.timestamps, copy.pointsCount,
+                    copy.curveFittingTolerance, CURVE_FITTING_TIME_TOLERANCE);
+        }
+        if (copy.curve != null && isCurveSmaller(copy.curve, copy.pointsCount)) {
+            return new TimedSegment(
+                    copy.segmentCanvasTransform.mapCurve(copy.strokeOrientation, copy.strokeCanvasWidth,
+                            copy.strokeCanvasHeight, copy.curve),
+                    copy.segmentCanvasWidth, copy.segmentCanvasHeight, copy.color, copy.strokeWidth);
+        }
+        return new TimedSegment(
+                Arrays.copyOf(copy.xs, copy.pointsCount),
+                Arrays.copyOf(copy.ys, copy.pointsCount),
+                copy.timestamps,
+                copy.segmentCanvasWidth,
+                copy.segmentCanvasHeight,
+                copy.color,
+                copy.strokeWidth);
+    }
+
+    /**
+     * Checks if the copied stroke has not been changed since it was copied at the input strokes revision.
+     * Must be called while holding the drawing lock.
+     */
+    private boolean isStrokeUnchanged(@NonNull StrokeCopy copy, int revision) {
+        return revision == strokesRevision && copy.stroke < touchStrokesStore.getStrokesCount()
+                && touchStrokesStore.getStrokeEndPoint(copy.stroke) == copy.endPoint;
+    }
+
+    /**
+     * Keeps the curve fitted while building the segment of the copied stroke with the stroke, so it is
+     * not fitted again. Must be called while holding the drawing lock, only if the stroke is unchanged.
+     */
+    private void keepFittedCurve(@NonNull StrokeCopy copy) {
+        if (copy.shouldFitCurve) {
+            touchStrokesStore.setStrokeCurve(copy.stroke, copy.curve);
+        }
+    }
+
+    /**
+     * The segment of a stroke keeps the control points of its curve and its knots, or the points of
+     * the stroke if that would not be any larger
+     */
+    private static boolean isCurveSmaller(@NonNull CubicBezierStroke curve, int pointsCount) {
+        return curve.getControlPointsCount() + curve.getKnotsCount() < pointsCount;
+    }
+
+    /**
+     * Records a single touch point
+     *
+     * @param timestamp
+     *      The monotonic time of the touch point in milliseconds, as reported by {@link MotionEvent#getEventTime()}
+     * @return
+     *      The action the touch point was recorded with
+     */
+    private int addTouchPoint(float touchX, float touchY, long timestamp, int touchActionMasked) {
+        // Framework weird behavior, sending up or move action before down. We make sure this is not happening
+        if ((touchStrokesStore.isEmpty() || shouldStartNewStroke) && touchActionMasked != MotionEvent.ACTION_DOWN) {
+            touchActionMasked = MotionEvent.ACTION_DOWN;
+        }
+        shouldStartNewStroke = false;
+
+        boolean replacesLastPoint = false;
+        if (touchActionMasked == MotionEvent.ACTION_DOWN) {
+            touchStrokesStore.startStroke(timestamp, currentColorIndex, currentColorLightnessIndex,
+                    currentStrokeDPWidth, screenOrientation, canvasWidth, canvasHeight, buildCurrentPaint());
+            strokeSimplifier.startStroke(touchX, touchY, timestamp);
+        } else {
+            replacesLastPoint = strokeSimplifier.addPoint(touchX, touchY, timestamp);
+        }
+
+        if (replacesLastPoint) {
+            // The last point adds nothing to the stroke shape and timing
+            touchStrokesStore.replaceLastPoint(touchX, touchY, timestamp, touchActionMasked);
+        } else {
+            touchStrokesStore.addPoint(touchX, touchY, timestamp, touchActionMasked);
+        }
+        if (touchActionMasked == MotionEvent.ACTION_UP) {
+            strokeSimplifier.finishStroke();
+        }
+        return touchActionMasked;
+    }
+
+    private Paint buildCurrentPaint() {
+        return DrawingPaintBuilder.getPaint(
+
+                drawingColorsPalette.getColorWithLightness(
+                        currentColorIndex,
+                        currentColorLightnessIndex),
+
+                displayMetricsConverter.pixelsFromDp(currentStrokeDPWidth)
+        );
+    }
+
+    /**
+     * Adjusts all points of a stroke for the current canvas size and screen orientation and
+     * writes them into the reused adjusted points buffers
+     *
+     * @return
+     *      The number of points of the stroke
+     */
+    private int adjustForCurrentCanvas(int stroke) {
+        return mapStroke(stroke, canvasOrientationTransform);
+    }
+
+    /**
+     * Maps all points of a stroke with the input transform into the reused adjusted points buffers
+     *
+     * @return
+     *      The number of points of the stroke
+     */
+    private int mapStroke(int stroke, CanvasOrientationTransform transform) {
+        final int pointsCount = touchStrokesStore.getStrokeEndPoint(stroke) - touchStrokesStore.getStrokeFirstPoint(stroke);
+        if (adjustedXs.length < pointsCount) {
+            adjustedXs = new float[pointsCount];
+            adjustedYs = new float[pointsCount];
+        }
+        return touchStrokesStore.mapStroke(stroke, transform, adjustedXs, adjustedYs);
+    }
+
+    private void notifyDrawingStarted() {
+        if (listener != null) {
+            listener.onDrawingStarted();
+        }
+    }
+
+    private void notifyDrawingStopped() {
+        if (listener != null) {
+            listener.onDrawingStopped();
+        }
     }
 
     private void notifyDrawingProgressChanged() {
         if (listener != null) {
-            listener.onDrawingTimeProgressChanged(getDrawingProgress());
+            listener.onDrawingTimeProgressChanged(drawingProgress);
         }
     }
 }
@@ -0,0 +1,315 @@
+package app.anidro.modules.main;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import app.anidro.common.ScreenOrientationSensor;
+import app.anidro.models.TimedSegment;
+import app.anidro.renderers.SequentialTimeIndex;
+
+/**
+ * Keeps the segments already built from the strokes of the drawing, for a single canvas size and
+ * screen orientation. Segments are only appended or truncated, so the snapshots handed out share
+ * the array of the cache: a snapshot only sees the segments which existed when it was taken and the
+ * array is copied only when a truncation would let later segments overwrite a shared slot.
+ * <p/>
+ * The sequential start time and the duration of each segment are kept next to it, so the snapshots
+ * also serve as a {@link SequentialTimeIndex} for the {@link app.anidro.renderers.SequentialTimeNormalizer}.
+ * <p/>
+ * The cached segments may keep at most a given number of points. The least recently used segments
+ * are evicted when there are more, also from the snapshots sharing the array, and a snapshot builds
+ * an evicted segment again with its {@link SegmentLoader} when it is needed. Long drawings are then
+ * rendered with only the segments being drawn in memory.
+ */
+class TimedSegmentsCache {
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Builds the segments evicted from the cache again, on the thread of the snapshot needing them
+     */
+    interface SegmentLoader {
+        /**
+         * Builds the segment of a stroke for the input canvas, if the stroke still has the input
+         * start timestamp and duration
+         *
+         * @return
+         *      The segment, or null if the stroke has been changed or removed meanwhile
+         */
+        @Nullable
+        TimedSegment loadSegment(int stroke, long startTimestamp, long duration, int canvasWidth, int canvasHeight,
+                                 @Nullable ScreenOrientationSensor.ScreenOrientation screenOrientation);
+    }
+
+    private final int maxCachedPoints;
+    @Nullable
+    private final SegmentLoader segmentLoader;
+
+    private TimedSegment[] segments = new TimedSegment[INITIAL_CAPACITY];
+    private long[] sequentialStartTimes = new long[INITIAL_CAPACITY];
+    private long[] startTimestamps = new long[INITIAL_CAPACITY];
+    private long[] durations = new long[INITIAL_CAPACITY];
+    // When each segment was used last, to evict the least recently used ones first
+    private long[] lastUses = new long[INITIAL_CAPACITY];
+    private long usesCount;
+    private int cachedPoints;
+    private int size;
+    // If any handed out snapshot references the current array
+    private boolean shared;
+    @Nullable
+    private List<TimedSegment> lastSnapshot;
+
+    private int canvasWidth;
+    private int canvasHeight;
+    @Nullable
+    private ScreenOrientationSensor.ScreenOrientation screenOrientation;
+
+    /**
+     * Creates a cache keeping all segments
+     */
+    TimedSegmentsCache() {
+        this(Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * @param maxCachedPoints
+     *      The maximum number of points the cached segments may keep
+     * @param segmentLoader
+     *      Builds the evicted segments again when a snapshot needs them
+     */
+    TimedSegmentsCache(int maxCachedPoints, @Nullable SegmentLoader segmentLoader) {
+        this.maxCachedPoints = maxCachedPoints;
+        this.segmentLoader = segmentLoader;
+    }
+
+    /**
+     * Checks if the cached segments were built for the input canvas
+     */
+    synchronized boolean isBuiltFor(int canvasWidth, int canvasHeight,
+                                    @Nullable ScreenOrientationSensor.ScreenOrientation screenOrientation) {
+        return this.canvasWidth == canvasWidth
+                && this.canvasHeight == canvasHeight
+                && this.screenOrientation == screenOrientation;
+    }
+
+    /**
+     * Removes all segments and starts caching segments built for the input canvas
+     */
+    synchronized void reset(int canvasWidth, int canvasHeight,
+                            @Nullable ScreenOrientationSensor.ScreenOrientation screenOrientation) {
+        truncate(0);
+        this.canvasWidth = canvasWidth;
+        this.canvasHeight = canvasHeight;
+        this.screenOrientation = screenOrientation;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Appends a segment and evicts the least recently used segments if the cached ones keep too many points
+     *
+     * @param sequentialStartTime
+     *      The time in milliseconds at which the segment starts when all segments are drawn one after another
+     */
+    synchronized void add(@NonNull TimedSegment segment, long sequentialStartTime) {
+        if (size == segments.length) {
+            segments = Arrays.copyOf(segments, size * 2);
+            sequentialStartTimes = Arrays.copyOf(sequentialStartTimes, size * 2);
+            startTimestamps = Arrays.copyOf(startTimestamps, size * 2);
+            durations = Arrays.copyOf(durations, size * 2);
+            lastUses = Arrays.copyOf(lastUses, size * 2);
+            shared = false;
+        }
+        segments[size] = segment;
+        sequentialStartTimes[size] = sequentialStartTime;
+        startTimestamps[size] = segment.getStartTime();
+        durations[size] = segment.getDuration();
+        lastUses[size] = ++usesCount;
+        cachedPoints += getPointsCount(segment);
+        size++;
+        lastSnapshot = null;
+        evictLeastRecentlyUsed();
+    }
+
+    /**
+     * Removes the segments after the input size
+     */
+    synchronized void truncate(int newSize) {
+        if (newSize >= size) {
+            return;
+        }
+        if (shared) {
+            segments = Arrays.copyOf(segments, segments.length);
+            sequentialStartTimes = Arrays.copyOf(sequentialStartTimes, sequentialStartTimes.length);
+            startTimestamps = Arrays.copyOf(startTimestamps, startTimestamps.length);
+            durations = Arrays.copyOf(durations, durations.length);
+            shared = false;
+        }
+        for (int i = newSize; i < size; i++) {
+            if (segments[i] != null) {
+                cachedPoints -= getPointsCount(segments[i]);
+                segments[i] = null;
+            }
+        }
+        size = newSize;
+        lastSnapshot = null;
+    }
+
+    /**
+     * Evicts all cached segments. They are built again by the snapshots needing them.
+     */
+    synchronized void trimMemory() {
+        Arrays.fill(segments, 0, size, null);
+        cachedPoints = 0;
+    }
+
+    /**
+     * Returns an unmodifiable snapshot of the cached segments, which is not affected by any further changes
+     */
+    @NonNull
+    synchronized List<TimedSegment> snapshot() {
+        if (lastSnapshot == null) {
+            lastSnapshot = new Snapshot(this, segments, sequentialStartTimes, startTimestamps, durations, size,
+                    canvasWidth, canvasHeight, screenOrientation);
+            shared = true;
+        }
+        return lastSnapshot;
+    }
+
+    /**
+     * Returns the segment at the input index of the input snapshot array if it is still cached
+     */
+    @Nullable
+    private synchronized TimedSegment getCachedSegment(TimedSegment[] snapshotSegments, int index) {
+        final TimedSegment segment = snapshotSegments[index];
+        if (segment != null && snapshotSegments == segments) {
+            lastUses[index] = ++usesCount;
+        }
+        return segment;
+    }
+
+    /**
+     * Caches a segment loaded again for the input snapshot array, if the array is still the one of the cache
+     */
+    private synchronized void putLoadedSegment(TimedSegment[] snapshotSegments, int index, TimedSegment segment) {
+        if (snapshotSegments != segments || index >= size || segments[index] != null) {
+            return;
+        }
+        segments[index] = segment;
+        lastUses[index] = ++usesCount;
+        cachedPoints += getPointsCount(segment);
+        evictLeastRecentlyUsed();
+    }
+
+    /**
+     * Evicts the least recently used segments until the cached segments keep few enough points.
+     * The last used segment is always kept.
+     */
+    private void evictLeastRecentlyUsed() {
+        while (cachedPoints > maxCachedPoints) {
+            int leastRecentlyUsed = -1;
+            for (int i = 0; i < size; i++) {
+                if (segments[i] != null && lastUses[i] != usesCount
+                        && (leastRecentlyUsed < 0 || lastUses[i] < lastUses[leastRecentlyUsed])) {
+                    leastRecentlyUsed = i;
+                }
+            }
+            if (leastRecentlyUsed < 0) {
+                return;
+            }
+            cachedPoints -= getPointsCount(segments[leastRecentlyUsed]);
+            segments[leastRecentlyUsed] = null;
+        }
+    }
+
+    /**
+     * The memory of a segment is counted as the number of its points together with the control
+     * points of its curve
+     */
+    private static int getPointsCount(@NonNull TimedSegment segment) {
+        return segment.getPointsCount() + (segment.getCurve() != null ? segment.getCurve().getControlPointsCount() : 0);
+    }
+
+    private static class Snapshot extends AbstractList<TimedSegment>
+            implements RandomAccess, SequentialTimeIndex {
+        private static final TimedSegment EMPTY_SEGMENT =
+                new TimedSegment(new float[0], new float[0], new long[0], 0, 0, 0, 0);
+
+        private final TimedSegmentsCache cache;
+        private final TimedSegment[] segments;
+        private final long[] sequentialStartTimes;
+        private final long[] startTimestamps;
+        private final long[] durations;
+        private final int size;
+        private final int canvasWidth;
+        private final int canvasHeight;
+        @Nullable
+        private final ScreenOrientationSensor.ScreenOrientation screenOrientation;
+
+        Snapshot(TimedSegmentsCache cache, TimedSegment[] segments, long[] sequentialStartTimes,
+                 long[] startTimestamps, long[] durations, int size, int canvasWidth, int canvasHeight,
+                 @Nullable ScreenOrientationSensor.ScreenOrientation screenOrientation) {
+            this.cache = cache;
+            this.segments = segments;
+            this.sequentialStartTimes = sequentialStartTimes;
+            this.startTimestamps = startTimestamps;
+            this.durations = durations;
+            this.size = size;
+            this.canvasWidth = canvasWidth;
+            this.canvasHeight = canvasHeight;
+            this.screenOrientation = screenOrientation;
+        }
+
+        /**
+         * Returns the segment at the input index. An evicted segment is built again without holding
+         * any lock of the cache. If its stroke has been changed or removed meanwhile, an empty segment
+         * is returned, which is not drawn.
+         */
+        @Override
+        public TimedSegment get(int index) {
+            checkIndex(index);
+            final TimedSegment cachedSegment = cache.getCachedSegment(segments, index);
+            if (cachedSegment != null) {
+                return cachedSegment;
+            }
+            final TimedSegment loadedSegment = cache.segmentLoader != null
+                    ? cache.segmentLoader.loadSegment(index, startTimestamps[index], durations[index],
+                    canvasWidth, canvasHeight, screenOrientation)
+                    : null;
+            if (loadedSegment == null) {
+                return EMPTY_SEGMENT;
+            }
+            cache.putLoadedSegment(segments, index, loadedSegment);
+            return loadedSegment;
+        }
+
+        @Override
+        public long getSequentialStartTime(int segmentIndex) {
+            checkIndex(segmentIndex);
+            return sequentialStartTimes[segmentIndex];
+        }
+
+        @Override
+        public long getSegmentDuration(int segmentIndex) {
+            checkIndex(segmentIndex);
+            return durations[segmentIndex];
+        }
+
+        private void checkIndex(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+            }
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,557 @@
+package app.anidro.modules.main;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import timber.log.Timber;
+
+/**
+ * Stores the coordinates, times and actions of touch points in chunks of a fixed number of points,
+ * so the storage grows without copying the points stored so far. Points are addressed by their
+ * index over all chunks.
+ * <p/>
+ * The coordinates are 16 bit fixed point fractions of the canvas the point was drawn on, which
+ * cover half a canvas outside of each edge, see {@link #toFixedPoint(float)}. The time of a point
+ * is the 16 bit number of milliseconds after the previous point, so a point takes 7 bytes.
+ * <p/>
+ * All chunks are kept in memory until the system runs low on memory. Then {@link #trimMemory()}
+ * spills them to an app private file, and they are read back with {@link #readBackSpilledChunks()}
+ * or the next time any of their points is accessed. Each chunk has a fixed place in the file, so a
+ * chunk which was not changed since it was last spilled is not written again.
+ * <p/>
+ * The chunks are not thread safe, their owner guards them with a lock. So the owner does not hold
+ * the lock during the file I/O, spilling and reading back can also be done as a {@link Transfer}:
+ * the chunks are taken while holding the lock, written or read without holding it and only changed
+ * while holding it again, if they were not changed meanwhile.
+ * <p/>
+ * A chunk which cannot be read back is kept with all of its points set to zero, and its first point
+ * is reported by {@link #takeFirstLostPoint()}, so the owner can drop the points which were lost.
+ */
+class TouchPointChunks {
+    static final int CHUNK_SIZE = 2048;
+    private static final int CHUNK_SHIFT = 11;
+    /**
+     * The memory taken by the coordinates, time and action of a single point
+     */
+    static final int BYTES_PER_POINT = 2 + 2 + 2 + 1;
+    // The coordinates, time and action of all points of a chunk in the spill file
+    private static final int CHUNK_BYTES = CHUNK_SIZE * BYTES_PER_POINT;
+
+    /**
+     * The fixed point value of a whole canvas side
+     */
+    static final float FIXED_POINT_ONE = 0x8000;
+    /**
+     * The fraction of a canvas side stored as zero, so points up to half a canvas outside of its
+     * top and left edges can be stored
+     */
+    static final float FIXED_POINT_ORIGIN = 0.5f;
+    /**
+     * The longest time between two points in milliseconds, longer times are shortened to it
+     */
+    static final int MAX_TIME_DELTA = Character.MAX_VALUE;
+
+    private static class Chunk {
+        // Null while the chunk is spilled
+        @Nullable
+        char[] xs;
+        @Nullable
+        char[] ys;
+        @Nullable
+        char[] timeDeltas;
+        @Nullable
+        byte[] actions;
+        // If the spill file contains the current points of the chunk
+        boolean isSpilled;
+        // Changed whenever a point of the chunk is set
+        int version;
+
+        boolean isResident() {
+            return xs != null;
+        }
+
+        void allocate() {
+            xs = new char[CHUNK_SIZE];
+            ys = new char[CHUNK_SIZE];
+            timeDeltas = new char[CHUNK_SIZE];
+            actions = new byte[CHUNK_SIZE];
+        }
+
+        void release() {
+            xs = null;
+            ys = null;
+            timeDeltas = null;
+            actions = null;
+        }
+    }
+
+    private final List<Chunk> chunks = new ArrayList<>();
+    // The first point of the first chunk which could not be read back, or -1
+    private int firstLostPoint = -1;
+
+    @Nullable
+    private final File spillFile;
+    @Nullable
+    private FileChannel spillChannel;
+    @Nullable
+    private ByteBuffer spillBuffer;
+    // Set after the spill file failed, all chunks are kept in memory from then on
+    private boolean isSpillFileFailed;
+    // Changed whenever all chunks are released, so a transfer started before does not change the new ones
+    private int generation;
+
+    /**
+     * Spills chunks to the spill file or reads them back from it, without holding the lock of the
+     * owner of the chunks. It is started with {@link #startSpill()} or {@link #startReadBack()},
+     * {@link #run()} without the lock and finished with {@link #finishTransfer(Transfer)}.
+     */
+    static final class Transfer {
+        private final boolean isSpill;
+        private final int generation;
+        @NonNull
+        private final File spillFile;
+        @Nullable
+        private FileChannel channel;
+        // If the channel was opened by this transfer and is handed over to the chunks when it is finished
+        private boolean hasOpenedChannel;
+        private boolean isFailed;
+        private final List<ChunkCopy> copies = new ArrayList<>();
+
+        private Transfer(boolean isSpill, int generation, @NonNull File spillFile, @Nullable FileChannel channel) {
+            this.isSpill = isSpill;
+            this.generation = generation;
+            this.spillFile = spillFile;
+            this.channel = channel;
+        }
+
+        /**
+         * Writes the taken chunks to the spill file or reads them from it. Does not access the chunks
+         * themselves, so the lock of their owner must not be held.
+         */
+        void run() {
+            if (channel == null) {
+                try {
+                    final RandomAccessFile file = new RandomAccessFile(spillFile, "rw");
+                    file.setLength(0);
+                    channel = file.getChannel();
+                    hasOpenedChannel = true;
+                } catch (IOException e) {
+                    Timber.w(e, "Could not open the touch points spill file");
+                    isFailed = true;
+                    return;
+                }
+            }
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_BYTES);
+            for (int i = 0, size = copies.size(); i < size; i++) {
+                final ChunkCopy copy = copies.get(i);
+                if (copy.isTransferred) {
+                    continue;
+                }
+                try {
+                    if (isSpill) {
+                        putChunk(buffer, copy.xs, copy.ys, copy.timeDeltas, copy.actions);
+                        writeFully(channel, buffer, (long) copy.index * CHUNK_BYTES);
+                    } else {
+                        buffer.clear();
+                        readFully(channel, buffer, (long) copy.index * CHUNK_BYTES);
+                        copy.xs = new char[CHUNK_SIZE];
+                        copy.ys = new char[CHUNK_SIZE];
+                        copy.timeDeltas = new char[CHUNK_SIZE];
+                        copy.actions = new byte[CHUNK_SIZE];
+                        getChunk(buffer, copy.xs, copy.ys, copy.timeDeltas, copy.actions);
+                    }
+                    copy.isTransferred = true;
+                } catch (IOException e) {
+                    Timber.w(e, "Could not %s touch points chunk %d", isSpill ? "spill" : "read back", copy.index);
+                    isFailed = true;
+                    if (isSpill) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A chunk taken by a transfer, with the arrays written from or read into
+     */
+    private static final class ChunkCopy {
+        final int index;
+        @NonNull
+        final Chunk chunk;
+        final int version;
+        char[] xs;
+        char[] ys;
+        char[] timeDeltas;
+        byte[] actions;
+        boolean isTransferred;
+
+        ChunkCopy(int index, @NonNull Chunk chunk) {
+            this.index = index;
+            this.chunk = chunk;
+            this.version = chunk.version;
+        }
+    }
+
+    /**
+     * @param spillFile
+     *      The app private file chunks are spilled to, or null to keep all chunks in memory
+     */
+    TouchPointChunks(@Nullable File spillFile) {
+        this.spillFile = spillFile;
+    }
+
+    static int chunkOf(int point) {
+        return point >> CHUNK_SHIFT;
+    }
+
+    static int offsetOf(int point) {
+        return point & (CHUNK_SIZE - 1);
+    }
+
+    /**
+     * Converts a fraction of a canvas side to fixed point. Fractions outside of the range from
+     * -{@link #FIXED_POINT_ORIGIN} to 2 - {@link #FIXED_POINT_ORIGIN} are clamped to it.
+     */
+    static char toFixedPoint(float fraction) {
+        final int value = Math.round((fraction + FIXED_POINT_ORIGIN) * FIXED_POINT_ONE);
+        return (char) Math.max(0, Math.min(Character.MAX_VALUE, value));
+    }
+
+    /**
+     * Converts milliseconds between two points to the stored time delta
+     */
+    static char toTimeDelta(long milliseconds) {
+        return (char) Math.max(0, Math.min(MAX_TIME_DELTA, milliseconds));
+    }
+
+    /**
+     * Sets a point. Points can be set at any index up to the capacity, which grows by one chunk
+     * when the point right after it is set.
+     */
+    void set(int point, char x, char y, char timeDelta, byte action) {
+        final int chunkIndex = chunkOf(point);
+        if (chunkIndex == chunks.size()) {
+            final Chunk chunk = new Chunk();
+            chunk.allocate();
+            chunks.add(chunk);
+        }
+        final Chunk chunk = use(chunkIndex);
+        final int offset = offsetOf(point);
+        chunk.xs[offset] = x;
+        chunk.ys[offset] = y;
+        chunk.timeDeltas[offset] = timeDelta;
+        chunk.actions[offset] = action;
+        chunk.isSpilled = false;
+        chunk.version++;
+    }
+
+    /**
+     * Returns the milliseconds between a point and the previous one
+     */
+    int getTimeDelta(int point) {
+        return use(chunkOf(point)).timeDeltas[offsetOf(point)];
+    }
+
+    byte getAction(int point) {
+        return use(chunkOf(point)).actions[offsetOf(point)];
+    }
+
+    /**
+     * Returns the fixed point x coordinates of all points of a chunk. The array is valid until
+     * another chunk is accessed.
+     */
+    @NonNull
+    char[] getChunkXs(int chunkIndex) {
+        return use(chunkIndex).xs;
+    }
+
+    /**
+     * Returns the fixed point y coordinates of all points of a chunk. The array is valid until
+     * another chunk is accessed.
+     */
+    @NonNull
+    char[] getChunkYs(int chunkIndex) {
+        return use(chunkIndex).ys;
+    }
+
+    /**
+     * Returns the time deltas of all points of a chunk. The array is valid until another chunk is accessed.
+     */
+    @NonNull
+    char[] getChunkTimeDeltas(int chunkIndex) {
+        return use(chunkIndex).timeDeltas;
+    }
+
+    /**
+     * Releases the chunks which contain only points at or after the input index
+     */
+    void truncate(int pointsCount) {
+        final int chunksCount = (pointsCount + CHUNK_SIZE - 1) >> CHUNK_SHIFT;
+        for (int i = chunks.size() - 1; i >= chunksCount; i--) {
+            chunks.remove(i);
+        }
+        if (firstLostPoint >= pointsCount) {
+            firstLostPoint = -1;
+        }
+    }
+
+    /**
+     * Releases all chunks and deletes the spill file
+     */
+    void clear() {
+        chunks.clear();
+        firstLostPoint = -1;
+        generation++;
+        closeSpillFile();
+    }
+
+    /**
+     * Spills all chunks except the last one, which is still being written
+     */
+    void trimMemory() {
+        final Transfer spill = startSpill();
+        if (spill != null) {
+            spill.run();
+            finishTransfer(spill);
+        }
+    }
+
+    /**
+     * Reads all spilled chunks back into memory, so accessing their points does not wait for the spill file
+     */
+    void readBackSpilledChunks() {
+        final Transfer readBack = startReadBack();
+        if (readBack != null) {
+            readBack.run();
+            finishTransfer(readBack);
+        }
+    }
+
+    /**
+     * Takes all chunks in memory except the last one, which is still being written, for spilling
+     * them without holding the lock of the owner
+     *
+     * @return
+     *      The transfer to run, or null if there is nothing to spill or the chunks are kept in memory
+     */
+    @Nullable
+    Transfer startSpill() {
+        if (spillFile == null || isSpillFileFailed) {
+            return null;
+        }
+        Transfer spill = null;
+        for (int i = 0, last = chunks.size() - 1; i < last; i++) {
+            final Chunk chunk = chunks.get(i);
+            if (chunk.isResident()) {
+                if (spill == null) {
+                    spill = new Transfer(true, generation, spillFile, spillChannel);
+                }
+                // The arrays are written as they are, the chunk is kept if it is changed meanwhile
+                final ChunkCopy copy = new ChunkCopy(i, chunk);
+                copy.xs = chunk.xs;
+                copy.ys = chunk.ys;
+                copy.timeDeltas = chunk.timeDeltas;
+                copy.actions = chunk.actions;
+                copy.isTransferred = chunk.isSpilled;
+                spill.copies.add(copy);
+            }
+        }
+        return spill;
+    }
+
+    /**
+     * Takes all spilled chunks for reading them back without holding the lock of the owner
+     *
+     * @return
+     *      The transfer to run, or null if no chunk is spilled
+     */
+    @Nullable
+    Transfer startReadBack() {
+        if (spillFile == null || spillChannel == null) {
+            return null;
+        }
+        Transfer readBack = null;
+        for (int i = 0, size = chunks.size(); i < size; i++) {
+            final Chunk chunk = chunks.get(i);
+            if (!chunk.isResident()) {
+                if (readBack == null) {
+                    readBack = new Transfer(false, generation, spillFile, spillChannel);
+                }
+                readBack.copies.add(new ChunkCopy(i, chunk));
+            }
+        }
+        return readBack;
+    }
+
+    /**
+     * Releases the spilled chunks or keeps the chunks read back, unless they were changed or removed
+     * since the transfer was started. A chunk which could not be read back is kept with all of its
+     * points set to zero and remembered as lost.
+     */
+    void finishTransfer(@NonNull Transfer transfer) {
+        if (transfer.generation != generation) {
+            // All chunks were released meanwhile, together with the spill file
+            if (transfer.hasOpenedChannel && spillChannel == null) {
+                spillChannel = transfer.channel;
+                closeSpillFile();
+            }
+            return;
+        }
+        if (transfer.hasOpenedChannel) {
+            spillChannel = transfer.channel;
+            spillBuffer = ByteBuffer.allocateDirect(CHUNK_BYTES);
+        }
+        if (transfer.isFailed) {
+            // Keep all chunks in memory from now on
+            isSpillFileFailed = true;
+        }
+        for (int i = 0, size = transfer.copies.size(); i < size; i++) {
+            final ChunkCopy copy = transfer.copies.get(i);
+            if (copy.index >= chunks.size() || chunks.get(copy.index) != copy.chunk) {
+                continue;
+            }
+            final Chunk chunk = copy.chunk;
+            if (transfer.isSpill) {
+                if (copy.isTransferred && chunk.version == copy.version && chunk.isResident()) {
+                    chunk.isSpilled = true;
+                    chunk.release();
+                }
+            } else if (!chunk.isResident()) {
+                if (copy.isTransferred) {
+                    chunk.xs = copy.xs;
+                    chunk.ys = copy.ys;
+                    chunk.timeDeltas = copy.timeDeltas;
+                    chunk.actions = copy.actions;
+                    chunk.isSpilled = true;
+                } else {
+                    chunk.allocate();
+                    chunk.isSpilled = false;
+                    markLost(copy.index);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the first point of the first chunk which could not be read back from the spill file
+     * since the last call, or -1 if all chunks were read back. The points of such a chunk are all zero.
+     */
+    int takeFirstLostPoint() {
+        final int point = firstLostPoint;
+        firstLostPoint = -1;
+        return point;
+    }
+
+    /**
+     * Returns the resident chunk, reading it back from the spill file if needed
+     */
+    @NonNull
+    private Chunk use(int chunkIndex) {
+        final Chunk chunk = chunks.get(chunkIndex);
+        if (!chunk.isResident()) {
+            chunk.allocate();
+            read(chunkIndex, chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Reads the points of a chunk from the spill file. If they cannot be read, the chunk keeps
+     * its zero points and is remembered as lost.
+     */
+    private void read(int chunkIndex, @NonNull Chunk chunk) {
+        chunk.isSpilled = false;
+        final ByteBuffer buffer = spillBuffer;
+        buffer.clear();
+        try {
+            readFully(spillChannel, buffer, (long) chunkIndex * CHUNK_BYTES);
+        } catch (IOException e) {
+            // Keep all chunks in memory from now on
+            Timber.w(e, "Could not read spilled touch points chunk %d", chunkIndex);
+            isSpillFileFailed = true;
+            markLost(chunkIndex);
+            return;
+        }
+        chunk.isSpilled = true;
+        getChunk(buffer, chunk.xs, chunk.ys, chunk.timeDeltas, chunk.actions);
+    }
+
+    private void markLost(int chunkIndex) {
+        final int point = chunkIndex << CHUNK_SHIFT;
+        if (firstLostPoint < 0 || point < firstLostPoint) {
+            firstLostPoint = point;
+        }
+    }
+
+    /**
+     * Puts the points of a chunk into the buffer, ready to be written
+     */
+    private static void putChunk(@NonNull ByteBuffer buffer, char[] xs, char[] ys, char[] timeDeltas, byte[] actions) {
+        buffer.clear();
+        buffer.asCharBuffer().put(xs);
+        buffer.position(buffer.position() + CHUNK_SIZE * 2);
+        buffer.asCharBuffer().put(ys);
+        buffer.position(buffer.position() + CHUNK_SIZE * 2);
+        buffer.asCharBuffer().put(timeDeltas);
+        buffer.position(buffer.position() + CHUNK_SIZE * 2);
+        buffer.put(actions);
+        buffer.flip();
+    }
+
+    /**
+     * Gets the points of a chunk from the buffer which was read into
+     */
+    private static void getChunk(@NonNull ByteBuffer buffer, char[] xs, char[] ys, char[] timeDeltas, byte[] actions) {
+        buffer.flip();
+        buffer.asCharBuffer().get(xs);
+        buffer.position(buffer.position() + CHUNK_SIZE * 2);
+        buffer.asCharBuffer().get(ys);
+        buffer.position(buffer.position() + CHUNK_SIZE * 2);
+        buffer.asCharBuffer().get(timeDeltas);
+        buffer.position(buffer.position() + CHUNK_SIZE * 2);
+        buffer.get(actions);
+    }
+
+    private void closeSpillFile() {
+        if (spillChannel == null) {
+            return;
+        }
+        try {
+            spillChannel.close();
+        } catch (IOException e) {
+            Timber.w(e, "Could not close the touch points spill file");
+        }
+        spillChannel = null;
+        spillBuffer = null;
+        if (spillFile != null && !spillFile.delete()) {
+            Timber.w("Could not delete the touch points spill file");
+        }
+    }
+
+    private static void writeFully(@NonNull FileChannel channel, @NonNull ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(@NonNull FileChannel channel, @NonNull ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of the spill file");
+            }
+            position += read;
+        }
+    }
+}
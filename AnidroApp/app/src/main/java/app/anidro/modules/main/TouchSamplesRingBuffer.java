@@ -0,0 +1,105 @@
+package app.anidro.modules.main;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded lock-free queue of raw touch samples between a single producer thread and a single
+ * consumer at a time. The samples are kept in primitive arrays used as a ring, so enqueuing a sample
+ * neither allocates nor blocks.
+ * <p/>
+ * The producer only writes the tail and the consumer only writes the head. Each side publishes its
+ * index with an ordered write after it is done with the slots, which makes the slots written before
+ * visible to the other side.
+ * <p/>
+ * Samples may be drained from several threads, as long as the calls to {@link #drain(Consumer)} are
+ * serialized by a lock. The lock also makes the head written by the previous consumer visible to the
+ * next one.
+ */
+class TouchSamplesRingBuffer {
+
+    /**
+     * Receives the samples taken from the ring buffer
+     */
+    interface Consumer {
+        void onTouchSample(float x, float y, long timestamp, int touchActionMasked);
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final float[] xs;
+    private final float[] ys;
+    private final long[] timestamps;
+    private final byte[] actions;
+
+    // The index of the next sample to take, written only by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // The index of the next sample to put, written only by the producer
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity
+     *      The maximum number of queued samples, must be a power of two
+     */
+    TouchSamplesRingBuffer(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("The capacity must be a power of two, but was " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.xs = new float[capacity];
+        this.ys = new float[capacity];
+        this.timestamps = new long[capacity];
+        this.actions = new byte[capacity];
+    }
+
+    /**
+     * Puts a sample at the end of the queue. May only be called by the single producer thread.
+     *
+     * @return
+     *      False if the queue is full and the sample was not put
+     */
+    boolean offer(float x, float y, long timestamp, int touchActionMasked) {
+        final long currentTail = tail.get();
+        if (currentTail - head.get() == capacity) {
+            return false;
+        }
+        final int index = (int) currentTail & mask;
+        xs[index] = x;
+        ys[index] = y;
+        timestamps[index] = timestamp;
+        actions[index] = (byte) touchActionMasked;
+        tail.lazySet(currentTail + 1);
+        return true;
+    }
+
+    /**
+     * Takes all queued samples in order. Calls from different threads must be serialized by a lock.
+     *
+     * @return
+     *      The number of taken samples
+     */
+    int drain(@NonNull Consumer consumer) {
+        final long currentHead = head.get();
+        final long currentTail = tail.get();
+        for (long i = currentHead; i < currentTail; i++) {
+            final int index = (int) i & mask;
+            consumer.onTouchSample(xs[index], ys[index], timestamps[index], actions[index]);
+        }
+        head.lazySet(currentTail);
+        return (int) (currentTail - currentHead);
+    }
+
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    /**
+     * Returns the number of samples which can be put before the queue is full. May only be called
+     * by the single producer thread, as the room can only grow meanwhile.
+     */
+    int remainingCapacity() {
+        return capacity - (int) (tail.get() - head.get());
+    }
+}
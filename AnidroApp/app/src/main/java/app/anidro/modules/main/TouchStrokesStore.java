@@ -0,0 +1,489 @@
+package app.anidro.modules.main;
+
+import android.graphics.Paint;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.Arrays;
+
+import app.anidro.common.ScreenOrientationSensor;
+import app.anidro.models.CubicBezierStroke;
+
+/**
+ * Stores the touch input of a drawing in primitive arrays. The points of all strokes are kept one
+ * after another in {@link TouchPointChunks}, which spills them to a file when there are too many
+ * to keep in memory, and the properties shared by all points of a stroke are kept once per stroke
+ * in a table of strokes. A stroke starts
+ * with an {@link android.view.MotionEvent#ACTION_DOWN} point and ends right before the next one.
+ * <p/>
+ * The coordinates of each point are kept as fixed point fractions of the canvas of its stroke and
+ * the time of each point as milliseconds after the previous point of its stroke, see
+ * {@link TouchPointChunks}. Scaling the points to any canvas is done while mapping them and never
+ * changes the stored points. The duration of each stroke is kept in the table of strokes, so the
+ * times of single points are only needed when all points of a stroke are scanned.
+ * <p/>
+ * The drawing time at the start of each stroke is indexed as the sum of the durations of all
+ * previous strokes and the pauses between them, so the drawing time at any stroke and the total
+ * drawing time are known in constant time, also after undo and redo.
+ * <p/>
+ * The curve fitted through the points of a stroke can be kept with the stroke, in the pixels of the
+ * canvas of the stroke, so it is fitted once and only mapped onto every new canvas. It is dropped
+ * when points are added to the stroke.
+ * <p/>
+ * Undoing a stroke only moves the end of the stored strokes and points back, the undone strokes
+ * stay in the chunks after the end, so redoing them moves the end forward again. Both take
+ * constant time. Adding any new input discards the undone strokes.
+ */
+class TouchStrokesStore {
+    private static final int INITIAL_STROKES_CAPACITY = 16;
+    private static final byte NO_ORIENTATION = -1;
+    private static final ScreenOrientationSensor.ScreenOrientation[] ORIENTATIONS =
+            ScreenOrientationSensor.ScreenOrientation.values();
+
+    /* Points */
+    private final TouchPointChunks points;
+    private int pointsCount;
+
+    /* Strokes */
+    private int[] strokeFirstPoints = new int[INITIAL_STROKES_CAPACITY];
+    private long[] strokeStartTimestamps = new long[INITIAL_STROKES_CAPACITY];
+    private int[] strokeColorIndexes = new int[INITIAL_STROKES_CAPACITY];
+    private int[] strokeColorLightnessIndexes = new int[INITIAL_STROKES_CAPACITY];
+    private int[] strokeDPWidths = new int[INITIAL_STROKES_CAPACITY];
+    private byte[] strokeOrientations = new byte[INITIAL_STROKES_CAPACITY];
+    private int[] strokeCanvasWidths = new int[INITIAL_STROKES_CAPACITY];
+    private int[] strokeCanvasHeights = new int[INITIAL_STROKES_CAPACITY];
+    // The paints of the strokes, built once when a stroke is started
+    private Paint[] strokePaints = new Paint[INITIAL_STROKES_CAPACITY];
+    // The curves fitted through the points of the strokes on their own canvas, if already fitted
+    private CubicBezierStroke[] strokeCurves = new CubicBezierStroke[INITIAL_STROKES_CAPACITY];
+    // The milliseconds between the first and the last point of each stroke
+    private int[] strokeDurations = new int[INITIAL_STROKES_CAPACITY];
+    // The drawing time in milliseconds at the start of each stroke
+    private long[] strokeStartDrawingTimes = new long[INITIAL_STROKES_CAPACITY];
+    private int strokesCount;
+    private final long pauseBetweenStrokes;
+
+    /* Redo history */
+    // The strokes and points count including the undone strokes which can be redone,
+    // only valid while there are more strokes than the current ones
+    private int redoStrokesCount;
+    private int redoPointsCount;
+    // The maximum memory of the undone points kept for redo
+    private long maxRedoMemory = Long.MAX_VALUE;
+
+    /**
+     * @param pauseBetweenStrokes
+     *      The drawing time in milliseconds added between two strokes
+     * @param spillFile
+     *      The app private file points are spilled to, or null to keep all points in memory
+     */
+    TouchStrokesStore(long pauseBetweenStrokes, @Nullable File spillFile) {
+        this.pauseBetweenStrokes = pauseBetweenStrokes;
+        this.points = new TouchPointChunks(spillFile);
+    }
+
+    /**
+     * Starts a new stroke. The following points up to the next started stroke belong to it.
+     *
+     * @param startTimestamp
+     *      The timestamp of the first point of the stroke
+     * @return
+     *      The index of the new stroke
+     */
+    int startStroke(long startTimestamp, int colorIndex, int colorLightnessIndex, int strokeDPWidth,
+                    @Nullable ScreenOrientationSensor.ScreenOrientation screenOrientation,
+                    int canvasWidth, int canvasHeight, @NonNull Paint paint) {
+        discardUndoneStrokes();
+        if (strokesCount == strokeFirstPoints.length) {
+            growStrokes();
+        }
+
+        final int stroke = strokesCount++;
+        strokeFirstPoints[stroke] = pointsCount;
+        strokeStartTimestamps[stroke] = startTimestamp;
+        strokeColorIndexes[stroke] = colorIndex;
+        strokeColorLightnessIndexes[stroke] = colorLightnessIndex;
+        strokeDPWidths[stroke] = strokeDPWidth;
+        strokeOrientations[stroke] = screenOrientation != null ? (byte) screenOrientation.ordinal() : NO_ORIENTATION;
+        strokeCanvasWidths[stroke] = canvasWidth;
+        strokeCanvasHeights[stroke] = canvasHeight;
+        strokePaints[stroke] = paint;
+        strokeCurves[stroke] = null;
+        strokeDurations[stroke] = 0;
+        strokeStartDrawingTimes[stroke] = stroke > 0 ? getStrokeEndDrawingTime(stroke - 1) + pauseBetweenStrokes : 0;
+        return stroke;
+    }
+
+    /**
+     * Adds a point to the last started stroke
+     */
+    void addPoint(float x, float y, long timestamp, int touchEventAction) {
+        if (strokesCount == 0) {
+            throw new IllegalStateException("Cannot add a point without a started stroke");
+        }
+        discardUndoneStrokes();
+        final int stroke = strokesCount - 1;
+        final char timeDelta = pointsCount > strokeFirstPoints[stroke]
+                ? TouchPointChunks.toTimeDelta(timestamp - strokeStartTimestamps[stroke] - strokeDurations[stroke])
+                : 0;
+        points.set(pointsCount,
+                TouchPointChunks.toFixedPoint(x / Math.max(1, strokeCanvasWidths[stroke])),
+                TouchPointChunks.toFixedPoint(y / Math.max(1, strokeCanvasHeights[stroke])),
+                timeDelta, (byte) touchEventAction);
+        strokeDurations[stroke] += timeDelta;
+        strokeCurves[stroke] = null;
+        pointsCount++;
+    }
+
+    /**
+     * Replaces the last point of the last started stroke. The first point of a stroke is never replaced.
+     */
+    void replaceLastPoint(float x, float y, long timestamp, int touchEventAction) {
+        if (strokesCount == 0 || pointsCount - 1 <= strokeFirstPoints[strokesCount - 1]) {
+            throw new IllegalStateException("No point to replace in the last stroke");
+        }
+        pointsCount--;
+        strokeDurations[strokesCount - 1] -= points.getTimeDelta(pointsCount);
+        addPoint(x, y, timestamp, touchEventAction);
+    }
+
+    /**
+     * Removes the last stroke together with all of its points and keeps it for redo, as long as
+     * the undone strokes fit into the redo memory limit
+     */
+    void undoLastStroke() {
+        if (strokesCount == 0) {
+            return;
+        }
+        if (redoStrokesCount <= strokesCount) {
+            // Nothing undone yet, the current end becomes the end of the redo history
+            redoStrokesCount = strokesCount;
+            redoPointsCount = pointsCount;
+        }
+        strokesCount--;
+        pointsCount = strokeFirstPoints[strokesCount];
+
+        // Forget the undone strokes which would be redone last
+        while (redoStrokesCount > strokesCount
+                && (long) (redoPointsCount - pointsCount) * TouchPointChunks.BYTES_PER_POINT > maxRedoMemory) {
+            redoStrokesCount--;
+            redoPointsCount = strokeFirstPoints[redoStrokesCount];
+            strokePaints[redoStrokesCount] = null;
+            strokeCurves[redoStrokesCount] = null;
+        }
+        points.truncate(redoPointsCount);
+    }
+
+    /**
+     * Restores the last undone stroke
+     *
+     * @return
+     *      False if there is no undone stroke to restore
+     */
+    boolean redoStroke() {
+        if (strokesCount >= redoStrokesCount) {
+            return false;
+        }
+        strokesCount++;
+        pointsCount = strokesCount < redoStrokesCount ? strokeFirstPoints[strokesCount] : redoPointsCount;
+        return true;
+    }
+
+    boolean canRedo() {
+        return strokesCount < redoStrokesCount;
+    }
+
+    /**
+     * Sets the maximum memory in bytes the points of the undone strokes may take. The undone
+     * strokes which would be redone last are forgotten first when the limit is exceeded.
+     */
+    void setMaxRedoMemory(long maxRedoMemory) {
+        this.maxRedoMemory = Math.max(0, maxRedoMemory);
+    }
+
+    void clear() {
+        Arrays.fill(strokePaints, 0, Math.max(strokesCount, redoStrokesCount), null);
+        Arrays.fill(strokeCurves, 0, Math.max(strokesCount, redoStrokesCount), null);
+        strokesCount = 0;
+        pointsCount = 0;
+        redoStrokesCount = 0;
+        redoPointsCount = 0;
+        points.clear();
+    }
+
+    /**
+     * Spills the points which are not being drawn to the spill file
+     */
+    void trimMemory() {
+        points.trimMemory();
+    }
+
+    /**
+     * Reads all spilled points back into memory
+     */
+    void readBackSpilledPoints() {
+        points.readBackSpilledChunks();
+    }
+
+    /**
+     * Takes the points which are not being drawn for spilling them without holding the lock guarding
+     * the store, see {@link TouchPointChunks.Transfer}
+     *
+     * @return
+     *      The transfer to run, or null if there is nothing to spill
+     */
+    @Nullable
+    TouchPointChunks.Transfer startSpill() {
+        return points.startSpill();
+    }
+
+    /**
+     * Takes the spilled points for reading them back without holding the lock guarding the store
+     *
+     * @return
+     *      The transfer to run, or null if no points are spilled
+     */
+    @Nullable
+    TouchPointChunks.Transfer startReadBack() {
+        return points.startReadBack();
+    }
+
+    /**
+     * Applies a spill or a read back run without holding the lock guarding the store. The strokes
+     * with points which could not be read back are dropped with {@link #dropLostStrokes()}.
+     */
+    void finishTransfer(@NonNull TouchPointChunks.Transfer transfer) {
+        points.finishTransfer(transfer);
+    }
+
+    /**
+     * Removes the stroke with the first point which could not be read back from the spill file,
+     * together with all strokes after it, including the undone ones. Their points are lost.
+     *
+     * @return
+     *      True if any current strokes were removed
+     */
+    boolean dropLostStrokes() {
+        final int firstLostPoint = points.takeFirstLostPoint();
+        final int storedStrokesCount = Math.max(strokesCount, redoStrokesCount);
+        final int storedPointsCount = redoStrokesCount > strokesCount ? redoPointsCount : pointsCount;
+        if (firstLostPoint < 0 || firstLostPoint >= storedPointsCount) {
+            return false;
+        }
+        int lostStroke = 0;
+        while (lostStroke + 1 < storedStrokesCount && strokeFirstPoints[lostStroke + 1] <= firstLostPoint) {
+            lostStroke++;
+        }
+        Arrays.fill(strokePaints, lostStroke, storedStrokesCount, null);
+        Arrays.fill(strokeCurves, lostStroke, storedStrokesCount, null);
+
+        final boolean hasDroppedCurrentStrokes = lostStroke < strokesCount;
+        if (hasDroppedCurrentStrokes) {
+            strokesCount = lostStroke;
+            pointsCount = strokeFirstPoints[lostStroke];
+        }
+        redoStrokesCount = lostStroke;
+        redoPointsCount = strokeFirstPoints[lostStroke];
+        points.truncate(redoPointsCount);
+        return hasDroppedCurrentStrokes;
+    }
+
+    boolean isEmpty() {
+        return pointsCount == 0;
+    }
+
+    int getPointsCount() {
+        return pointsCount;
+    }
+
+    int getAction(int point) {
+        return points.getAction(point);
+    }
+
+    long getLastTimestamp() {
+        return strokeStartTimestamps[strokesCount - 1] + strokeDurations[strokesCount - 1];
+    }
+
+    int getStrokesCount() {
+        return strokesCount;
+    }
+
+    int getStrokeFirstPoint(int stroke) {
+        return strokeFirstPoints[stroke];
+    }
+
+    /**
+     * Returns the index after the last point of a stroke
+     */
+    int getStrokeEndPoint(int stroke) {
+        return stroke + 1 < strokesCount ? strokeFirstPoints[stroke + 1] : pointsCount;
+    }
+
+    long getStrokeStartTimestamp(int stroke) {
+        return strokeStartTimestamps[stroke];
+    }
+
+    /**
+     * Returns the drawing time in milliseconds at the start of a stroke
+     */
+    long getStrokeStartDrawingTime(int stroke) {
+        return strokeStartDrawingTimes[stroke];
+    }
+
+    /**
+     * Returns the drawing time in milliseconds at the end of a stroke
+     */
+    long getStrokeEndDrawingTime(int stroke) {
+        return strokeStartDrawingTimes[stroke] + strokeDurations[stroke];
+    }
+
+    /**
+     * Returns the total drawing time of all strokes in milliseconds
+     */
+    long getDrawingTime() {
+        return strokesCount > 0 ? getStrokeEndDrawingTime(strokesCount - 1) : 0;
+    }
+
+    /**
+     * Returns the drawing time at which the next stroke starts, after the pause between strokes
+     */
+    long getNextStrokeStartDrawingTime() {
+        return strokesCount > 0 ? getDrawingTime() + pauseBetweenStrokes : 0;
+    }
+
+    int getStrokeColorIndex(int stroke) {
+        return strokeColorIndexes[stroke];
+    }
+
+    int getStrokeColorLightnessIndex(int stroke) {
+        return strokeColorLightnessIndexes[stroke];
+    }
+
+    int getStrokeDPWidth(int stroke) {
+        return strokeDPWidths[stroke];
+    }
+
+    @Nullable
+    ScreenOrientationSensor.ScreenOrientation getStrokeOrientation(int stroke) {
+        final byte orientation = strokeOrientations[stroke];
+        return orientation != NO_ORIENTATION ? ORIENTATIONS[orientation] : null;
+    }
+
+    int getStrokeCanvasWidth(int stroke) {
+        return strokeCanvasWidths[stroke];
+    }
+
+    int getStrokeCanvasHeight(int stroke) {
+        return strokeCanvasHeights[stroke];
+    }
+
+    /**
+     * Returns the paint of a stroke. It is shared with the segments of the drawing
+     * snapshots, so it must not be changed.
+     */
+    @NonNull
+    Paint getStrokePaint(int stroke) {
+        return strokePaints[stroke];
+    }
+
+    /**
+     * Returns the curve kept for a stroke, or null if there is none
+     */
+    @Nullable
+    CubicBezierStroke getStrokeCurve(int stroke) {
+        return strokeCurves[stroke];
+    }
+
+    /**
+     * Keeps the curve fitted through all current points of a stroke, in the pixels of the
+     * canvas of the stroke
+     */
+    void setStrokeCurve(int stroke, @Nullable CubicBezierStroke curve) {
+        strokeCurves[stroke] = curve;
+    }
+
+    /**
+     * Drops the curves kept for all strokes, including the undone ones
+     */
+    void clearStrokeCurves() {
+        Arrays.fill(strokeCurves, null);
+    }
+
+    /**
+     * Maps all points of a stroke from its canvas onto the current canvas of the input transform,
+     * one chunk of points at a time
+     *
+     * @return
+     *      The number of mapped points
+     */
+    int mapStroke(int stroke, @NonNull CanvasOrientationTransform transform,
+                  @NonNull float[] outXs, @NonNull float[] outYs) {
+        final int firstPoint = strokeFirstPoints[stroke];
+        final int endPoint = getStrokeEndPoint(stroke);
+        final ScreenOrientationSensor.ScreenOrientation orientation = getStrokeOrientation(stroke);
+        for (int point = firstPoint; point < endPoint; ) {
+            final int chunk = TouchPointChunks.chunkOf(point);
+            final int offset = TouchPointChunks.offsetOf(point);
+            final int count = Math.min(endPoint - point, TouchPointChunks.CHUNK_SIZE - offset);
+            transform.map(orientation, strokeCanvasWidths[stroke], strokeCanvasHeights[stroke],
+                    points.getChunkXs(chunk), points.getChunkYs(chunk), offset, count,
+                    outXs, outYs, point - firstPoint);
+            point += count;
+        }
+        return endPoint - firstPoint;
+    }
+
+    /**
+     * Writes the timestamps of all points of a stroke into the input array, one chunk of points at a time
+     *
+     * @return
+     *      The number of points of the stroke
+     */
+    int getStrokeTimestamps(int stroke, @NonNull long[] outTimestamps) {
+        final int firstPoint = strokeFirstPoints[stroke];
+        final int endPoint = getStrokeEndPoint(stroke);
+        long timestamp = strokeStartTimestamps[stroke];
+        for (int point = firstPoint; point < endPoint; ) {
+            final int offset = TouchPointChunks.offsetOf(point);
+            final int count = Math.min(endPoint - point, TouchPointChunks.CHUNK_SIZE - offset);
+            final char[] timeDeltas = points.getChunkTimeDeltas(TouchPointChunks.chunkOf(point));
+            for (int i = 0; i < count; i++) {
+                timestamp += timeDeltas[offset + i];
+                outTimestamps[point - firstPoint + i] = timestamp;
+            }
+            point += count;
+        }
+        return endPoint - firstPoint;
+    }
+
+    /**
+     * Forgets all undone strokes, as new input is added in their place
+     */
+    private void discardUndoneStrokes() {
+        if (redoStrokesCount > strokesCount) {
+            Arrays.fill(strokePaints, strokesCount, redoStrokesCount, null);
+            Arrays.fill(strokeCurves, strokesCount, redoStrokesCount, null);
+            points.truncate(pointsCount);
+        }
+        redoStrokesCount = strokesCount;
+    }
+
+    private void growStrokes() {
+        final int capacity = strokeFirstPoints.length * 2;
+        strokeFirstPoints = Arrays.copyOf(strokeFirstPoints, capacity);
+        strokeStartTimestamps = Arrays.copyOf(strokeStartTimestamps, capacity);
+        strokeColorIndexes = Arrays.copyOf(strokeColorIndexes, capacity);
+        strokeColorLightnessIndexes = Arrays.copyOf(strokeColorLightnessIndexes, capacity);
+        strokeDPWidths = Arrays.copyOf(strokeDPWidths, capacity);
+        strokeOrientations = Arrays.copyOf(strokeOrientations, capacity);
+        strokeCanvasWidths = Arrays.copyOf(strokeCanvasWidths, capacity);
+        strokeCanvasHeights = Arrays.copyOf(strokeCanvasHeights, capacity);
+        strokePaints = Arrays.copyOf(strokePaints, capacity);
+        strokeCurves = Arrays.copyOf(strokeCurves, capacity);
+        strokeDurations = Arrays.copyOf(strokeDurations, capacity);
+        strokeStartDrawingTimes = Arrays.copyOf(strokeStartDrawingTimes, capacity);
+    }
+}
@@ -178,30 +178,32 @@ public class DrawingAnimationView extends TextureView implements TextureView.Sur
                 currentFrameDrawTime = System.currentTimeMillis();
 
                 if (surface.isAvailable()) {
-                    final Canvas canvas = surface.lockCanvas(null);
-                    try {
-                        // Clear canvas
-                        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+                    // Check if we have to reset the renderer
+                    if (!fixedFrameRateRenderer.hasNextFrame()) {
+                        fixedFrameRateRenderer.resetRenderer();
+                    }
 
-                        // Check if we have to reset the renderer
-                        if (!fixedFrameRateRenderer.hasNextFrame()) {
-                            fixedFrameRateRenderer.resetRenderer();
+                    // Render the frame and draw it on the canvas only if it has changed,
+                    // so that still frames like the final frame delay do not cost a buffer swap
+                    fixedFrameRateRenderer.renderNextFrame();
+                    if (fixedFrameRateRenderer.hasCurrentFrameChanged()) {
+                        final Canvas canvas = surface.lockCanvas(null);
+                        try {
+                            // Clear canvas
+                            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+                            canvas.drawBitmap(fixedFrameRateRenderer.getCurrentFrame(), 0, 0, null);
+                        } finally {
+                            surface.unlockCanvasAndPost(canvas);
                         }
+                    }
 
-                        // Render the frame and draw it on the canvas
-                        fixedFrameRateRenderer.renderNextFrame();
-                        canvas.drawBitmap(fixedFrameRateRenderer.getCurrentFrame(), 0, 0, null);
-
-                        currentFrameDrawTime = System.currentTimeMillis() - currentFrameDrawTime;
+                    currentFrameDrawTime = System.currentTimeMillis() - currentFrameDrawTime;
 
-                        // Decide on sleep time
-                        if (!fixedFrameRateRenderer.hasNextFrame() && !loop) {
-                            break;
-                        }
-                        sleepTime = frameLength - currentFrameDrawTime;
-                    } finally {
-                        surface.unlockCanvasAndPost(canvas);
+                    // Decide on sleep time
+                    if (!fixedFrameRateRenderer.hasNextFrame() && !loop) {
+                        break;
                     }
+                    sleepTime = frameLength - currentFrameDrawTime;
                 } else {
                     sleepTime = 100;
                 }
@@ -78,16 +78,21 @@ public class DrawingView extends View {
 
     @Override
     public boolean onTouchEvent(@NonNull MotionEvent event) {
+        // The delegate records all touch points of the event at once
+        if (!drawingDelegate.onTouchEvent(event)) {
+            return true;
+        }
 
         // Check if we have missed any move events
         if (event.getHistorySize() > 0 && event.getActionMasked() == MotionEvent.ACTION_MOVE) {
             for (int i = 0; i < event.getHistorySize(); i++) {
-                processTouchEvent(event.getHistoricalX(i), event.getHistoricalY(i), MotionEvent.ACTION_MOVE);
+                drawTouchPoint(event.getHistoricalX(i), event.getHistoricalY(i), MotionEvent.ACTION_MOVE);
             }
         }
 
-        // Process the current event
-        processTouchEvent(event.getX(), event.getY(), event.getActionMasked());
+        // Draw the current event
+        drawTouchPoint(event.getX(), event.getY(), event.getActionMasked());
+        invalidate();
 
         return true;
     }
@@ -126,40 +131,35 @@ public class DrawingView extends View {
     }
 
     /**
-     * Processes a touch event if the delegate recognizes it as a valid drawing event
+     * Draws a touch point of a touch event recognized by the delegate as a valid drawing event
      */
-    private void processTouchEvent(float touchX, float touchY, int touchActionMasked) {
-        if (drawingDelegate.onTouchEvent(touchX, touchY, touchActionMasked)) {
+    private void drawTouchPoint(float touchX, float touchY, int touchActionMasked) {
+        if (lastTouchPoint == null) {
+            // in case lastTouchPoint is null and
+            // action down is skipped for some reason.
+            lastTouchPoint = new PointF(touchX, touchY);
+        }
 
-            if (lastTouchPoint == null) {
-                // in case lastTouchPoint is null and
-                // action down is skipped for some reason.
+        switch (touchActionMasked) {
+            case MotionEvent.ACTION_DOWN:
                 lastTouchPoint = new PointF(touchX, touchY);
-            }
-
-            switch (touchActionMasked) {
-                case MotionEvent.ACTION_DOWN:
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (lastTouchPoint.equals(touchX, touchY)) {
+                    drawCanvas.drawPoint(lastTouchPoint.x, lastTouchPoint.y, drawPaint);
+                } else {
+                    drawCanvas.drawLine(lastTouchPoint.x, lastTouchPoint.y, touchX, touchY, drawPaint);
                     lastTouchPoint = new PointF(touchX, touchY);
-                    break;
-                case MotionEvent.ACTION_MOVE:
-                    if (lastTouchPoint.equals(touchX, touchY)) {
-                        drawCanvas.drawPoint(lastTouchPoint.x, lastTouchPoint.y, drawPaint);
-                    } else {
-                        drawCanvas.drawLine(lastTouchPoint.x, lastTouchPoint.y, touchX, touchY, drawPaint);
-                        lastTouchPoint = new PointF(touchX, touchY);
-                    }
-                    break;
-                case MotionEvent.ACTION_UP:
-                    if (lastTouchPoint.equals(touchX, touchY)) {
-                        drawCanvas.drawPoint(lastTouchPoint.x, lastTouchPoint.y, drawPaint);
-                    } else {
-                        drawCanvas.drawLine(lastTouchPoint.x, lastTouchPoint.y, touchX, touchY, drawPaint);
-                    }
-                    lastTouchPoint = null;
-                    break;
-            }
-
-            invalidate();
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+                if (lastTouchPoint.equals(touchX, touchY)) {
+                    drawCanvas.drawPoint(lastTouchPoint.x, lastTouchPoint.y, drawPaint);
+                } else {
+                    drawCanvas.drawLine(lastTouchPoint.x, lastTouchPoint.y, touchX, touchY, drawPaint);
+                }
+                lastTouchPoint = null;
+                break;
         }
     }
 
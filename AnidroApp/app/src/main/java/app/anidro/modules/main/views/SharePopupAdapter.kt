@@ -10,14 +10,14 @@ import androidx.annotation.StringRes
 import androidx.appcompat.widget.AppCompatTextView
 import androidx.vectordrawable.graphics.drawable.VectorDrawableCompat
 import app.anidro.R
-import app.anidro.models.FileType
+import app.anidro.models.ShareOption
 
 /**
  * An adapter for the popup presenting the user with different drawing export options
  */
 class SharePopupAdapter : BaseAdapter() {
 
-    private val data = FileType.availableFileTypes
+    private val data = ShareOption.availableShareOptions
 
     override fun getCount(): Int {
         return data.size
@@ -54,22 +54,26 @@ class SharePopupAdapter : BaseAdapter() {
     }
 
     @DrawableRes
-    private fun getIcon(position: FileType): Int {
+    private fun getIcon(position: ShareOption): Int {
         return when (position) {
-            FileType.IMAGE -> R.drawable.ic_image_grey600_24dp
-            FileType.GIF -> R.drawable.ic_gif_grey600_24dp
-            FileType.VIDEO -> R.drawable.ic_movie_grey600_24dp
-            else -> R.drawable.ic_image_grey600_24dp
+            ShareOption.IMAGE -> R.drawable.ic_image_grey600_24dp
+            ShareOption.GIF -> R.drawable.ic_gif_grey600_24dp
+            ShareOption.VIDEO -> R.drawable.ic_movie_grey600_24dp
+            ShareOption.GIF_SIZES -> R.drawable.ic_gif_grey600_24dp
+            ShareOption.GIF_AND_VIDEO -> R.drawable.ic_movie_grey600_24dp
+            ShareOption.POSTER -> R.drawable.ic_image_grey600_24dp
         }
     }
 
     @StringRes
-    private fun getText(position: FileType): Int {
+    private fun getText(position: ShareOption): Int {
         return when (position) {
-            FileType.IMAGE -> R.string.fab_share_item_image
-            FileType.GIF -> R.string.fab_share_item_gif
-            FileType.VIDEO -> R.string.fab_share_item_video
-            else -> R.string.fab_share_item_image
+            ShareOption.IMAGE -> R.string.fab_share_item_image
+            ShareOption.GIF -> R.string.fab_share_item_gif
+            ShareOption.VIDEO -> R.string.fab_share_item_video
+            ShareOption.GIF_SIZES -> R.string.fab_share_item_gif_sizes
+            ShareOption.GIF_AND_VIDEO -> R.string.fab_share_item_gif_and_video
+            ShareOption.POSTER -> R.string.fab_share_item_poster
         }
     }
 }
\ No newline at end of file
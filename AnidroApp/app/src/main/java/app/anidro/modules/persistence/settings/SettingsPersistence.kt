@@ -18,6 +18,7 @@ interface SettingsPersistence {
     fun setCopyToExternal(copyToExternal: Boolean)
     fun shouldCopyToExternal(): Boolean
     fun shouldShowExportNotification(): Boolean
+    fun shouldSimplifyStrokes(): Boolean
     fun migrateVersion()
 
     companion object {
@@ -27,5 +28,6 @@ interface SettingsPersistence {
         // Have to be the same as in the settings.xml file
         const val KEY_COPY_TO_EXTERNAL = "copy_to_external"
         const val KEY_SHOW_EXPORT_NOTIFICATION = "show_notifications"
+        const val KEY_SIMPLIFY_STROKES = "simplify_strokes"
     }
 }
\ No newline at end of file
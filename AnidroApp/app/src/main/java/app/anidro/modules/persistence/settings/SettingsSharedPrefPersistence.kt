@@ -49,6 +49,10 @@ class SettingsSharedPrefPersistence(applicationContext: Context) : SettingsPersi
         return sharedPreferences.getBoolean(SettingsPersistence.KEY_SHOW_EXPORT_NOTIFICATION, false)
     }
 
+    override fun shouldSimplifyStrokes(): Boolean {
+        return sharedPreferences.getBoolean(SettingsPersistence.KEY_SIMPLIFY_STROKES, true)
+    }
+
     override fun migrateVersion() {
         val currentVersion = sharedPreferences.getInt(KEY_VERSION, -1)
         if (currentVersion == VERSION) {
@@ -0,0 +1,269 @@
+package app.anidro.renderers;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Downscales frames of a fixed size into frames of a smaller fixed size with a box filter, i.e.
+ * every target pixel is the average of all source pixels it covers, weighted by the covered area.
+ * Unlike bilinear filtering, which samples only the nearest source pixels, this keeps thin strokes
+ * visible at any scale ratio.
+ * <p/>
+ * The source columns and rows covered by each target pixel are computed once per frame size and
+ * the pixel buffers are reused, so downscaling a frame allocates nothing. Only the target pixels
+ * covering a changed area of the source frame are recomputed. Frames can be either {@link Bitmap}s
+ * or arrays of ARGB pixels, e.g. of a {@link SoftwareRenderTarget}.
+ */
+public class BoxFilterDownscaler {
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private final int targetWidth;
+    private final int targetHeight;
+
+    // The covered source columns of each target column and the weights of the covered columns
+    private final int[] columnStarts;
+    private final int[] columnEnds;
+    private final int[] columnWeightOffsets;
+    private final float[] columnWeights;
+
+    // The covered source rows of each target row and the weights of the covered rows
+    private final int[] rowStarts;
+    private final int[] rowEnds;
+    private final int[] rowWeightOffsets;
+    private final float[] rowWeights;
+
+    private final int[] sourceRow;
+    private final int[] targetRow;
+    // The horizontally filtered channels of the last read source row
+    private final float[] filteredRow;
+    private int filteredRowIndex = -1;
+    // The channels of the target row being accumulated
+    private final float[] accumulatedRow;
+    // The left, top, right and bottom edges of the target area changed by the last call
+    private final int[] changedBounds = new int[4];
+
+    public BoxFilterDownscaler(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight) {
+        if (targetWidth <= 0 || targetHeight <= 0 || targetWidth > sourceWidth || targetHeight > sourceHeight) {
+            throw new IllegalArgumentException("Cannot downscale " + sourceWidth + "x" + sourceHeight
+                    + " to " + targetWidth + "x" + targetHeight);
+        }
+
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+
+        columnStarts = new int[targetWidth];
+        columnEnds = new int[targetWidth];
+        columnWeightOffsets = new int[targetWidth];
+        columnWeights = buildWeights(sourceWidth, targetWidth, columnStarts, columnEnds, columnWeightOffsets);
+
+        rowStarts = new int[targetHeight];
+        rowEnds = new int[targetHeight];
+        rowWeightOffsets = new int[targetHeight];
+        rowWeights = buildWeights(sourceHeight, targetHeight, rowStarts, rowEnds, rowWeightOffsets);
+
+        sourceRow = new int[sourceWidth];
+        targetRow = new int[targetWidth];
+        filteredRow = new float[targetWidth * 4];
+        accumulatedRow = new float[targetWidth * 4];
+    }
+
+    /**
+     * Downscales the changed area of the source frame into the target frame
+     *
+     * @param source
+     *      The source frame
+     * @param sourceDirtyRect
+     *      The area of the source frame changed since the last call
+     * @param target
+     *      The target frame
+     * @param targetDirtyRect
+     *      Receives the area of the target frame changed by this call
+     */
+    public void downscale(@NonNull Bitmap source, @NonNull Rect sourceDirtyRect,
+                          @NonNull Bitmap target, @NonNull Rect targetDirtyRect) {
+        if (sourceDirtyRect.isEmpty()) {
+            targetDirtyRect.setEmpty();
+            return;
+        }
+
+        if (downscaleArea(source, null, target, null, sourceDirtyRect.left, sourceDirtyRect.top,
+                sourceDirtyRect.right, sourceDirtyRect.bottom)) {
+            targetDirtyRect.set(changedBounds[0], changedBounds[1], changedBounds[2], changedBounds[3]);
+        } else {
+            targetDirtyRect.setEmpty();
+        }
+    }
+
+    /**
+     * Downscales the changed area of the source pixels into the target pixels
+     *
+     * @param source
+     *      The ARGB pixels of the source frame, row after row
+     * @param sourceDirtyLeft
+     *      The left edge of the area of the source frame changed since the last call
+     * @param sourceDirtyTop
+     *      The top edge of the changed area
+     * @param sourceDirtyRight
+     *      The right edge of the changed area, exclusive
+     * @param sourceDirtyBottom
+     *      The bottom edge of the changed area, exclusive
+     * @param target
+     *      The ARGB pixels of the target frame, row after row
+     * @param targetDirtyBounds
+     *      Receives the left, top, right and bottom edges of the area of the target frame changed
+     *      by this call, all zero if nothing changed
+     */
+    public void downscale(@NonNull int[] source, int sourceDirtyLeft, int sourceDirtyTop,
+                          int sourceDirtyRight, int sourceDirtyBottom,
+                          @NonNull int[] target, @NonNull int[] targetDirtyBounds) {
+        if (sourceDirtyLeft < sourceDirtyRight && sourceDirtyTop < sourceDirtyBottom
+                && downscaleArea(null, source, null, target,
+                sourceDirtyLeft, sourceDirtyTop, sourceDirtyRight, sourceDirtyBottom)) {
+            System.arraycopy(changedBounds, 0, targetDirtyBounds, 0, 4);
+        } else {
+            Arrays.fill(targetDirtyBounds, 0, 4, 0);
+        }
+    }
+
+    /**
+     * Downscales the changed area of the source frame, given either as a {@link Bitmap} or as pixels,
+     * into the target frame and stores the changed target area in {@link #changedBounds}
+     *
+     * @return
+     *      False if no target pixel covers the changed area
+     */
+    private boolean downscaleArea(@Nullable Bitmap sourceBitmap, @Nullable int[] sourcePixels,
+                                  @Nullable Bitmap targetBitmap, @Nullable int[] targetPixels,
+                                  int sourceDirtyLeft, int sourceDirtyTop, int sourceDirtyRight, int sourceDirtyBottom) {
+        // The target pixels covering any of the changed source pixels
+        final int left = Math.max(0, (int) ((long) sourceDirtyLeft * targetWidth / sourceWidth));
+        final int top = Math.max(0, (int) ((long) sourceDirtyTop * targetHeight / sourceHeight));
+        final int right = Math.min(targetWidth, (int) (((long) sourceDirtyRight * targetWidth + sourceWidth - 1) / sourceWidth));
+        final int bottom = Math.min(targetHeight, (int) (((long) sourceDirtyBottom * targetHeight + sourceHeight - 1) / sourceHeight));
+        if (left >= right || top >= bottom) {
+            return false;
+        }
+        changedBounds[0] = left;
+        changedBounds[1] = top;
+        changedBounds[2] = right;
+        changedBounds[3] = bottom;
+
+        filteredRowIndex = -1;
+        for (int targetY = top; targetY < bottom; targetY++) {
+            for (int i = left * 4, end = right * 4; i < end; i++) {
+                accumulatedRow[i] = 0;
+            }
+
+            final int weightOffset = rowWeightOffsets[targetY] - rowStarts[targetY];
+            for (int sourceY = rowStarts[targetY]; sourceY < rowEnds[targetY]; sourceY++) {
+                // Neighbouring target rows share at most their boundary source row
+                if (sourceY != filteredRowIndex) {
+                    if (sourceBitmap != null) {
+                        final int sourceLeft = columnStarts[left];
+                        sourceBitmap.getPixels(sourceRow, sourceLeft, sourceWidth, sourceLeft, sourceY,
+                                columnEnds[right - 1] - sourceLeft, 1);
+                        filterRow(sourceRow, 0, sourceY, left, right);
+                    } else {
+                        filterRow(sourcePixels, sourceY * sourceWidth, sourceY, left, right);
+                    }
+                }
+                final float weight = rowWeights[weightOffset + sourceY];
+                for (int i = left * 4, end = right * 4; i < end; i++) {
+                    accumulatedRow[i] += weight * filteredRow[i];
+                }
+            }
+
+            for (int targetX = left; targetX < right; targetX++) {
+                final int i = targetX * 4;
+                targetRow[targetX] = (toChannel(accumulatedRow[i]) << 24)
+                        | (toChannel(accumulatedRow[i + 1]) << 16)
+                        | (toChannel(accumulatedRow[i + 2]) << 8)
+                        | toChannel(accumulatedRow[i + 3]);
+            }
+            if (targetBitmap != null) {
+                targetBitmap.setPixels(targetRow, left, targetWidth, left, targetY, right - left, 1);
+            } else {
+                System.arraycopy(targetRow, left, targetPixels, targetY * targetWidth + left, right - left);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Averages the pixels of a source row covered by each of the input target columns
+     *
+     * @param row
+     *      The pixels containing the source row
+     * @param rowOffset
+     *      The index of the first pixel of the source row
+     */
+    private void filterRow(int[] row, int rowOffset, int sourceY, int left, int right) {
+        for (int targetX = left; targetX < right; targetX++) {
+            float alpha = 0;
+            float red = 0;
+            float green = 0;
+            float blue = 0;
+            final int weightOffset = columnWeightOffsets[targetX] - columnStarts[targetX];
+            for (int sourceX = columnStarts[targetX]; sourceX < columnEnds[targetX]; sourceX++) {
+                final float weight = columnWeights[weightOffset + sourceX];
+                final int pixel = row[rowOffset + sourceX];
+                alpha += weight * (pixel >>> 24);
+                red += weight * ((pixel >> 16) & 0xFF);
+                green += weight * ((pixel >> 8) & 0xFF);
+                blue += weight * (pixel & 0xFF);
+            }
+            final int i = targetX * 4;
+            filteredRow[i] = alpha;
+            filteredRow[i + 1] = red;
+            filteredRow[i + 2] = green;
+            filteredRow[i + 3] = blue;
+        }
+        filteredRowIndex = sourceY;
+    }
+
+    private static int toChannel(float value) {
+        final int channel = (int) (value + 0.5f);
+        return channel > 0xFF ? 0xFF : channel;
+    }
+
+    /**
+     * Computes the source pixels covered by each target pixel along a single axis and the share
+     * of each covered source pixel in the target pixel. The shares of every target pixel sum up to one.
+     *
+     * @return
+     *      The shares of all covered source pixels of all target pixels, one after another
+     */
+    private static float[] buildWeights(int sourceSize, int targetSize, int[] starts, int[] ends, int[] offsets) {
+        final float scale = sourceSize / (float) targetSize;
+        int weightsCount = 0;
+        for (int i = 0; i < targetSize; i++) {
+            starts[i] = (int) (i * scale);
+            ends[i] = Math.min(sourceSize, (int) Math.ceil((i + 1) * scale));
+            offsets[i] = weightsCount;
+            weightsCount += ends[i] - starts[i];
+        }
+
+        final float[] weights = new float[weightsCount];
+        for (int i = 0; i < targetSize; i++) {
+            final float coveredStart = i * scale;
+            final float coveredEnd = Math.min(sourceSize, (i + 1) * scale);
+            float total = 0;
+            for (int source = starts[i]; source < ends[i]; source++) {
+                final float covered = Math.min(coveredEnd, source + 1) - Math.max(coveredStart, source);
+                weights[offsets[i] + source - starts[i]] = covered;
+                total += covered;
+            }
+            for (int source = starts[i]; source < ends[i]; source++) {
+                weights[offsets[i] + source - starts[i]] /= total;
+            }
+        }
+        return weights;
+    }
+}
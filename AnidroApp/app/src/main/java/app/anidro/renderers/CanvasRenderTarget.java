@@ -0,0 +1,163 @@
+package app.anidro.renderers;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import app.anidro.common.DrawingPaintBuilder;
+
+/**
+ * A {@link RenderTarget} drawing into a {@link Bitmap} with a {@link Canvas}
+ */
+public class CanvasRenderTarget implements RenderTarget {
+    private final Bitmap bitmap;
+    private final Canvas canvas;
+    private final Paint strokePaint = DrawingPaintBuilder.getPaint(Color.BLACK, 1f);
+    private final Path strokePath = new Path();
+    // The pixels of the bitmap while a snapshot is compressed or restored, allocated with the first snapshot
+    @Nullable
+    private int[] snapshotPixels;
+
+    public CanvasRenderTarget(int width, int height, @NonNull Bitmap.Config config) {
+        bitmap = Bitmap.createBitmap(width, height, config);
+        canvas = new Canvas(bitmap);
+    }
+
+    @Override
+    public int getWidth() {
+        return bitmap.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return bitmap.getHeight();
+    }
+
+    @Override
+    public long getByteCount() {
+        return bitmap.getByteCount();
+    }
+
+    @Override
+    public void fill(@ColorInt int color) {
+        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        canvas.drawColor(color);
+    }
+
+    @Override
+    public void drawStroke(@NonNull float[] vertices, int verticesCount, @ColorInt int color, float strokeWidth) {
+        if (verticesCount == 0) {
+            return;
+        }
+
+        strokePaint.setColor(color);
+        strokePaint.setStrokeWidth(strokeWidth);
+        if (verticesCount == 1) {
+            canvas.drawPoint(vertices[0], vertices[1], strokePaint);
+            return;
+        }
+
+        strokePath.rewind();
+        strokePath.moveTo(vertices[0], vertices[1]);
+        for (int i = 1; i < verticesCount; i++) {
+            strokePath.lineTo(vertices[i * 2], vertices[i * 2 + 1]);
+        }
+        canvas.drawPath(strokePath, strokePaint);
+    }
+
+    @Override
+    public void drawCurve(@NonNull float[] controlPoints, int piecesCount, @ColorInt int color, float strokeWidth) {
+        if (piecesCount == 0) {
+            drawStroke(controlPoints, 1, color, strokeWidth);
+            return;
+        }
+
+        strokePaint.setColor(color);
+        strokePaint.setStrokeWidth(strokeWidth);
+        strokePath.rewind();
+        strokePath.moveTo(controlPoints[0], controlPoints[1]);
+        for (int piece = 0; piece < piecesCount; piece++) {
+            final int i = (piece * 3 + 1) * 2;
+            strokePath.cubicTo(controlPoints[i], controlPoints[i + 1],
+                    controlPoints[i + 2], controlPoints[i + 3],
+                    controlPoints[i + 4], controlPoints[i + 5]);
+        }
+        canvas.drawPath(strokePath, strokePaint);
+    }
+
+    @Nullable
+    @Override
+    public Snapshot takeSnapshot() {
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        if (snapshotPixels == null) {
+            snapshotPixels = new int[width * height];
+        }
+        bitmap.getPixels(snapshotPixels, 0, width, 0, 0, width, height);
+        final RunLengthSnapshot compressed = RunLengthSnapshot.compress(snapshotPixels, width * height);
+        if (compressed != null) {
+            return compressed;
+        }
+
+        final Bitmap copy = bitmap.copy(bitmap.getConfig(), false);
+        return copy != null ? new BitmapSnapshot(copy) : null;
+    }
+
+    @Override
+    public void restoreSnapshot(@NonNull Snapshot snapshot) {
+        if (snapshot instanceof RunLengthSnapshot) {
+            final int width = bitmap.getWidth();
+            final int height = bitmap.getHeight();
+            if (snapshotPixels == null) {
+                snapshotPixels = new int[width * height];
+            }
+            ((RunLengthSnapshot) snapshot).restore(snapshotPixels);
+            bitmap.setPixels(snapshotPixels, 0, width, 0, 0, width, height);
+            return;
+        }
+        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        canvas.drawBitmap(((BitmapSnapshot) snapshot).bitmap, 0, 0, null);
+    }
+
+    @NonNull
+    @Override
+    public RenderTarget createCompatibleTarget() {
+        return new CanvasRenderTarget(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+    }
+
+    @NonNull
+    @Override
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    @Override
+    public void destroy() {
+        bitmap.recycle();
+    }
+
+    private static class BitmapSnapshot implements Snapshot {
+        private final Bitmap bitmap;
+
+        BitmapSnapshot(Bitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+
+        @Override
+        public long getByteCount() {
+            return bitmap.getByteCount();
+        }
+
+        @Override
+        public void release() {
+            bitmap.recycle();
+        }
+    }
+}
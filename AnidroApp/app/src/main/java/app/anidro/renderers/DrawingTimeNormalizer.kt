@@ -8,9 +8,11 @@ import app.anidro.models.TimedSegment
  * he or she wants to draw the drawing making long pauses and performing many operations,
  * certain adjustments are always required. An implementation of this interface is used by
  * the [FixedFrameRateRenderer].
+ *
+ * The input segments are not modified, the new timing is described by [NormalizedSegment] views.
  */
 interface DrawingTimeNormalizer {
     val normalizedDuration: Long
-    val normalizedDrawing: List<TimedSegment>
+    val normalizedDrawing: List<NormalizedSegment>
     fun normalizeDrawing(segments: List<TimedSegment>)
-}
\ No newline at end of file
+}
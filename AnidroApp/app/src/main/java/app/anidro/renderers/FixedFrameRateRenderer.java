@@ -1,18 +1,17 @@
 package app.anidro.renderers;
 
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Path;
-import android.graphics.PointF;
-import android.graphics.PorterDuff;
+import android.graphics.Rect;
 
 import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import app.anidro.models.CubicBezierStroke;
+import app.anidro.models.StrokeGeometry;
 import app.anidro.models.TimedSegment;
 
 /**
@@ -20,45 +19,108 @@ import app.anidro.models.TimedSegment;
  * at a particular time. The total number of frames produced depends on the input frame rate,
  * as well as the length of the input drawing.
  * <p/>
+ * Frames are not precomputed. The normalized segments are sorted by their start time and a window
+ * of active segments is swept forward as frames are rendered. The parts of the segments visible in
+ * a frame are extracted on demand from the fitted {@link CubicBezierStroke} of each segment, which
+ * is drawn as cubic pieces, or from the cached {@link StrokeGeometry} of segments without a curve.
+ * <p/>
+ * Jumping forward over several frames draws everything between the current and the requested frame
+ * in a single pass, so the state of any frame can be reconstructed without rendering all frames
+ * before it one by one.
+ * <p/>
+ * The segments are shared and never modified. They are scaled to the frame size and placed on the
+ * normalized timeline only while their parts are drawn, so any number of renderers can render the
+ * same drawing at the same time. The renderer keeps only the timing of the segments and takes each
+ * segment from the drawing while its parts are drawn, so a drawing which builds its segments on
+ * demand, like a {@link app.anidro.modules.main.TimedSegmentsCache} snapshot, never has to hold all of them.
+ * <p/>
+ * The frames are drawn onto a {@link RenderTarget}, a {@link Bitmap} by default. With a
+ * {@link SoftwareRenderTarget} the renderer does not need the Android graphics stack at all: the
+ * segments keep only primitive values and the damage is tracked in primitive bounds. Only the
+ * {@link FrameSource} methods returning a {@link Bitmap} or a {@link Rect} use Android classes.
+ * <p/>
+ * Each render call also computes the bounding rectangle of the pixels it changed, so that
+ * consumers of the frames can skip or crop their work without comparing pixels.
+ * <p/>
  * Created by luboganev on 19/09/15.
  */
-public class FixedFrameRateRenderer {
+public class FixedFrameRateRenderer implements FrameSource {
     public static final long ANIMATION_FINAL_FRAME_EXTRA_LENGTH = 2000;
 
     public static final long GIF_FRAME_LENGTH = 100;
     public static final long VIDEO_FRAME_LENGTH = 33;
     public static final long PREVIEW_FRAME_LENGTH = 16;
 
-    private final Canvas frameCanvas;
-    private final Bitmap frameBitmap;
-    private final List<List<TimedSegment>> frames = new ArrayList<>();
+    private final RenderTarget renderTarget;
+    private final List<NormalizedSegment> timeline = new ArrayList<>();
+    private final List<NormalizedSegment> activeSegments = new ArrayList<>();
+    private float[] strokeVertices = new float[0];
+    private float[] curveControlPoints = new float[0];
     private final @ColorInt
     int backgroundColor;
     private int currentFrame;
+    private int nextTimelineIndex;
+    private int drawingFramesCount;
+    private long drawingDuration;
+    private int extraFramesCount;
     private final long frameLength;
+    private KeyframeSnapshotCache keyframeCache;
+
+    // Damage tracking of the last render call, the damaged bounds are empty if left >= right
+    private float damageLeft;
+    private float damageTop;
+    private float damageRight;
+    private float damageBottom;
+    private int dirtyLeft;
+    private int dirtyTop;
+    private int dirtyRight;
+    private int dirtyBottom;
+    private Rect dirtyRect;
+    private boolean resetSinceLastRender;
 
     public FixedFrameRateRenderer(@NonNull List<TimedSegment> drawing,
                                   @ColorInt int backgroundColor,
                                   int frameWidth, int frameHeight,
                                   @NonNull DrawingTimeNormalizer normalizer, long frameLength,
                                   @NonNull Bitmap.Config frameConfig) {
+        this(drawing, backgroundColor, new CanvasRenderTarget(frameWidth, frameHeight, frameConfig),
+                normalizer, frameLength);
+    }
+
+    /**
+     * Creates a renderer drawing its frames onto the input render target, which is owned and
+     * destroyed by the renderer. The frame size is the size of the render target.
+     */
+    public FixedFrameRateRenderer(@NonNull List<TimedSegment> drawing,
+                                  @ColorInt int backgroundColor,
+                                  @NonNull RenderTarget renderTarget,
+                                  @NonNull DrawingTimeNormalizer normalizer, long frameLength) {
 
-        // Init the canvas
-        frameBitmap = Bitmap.createBitmap(frameWidth, frameHeight, frameConfig);
-        frameCanvas = new Canvas(frameBitmap);
+        // Init the render target
+        this.renderTarget = renderTarget;
         this.backgroundColor = backgroundColor;
 
         // Init frame properties
         currentFrame = 0;
         this.frameLength = frameLength;
 
-        // Adjust the drawing width and height
-        for (TimedSegment segment : drawing) {
-            segment.adjustCanvasSize(frameWidth, frameHeight);
-        }
+        // Init the drawing timeline
+        initTimeline(drawing, normalizer);
+    }
 
-        // Init the drawing frames
-        initFrames(drawing, normalizer);
+    /**
+     * Creates a renderer of the same drawing timeline with its own frame and rendering state.
+     * The timeline segments are shared with the source renderer and are not normalized again.
+     */
+    FixedFrameRateRenderer(@NonNull FixedFrameRateRenderer source) {
+        renderTarget = source.renderTarget.createCompatibleTarget();
+        backgroundColor = source.backgroundColor;
+        frameLength = source.frameLength;
+        timeline.addAll(source.timeline);
+        drawingDuration = source.drawingDuration;
+        drawingFramesCount = source.drawingFramesCount;
+        extraFramesCount = source.extraFramesCount;
+        resetRenderer();
     }
 
     /**
@@ -67,12 +129,29 @@ public class FixedFrameRateRenderer {
      * frame rate and the input delay.
      */
     public void addFinalFrameExtraDelay(long delay) {
-        // Add the delay of the final frame
-        int lastFrameRepeatCount = (int) (delay / frameLength);
-        // Add empty frames
-        final List<TimedSegment> frameSegments = new ArrayList<>();
-        for (int i = 0; i < lastFrameRepeatCount; i++) {
-            frames.add(frameSegments);
+        // Add the delay of the final frame as empty frames
+        extraFramesCount += (int) (delay / frameLength);
+    }
+
+    /**
+     * Enables keeping a copy of every N-th rendered frame, as long as the copies fit in the input
+     * memory budget. Seeking backwards with {@link #renderFrame(int)} then restores the nearest
+     * earlier copy and replays only the remaining frames instead of replaying all of them.
+     */
+    public void enableKeyframeCache(int keyframeInterval, long memoryBudgetBytes) {
+        if (keyframeCache != null) {
+            keyframeCache.clear();
+        }
+        keyframeCache = new KeyframeSnapshotCache(keyframeInterval, memoryBudgetBytes);
+    }
+
+    /**
+     * Releases the kept frame copies and stops keeping new ones
+     */
+    public void disableKeyframeCache() {
+        if (keyframeCache != null) {
+            keyframeCache.clear();
+            keyframeCache = null;
         }
     }
 
@@ -80,12 +159,16 @@ public class FixedFrameRateRenderer {
      * Cleans up some memory. After this call, the {@link FixedFrameRateRenderer} can no longer be used
      */
     public void destroy() {
-        frameBitmap.recycle();
+        if (keyframeCache != null) {
+            keyframeCache.clear();
+        }
+        renderTarget.destroy();
     }
 
     /**
      * Returns the current frame length of this renderer
      */
+    @Override
     public long getFrameLength() {
         return frameLength;
     }
@@ -93,27 +176,45 @@ public class FixedFrameRateRenderer {
     /**
      * Returns the width of the frame of this renderer
      */
+    @Override
     public int getFrameWidth() {
-        return frameBitmap.getWidth();
+        return renderTarget.getWidth();
     }
 
     /**
      * Returns the height of the frame of this renderer
      */
+    @Override
     public int getFrameHeight() {
-        return frameBitmap.getHeight();
+        return renderTarget.getHeight();
+    }
+
+    /**
+     * Returns the duration of the normalized drawing in milliseconds
+     */
+    public long getDrawingDuration() {
+        return drawingDuration;
+    }
+
+    /**
+     * Returns the number of frames containing new parts of the drawing, without the final extra frames
+     */
+    public int getDrawingFramesCount() {
+        return drawingFramesCount;
     }
 
     /**
      * Returns the total number of unique frames generated by this renderer
      */
+    @Override
     public int getFramesCount() {
-        return frames.size();
+        return drawingFramesCount + extraFramesCount;
     }
 
     /**
      * Returns the index of the currently rendered frame
      */
+    @Override
     public int getCurrentFrameIndex() {
         return currentFrame;
     }
@@ -121,57 +222,187 @@ public class FixedFrameRateRenderer {
     /**
      * Resets the current frame to the fist frame of the renderer
      */
+    @Override
     public void resetRenderer() {
-        frameCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
-        frameCanvas.drawColor(backgroundColor);
+        renderTarget.fill(backgroundColor);
         currentFrame = 0;
+        nextTimelineIndex = 0;
+        activeSegments.clear();
+        markWholeFrameDamaged();
     }
 
     /**
      * Renders the next frame if it has not reached the last one
      */
+    @Override
     public void renderNextFrame() {
-        if (currentFrame >= frames.size()) {
-            return;
+        beginDamageTracking();
+        if (currentFrame < getFramesCount()) {
+            renderCurrentFrameAndAdvance();
+        }
+        endDamageTracking();
+    }
+
+    /**
+     * Returns the bounding rectangle of the pixels changed by the last render call, including
+     * any reset of the renderer since the previous one. The rectangle is empty if nothing changed.
+     * The returned instance is reused by the renderer and must not be modified.
+     */
+    @Override
+    public Rect getCurrentFrameDirtyRect() {
+        if (dirtyRect == null) {
+            dirtyRect = new Rect();
         }
+        dirtyRect.left = dirtyLeft;
+        dirtyRect.top = dirtyTop;
+        dirtyRect.right = dirtyRight;
+        dirtyRect.bottom = dirtyBottom;
+        return dirtyRect;
+    }
 
-        renderCurrentFrame();
-        currentFrame++;
+    /**
+     * Returns the left edge of the pixels changed by the last render call,
+     * see {@link #getCurrentFrameDirtyRect()}
+     */
+    public int getDirtyLeft() {
+        return dirtyLeft;
+    }
+
+    /**
+     * Returns the top edge of the pixels changed by the last render call
+     */
+    public int getDirtyTop() {
+        return dirtyTop;
+    }
+
+    /**
+     * Returns the right edge, exclusive, of the pixels changed by the last render call
+     */
+    public int getDirtyRight() {
+        return dirtyRight;
+    }
+
+    /**
+     * Returns the bottom edge, exclusive, of the pixels changed by the last render call
+     */
+    public int getDirtyBottom() {
+        return dirtyBottom;
+    }
+
+    /**
+     * Checks if the last render call changed any pixels of the frame
+     */
+    public boolean hasCurrentFrameChanged() {
+        return dirtyLeft < dirtyRight && dirtyTop < dirtyBottom;
     }
 
     /**
      * Checks if there is a next frame to be rendered
      */
+    @Override
     public boolean hasNextFrame() {
-        return currentFrame < frames.size();
+        return currentFrame < getFramesCount();
     }
 
     /**
-     * Returns the {@link Bitmap} containing the current frame
+     * Returns the {@link Bitmap} containing the current frame,
+     * or null if the render target does not draw into a {@link Bitmap}
      */
+    @Override
     public Bitmap getCurrentFrame() {
-        return frameBitmap;
+        return renderTarget.getBitmap();
+    }
+
+    /**
+     * Returns the render target containing the current frame
+     */
+    @NonNull
+    public RenderTarget getRenderTarget() {
+        return renderTarget;
     }
 
     /**
      * Renders all frames from the current to the input frame index
      */
     public void renderFrame(int frameIndex) {
-        if (frameIndex >= frames.size()) {
-            frameIndex = frames.size() - 1;
+        beginDamageTracking();
+        renderFramesUntil(frameIndex);
+        endDamageTracking();
+    }
+
+    private void renderFramesUntil(int frameIndex) {
+        if (frameIndex >= getFramesCount()) {
+            frameIndex = getFramesCount() - 1;
         }
 
         if (frameIndex < 0) {
             frameIndex = 0;
         }
 
+        if (keyframeCache != null) {
+            // Restore the nearest keyframe if it is closer than the current frame
+            final int keyframeIndex = keyframeCache.findNearest(frameIndex);
+            if (keyframeIndex >= 0 && (currentFrame > frameIndex || keyframeIndex > currentFrame)) {
+                restoreKeyframe(keyframeIndex);
+            }
+        }
+
         if (currentFrame > frameIndex) {
             resetRenderer();
         }
 
+        if (frameIndex > currentFrame + 1) {
+            skipToFrame(frameIndex);
+        }
+
         while (currentFrame <= frameIndex) {
-            renderCurrentFrame();
-            currentFrame++;
+            renderCurrentFrameAndAdvance();
+        }
+    }
+
+    /**
+     * Renders the current frame and moves to the next one,
+     * storing a keyframe snapshot beforehand if needed.
+     */
+    private void renderCurrentFrameAndAdvance() {
+        if (keyframeCache != null && keyframeCache.shouldSnapshot(currentFrame)) {
+            keyframeCache.put(currentFrame, renderTarget);
+        }
+        renderCurrentFrame();
+        currentFrame++;
+    }
+
+    /**
+     * Puts the renderer into the state right before rendering the input frame by drawing
+     * all parts of the drawing between the current and the input frame at once
+     */
+    private void skipToFrame(int frameIndex) {
+        final int lastSkippedFrame = Math.min(frameIndex, drawingFramesCount);
+        if (lastSkippedFrame > currentFrame) {
+            drawTimeSpan(currentFrame * frameLength, lastSkippedFrame * frameLength);
+        }
+        currentFrame = frameIndex;
+    }
+
+    /**
+     * Puts the renderer into the state right before rendering the input keyframe
+     */
+    private void restoreKeyframe(int keyframeIndex) {
+        keyframeCache.restore(keyframeIndex, renderTarget);
+        currentFrame = keyframeIndex;
+        markWholeFrameDamaged();
+
+        // Reactivate the segments which may still be visible in the keyframe
+        final long frameStart = keyframeIndex * frameLength;
+        activeSegments.clear();
+        nextTimelineIndex = 0;
+        while (nextTimelineIndex < timeline.size()
+                && timeline.get(nextTimelineIndex).getStartTime() <= frameStart) {
+            final NormalizedSegment segment = timeline.get(nextTimelineIndex);
+            if (segment.getEndTime() >= frameStart) {
+                activeSegments.add(segment);
+            }
+            nextTimelineIndex++;
         }
     }
 
@@ -180,67 +411,202 @@ public class FixedFrameRateRenderer {
      * segments contained in it.
      */
     private void renderCurrentFrame() {
-        List<TimedSegment> currentFrame = frames.get(this.currentFrame);
-        PointF currentPoint, controlPoint;
-        Path drawingPath = new Path();
-
-        for (TimedSegment segment : currentFrame) {
-            drawingPath.reset();
-            if (!segment.isEmpty()) {
-                currentPoint = segment.getPoint(0);
-                drawingPath.moveTo(currentPoint.x, currentPoint.y);
-
-                if (segment.getPointsCount() > 2) {
-                    for (int i = 1; i < segment.getPointsCount() - 1; i++) {
-                        controlPoint = segment.getPoint(i);
-                        currentPoint = segment.getPoint(i + 1);
-                        drawingPath.quadTo(controlPoint.x, controlPoint.y, currentPoint.x, currentPoint.y);
-                    }
-                    frameCanvas.drawPath(drawingPath, segment.getPaint());
-                } else if (segment.getPointsCount() > 1) {
-                    controlPoint = currentPoint;
-                    currentPoint = segment.getPoint(1);
-                    if (controlPoint.equals(currentPoint.x, currentPoint.y)) {
-                        frameCanvas.drawPoint(currentPoint.x, currentPoint.y, segment.getPaint());
-                    } else {
-                        drawingPath.lineTo(currentPoint.x, currentPoint.y);
-                        frameCanvas.drawPath(drawingPath, segment.getPaint());
-                    }
-                } else {
-                    frameCanvas.drawPoint(currentPoint.x, currentPoint.y, segment.getPaint());
-                }
+        if (currentFrame >= drawingFramesCount) {
+            // Extra final frames do not contain anything new
+            return;
+        }
+
+        final long frameStart = currentFrame * frameLength;
+        drawTimeSpan(frameStart, frameStart + frameLength);
+    }
+
+    /**
+     * Draws the parts of all segments visible between two timestamps onto the canvas
+     */
+    private void drawTimeSpan(long spanStart, long spanEnd) {
+        // Activate all segments starting until the end of the span
+        while (nextTimelineIndex < timeline.size()
+                && timeline.get(nextTimelineIndex).getStartTime() <= spanEnd) {
+            activeSegments.add(timeline.get(nextTimelineIndex));
+            nextTimelineIndex++;
+        }
+
+        // Draw the visible parts of the active segments and drop the ones which have already ended
+        int keptCount = 0;
+        for (int i = 0, size = activeSegments.size(); i < size; i++) {
+            final NormalizedSegment segment = activeSegments.get(i);
+            if (segment.getEndTime() < spanStart) {
+                continue;
             }
+            activeSegments.set(keptCount++, segment);
+
+            if (segment.overlapsInterval(spanStart, spanEnd)) {
+                drawSegmentPart(segment, spanStart, spanEnd);
+            }
+        }
+        for (int i = activeSegments.size() - 1; i >= keptCount; i--) {
+            activeSegments.remove(i);
         }
     }
 
     /**
-     * Normalizes the input drawing and then chops it into collections of segments for each frame
-     * to be rendered.
+     * Draws the part of a segment between two normalized timestamps onto the render target. The part
+     * is extracted from the cached segment geometry into reused buffers and scaled from the segment
+     * canvas to the frame, so nothing is allocated. The segment is taken from the drawing only here.
      */
-    private void initFrames(List<TimedSegment> drawing, DrawingTimeNormalizer normalizer) {
+    private void drawSegmentPart(NormalizedSegment normalizedSegment, long startTime, long endTime) {
+        final TimedSegment segment = normalizedSegment.getSegment();
+        if (segment.isEmpty()) {
+            return;
+        }
+        final CubicBezierStroke curve = segment.getCurve();
+        if (curve != null) {
+            drawCurvePart(normalizedSegment, segment, curve, startTime, endTime);
+            return;
+        }
+
+        final StrokeGeometry geometry = segment.getGeometry();
+        if (strokeVertices.length < geometry.getMaxExtractSize()) {
+            strokeVertices = new float[geometry.getMaxExtractSize()];
+        }
+
+        final int verticesCount = geometry.extract(
+                normalizedSegment.getLengthAtOrAfter(segment, startTime),
+                normalizedSegment.getLengthAtOrBefore(segment, endTime),
+                strokeVertices);
+
+        if (verticesCount == 0) {
+            return;
+        }
+
+        final float scaleX = renderTarget.getWidth() / (float) segment.getCanvasWidth();
+        final float scaleY = renderTarget.getHeight() / (float) segment.getCanvasHeight();
+        for (int i = 0; i < verticesCount; i++) {
+            strokeVertices[i * 2] *= scaleX;
+            strokeVertices[i * 2 + 1] *= scaleY;
+        }
+        final float strokeWidth = segment.getStrokeWidth() * scaleX;
+
+        addDamage(strokeVertices, verticesCount, strokeWidth);
+        renderTarget.drawStroke(strokeVertices, verticesCount, segment.getColor(), strokeWidth);
+    }
+
+    /**
+     * Draws the pieces of the fitted curve of a segment between two normalized timestamps onto the
+     * render target. The pieces at both ends are cut at the curve parameters of the timestamps, so
+     * the curve is drawn with its own pieces and never flattened.
+     */
+    private void drawCurvePart(NormalizedSegment normalizedSegment, TimedSegment segment, CubicBezierStroke curve,
+                               long startTime, long endTime) {
+        if (curveControlPoints.length < curve.getMaxExtractSize()) {
+            curveControlPoints = new float[curve.getMaxExtractSize()];
+        }
+
+        final int piecesCount = curve.extract(
+                normalizedSegment.getSegmentTimeAtOrAfter(segment, startTime),
+                normalizedSegment.getSegmentTimeAtOrBefore(segment, endTime),
+                curveControlPoints);
+
+        final int controlPointsCount = piecesCount * 3 + 1;
+        final float scaleX = renderTarget.getWidth() / (float) segment.getCanvasWidth();
+        final float scaleY = renderTarget.getHeight() / (float) segment.getCanvasHeight();
+        for (int i = 0; i < controlPointsCount; i++) {
+            curveControlPoints[i * 2] *= scaleX;
+            curveControlPoints[i * 2 + 1] *= scaleY;
+        }
+        final float strokeWidth = segment.getStrokeWidth() * scaleX;
+
+        // The pieces lie within the bounds of their control points
+        addDamage(curveControlPoints, controlPointsCount, strokeWidth);
+        renderTarget.drawCurve(curveControlPoints, piecesCount, segment.getColor(), strokeWidth);
+    }
+
+    private void beginDamageTracking() {
+        if (!resetSinceLastRender) {
+            damageLeft = 0;
+            damageTop = 0;
+            damageRight = 0;
+            damageBottom = 0;
+        }
+    }
+
+    private void endDamageTracking() {
+        resetSinceLastRender = false;
+        // Round out the damaged bounds and clip them to the frame
+        dirtyLeft = Math.max(0, (int) Math.floor(damageLeft));
+        dirtyTop = Math.max(0, (int) Math.floor(damageTop));
+        dirtyRight = Math.min(renderTarget.getWidth(), (int) Math.ceil(damageRight));
+        dirtyBottom = Math.min(renderTarget.getHeight(), (int) Math.ceil(damageBottom));
+        if (damageLeft >= damageRight || damageTop >= damageBottom
+                || dirtyLeft >= dirtyRight || dirtyTop >= dirtyBottom) {
+            dirtyLeft = 0;
+            dirtyTop = 0;
+            dirtyRight = 0;
+            dirtyBottom = 0;
+        }
+    }
+
+    private void markWholeFrameDamaged() {
+        damageLeft = 0;
+        damageTop = 0;
+        damageRight = renderTarget.getWidth();
+        damageBottom = renderTarget.getHeight();
+        resetSinceLastRender = true;
+    }
+
+    /**
+     * Adds the bounds of the input vertices, inflated by half of the stroke width
+     * and a pixel for the anti-aliasing, to the damaged area of the frame
+     */
+    private void addDamage(float[] vertices, int verticesCount, float strokeWidth) {
+        float left = vertices[0];
+        float top = vertices[1];
+        float right = left;
+        float bottom = top;
+        for (int i = 1; i < verticesCount; i++) {
+            final float x = vertices[i * 2];
+            final float y = vertices[i * 2 + 1];
+            if (x < left) left = x;
+            if (x > right) right = x;
+            if (y < top) top = y;
+            if (y > bottom) bottom = y;
+        }
+        final float inset = strokeWidth / 2f + 1f;
+        left -= inset;
+        top -= inset;
+        right += inset;
+        bottom += inset;
+        if (damageLeft >= damageRight || damageTop >= damageBottom) {
+            damageLeft = left;
+            damageTop = top;
+            damageRight = right;
+            damageBottom = bottom;
+        } else {
+            damageLeft = Math.min(damageLeft, left);
+            damageTop = Math.min(damageTop, top);
+            damageRight = Math.max(damageRight, right);
+            damageBottom = Math.max(damageBottom, bottom);
+        }
+    }
+
+    /**
+     * Normalizes the input drawing and sorts its segments by their start time, so that
+     * the frames can be swept through in a single forward pass.
+     */
+    private void initTimeline(List<TimedSegment> drawing, DrawingTimeNormalizer normalizer) {
         resetRenderer();
-        frames.clear();
+        timeline.clear();
 
         normalizer.normalizeDrawing(drawing);
-        final List<TimedSegment> normalizedDrawing = normalizer.getNormalizedDrawing();
+        final List<NormalizedSegment> normalizedDrawing = normalizer.getNormalizedDrawing();
         final long normalizedDuration = normalizer.getNormalizedDuration();
 
-        long currentTime = 0;
-        List<TimedSegment> frameSegments;
-        int segmentIndex = 0;
-        TimedSegment subSegment;
-        while (currentTime <= normalizedDuration && segmentIndex < normalizedDrawing.size()) {
-            frameSegments = new ArrayList<>();
-
-            for (TimedSegment segment : normalizedDrawing) {
-                if (segment.hasPointsInInterval(currentTime, currentTime + frameLength)) {
-                    subSegment = segment.getSubSegment(currentTime, frameLength);
-                    frameSegments.add(subSegment);
-                }
-            }
+        // Empty segments are skipped only when they are drawn, so no segment is needed here
+        timeline.addAll(normalizedDrawing);
+        // The sort is stable, so segments starting together are drawn in their original order
+        Collections.sort(timeline, (first, second) -> Long.compare(first.getStartTime(), second.getStartTime()));
 
-            frames.add(frameSegments);
-            currentTime += frameLength;
-        }
+        drawingDuration = normalizedDuration;
+        drawingFramesCount = normalizedDrawing.isEmpty() ? 0 : (int) (normalizedDuration / frameLength) + 1;
     }
 }
@@ -0,0 +1,63 @@
+package app.anidro.renderers;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+/**
+ * A sequence of drawing frames with a fixed frame rate, which can be consumed one frame after
+ * another. It is implemented by the {@link FixedFrameRateRenderer} itself, as well as by the targets
+ * of a {@link SharedFrameRenderer}, which get their frames from a renderer shared with other targets.
+ */
+public interface FrameSource {
+
+    /**
+     * Returns the length of a single frame in milliseconds
+     */
+    long getFrameLength();
+
+    /**
+     * Returns the width of the frames
+     */
+    int getFrameWidth();
+
+    /**
+     * Returns the height of the frames
+     */
+    int getFrameHeight();
+
+    /**
+     * Returns the total number of frames
+     */
+    int getFramesCount();
+
+    /**
+     * Returns the index of the next frame to be rendered
+     */
+    int getCurrentFrameIndex();
+
+    /**
+     * Moves back to the first frame
+     */
+    void resetRenderer();
+
+    /**
+     * Checks if there are frames left to be rendered
+     */
+    boolean hasNextFrame();
+
+    /**
+     * Renders the next frame if it has not reached the last one
+     */
+    void renderNextFrame();
+
+    /**
+     * Returns the {@link Bitmap} containing the current frame
+     */
+    Bitmap getCurrentFrame();
+
+    /**
+     * Returns the bounding rectangle of the pixels changed by the last rendered frame.
+     * The rectangle is empty if nothing changed.
+     */
+    Rect getCurrentFrameDirtyRect();
+}
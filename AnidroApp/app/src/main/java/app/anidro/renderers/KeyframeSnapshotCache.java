@@ -0,0 +1,113 @@
+package app.anidro.renderers;
+
+import androidx.annotation.NonNull;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class keeps copies of the frames rendered by a {@link FixedFrameRateRenderer} every N frames,
+ * so that seeking backwards can restore the nearest earlier copy instead of replaying the whole
+ * drawing from the first frame. The render targets compress the copies, see {@link RunLengthSnapshot},
+ * and the total size of the compressed copies is kept under a memory budget by dropping every other
+ * copy and doubling the interval between them whenever the budget is exceeded.
+ * <p/>
+ * A snapshot stored for a frame index contains the state of the render target right before
+ * this frame gets rendered.
+ */
+class KeyframeSnapshotCache {
+    private final TreeMap<Integer, RenderTarget.Snapshot> snapshots = new TreeMap<>();
+    private final long memoryBudget;
+    private int interval;
+    private long usedMemory;
+
+    KeyframeSnapshotCache(int interval, long memoryBudget) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Keyframe interval must be positive, got " + interval);
+        }
+        this.interval = interval;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Checks if a snapshot should be taken before rendering the input frame index
+     */
+    boolean shouldSnapshot(int frameIndex) {
+        return frameIndex > 0 && frameIndex % interval == 0 && !snapshots.containsKey(frameIndex);
+    }
+
+    /**
+     * Stores a copy of the input frame for the input frame index, if it fits in the memory budget
+     */
+    void put(int frameIndex, @NonNull RenderTarget frame) {
+        final RenderTarget.Snapshot snapshot = frame.takeSnapshot();
+        if (snapshot == null) {
+            return;
+        }
+        final long snapshotSize = snapshot.getByteCount();
+        if (snapshotSize > memoryBudget) {
+            snapshot.release();
+            return;
+        }
+
+        while (usedMemory + snapshotSize > memoryBudget) {
+            thinOut();
+            if (frameIndex % interval != 0) {
+                // This frame is not a keyframe anymore
+                snapshot.release();
+                return;
+            }
+        }
+
+        snapshots.put(frameIndex, snapshot);
+        usedMemory += snapshotSize;
+    }
+
+    /**
+     * Returns the index of the nearest snapshot at or before the input frame index,
+     * or -1 if there is no such snapshot
+     */
+    int findNearest(int frameIndex) {
+        final Integer key = snapshots.floorKey(frameIndex);
+        return key != null ? key : -1;
+    }
+
+    /**
+     * Restores the snapshot stored for the input frame index into the render target
+     */
+    void restore(int frameIndex, @NonNull RenderTarget target) {
+        final RenderTarget.Snapshot snapshot = snapshots.get(frameIndex);
+        if (snapshot == null) {
+            throw new IllegalStateException("No snapshot for frame " + frameIndex);
+        }
+        target.restoreSnapshot(snapshot);
+    }
+
+    /**
+     * Recycles all stored snapshots
+     */
+    void clear() {
+        for (RenderTarget.Snapshot snapshot : snapshots.values()) {
+            snapshot.release();
+        }
+        snapshots.clear();
+        usedMemory = 0;
+    }
+
+    /**
+     * Doubles the interval between snapshots and drops the ones no longer on the interval
+     */
+    private void thinOut() {
+        interval *= 2;
+        final Iterator<Map.Entry<Integer, RenderTarget.Snapshot>> iterator = snapshots.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Integer, RenderTarget.Snapshot> entry = iterator.next();
+            if (entry.getKey() % interval != 0) {
+                usedMemory -= entry.getValue().getByteCount();
+                entry.getValue().release();
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package app.anidro.renderers
+
+import app.anidro.models.TimedSegment
+
+/**
+ * A view of a [TimedSegment] placed on the normalized timeline of a drawing. The segment itself
+ * is never changed, the normalized start time and duration are mapped to the original timestamps
+ * of the segment whenever a part of it is extracted, so several renderers can normalize the
+ * same segments differently at the same time.
+ *
+ * The view keeps only the index of the segment in its drawing and takes the segment from the
+ * drawing whenever it is needed, so a drawing which builds its segments on demand does not have
+ * to keep all of them while it is rendered.
+ */
+class NormalizedSegment(
+        private val drawing: List<TimedSegment>,
+        private val index: Int,
+        val startTime: Long,
+        val duration: Long) {
+
+    /**
+     * Creates a view of a single segment, which is kept by the view
+     */
+    @JvmOverloads
+    constructor(segment: TimedSegment, startTime: Long, duration: Long = segment.duration) :
+            this(listOf(segment), 0, startTime, duration)
+
+    val segment: TimedSegment
+        get() = drawing[index]
+
+    val endTime: Long
+        get() = startTime + duration
+
+    /**
+     * Checks if the segment is drawn, at least partially, inside the input normalized time
+     * interval. Only the timing is checked, so the segment is not taken from the drawing.
+     */
+    fun overlapsInterval(intervalStart: Long, intervalEnd: Long): Boolean {
+        return startTime <= intervalEnd && endTime >= intervalStart
+    }
+
+    /**
+     * Returns the arc length at which the input segment, the one this view is placed for, reaches
+     * the input normalized time for the first time
+     */
+    fun getLengthAtOrAfter(segment: TimedSegment, time: Long): Float {
+        if (time <= startTime) {
+            return 0f
+        }
+        return segment.geometry.getLengthAtOrAfter(toSegmentTime(segment, time))
+    }
+
+    /**
+     * Returns the original timestamp of the input segment at which it reaches the input normalized time
+     */
+    fun getSegmentTimeAtOrAfter(segment: TimedSegment, time: Long): Long {
+        if (time <= startTime) {
+            return segment.startTime
+        }
+        return toSegmentTime(segment, time)
+    }
+
+    /**
+     * Returns the arc length at which the input segment leaves the input normalized time for the last time.
+     * A segment with no normalized duration is drawn completely at its start time.
+     */
+    fun getLengthAtOrBefore(segment: TimedSegment, time: Long): Float {
+        if (time >= endTime) {
+            return segment.geometry.length
+        }
+        return segment.geometry.getLengthAtOrBefore(toSegmentTime(segment, time))
+    }
+
+    /**
+     * Returns the original timestamp of the input segment at which it leaves the input normalized time.
+     * A segment with no normalized duration is drawn completely at its start time.
+     */
+    fun getSegmentTimeAtOrBefore(segment: TimedSegment, time: Long): Long {
+        if (time >= endTime) {
+            return segment.endTime
+        }
+        return toSegmentTime(segment, time)
+    }
+
+    /**
+     * Maps a normalized time inside the segment to the original timestamps of the segment
+     */
+    private fun toSegmentTime(segment: TimedSegment, time: Long): Long {
+        val segmentDuration = segment.duration
+        if (duration == segmentDuration) {
+            return segment.startTime + time - startTime
+        }
+        return segment.startTime + (time - startTime) * segmentDuration / duration
+    }
+}
@@ -0,0 +1,307 @@
+package app.anidro.renderers;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import timber.log.Timber;
+
+/**
+ * Renders the frames of a {@link FixedFrameRateRenderer} on several threads and hands them over
+ * in their original order. The frames are split into chunks of consecutive frames, assigned to the
+ * workers one after another. Every worker has its own copy of the renderer and jumps over the chunks
+ * of the other workers by drawing the skipped part of the drawing in a single pass, so the
+ * cumulative frames do not have to be rendered sequentially.
+ * <p/>
+ * The rendered frames are copied into a ring of frame slots, which limits how far the workers can
+ * get ahead of the consumer. A slot is released once the consumer moves to the next frame, so the
+ * {@link Bitmap} returned by {@link #getCurrentFrame()} stays valid until then. Every worker needs
+ * its own frame and the frame slots of its chunk, so fewer workers are started if their frames do
+ * not fit in the free memory.
+ */
+public class ParallelFrameRenderer implements FrameSource {
+    /**
+     * The part of the free memory which the frames of the workers may take
+     */
+    private static final int FRAMES_MEMORY_DIVISOR = 2;
+
+    private final FixedFrameRateRenderer renderer;
+    private final int threadsCount;
+    private final int chunkLength;
+
+    private final Bitmap[] slotBitmaps;
+    private final Rect[] slotDirtyRects;
+    private final int[] slotFrames;
+    private final Rect emptyRect = new Rect();
+
+    private ExecutorService executor;
+    private Throwable workerFailure;
+    private int currentFrame;
+    private Bitmap currentFrameBitmap;
+    private Rect currentFrameDirtyRect;
+
+    /**
+     * @param renderer
+     *      The renderer of the drawing. It is owned and destroyed by this {@link ParallelFrameRenderer}.
+     * @param threadsCount
+     *      The maximum number of workers rendering frames concurrently
+     * @param chunkLength
+     *      The number of consecutive frames rendered by a worker before it jumps to its next chunk
+     */
+    public ParallelFrameRenderer(@NonNull FixedFrameRateRenderer renderer, int threadsCount, int chunkLength) {
+        if (threadsCount <= 0 || chunkLength <= 0) {
+            throw new IllegalArgumentException("Invalid threads count " + threadsCount + " or chunk length " + chunkLength);
+        }
+
+        this.renderer = renderer;
+        this.threadsCount = capThreadsCount(threadsCount, chunkLength,
+                renderer.getCurrentFrame().getByteCount(), getFreeMemory() / FRAMES_MEMORY_DIVISOR);
+        this.chunkLength = chunkLength;
+
+        final int slotsCount = this.threadsCount * chunkLength;
+        slotBitmaps = new Bitmap[slotsCount];
+        slotDirtyRects = new Rect[slotsCount];
+        slotFrames = new int[slotsCount];
+        for (int i = 0; i < slotsCount; i++) {
+            slotBitmaps[i] = Bitmap.createBitmap(renderer.getFrameWidth(), renderer.getFrameHeight(),
+                    renderer.getCurrentFrame().getConfig());
+            slotDirtyRects[i] = new Rect();
+        }
+
+        resetRenderer();
+    }
+
+    /**
+     * Stops the workers and cleans up the memory. After this call,
+     * the {@link ParallelFrameRenderer} can no longer be used.
+     */
+    public void destroy() {
+        if (!stopWorkers()) {
+            // Running workers may still use the frames, leave them to the garbage collector
+            Timber.w("Frame workers were not stopped, the frames are not recycled");
+            return;
+        }
+        for (Bitmap slotBitmap : slotBitmaps) {
+            slotBitmap.recycle();
+        }
+        renderer.destroy();
+    }
+
+    /**
+     * Returns the number of workers whose frames fit in the input memory, at least one and
+     * at most the input threads count
+     *
+     * @param frameBytes
+     *      The memory taken by a single frame
+     * @param availableBytes
+     *      The memory available to the frames of all workers
+     */
+    static int capThreadsCount(int threadsCount, int chunkLength, long frameBytes, long availableBytes) {
+        // Every worker renders into its own frame and owns the slots of one chunk
+        final long workerBytes = (chunkLength + 1) * frameBytes;
+        final long maxThreadsCount = workerBytes > 0 ? availableBytes / workerBytes : threadsCount;
+        return (int) Math.max(1, Math.min(threadsCount, maxThreadsCount));
+    }
+
+    private static long getFreeMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    @Override
+    public long getFrameLength() {
+        return renderer.getFrameLength();
+    }
+
+    @Override
+    public int getFrameWidth() {
+        return renderer.getFrameWidth();
+    }
+
+    @Override
+    public int getFrameHeight() {
+        return renderer.getFrameHeight();
+    }
+
+    @Override
+    public int getFramesCount() {
+        return renderer.getFramesCount();
+    }
+
+    @Override
+    public int getCurrentFrameIndex() {
+        return currentFrame;
+    }
+
+    @Override
+    public void resetRenderer() {
+        if (!stopWorkers()) {
+            throw new IllegalStateException("Interrupted while stopping the frame workers");
+        }
+        synchronized (this) {
+            for (int i = 0; i < slotFrames.length; i++) {
+                slotFrames[i] = -1;
+            }
+            workerFailure = null;
+        }
+        currentFrame = 0;
+
+        // The frame before the first one is the empty background
+        renderer.resetRenderer();
+        currentFrameBitmap = renderer.getCurrentFrame();
+        currentFrameDirtyRect = emptyRect;
+    }
+
+    @Override
+    public boolean hasNextFrame() {
+        return currentFrame < getFramesCount();
+    }
+
+    @Override
+    public void renderNextFrame() {
+        if (!hasNextFrame()) {
+            return;
+        }
+
+        if (currentFrame >= renderer.getDrawingFramesCount()) {
+            // Extra final frames repeat the last one
+            currentFrame++;
+            currentFrameDirtyRect = emptyRect;
+            return;
+        }
+
+        if (executor == null) {
+            startWorkers();
+        }
+
+        final int slot = currentFrame % slotFrames.length;
+        synchronized (this) {
+            // The previous frame is no longer in use
+            if (currentFrame > 0) {
+                slotFrames[(currentFrame - 1) % slotFrames.length] = -1;
+                notifyAll();
+            }
+
+            while (slotFrames[slot] != currentFrame) {
+                if (workerFailure != null) {
+                    throw new IllegalStateException("Frame rendering failed", workerFailure);
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for frame " + currentFrame, e);
+                }
+            }
+        }
+
+        currentFrameBitmap = slotBitmaps[slot];
+        currentFrameDirtyRect = slotDirtyRects[slot];
+        currentFrame++;
+    }
+
+    @Override
+    public Bitmap getCurrentFrame() {
+        return currentFrameBitmap;
+    }
+
+    @Override
+    public Rect getCurrentFrameDirtyRect() {
+        return currentFrameDirtyRect;
+    }
+
+    private void startWorkers() {
+        executor = Executors.newFixedThreadPool(threadsCount);
+        for (int i = 0; i < threadsCount; i++) {
+            final int firstChunk = i;
+            executor.execute(() -> renderChunks(firstChunk));
+        }
+    }
+
+    /**
+     * Stops the workers and waits until none of them writes into the frame slots anymore.
+     * A worker stops at the latest after the frame it is currently rendering.
+     *
+     * @return
+     *      False if the waiting was interrupted, so some workers may still be running
+     */
+    private boolean stopWorkers() {
+        if (executor == null) {
+            return true;
+        }
+        executor.shutdownNow();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                Timber.w("Waiting for the frame workers to stop");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        executor = null;
+        return true;
+    }
+
+    /**
+     * Renders every chunk assigned to a single worker, starting from the input one
+     */
+    private void renderChunks(int firstChunk) {
+        final FixedFrameRateRenderer workerRenderer = new FixedFrameRateRenderer(renderer);
+        final int drawingFramesCount = renderer.getDrawingFramesCount();
+        try {
+            for (int chunkStart = firstChunk * chunkLength; chunkStart < drawingFramesCount;
+                 chunkStart += threadsCount * chunkLength) {
+                final int chunkEnd = Math.min(drawingFramesCount, chunkStart + chunkLength);
+                for (int frameIndex = chunkStart; frameIndex < chunkEnd; frameIndex++) {
+                    // Jumps over the chunks of the other workers at once
+                    workerRenderer.renderFrame(frameIndex);
+                    if (!publishFrame(frameIndex, workerRenderer)) {
+                        return;
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                workerFailure = e;
+                notifyAll();
+            }
+        } finally {
+            workerRenderer.destroy();
+        }
+    }
+
+    /**
+     * Waits for the slot of the input frame to become free and copies the frame into it
+     *
+     * @return
+     *      False if the worker has been stopped while waiting
+     */
+    private boolean publishFrame(int frameIndex, FixedFrameRateRenderer workerRenderer) {
+        final int slot = frameIndex % slotFrames.length;
+        synchronized (this) {
+            while (slotFrames[slot] != -1) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+        }
+
+        // Nobody reads the slot until it is published
+        new Canvas(slotBitmaps[slot]).drawBitmap(workerRenderer.getCurrentFrame(), 0, 0, null);
+        slotDirtyRects[slot].set(workerRenderer.getCurrentFrameDirtyRect());
+
+        synchronized (this) {
+            slotFrames[slot] = frameIndex;
+            notifyAll();
+        }
+        return !Thread.currentThread().isInterrupted();
+    }
+}
@@ -0,0 +1,100 @@
+package app.anidro.renderers;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The surface the {@link FixedFrameRateRenderer} draws its frames onto. It only needs to fill the
+ * whole frame with a color and to draw strokes with the look of the paints of the
+ * {@link app.anidro.common.DrawingPaintBuilder}, i.e. anti-aliased polylines and cubic curves with
+ * round caps and joins.
+ * <p/>
+ * The {@link CanvasRenderTarget} draws into a {@link Bitmap} with a {@link android.graphics.Canvas}.
+ * The {@link SoftwareRenderTarget} rasterizes the strokes itself into an array of pixels, so the
+ * renderer can also run without the Android graphics stack, e.g. in benchmarks and tools on a JVM.
+ */
+public interface RenderTarget {
+    /**
+     * A copy of the pixels of a render target
+     */
+    interface Snapshot {
+        /**
+         * Returns the memory used by the copy in bytes
+         */
+        long getByteCount();
+
+        /**
+         * Frees the memory of the copy. After this call the snapshot can no longer be restored.
+         */
+        void release();
+    }
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * Returns the memory used by the pixels of the target in bytes
+     */
+    long getByteCount();
+
+    /**
+     * Replaces all pixels of the target with the input color
+     */
+    void fill(@ColorInt int color);
+
+    /**
+     * Draws an anti-aliased polyline with round caps and joins. A single vertex is drawn as a dot
+     * with the diameter of the stroke width.
+     *
+     * @param vertices
+     *      The x and y coordinates of the vertices, one pair after another
+     * @param verticesCount
+     *      The number of vertices to draw
+     */
+    void drawStroke(@NonNull float[] vertices, int verticesCount, @ColorInt int color, float strokeWidth);
+
+    /**
+     * Draws an anti-aliased chain of cubic Bezier pieces with round caps and joins, with the same
+     * look as {@link #drawStroke(float[], int, int, float)}. A chain without pieces is drawn as a dot.
+     *
+     * @param controlPoints
+     *      The x and y coordinates of the start point and then of the two inner control points
+     *      and the end point of every piece, one pair after another
+     * @param piecesCount
+     *      The number of pieces to draw
+     */
+    void drawCurve(@NonNull float[] controlPoints, int piecesCount, @ColorInt int color, float strokeWidth);
+
+    /**
+     * Returns a copy of the current pixels, or null if there is no memory for it
+     */
+    @Nullable
+    Snapshot takeSnapshot();
+
+    /**
+     * Replaces all pixels of the target with a snapshot taken from this target
+     */
+    void restoreSnapshot(@NonNull Snapshot snapshot);
+
+    /**
+     * Creates a new empty target of the same type and size
+     */
+    @NonNull
+    RenderTarget createCompatibleTarget();
+
+    /**
+     * Returns the {@link Bitmap} containing the pixels of the target,
+     * or null if the target does not draw into a {@link Bitmap}
+     */
+    @Nullable
+    Bitmap getBitmap();
+
+    /**
+     * Frees the memory of the target. After this call, the target can no longer be used.
+     */
+    void destroy();
+}
@@ -0,0 +1,76 @@
+package app.anidro.renderers;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A {@link RenderTarget.Snapshot} keeping the ARGB pixels of a frame compressed as runs of equal
+ * pixels. Drawings consist mostly of the flat background and of solid strokes, so their frames
+ * compress to a small part of their size, while compressing and restoring take a single pass over
+ * the pixels and restore them exactly.
+ * <p/>
+ * Each run is stored as its length followed by its pixel.
+ */
+class RunLengthSnapshot implements RenderTarget.Snapshot {
+    private final int[] runs;
+
+    private RunLengthSnapshot(int[] runs) {
+        this.runs = runs;
+    }
+
+    /**
+     * Compresses the first pixels of the input array
+     *
+     * @return
+     *      The compressed pixels, or null if they would not take less memory than a plain copy
+     */
+    @Nullable
+    static RunLengthSnapshot compress(@NonNull int[] pixels, int pixelsCount) {
+        int runsCount = 0;
+        for (int i = 0; i < pixelsCount; runsCount++) {
+            final int pixel = pixels[i];
+            do {
+                i++;
+            } while (i < pixelsCount && pixels[i] == pixel);
+            if (runsCount * 2 >= pixelsCount) {
+                return null;
+            }
+        }
+
+        final int[] runs = new int[runsCount * 2];
+        int run = 0;
+        for (int i = 0; i < pixelsCount; run += 2) {
+            final int start = i;
+            final int pixel = pixels[i];
+            do {
+                i++;
+            } while (i < pixelsCount && pixels[i] == pixel);
+            runs[run] = i - start;
+            runs[run + 1] = pixel;
+        }
+        return new RunLengthSnapshot(runs);
+    }
+
+    /**
+     * Writes the compressed pixels into the first pixels of the input array
+     */
+    void restore(@NonNull int[] pixels) {
+        int offset = 0;
+        for (int run = 0; run < runs.length; run += 2) {
+            final int end = offset + runs[run];
+            final int pixel = runs[run + 1];
+            while (offset < end) {
+                pixels[offset++] = pixel;
+            }
+        }
+    }
+
+    @Override
+    public long getByteCount() {
+        return runs.length * 4L;
+    }
+
+    @Override
+    public void release() {
+    }
+}
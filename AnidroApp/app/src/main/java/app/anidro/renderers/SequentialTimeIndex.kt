@@ -0,0 +1,14 @@
+package app.anidro.renderers
+
+/**
+ * An index of the times at which the segments of a drawing start when they are drawn one after
+ * another, with the [SequentialTimeNormalizer.SEGMENT_PAUSE] between them, and of the durations of
+ * the segments. It is implemented by segment lists which already know these times, so the
+ * [SequentialTimeNormalizer] neither sums up the durations of all previous segments nor needs
+ * any of the segments themselves.
+ */
+interface SequentialTimeIndex {
+    fun getSequentialStartTime(segmentIndex: Int): Long
+
+    fun getSegmentDuration(segmentIndex: Int): Long
+}
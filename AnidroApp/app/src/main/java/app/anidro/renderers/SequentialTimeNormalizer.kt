@@ -8,33 +8,41 @@ import java.util.*
  * of all segments of the drawing in a way that only a single segment of
  * the drawing is being drawn at a specific time.
  * It also reduces the pauses between segments to be short and equal between all
- * drawing segments.
+ * drawing segments. Segment lists implementing [SequentialTimeIndex] provide the
+ * start times and durations of their segments, so none of the segments is built here,
+ * otherwise they are summed up here.
  */
 class SequentialTimeNormalizer : DrawingTimeNormalizer {
 
-    private var normalizedSegments = mutableListOf<TimedSegment>()
+    private var normalizedSegments = mutableListOf<NormalizedSegment>()
 
     override var normalizedDuration: Long = 0
         private set
 
-    override val normalizedDrawing: List<TimedSegment>
+    override val normalizedDrawing: List<NormalizedSegment>
         get() = normalizedSegments
 
     override fun normalizeDrawing(segments: List<TimedSegment>) {
         normalizedSegments.clear()
         normalizedDuration = 0
         if (segments.isNotEmpty()) {
-            var currentTime: Long = 0
-            for (segment in segments) {
-                segment.adjustStartTimestamp(currentTime)
-                normalizedSegments.add(segment)
-                currentTime += segment.duration + SEGMENT_PAUSE
+            if (segments is SequentialTimeIndex) {
+                for (index in segments.indices) {
+                    normalizedSegments.add(NormalizedSegment(segments, index,
+                            segments.getSequentialStartTime(index), segments.getSegmentDuration(index)))
+                }
+            } else {
+                var currentTime: Long = 0
+                for (segment in segments) {
+                    normalizedSegments.add(NormalizedSegment(segment, currentTime))
+                    currentTime += segment.duration + SEGMENT_PAUSE
+                }
             }
             normalizedDuration = normalizedSegments[normalizedSegments.size - 1].endTime
         }
     }
 
     companion object {
-        private const val SEGMENT_PAUSE: Long = 100
+        const val SEGMENT_PAUSE: Long = 100
     }
 }
\ No newline at end of file
@@ -0,0 +1,257 @@
+package app.anidro.renderers;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import app.anidro.models.TimedSegment;
+
+/**
+ * This class renders a drawing only once, with a single {@link FixedFrameRateRenderer} running at
+ * the largest resolution and the shortest frame length of all its targets, and hands every target
+ * its own downscaled copies of the rendered frames at its own frame rate. The smaller targets are
+ * downscaled with a {@link BoxFilterDownscaler}, so a whole ladder of sizes costs little more than
+ * rendering the largest one.
+ * <p/>
+ * Every target is a {@link FrameSource} which can be consumed from its own thread. The shared
+ * renderer moves to its next frame only when no target needs its current frame anymore, so
+ * a target consumed faster than the others waits for them. A target which stops being consumed
+ * before its last frame has to be removed with {@link #removeTarget(FrameSource)}, otherwise the
+ * other targets would wait for it forever.
+ */
+public class SharedFrameRenderer {
+    private final FixedFrameRateRenderer renderer;
+    private final List<Target> targets = new ArrayList<>();
+    private int renderedFrame = -1;
+
+    public SharedFrameRenderer(@NonNull List<TimedSegment> drawing,
+                               @ColorInt int backgroundColor,
+                               int frameWidth, int frameHeight,
+                               @NonNull DrawingTimeNormalizer normalizer, long frameLength) {
+        renderer = new FixedFrameRateRenderer(drawing, backgroundColor, frameWidth, frameHeight,
+                normalizer, frameLength, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Adds a new target with its own frame size and rate. All targets must be added before
+     * any of them renders its first frame.
+     *
+     * @param frameWidth
+     *      The frame width of the target, not bigger than the one of the shared renderer
+     * @param frameHeight
+     *      The frame height of the target, not bigger than the one of the shared renderer
+     * @param frameLength
+     *      The frame length of the target, not shorter than the one of the shared renderer
+     * @param finalFrameExtraDelay
+     *      The extra delay of the final frame, added as repeated frames
+     */
+    public synchronized FrameSource addTarget(int frameWidth, int frameHeight, long frameLength,
+                                              long finalFrameExtraDelay, @NonNull Bitmap.Config frameConfig) {
+        if (renderedFrame >= 0) {
+            throw new IllegalStateException("Targets must be added before rendering starts");
+        }
+        if (frameWidth > renderer.getFrameWidth() || frameHeight > renderer.getFrameHeight()
+                || frameLength < renderer.getFrameLength()) {
+            throw new IllegalArgumentException("Target " + frameWidth + "x" + frameHeight + "@" + frameLength
+                    + "ms exceeds the shared renderer " + renderer.getFrameWidth() + "x"
+                    + renderer.getFrameHeight() + "@" + renderer.getFrameLength() + "ms");
+        }
+
+        final Target target = new Target(frameWidth, frameHeight, frameLength, finalFrameExtraDelay, frameConfig);
+        targets.add(target);
+        return target;
+    }
+
+    /**
+     * Removes a target, so that the other targets do not wait for it anymore
+     */
+    public synchronized void removeTarget(@NonNull FrameSource target) {
+        if (target instanceof Target) {
+            ((Target) target).removed = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Cleans up the memory of the shared renderer and all its targets. After this call,
+     * neither the {@link SharedFrameRenderer} nor its targets can be used.
+     */
+    public synchronized void destroy() {
+        for (Target target : targets) {
+            target.frameBitmap.recycle();
+        }
+        targets.clear();
+        renderer.destroy();
+    }
+
+    /**
+     * Checks if no target needs the current frame of the shared renderer anymore
+     */
+    private boolean canRenderNextFrame() {
+        if (renderedFrame + 1 >= renderer.getFramesCount()) {
+            return false;
+        }
+        for (Target target : targets) {
+            if (!target.removed && target.neededFrame <= renderedFrame) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void renderSharedFrame() {
+        renderer.renderNextFrame();
+        renderedFrame++;
+        if (renderer.hasCurrentFrameChanged()) {
+            final Rect dirtyRect = renderer.getCurrentFrameDirtyRect();
+            for (Target target : targets) {
+                target.pendingDamage.union(dirtyRect.left, dirtyRect.top, dirtyRect.right, dirtyRect.bottom);
+            }
+        }
+    }
+
+    /**
+     * A single target of the shared renderer with its own frame size and rate
+     */
+    private class Target implements FrameSource {
+        private final Bitmap frameBitmap;
+        private final Canvas frameCanvas;
+        private final BoxFilterDownscaler downscaler;
+        private final long frameLength;
+        private final int drawingFramesCount;
+        private final int extraFramesCount;
+        private final Rect pendingDamage = new Rect();
+        private final Rect dirtyRect = new Rect();
+        private int currentFrame;
+        private int neededFrame;
+        private boolean removed;
+
+        Target(int frameWidth, int frameHeight, long frameLength, long finalFrameExtraDelay, Bitmap.Config frameConfig) {
+            frameBitmap = Bitmap.createBitmap(frameWidth, frameHeight, frameConfig);
+            frameCanvas = new Canvas(frameBitmap);
+            downscaler = frameWidth == renderer.getFrameWidth() && frameHeight == renderer.getFrameHeight()
+                    ? null
+                    : new BoxFilterDownscaler(renderer.getFrameWidth(), renderer.getFrameHeight(), frameWidth, frameHeight);
+            this.frameLength = frameLength;
+            drawingFramesCount = renderer.getFramesCount() == 0 ? 0 : (int) (renderer.getDrawingDuration() / frameLength) + 1;
+            extraFramesCount = (int) (finalFrameExtraDelay / frameLength);
+            pendingDamage.set(0, 0, renderer.getFrameWidth(), renderer.getFrameHeight());
+            neededFrame = findSharedFrame(0);
+        }
+
+        /**
+         * Returns the index of the first shared frame covering the whole time span of the input
+         * target frame. Final extra frames just repeat the last shared frame.
+         */
+        private int findSharedFrame(int frameIndex) {
+            final int lastSharedFrame = renderer.getFramesCount() - 1;
+            if (frameIndex >= drawingFramesCount) {
+                return lastSharedFrame;
+            }
+            final long frameEnd = (frameIndex + 1) * frameLength;
+            final long sharedFrameLength = renderer.getFrameLength();
+            final int sharedFrame = (int) ((frameEnd + sharedFrameLength - 1) / sharedFrameLength) - 1;
+            return Math.min(sharedFrame, lastSharedFrame);
+        }
+
+        @Override
+        public long getFrameLength() {
+            return frameLength;
+        }
+
+        @Override
+        public int getFrameWidth() {
+            return frameBitmap.getWidth();
+        }
+
+        @Override
+        public int getFrameHeight() {
+            return frameBitmap.getHeight();
+        }
+
+        @Override
+        public int getFramesCount() {
+            return drawingFramesCount + extraFramesCount;
+        }
+
+        @Override
+        public int getCurrentFrameIndex() {
+            return currentFrame;
+        }
+
+        @Override
+        public void resetRenderer() {
+            if (currentFrame > 0) {
+                throw new IllegalStateException("Targets of a shared renderer cannot be rewound");
+            }
+        }
+
+        @Override
+        public boolean hasNextFrame() {
+            return currentFrame < getFramesCount();
+        }
+
+        @Override
+        public void renderNextFrame() {
+            if (!hasNextFrame()) {
+                return;
+            }
+
+            synchronized (SharedFrameRenderer.this) {
+                while (renderedFrame < neededFrame) {
+                    if (canRenderNextFrame()) {
+                        renderSharedFrame();
+                        SharedFrameRenderer.this.notifyAll();
+                    } else {
+                        try {
+                            SharedFrameRenderer.this.wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IllegalStateException("Interrupted while waiting for a shared frame", e);
+                        }
+                    }
+                }
+
+                copySharedFrame();
+                currentFrame++;
+                neededFrame = hasNextFrame() ? findSharedFrame(currentFrame) : Integer.MAX_VALUE;
+                SharedFrameRenderer.this.notifyAll();
+            }
+        }
+
+        @Override
+        public Bitmap getCurrentFrame() {
+            return frameBitmap;
+        }
+
+        @Override
+        public Rect getCurrentFrameDirtyRect() {
+            return dirtyRect;
+        }
+
+        /**
+         * Copies the area of the shared frame changed since the last copy into the target frame,
+         * downscaling it if the target is smaller
+         */
+        private void copySharedFrame() {
+            if (downscaler != null) {
+                downscaler.downscale(renderer.getCurrentFrame(), pendingDamage, frameBitmap, dirtyRect);
+            } else {
+                dirtyRect.set(pendingDamage);
+                if (!dirtyRect.isEmpty()) {
+                    frameCanvas.save();
+                    frameCanvas.clipRect(dirtyRect);
+                    frameCanvas.drawBitmap(renderer.getCurrentFrame(), 0, 0, null);
+                    frameCanvas.restore();
+                }
+            }
+            pendingDamage.setEmpty();
+        }
+    }
+}
@@ -9,20 +9,18 @@ import java.util.*
  * frame with the whole drawing in it.
  */
 class SingleFrameTimeNormalizer : DrawingTimeNormalizer {
-    private var normalizedSegments = mutableListOf<TimedSegment>()
+    private var normalizedSegments = mutableListOf<NormalizedSegment>()
 
     override val normalizedDuration: Long
         get() = 0
 
-    override val normalizedDrawing: List<TimedSegment>
+    override val normalizedDrawing: List<NormalizedSegment>
         get() = normalizedSegments
 
     override fun normalizeDrawing(segments: List<TimedSegment>) {
         normalizedSegments.clear()
-        for (segment in segments) {
-            segment.adjustStartTimestamp(0)
-            segment.adjustDuration(0)
-            normalizedSegments.add(segment)
+        for (index in segments.indices) {
+            normalizedSegments.add(NormalizedSegment(segments, index, 0, 0))
         }
     }
 }
\ No newline at end of file
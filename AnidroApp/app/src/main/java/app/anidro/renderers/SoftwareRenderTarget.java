@@ -0,0 +1,320 @@
+package app.anidro.renderers;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A {@link RenderTarget} rasterizing the strokes itself into an array of ARGB pixels, without using
+ * any Android graphics classes. The pixels are not premultiplied, just like the ones returned by
+ * {@link Bitmap#getPixels(int[], int, int, int, int, int, int)}.
+ * <p/>
+ * A stroke with round caps and joins covers all points closer to its polyline than half of the
+ * stroke width. The coverage of a pixel is therefore computed from the distance of the pixel center
+ * to the nearest segment of the polyline, with a one pixel wide anti-aliased edge. The stroke is
+ * rasterized scanline by scanline: the coverage of every segment crossing the scanline is
+ * accumulated in a reused row as the maximum of all segments, so the overlapping parts at the joins
+ * are blended only once, and the row is then blended into the pixels with the stroke color.
+ * Curves are flattened into such a polyline at the size of the target first.
+ * Drawing a stroke allocates nothing once the buffers have grown to the size of the longest stroke.
+ * <p/>
+ * The covered area and the blending follow the stroke geometry, but the anti-aliased edges are
+ * computed differently than by the {@link android.graphics.Canvas}, so the frames are not pixel
+ * identical to the ones of a {@link CanvasRenderTarget}.
+ */
+public class SoftwareRenderTarget implements RenderTarget {
+    // The segments of the drawn stroke as start x, start y, delta x, delta y and inverse squared length
+    private static final int SEGMENT_SIZE = 5;
+    // The maximum distance in pixels between two vertices of a flattened curve piece
+    private static final float CURVE_FLATTENING_STEP = 2f;
+    private static final int MAX_CURVE_STEPS = 64;
+
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+    private final float[] coverageRow;
+    private float[] segments = new float[SEGMENT_SIZE * 16];
+    private float[] curveVertices = new float[2 * 64];
+
+    public SoftwareRenderTarget(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid target size " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.pixels = new int[width * height];
+        this.coverageRow = new float[width];
+    }
+
+    /**
+     * Returns the ARGB pixels of the target, row after row. The array is the live
+     * content of the target and is changed by any further drawing.
+     */
+    @NonNull
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public long getByteCount() {
+        return pixels.length * 4L;
+    }
+
+    @Override
+    public void fill(@ColorInt int color) {
+        Arrays.fill(pixels, color);
+    }
+
+    @Override
+    public void drawStroke(@NonNull float[] vertices, int verticesCount, @ColorInt int color, float strokeWidth) {
+        if (verticesCount == 0 || (color >>> 24) == 0) {
+            return;
+        }
+
+        // The distance from the polyline at which the coverage drops to zero
+        final float reach = strokeWidth / 2f + 0.5f;
+
+        final int segmentsCount = Math.max(1, verticesCount - 1);
+        if (segments.length < segmentsCount * SEGMENT_SIZE) {
+            segments = new float[segmentsCount * SEGMENT_SIZE];
+        }
+
+        float minX = vertices[0];
+        float maxX = minX;
+        float minY = vertices[1];
+        float maxY = minY;
+        for (int i = 0; i < segmentsCount; i++) {
+            final int next = Math.min(i + 1, verticesCount - 1);
+            final float startX = vertices[i * 2];
+            final float startY = vertices[i * 2 + 1];
+            final float deltaX = vertices[next * 2] - startX;
+            final float deltaY = vertices[next * 2 + 1] - startY;
+            final float squaredLength = deltaX * deltaX + deltaY * deltaY;
+
+            final int offset = i * SEGMENT_SIZE;
+            segments[offset] = startX;
+            segments[offset + 1] = startY;
+            segments[offset + 2] = deltaX;
+            segments[offset + 3] = deltaY;
+            segments[offset + 4] = squaredLength > 0 ? 1f / squaredLength : 0;
+
+            minX = Math.min(minX, startX + Math.min(0, deltaX));
+            maxX = Math.max(maxX, startX + Math.max(0, deltaX));
+            minY = Math.min(minY, startY + Math.min(0, deltaY));
+            maxY = Math.max(maxY, startY + Math.max(0, deltaY));
+        }
+
+        final int top = Math.max(0, (int) Math.floor(minY - reach));
+        final int bottom = Math.min(height - 1, (int) Math.ceil(maxY + reach));
+        final int left = Math.max(0, (int) Math.floor(minX - reach));
+        final int right = Math.min(width - 1, (int) Math.ceil(maxX + reach));
+        if (top > bottom || left > right) {
+            return;
+        }
+
+        for (int y = top; y <= bottom; y++) {
+            final float centerY = y + 0.5f;
+            int rowLeft = Integer.MAX_VALUE;
+            int rowRight = Integer.MIN_VALUE;
+
+            for (int i = 0; i < segmentsCount; i++) {
+                final int offset = i * SEGMENT_SIZE;
+                final float startX = segments[offset];
+                final float startY = segments[offset + 1];
+                final float deltaX = segments[offset + 2];
+                final float deltaY = segments[offset + 3];
+                final float inverseSquaredLength = segments[offset + 4];
+
+                // The part of the segment close enough to the scanline to cover any of its pixels
+                float fromT = 0;
+                float toT = 1;
+                if (deltaY != 0) {
+                    final float firstT = (centerY - reach - startY) / deltaY;
+                    final float secondT = (centerY + reach - startY) / deltaY;
+                    fromT = Math.max(0, Math.min(firstT, secondT));
+                    toT = Math.min(1, Math.max(firstT, secondT));
+                    if (fromT > toT) {
+                        continue;
+                    }
+                } else if (Math.abs(centerY - startY) >= reach) {
+                    continue;
+                }
+
+                final float fromX = startX + fromT * deltaX;
+                final float toX = startX + toT * deltaX;
+                final int spanLeft = Math.max(left, (int) Math.ceil(Math.min(fromX, toX) - reach - 0.5f));
+                final int spanRight = Math.min(right, (int) Math.floor(Math.max(fromX, toX) + reach - 0.5f));
+
+                for (int x = spanLeft; x <= spanRight; x++) {
+                    final float pointX = x + 0.5f - startX;
+                    final float pointY = centerY - startY;
+                    float t = (pointX * deltaX + pointY * deltaY) * inverseSquaredLength;
+                    t = t < 0 ? 0 : (t > 1 ? 1 : t);
+                    final float distanceX = pointX - t * deltaX;
+                    final float distanceY = pointY - t * deltaY;
+                    final float coverage = reach - (float) Math.sqrt(distanceX * distanceX + distanceY * distanceY);
+                    if (coverage > coverageRow[x]) {
+                        coverageRow[x] = coverage;
+                    }
+                }
+
+                if (spanLeft <= spanRight) {
+                    rowLeft = Math.min(rowLeft, spanLeft);
+                    rowRight = Math.max(rowRight, spanRight);
+                }
+            }
+
+            if (rowLeft <= rowRight) {
+                blendRow(y, rowLeft, rowRight, color);
+            }
+        }
+    }
+
+    @Override
+    public void drawCurve(@NonNull float[] controlPoints, int piecesCount, @ColorInt int color, float strokeWidth) {
+        int verticesCount = 1;
+        for (int piece = 0; piece < piecesCount; piece++) {
+            verticesCount += getFlatteningSteps(controlPoints, piece);
+        }
+        if (curveVertices.length < verticesCount * 2) {
+            curveVertices = new float[verticesCount * 2];
+        }
+
+        curveVertices[0] = controlPoints[0];
+        curveVertices[1] = controlPoints[1];
+        int count = 1;
+        for (int piece = 0; piece < piecesCount; piece++) {
+            final int i = piece * 3 * 2;
+            final int steps = getFlatteningSteps(controlPoints, piece);
+            for (int step = 1; step <= steps; step++) {
+                final float t = step / (float) steps;
+                final float u = 1 - t;
+                final float b0 = u * u * u;
+                final float b1 = 3 * u * u * t;
+                final float b2 = 3 * u * t * t;
+                final float b3 = t * t * t;
+                curveVertices[count * 2] = b0 * controlPoints[i] + b1 * controlPoints[i + 2]
+                        + b2 * controlPoints[i + 4] + b3 * controlPoints[i + 6];
+                curveVertices[count * 2 + 1] = b0 * controlPoints[i + 1] + b1 * controlPoints[i + 3]
+                        + b2 * controlPoints[i + 5] + b3 * controlPoints[i + 7];
+                count++;
+            }
+        }
+        drawStroke(curveVertices, count, color, strokeWidth);
+    }
+
+    @Nullable
+    @Override
+    public Snapshot takeSnapshot() {
+        final RunLengthSnapshot compressed = RunLengthSnapshot.compress(pixels, pixels.length);
+        return compressed != null ? compressed : new PixelsSnapshot(pixels.clone());
+    }
+
+    @Override
+    public void restoreSnapshot(@NonNull Snapshot snapshot) {
+        if (snapshot instanceof RunLengthSnapshot) {
+            ((RunLengthSnapshot) snapshot).restore(pixels);
+            return;
+        }
+        final int[] snapshotPixels = ((PixelsSnapshot) snapshot).pixels;
+        System.arraycopy(snapshotPixels, 0, pixels, 0, pixels.length);
+    }
+
+    @NonNull
+    @Override
+    public RenderTarget createCompatibleTarget() {
+        return new SoftwareRenderTarget(width, height);
+    }
+
+    @Nullable
+    @Override
+    public Bitmap getBitmap() {
+        return null;
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    /**
+     * Returns the number of lines a curve piece is flattened into, from the length of its control polygon
+     */
+    private static int getFlatteningSteps(float[] controlPoints, int piece) {
+        final int i = piece * 3 * 2;
+        float controlPolygonLength = 0;
+        for (int j = i; j < i + 6; j += 2) {
+            final float dx = controlPoints[j + 2] - controlPoints[j];
+            final float dy = controlPoints[j + 3] - controlPoints[j + 1];
+            controlPolygonLength += (float) Math.sqrt(dx * dx + dy * dy);
+        }
+        return Math.max(1, Math.min(MAX_CURVE_STEPS, (int) Math.ceil(controlPolygonLength / CURVE_FLATTENING_STEP)));
+    }
+
+    /**
+     * Blends the accumulated coverage of a row into the pixels with the source over operator
+     * and clears the coverage for the next row
+     */
+    private void blendRow(int y, int rowLeft, int rowRight, @ColorInt int color) {
+        final int colorAlpha = color >>> 24;
+        final int red = (color >> 16) & 0xFF;
+        final int green = (color >> 8) & 0xFF;
+        final int blue = color & 0xFF;
+        final int rowOffset = y * width;
+
+        for (int x = rowLeft; x <= rowRight; x++) {
+            final float coverage = coverageRow[x];
+            coverageRow[x] = 0;
+            if (coverage <= 0) {
+                continue;
+            }
+
+            final int alpha = (int) (Math.min(1f, coverage) * colorAlpha + 0.5f);
+            if (alpha == 0) {
+                continue;
+            }
+            if (alpha == 0xFF) {
+                pixels[rowOffset + x] = color;
+                continue;
+            }
+
+            final int destination = pixels[rowOffset + x];
+            final int destinationAlpha = ((destination >>> 24) * (0xFF - alpha) + 127) / 0xFF;
+            final int outAlpha = alpha + destinationAlpha;
+            final int outRed = (red * alpha + ((destination >> 16) & 0xFF) * destinationAlpha + outAlpha / 2) / outAlpha;
+            final int outGreen = (green * alpha + ((destination >> 8) & 0xFF) * destinationAlpha + outAlpha / 2) / outAlpha;
+            final int outBlue = (blue * alpha + (destination & 0xFF) * destinationAlpha + outAlpha / 2) / outAlpha;
+            pixels[rowOffset + x] = (outAlpha << 24) | (outRed << 16) | (outGreen << 8) | outBlue;
+        }
+    }
+
+    private static class PixelsSnapshot implements Snapshot {
+        private final int[] pixels;
+
+        PixelsSnapshot(int[] pixels) {
+            this.pixels = pixels;
+        }
+
+        @Override
+        public long getByteCount() {
+            return pixels.length * 4L;
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+}
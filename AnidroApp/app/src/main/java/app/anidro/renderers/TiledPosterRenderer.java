@@ -0,0 +1,382 @@
+package app.anidro.renderers;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import app.anidro.common.DrawingPaintBuilder;
+import app.anidro.models.CubicBezierStroke;
+import app.anidro.models.TimedSegment;
+
+/**
+ * This class rasterizes the whole drawing as a still image of any size, without ever keeping the
+ * whole image in memory. The strokes are drawn tile by tile into a small reused tile bitmap and
+ * the tiles of each horizontal band are collected into a band of rows, which is handed over to a
+ * streaming encoder. The memory needed is the tile bitmap and a single band of rows, which is made
+ * lower than the tiles for wide images so it never exceeds {@link #MAX_BAND_PIXELS} pixels.
+ * <p/>
+ * The strokes are drawn from their original points scaled with the canvas matrix, so their shape stays
+ * smooth at any scale factor. The segments themselves are not modified.
+ * <p/>
+ * Only the bounds and the style of the segments are kept. The segments are taken from the drawing again
+ * for every band and only the paths of the segments crossing the band are built, into reused paths, so a
+ * drawing which builds its segments on demand never has to hold all of them while it is rendered.
+ * <p/>
+ * As a {@link FrameSource} it provides a single small preview frame of the whole drawing.
+ */
+public class TiledPosterRenderer implements FrameSource {
+    /**
+     * The maximum number of pixels in a band of rows. Bands of very wide images are only a few rows high.
+     */
+    static final int MAX_BAND_PIXELS = 1024 * 1024;
+
+    /**
+     * A consumer of the rendered rows of the image
+     */
+    public interface RowsConsumer {
+        /**
+         * Called with consecutive rows of the image, from top to bottom
+         *
+         * @return
+         *      False if the rendering should stop
+         */
+        boolean onRows(int[] pixels, int offset, int stride, int rowsCount) throws IOException;
+    }
+
+    /**
+     * The bounds and the style of a non empty segment of the drawing. Segments of a single
+     * point keep the point, so they never have to be taken from the drawing again.
+     */
+    private static class SegmentShape {
+        final int index;
+        final RectF bounds;
+        final @ColorInt int color;
+        final float strokeWidth;
+        final boolean isPoint;
+        final float pointX;
+        final float pointY;
+
+        SegmentShape(int index, RectF bounds, TimedSegment segment) {
+            this.index = index;
+            this.bounds = bounds;
+            this.color = segment.getColor();
+            this.strokeWidth = segment.getStrokeWidth();
+            this.isPoint = segment.getPointsCount() == 1;
+            this.pointX = segment.getX(0);
+            this.pointY = segment.getY(0);
+        }
+    }
+
+    private final List<TimedSegment> drawing;
+    private final List<SegmentShape> shapes = new ArrayList<>();
+    private final List<SegmentShape> bandShapes = new ArrayList<>();
+    private final List<Path> bandPaths = new ArrayList<>();
+    private final Paint strokePaint = DrawingPaintBuilder.getPaint(Color.BLACK, 1f);
+    private final @ColorInt int backgroundColor;
+    private final int drawingWidth;
+    private final int drawingHeight;
+    private final int posterWidth;
+    private final int posterHeight;
+    private final int tileSize;
+
+    private final Bitmap previewBitmap;
+    private final Rect previewDirtyRect;
+    private int currentFrame;
+
+    /**
+     * @param drawing
+     *      The segments of the drawing, in the coordinates of the drawing canvas
+     * @param drawingWidth
+     *      The width of the drawing canvas
+     * @param drawingHeight
+     *      The height of the drawing canvas
+     * @param posterWidth
+     *      The width of the rendered image
+     * @param posterHeight
+     *      The height of the rendered image
+     * @param previewWidth
+     *      The width of the preview frame
+     * @param previewHeight
+     *      The height of the preview frame
+     * @param tileSize
+     *      The width and height of a single rendered tile
+     */
+    public TiledPosterRenderer(@NonNull List<TimedSegment> drawing,
+                               @ColorInt int backgroundColor,
+                               int drawingWidth, int drawingHeight,
+                               int posterWidth, int posterHeight,
+                               int previewWidth, int previewHeight,
+                               int tileSize) {
+        this.backgroundColor = backgroundColor;
+        this.drawingWidth = drawingWidth;
+        this.drawingHeight = drawingHeight;
+        this.posterWidth = posterWidth;
+        this.posterHeight = posterHeight;
+        this.tileSize = tileSize;
+        this.drawing = drawing;
+
+        final Path path = new Path();
+        for (int i = 0, size = drawing.size(); i < size; i++) {
+            final TimedSegment segment = drawing.get(i);
+            if (segment.isEmpty()) {
+                continue;
+            }
+            buildSegmentPath(segment, path);
+            final RectF bounds = new RectF();
+            path.computeBounds(bounds, true);
+            final float inset = segment.getStrokeWidth() / 2f + 1f;
+            bounds.inset(-inset, -inset);
+
+            shapes.add(new SegmentShape(i, bounds, segment));
+        }
+
+        previewBitmap = Bitmap.createBitmap(previewWidth, previewHeight, Bitmap.Config.ARGB_8888);
+        previewDirtyRect = new Rect(0, 0, previewWidth, previewHeight);
+    }
+
+    /**
+     * Returns the width of the rendered image
+     */
+    public int getPosterWidth() {
+        return posterWidth;
+    }
+
+    /**
+     * Returns the height of the rendered image
+     */
+    public int getPosterHeight() {
+        return posterHeight;
+    }
+
+    /**
+     * Renders the whole image band by band and hands every band to the input consumer
+     */
+    public void renderPoster(@NonNull RowsConsumer consumer) throws IOException {
+        final Bitmap tileBitmap = Bitmap.createBitmap(tileSize, tileSize, Bitmap.Config.ARGB_8888);
+        final Canvas tileCanvas = new Canvas(tileBitmap);
+        final int bandSize = getBandSize(posterWidth, tileSize);
+        final int[] bandPixels = new int[posterWidth * bandSize];
+        final RectF bandBounds = new RectF();
+        final RectF tileBounds = new RectF();
+        final float scaleX = posterWidth / (float) drawingWidth;
+        final float scaleY = posterHeight / (float) drawingHeight;
+
+        try {
+            for (int tileY = 0; tileY < posterHeight; tileY += bandSize) {
+                final int bandHeight = Math.min(bandSize, posterHeight - tileY);
+
+                // The band area in the drawing coordinates
+                bandBounds.set(0, tileY / scaleY, drawingWidth, (tileY + bandHeight) / scaleY);
+                buildBandPaths(bandBounds);
+
+                for (int tileX = 0; tileX < posterWidth; tileX += tileSize) {
+                    final int tileWidth = Math.min(tileSize, posterWidth - tileX);
+
+                    // The tile area in the drawing coordinates
+                    tileBounds.set(tileX / scaleX, tileY / scaleY,
+                            (tileX + tileWidth) / scaleX, (tileY + bandHeight) / scaleY);
+
+                    tileCanvas.drawColor(backgroundColor);
+                    tileCanvas.save();
+                    tileCanvas.translate(-tileX, -tileY);
+                    tileCanvas.scale(scaleX, scaleY);
+                    drawBandSegments(tileCanvas, tileBounds);
+                    tileCanvas.restore();
+
+                    tileBitmap.getPixels(bandPixels, tileX, posterWidth, 0, 0, tileWidth, bandHeight);
+                }
+
+                if (!consumer.onRows(bandPixels, 0, posterWidth, bandHeight)) {
+                    return;
+                }
+            }
+        } finally {
+            tileBitmap.recycle();
+            bandShapes.clear();
+            bandPaths.clear();
+        }
+    }
+
+    /**
+     * Returns the height of the bands of rows, the tile size if a whole band of tiles fits in
+     * {@link #MAX_BAND_PIXELS} and otherwise as many rows as fit, at least one
+     */
+    static int getBandSize(int posterWidth, int tileSize) {
+        return Math.max(1, Math.min(tileSize, MAX_BAND_PIXELS / posterWidth));
+    }
+
+    /**
+     * Cleans up some memory. After this call, the {@link TiledPosterRenderer} can no longer be used
+     */
+    public void destroy() {
+        previewBitmap.recycle();
+    }
+
+    @Override
+    public long getFrameLength() {
+        return 0;
+    }
+
+    @Override
+    public int getFrameWidth() {
+        return previewBitmap.getWidth();
+    }
+
+    @Override
+    public int getFrameHeight() {
+        return previewBitmap.getHeight();
+    }
+
+    @Override
+    public int getFramesCount() {
+        return 1;
+    }
+
+    @Override
+    public int getCurrentFrameIndex() {
+        return currentFrame;
+    }
+
+    @Override
+    public void resetRenderer() {
+        currentFrame = 0;
+    }
+
+    @Override
+    public boolean hasNextFrame() {
+        return currentFrame < getFramesCount();
+    }
+
+    /**
+     * Renders the preview of the whole drawing
+     */
+    @Override
+    public void renderNextFrame() {
+        if (!hasNextFrame()) {
+            return;
+        }
+
+        final Canvas previewCanvas = new Canvas(previewBitmap);
+        previewCanvas.drawColor(backgroundColor);
+        previewCanvas.scale(previewBitmap.getWidth() / (float) drawingWidth,
+                previewBitmap.getHeight() / (float) drawingHeight);
+        final Path path = new Path();
+        for (int i = 0, size = shapes.size(); i < size; i++) {
+            final SegmentShape shape = shapes.get(i);
+            if (shape.isPoint) {
+                drawSegment(previewCanvas, shape, null);
+                continue;
+            }
+            final TimedSegment segment = drawing.get(shape.index);
+            if (!segment.isEmpty()) {
+                buildSegmentPath(segment, path);
+                drawSegment(previewCanvas, shape, path);
+            }
+        }
+        currentFrame++;
+    }
+
+    @Override
+    public Bitmap getCurrentFrame() {
+        return previewBitmap;
+    }
+
+    @Override
+    public Rect getCurrentFrameDirtyRect() {
+        return previewDirtyRect;
+    }
+
+    /**
+     * Takes the segments intersecting the input band bounds from the drawing and builds their paths.
+     * The paths of the previous band are reused. Single points need no path.
+     */
+    private void buildBandPaths(RectF bandBounds) {
+        bandShapes.clear();
+        for (int i = 0, size = shapes.size(); i < size; i++) {
+            final SegmentShape shape = shapes.get(i);
+            if (!RectF.intersects(shape.bounds, bandBounds)) {
+                continue;
+            }
+            final TimedSegment segment = shape.isPoint ? null : drawing.get(shape.index);
+            if (segment != null && segment.isEmpty()) {
+                continue;
+            }
+
+            if (bandShapes.size() == bandPaths.size()) {
+                bandPaths.add(new Path());
+            }
+            if (segment != null) {
+                buildSegmentPath(segment, bandPaths.get(bandShapes.size()));
+            }
+            bandShapes.add(shape);
+        }
+    }
+
+    /**
+     * Draws the segments of the current band intersecting the input bounds
+     */
+    private void drawBandSegments(Canvas canvas, RectF visibleBounds) {
+        for (int i = 0, size = bandShapes.size(); i < size; i++) {
+            final SegmentShape shape = bandShapes.get(i);
+            if (RectF.intersects(shape.bounds, visibleBounds)) {
+                drawSegment(canvas, shape, bandPaths.get(i));
+            }
+        }
+    }
+
+    /**
+     * Draws the input path of a segment, or its point if it is a single point
+     */
+    private void drawSegment(Canvas canvas, SegmentShape shape, Path path) {
+        strokePaint.setColor(shape.color);
+        strokePaint.setStrokeWidth(shape.strokeWidth);
+        if (shape.isPoint) {
+            canvas.drawPoint(shape.pointX, shape.pointY, strokePaint);
+        } else {
+            canvas.drawPath(path, strokePaint);
+        }
+    }
+
+    /**
+     * Builds the same stroke shape as the {@link app.anidro.models.StrokeGeometry} into the input path:
+     * the fitted curve of the segment if it has one, otherwise a quadratic curve through the first three
+     * points and straight lines through all remaining points
+     */
+    private static void buildSegmentPath(TimedSegment segment, Path path) {
+        path.rewind();
+        final CubicBezierStroke curve = segment.getCurve();
+        if (curve != null) {
+            path.moveTo(curve.getControlX(0), curve.getControlY(0));
+            for (int piece = 0; piece < curve.getPiecesCount(); piece++) {
+                final int i = piece * 3;
+                path.cubicTo(curve.getControlX(i + 1), curve.getControlY(i + 1),
+                        curve.getControlX(i + 2), curve.getControlY(i + 2),
+                        curve.getControlX(i + 3), curve.getControlY(i + 3));
+            }
+            return;
+        }
+
+        final int pointsCount = segment.getPointsCount();
+        path.moveTo(segment.getX(0), segment.getY(0));
+
+        int nextPoint = 1;
+        if (pointsCount > 2) {
+            path.quadTo(segment.getX(1), segment.getY(1), segment.getX(2), segment.getY(2));
+            nextPoint = 3;
+        }
+        for (int i = nextPoint; i < pointsCount; i++) {
+            path.lineTo(segment.getX(i), segment.getY(i));
+        }
+    }
+}
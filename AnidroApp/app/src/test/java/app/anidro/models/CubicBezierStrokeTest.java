@@ -0,0 +1,187 @@
+package app.anidro.models;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CubicBezierStrokeTest {
+    private static final float TOLERANCE = 0.5f;
+    private static final float TIME_TOLERANCE = 8f;
+    private static final int POINTS_COUNT = 101;
+    private static final long START_TIMESTAMP = 1000;
+    private static final long DURATION = 1000;
+
+    @Test
+    public void fitsPointsWithinTolerance() {
+        // given
+        final float[] xs = new float[POINTS_COUNT];
+        final float[] ys = new float[POINTS_COUNT];
+        final long[] timestamps = new long[POINTS_COUNT];
+        buildArc(xs, ys, timestamps);
+
+        // when
+        final CubicBezierStroke curve = CubicBezierStroke.fit(xs, ys, timestamps, POINTS_COUNT, TOLERANCE, TIME_TOLERANCE);
+
+        // then
+        assertTrue(curve.getPiecesCount() > 0);
+        assertTrue(curve.getControlPointsCount() < POINTS_COUNT);
+        final float[] point = new float[curve.getMaxExtractSize()];
+        for (int i = 0; i < POINTS_COUNT; i++) {
+            assertEquals(0, curve.extract(timestamps[i], timestamps[i], point));
+            final float distance = distance(point[0], point[1], xs[i], ys[i]);
+            // The point at the same time may lie up to the time tolerance away along the arc
+            assertTrue("Point " + i + " is " + distance + " away", distance < TOLERANCE + 2f);
+        }
+    }
+
+    @Test
+    public void extractsAllPiecesOfWholeStroke() {
+        // given
+        final CubicBezierStroke curve = fitArc();
+        final float[] out = new float[curve.getMaxExtractSize()];
+
+        // when
+        final int piecesCount = curve.extract(START_TIMESTAMP, START_TIMESTAMP + DURATION, out);
+
+        // then
+        assertEquals(curve.getPiecesCount(), piecesCount);
+        for (int i = 0; i < curve.getControlPointsCount(); i++) {
+            assertEquals(curve.getControlX(i), out[i * 2], 1e-3f);
+            assertEquals(curve.getControlY(i), out[i * 2 + 1], 1e-3f);
+        }
+    }
+
+    @Test
+    public void joinsConsecutiveParts() {
+        // given
+        final CubicBezierStroke curve = fitArc();
+        final float[] first = new float[curve.getMaxExtractSize()];
+        final float[] second = new float[curve.getMaxExtractSize()];
+
+        for (long cut = START_TIMESTAMP + 37; cut < START_TIMESTAMP + DURATION; cut += 101) {
+            // when
+            final int firstPieces = curve.extract(START_TIMESTAMP, cut, first);
+            final int secondPieces = curve.extract(cut, START_TIMESTAMP + DURATION, second);
+
+            // then
+            assertTrue(firstPieces > 0);
+            assertTrue(secondPieces > 0);
+            assertEquals(curve.getControlX(0), first[0], 1e-3f);
+            assertEquals(first[firstPieces * 3 * 2], second[0], 1e-2f);
+            assertEquals(first[firstPieces * 3 * 2 + 1], second[1], 1e-2f);
+            final int last = curve.getControlPointsCount() - 1;
+            assertEquals(curve.getControlX(last), second[secondPieces * 3 * 2], 1e-3f);
+            assertEquals(curve.getControlY(last), second[secondPieces * 3 * 2 + 1], 1e-3f);
+        }
+    }
+
+    @Test
+    public void cutsPiecesAlongTheCurve() {
+        // given
+        final CubicBezierStroke curve = fitArc();
+        final float[] part = new float[curve.getMaxExtractSize()];
+        final float[] point = new float[2];
+
+        // when
+        final int piecesCount = curve.extract(START_TIMESTAMP + 250, START_TIMESTAMP + 750, part);
+
+        // then the inner control points of a cut piece keep the part on the arc
+        for (int piece = 0; piece < piecesCount; piece++) {
+            final int i = piece * 3 * 2;
+            for (int step = 1; step < 4; step++) {
+                evaluate(part, i, step / 4f, point);
+                assertEquals(50, distance(point[0], point[1], 50, 50), 1f);
+            }
+        }
+    }
+
+    @Test
+    public void extractsSinglePointOutsideStroke() {
+        // given
+        final CubicBezierStroke curve = fitArc();
+        final float[] out = new float[curve.getMaxExtractSize()];
+        final int last = curve.getControlPointsCount() - 1;
+
+        // when
+        final int beforePieces = curve.extract(0, START_TIMESTAMP - 1, out);
+        final float beforeX = out[0];
+        final int afterPieces = curve.extract(START_TIMESTAMP + DURATION + 1, START_TIMESTAMP + DURATION + 100, out);
+
+        // then
+        assertEquals(0, beforePieces);
+        assertEquals(curve.getControlX(0), beforeX, 1e-3f);
+        assertEquals(0, afterPieces);
+        assertEquals(curve.getControlX(last), out[0], 1e-3f);
+        assertEquals(curve.getControlY(last), out[1], 1e-3f);
+    }
+
+    @Test
+    public void extractsSinglePointStroke() {
+        // given
+        final CubicBezierStroke curve = CubicBezierStroke.fit(new float[]{5}, new float[]{7}, new long[]{10}, 1,
+                TOLERANCE, TIME_TOLERANCE);
+        final float[] out = new float[curve.getMaxExtractSize()];
+
+        // when
+        final int piecesCount = curve.transform(2, 0, 1, 0, 2, 1).extract(0, 100, out);
+
+        // then
+        assertEquals(0, piecesCount);
+        assertEquals(11, out[0], 0);
+        assertEquals(15, out[1], 0);
+    }
+
+    @Test
+    public void transformsControlPointsAndKeepsTiming() {
+        // given
+        final CubicBezierStroke curve = fitArc();
+
+        // when
+        final CubicBezierStroke rotated = curve.transform(0, 2, 10, -1, 0, 200);
+
+        // then
+        assertEquals(curve.getPiecesCount(), rotated.getPiecesCount());
+        for (int i = 0; i < curve.getControlPointsCount(); i++) {
+            assertEquals(2 * curve.getControlY(i) + 10, rotated.getControlX(i), 1e-3f);
+            assertEquals(200 - curve.getControlX(i), rotated.getControlY(i), 1e-3f);
+        }
+        for (int knot = 0; knot < curve.getKnotsCount(); knot++) {
+            assertEquals(curve.getKnotTimestamp(knot), rotated.getKnotTimestamp(knot));
+        }
+    }
+
+    private static CubicBezierStroke fitArc() {
+        final float[] xs = new float[POINTS_COUNT];
+        final float[] ys = new float[POINTS_COUNT];
+        final long[] timestamps = new long[POINTS_COUNT];
+        buildArc(xs, ys, timestamps);
+        return CubicBezierStroke.fit(xs, ys, timestamps, POINTS_COUNT, TOLERANCE, TIME_TOLERANCE);
+    }
+
+    /**
+     * Builds a three quarters circle with the radius 50 around (50, 50), drawn at a constant speed
+     */
+    private static void buildArc(float[] xs, float[] ys, long[] timestamps) {
+        for (int i = 0; i < POINTS_COUNT; i++) {
+            final double angle = 1.5 * Math.PI * i / (POINTS_COUNT - 1);
+            xs[i] = (float) (50 + 50 * Math.cos(angle));
+            ys[i] = (float) (50 + 50 * Math.sin(angle));
+            timestamps[i] = START_TIMESTAMP + DURATION * i / (POINTS_COUNT - 1);
+        }
+    }
+
+    private static void evaluate(float[] controlPoints, int offset, float t, float[] out) {
+        final float u = 1 - t;
+        for (int d = 0; d < 2; d++) {
+            out[d] = u * u * u * controlPoints[offset + d]
+                    + 3 * u * u * t * controlPoints[offset + 2 + d]
+                    + 3 * u * t * t * controlPoints[offset + 4 + d]
+                    + t * t * t * controlPoints[offset + 6 + d];
+        }
+    }
+
+    private static float distance(float x1, float y1, float x2, float y2) {
+        return (float) Math.hypot(x2 - x1, y2 - y1);
+    }
+}
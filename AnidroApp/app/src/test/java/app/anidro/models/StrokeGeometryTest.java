@@ -0,0 +1,151 @@
+package app.anidro.models;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class StrokeGeometryTest {
+
+    private static final float DELTA = 1e-4f;
+
+    @Test
+    public void emptyStrokeHasNoLengthAndNoVertices() {
+        StrokeGeometry geometry = new StrokeGeometry(new float[0], new float[0], new long[0]);
+
+        assertEquals(0, geometry.getLength(), 0);
+        assertEquals(0, geometry.getLengthAtOrAfter(100), 0);
+        assertEquals(0, geometry.extract(0, 10, new float[geometry.getMaxExtractSize()]));
+    }
+
+    @Test
+    public void singlePointIsExtractedAsDot() {
+        StrokeGeometry geometry = new StrokeGeometry(new float[]{3}, new float[]{4}, new long[]{10});
+        float[] out = new float[geometry.getMaxExtractSize()];
+
+        assertEquals(1, geometry.extract(0, 5, out));
+        assertEquals(3, out[0], 0);
+        assertEquals(4, out[1], 0);
+    }
+
+    @Test
+    public void polylineLengthIsSumOfSegments() {
+        StrokeGeometry geometry = StrokeGeometry.fromPolyline(
+                new float[]{0, 3, 3}, new float[]{0, 4, 10}, new long[]{0, 10, 20});
+
+        assertEquals(11, geometry.getLength(), DELTA);
+    }
+
+    @Test
+    public void timestampsMapToLengthsOfPoints() {
+        StrokeGeometry geometry = StrokeGeometry.fromPolyline(
+                new float[]{0, 10, 10}, new float[]{0, 0, 20}, new long[]{100, 110, 150});
+
+        assertEquals(0, geometry.getLengthAtOrAfter(50), 0);
+        assertEquals(0, geometry.getLengthAtOrAfter(100), 0);
+        assertEquals(5, geometry.getLengthAtOrAfter(105), DELTA);
+        assertEquals(10, geometry.getLengthAtOrBefore(110), DELTA);
+        assertEquals(20, geometry.getLengthAtOrBefore(130), DELTA);
+        assertEquals(30, geometry.getLengthAtOrBefore(150), DELTA);
+        assertEquals(30, geometry.getLengthAtOrAfter(200), DELTA);
+    }
+
+    @Test
+    public void pauseAtPointIsResolvedByDirection() {
+        // The stroke stays at the second point from 110 to 130
+        StrokeGeometry geometry = StrokeGeometry.fromPolyline(
+                new float[]{0, 10, 10, 20}, new float[]{0, 0, 0, 0}, new long[]{100, 110, 130, 140});
+
+        assertEquals(10, geometry.getLengthAtOrAfter(120), DELTA);
+        assertEquals(10, geometry.getLengthAtOrBefore(120), DELTA);
+        // The first time the stroke reaches 110 and the last time it is still there at 130
+        assertEquals(10, geometry.getLengthAtOrAfter(110), DELTA);
+        assertEquals(10, geometry.getLengthAtOrBefore(130), DELTA);
+    }
+
+    @Test
+    public void equalTimestampsJumpToLaterPoint() {
+        StrokeGeometry geometry = StrokeGeometry.fromPolyline(
+                new float[]{0, 10, 20}, new float[]{0, 0, 0}, new long[]{100, 100, 110});
+
+        assertEquals(0, geometry.getLengthAtOrAfter(100), DELTA);
+        assertEquals(15, geometry.getLengthAtOrBefore(105), DELTA);
+    }
+
+    @Test
+    public void extractsPartBetweenLengths() {
+        StrokeGeometry geometry = StrokeGeometry.fromPolyline(
+                new float[]{0, 10, 10}, new float[]{0, 0, 10}, new long[]{0, 10, 20});
+        float[] out = new float[geometry.getMaxExtractSize()];
+
+        int count = geometry.extract(5, 15, out);
+
+        assertEquals(3, count);
+        assertArrayEquals(new float[]{5, 0, 10, 0, 10, 5}, Arrays.copyOf(out, 6), DELTA);
+    }
+
+    @Test
+    public void extractsWholeStroke() {
+        float[] xs = {0, 10, 10, 0};
+        float[] ys = {0, 0, 10, 10};
+        StrokeGeometry geometry = StrokeGeometry.fromPolyline(xs, ys, new long[]{0, 10, 20, 30});
+        float[] out = new float[geometry.getMaxExtractSize()];
+
+        int count = geometry.extract(0, geometry.getLength(), out);
+
+        assertEquals(4, count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(xs[i], out[i * 2], DELTA);
+            assertEquals(ys[i], out[i * 2 + 1], DELTA);
+        }
+    }
+
+    @Test
+    public void emptyIntervalIsExtractedAsDot() {
+        StrokeGeometry geometry = StrokeGeometry.fromPolyline(
+                new float[]{0, 10}, new float[]{0, 0}, new long[]{0, 10});
+        float[] out = new float[geometry.getMaxExtractSize()];
+
+        assertEquals(1, geometry.extract(4, 4, out));
+        assertEquals(4, out[0], DELTA);
+    }
+
+    @Test
+    public void startCurveFollowsQuadraticThroughFirstThreePoints() {
+        float[] xs = {0, 50, 100, 100};
+        float[] ys = {0, 100, 0, 50};
+        StrokeGeometry geometry = new StrokeGeometry(xs, ys, new long[]{0, 10, 20, 30});
+        float[] position = new float[2];
+
+        // The middle of the curve is the vertex of the second point, halfway to the control point
+        geometry.getPosition(geometry.getLengthAtOrAfter(10), position);
+        assertEquals(50, position[0], DELTA);
+        assertEquals(50, position[1], DELTA);
+
+        // The curve ends at the third point and is longer than its chord
+        geometry.getPosition(geometry.getLengthAtOrAfter(20), position);
+        assertEquals(100, position[0], DELTA);
+        assertEquals(0, position[1], DELTA);
+        float curveLength = geometry.getLengthAtOrAfter(20);
+        assertEquals(147.9f, curveLength, 0.5f);
+        assertEquals(curveLength + 50, geometry.getLength(), DELTA);
+    }
+
+    @Test
+    public void extractBufferFitsAnyPart() {
+        float[] xs = {0, 50, 100, 150, 200};
+        float[] ys = {0, 100, 0, 100, 0};
+        StrokeGeometry geometry = new StrokeGeometry(xs, ys, new long[]{0, 10, 20, 30, 40});
+        float[] out = new float[geometry.getMaxExtractSize()];
+        float length = geometry.getLength();
+
+        for (int i = 0; i <= 20; i++) {
+            for (int j = i; j <= 20; j++) {
+                // Throws if the buffer is too small
+                geometry.extract(length * i / 20, length * j / 20, out);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package app.anidro.modules.export;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExportedDrawingsIntentsHelperTest {
+
+    @Test
+    public void keepsSameMimeType() {
+        // when
+        String mimeType = ExportedDrawingsIntentsHelper.getCommonMimeType(Arrays.asList("image/gif", "image/gif"));
+
+        // then
+        assertEquals("image/gif", mimeType);
+    }
+
+    @Test
+    public void widensMimeTypesOfSameTopLevelType() {
+        // when
+        String mimeType = ExportedDrawingsIntentsHelper.getCommonMimeType(Arrays.asList("image/gif", "image/png", "image/gif"));
+
+        // then
+        assertEquals("image/*", mimeType);
+    }
+
+    @Test
+    public void widensMimeTypesOfDifferentTopLevelTypes() {
+        // when
+        String mimeType = ExportedDrawingsIntentsHelper.getCommonMimeType(Arrays.asList("image/gif", "video/mp4"));
+
+        // then
+        assertEquals("*/*", mimeType);
+    }
+}
@@ -0,0 +1,193 @@
+package app.anidro.modules.export.png;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingPngWriterTest {
+
+    @Test
+    public void writesImageDecodedWithSamePixels() throws IOException {
+        // given
+        final int width = 37;
+        final int height = 23;
+        final int[] pixels = randomPixels(width, height, 1);
+
+        // when
+        final byte[] png = writePng(pixels, width, height, 5);
+
+        // then
+        assertArrayEquals(pixels, decode(png, width, height));
+    }
+
+    @Test
+    public void writesImageBiggerThanSingleDataChunk() throws IOException {
+        // given
+        final int width = 300;
+        final int height = 200;
+        final int[] pixels = randomPixels(width, height, 2);
+
+        // when
+        final byte[] png = writePng(pixels, width, height, 64);
+
+        // then
+        assertTrue(countChunks(png, "IDAT") > 1);
+        assertArrayEquals(pixels, decode(png, width, height));
+    }
+
+    @Test
+    public void writesRowsFromStridedPixels() throws IOException {
+        // given
+        final int width = 4;
+        final int height = 3;
+        final int stride = 7;
+        final int[] pixels = randomPixels(stride, height + 1, 3);
+        final int offset = stride + 2;
+
+        // when
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final StreamingPngWriter writer = new StreamingPngWriter(outputStream, width, height);
+        writer.writeRows(pixels, offset, stride, height);
+        writer.finish();
+
+        // then
+        final int[] expected = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(pixels, offset + y * stride, expected, y * width, width);
+        }
+        assertArrayEquals(expected, decode(outputStream.toByteArray(), width, height));
+    }
+
+    @Test
+    public void writesValidChunkChecksums() throws IOException {
+        // given
+        final int width = 16;
+        final int height = 16;
+
+        // when
+        final byte[] png = writePng(randomPixels(width, height, 4), width, height, 3);
+
+        // then
+        final ByteBuffer buffer = ByteBuffer.wrap(png, 8, png.length - 8);
+        while (buffer.hasRemaining()) {
+            final int length = buffer.getInt();
+            final int start = buffer.position();
+            final CRC32 crc = new CRC32();
+            crc.update(png, start, length + 4);
+            buffer.position(start + 4 + length);
+            assertEquals((int) crc.getValue(), buffer.getInt());
+        }
+    }
+
+    @Test
+    public void picksFilterWithSmallestDifferences() throws IOException, DataFormatException {
+        // given
+        final int width = 32;
+        final int height = 3;
+        final int[] pixels = new int[width * height];
+        for (int x = 0; x < width; x++) {
+            // A black row, a horizontal gradient and the same gradient again
+            pixels[x] = 0xFF000000;
+            pixels[width + x] = 0xFF000000 | (x * 4) << 16 | (x * 4) << 8 | x * 4;
+            pixels[2 * width + x] = pixels[width + x];
+        }
+
+        // when
+        final byte[] png = writePng(pixels, width, height, height);
+
+        // then
+        final byte[] filtered = inflateImageData(png, (1 + width * 3) * height);
+        assertEquals(0, filtered[0]);
+        assertEquals(1, filtered[1 + width * 3]);
+        assertEquals(2, filtered[2 * (1 + width * 3)]);
+        assertArrayEquals(pixels, decode(png, width, height));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failsWritingMoreRowsThanHeight() throws IOException {
+        // given
+        final StreamingPngWriter writer = new StreamingPngWriter(new ByteArrayOutputStream(), 2, 2);
+
+        // when
+        writer.writeRows(new int[6], 0, 2, 3);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failsFinishingBeforeAllRowsAreWritten() throws IOException {
+        // given
+        final StreamingPngWriter writer = new StreamingPngWriter(new ByteArrayOutputStream(), 2, 2);
+        writer.writeRows(new int[2], 0, 2, 1);
+
+        // when
+        writer.finish();
+    }
+
+    private static byte[] writePng(int[] pixels, int width, int height, int bandHeight) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final StreamingPngWriter writer = new StreamingPngWriter(outputStream, width, height);
+        for (int y = 0; y < height; y += bandHeight) {
+            writer.writeRows(pixels, y * width, width, Math.min(bandHeight, height - y));
+        }
+        writer.finish();
+        return outputStream.toByteArray();
+    }
+
+    private static int[] decode(byte[] png, int width, int height) throws IOException {
+        final BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        return image.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    private static int countChunks(byte[] png, String type) {
+        int count = 0;
+        final ByteBuffer buffer = ByteBuffer.wrap(png, 8, png.length - 8);
+        while (buffer.hasRemaining()) {
+            final int length = buffer.getInt();
+            if (new String(png, buffer.position(), 4).equals(type)) {
+                count++;
+            }
+            buffer.position(buffer.position() + 4 + length + 4);
+        }
+        return count;
+    }
+
+    private static byte[] inflateImageData(byte[] png, int size) throws DataFormatException {
+        final Inflater inflater = new Inflater();
+        final ByteBuffer buffer = ByteBuffer.wrap(png, 8, png.length - 8);
+        while (buffer.hasRemaining()) {
+            final int length = buffer.getInt();
+            if (new String(png, buffer.position(), 4).equals("IDAT")) {
+                inflater.setInput(png, buffer.position() + 4, length);
+            }
+            buffer.position(buffer.position() + 4 + length + 4);
+        }
+        final byte[] data = new byte[size];
+        assertEquals(size, inflater.inflate(data));
+        inflater.end();
+        return data;
+    }
+
+    private static int[] randomPixels(int width, int height, long seed) {
+        final Random random = new Random(seed);
+        final int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,231 @@
+package app.anidro.modules.export.video;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the rewrite on small MP4 fixture files, which consist of the same boxes the
+ * {@link android.media.MediaMuxer} writes, with chunk offsets pointing at marked chunks
+ * in the "mdat" payload.
+ */
+public class Mp4FastStartTest {
+
+    private static final byte[] FTYP = box("ftyp", "isom\0\0\2\0isomiso2avc1mp41".getBytes(StandardCharsets.US_ASCII));
+    private static final byte[][] CHUNKS = {
+            "first chunk".getBytes(StandardCharsets.US_ASCII),
+            "second chunk".getBytes(StandardCharsets.US_ASCII),
+            "third chunk".getBytes(StandardCharsets.US_ASCII)
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void movesMoovInFrontAndPatchesStcoOffsets() throws IOException {
+        assertRewritesChunkOffsets(false, false);
+    }
+
+    @Test
+    public void movesMoovInFrontAndPatchesCo64Offsets() throws IOException {
+        assertRewritesChunkOffsets(true, false);
+    }
+
+    @Test
+    public void handlesMdatWithLargeSize() throws IOException {
+        assertRewritesChunkOffsets(false, true);
+    }
+
+    @Test
+    public void leavesFastStartFileUntouched() throws IOException {
+        byte[] mdat = mdat(CHUNKS, false);
+        byte[] moov = moov(false, chunkOffsets(FTYP.length + 0L, false));
+        // The offsets are not used by the rewrite, only the order of the boxes
+        File file = write(concat(FTYP, moov, mdat));
+
+        assertFalse(Mp4FastStart.process(file));
+
+        assertArrayEquals(concat(FTYP, moov, mdat), Files.readAllBytes(file.toPath()));
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void leavesFileWithoutMoovUntouched() throws IOException {
+        byte[] content = concat(FTYP, mdat(CHUNKS, false));
+        File file = write(content);
+
+        assertFalse(Mp4FastStart.process(file));
+
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void rejectsTruncatedBoxAndKeepsFile() throws IOException {
+        byte[] mdat = mdat(CHUNKS, false);
+        byte[] moov = moov(false, chunkOffsets(FTYP.length, false));
+        // The moov box is cut in the middle, as after a crash of the muxer
+        byte[] content = Arrays.copyOf(concat(FTYP, mdat, moov), FTYP.length + mdat.length + moov.length / 2);
+        File file = write(content);
+
+        try {
+            Mp4FastStart.process(file);
+            fail("The truncated box was not detected");
+        } catch (IOException expected) {
+            // expected
+        }
+
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void rejectsInvalidBoxInsideMoovAndKeepsFile() throws IOException {
+        byte[] mdat = mdat(CHUNKS, false);
+        byte[] stco = box("stco", ByteBuffer.allocate(8).putInt(0).putInt(1000).array());
+        byte[] content = concat(FTYP, mdat, box("moov", box("trak", box("mdia", box("minf", box("stbl", stco))))));
+        File file = write(content);
+
+        try {
+            Mp4FastStart.process(file);
+            fail("The invalid entries count was not detected");
+        } catch (IOException expected) {
+            // expected
+        }
+
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void keepsOffsetsAfterMoovUnchanged() throws IOException {
+        byte[] mdat = mdat(CHUNKS, false);
+        // An offset past the original moov box, which is not affected by moving the box
+        byte[] moov = moov(false, new long[]{0xFFFFFFF0L});
+        File file = write(concat(FTYP, mdat, moov));
+
+        assertTrue(Mp4FastStart.process(file));
+
+        byte[] rewritten = Files.readAllBytes(file.toPath());
+        assertEquals(0xFFFFFFF0L, readChunkOffsets(rewritten, FTYP.length, false)[0]);
+    }
+
+    private void assertRewritesChunkOffsets(boolean co64, boolean largeMdat) throws IOException {
+        byte[] mdat = mdat(CHUNKS, largeMdat);
+        long[] offsets = chunkOffsets(FTYP.length, largeMdat);
+        byte[] moov = moov(co64, offsets);
+        File file = write(concat(FTYP, mdat, moov));
+
+        assertTrue(Mp4FastStart.process(file));
+
+        byte[] rewritten = Files.readAllBytes(file.toPath());
+        assertEquals(FTYP.length + mdat.length + moov.length, rewritten.length);
+        assertArrayEquals(FTYP, Arrays.copyOf(rewritten, FTYP.length));
+        assertEquals("moov", typeAt(rewritten, FTYP.length));
+        assertEquals("mdat", typeAt(rewritten, FTYP.length + moov.length));
+
+        long[] patched = readChunkOffsets(rewritten, FTYP.length, co64);
+        for (int i = 0; i < CHUNKS.length; i++) {
+            assertEquals(offsets[i] + moov.length, patched[i]);
+            assertArrayEquals(CHUNKS[i], Arrays.copyOfRange(rewritten, (int) patched[i], (int) patched[i] + CHUNKS[i].length));
+        }
+        // Neither the temporary nor the backup file is left behind
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    private File write(byte[] content) throws IOException {
+        File file = folder.newFile("video.mp4");
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    private static long[] chunkOffsets(long mdatOffset, boolean largeMdat) {
+        long[] offsets = new long[CHUNKS.length];
+        long offset = mdatOffset + (largeMdat ? 16 : 8);
+        for (int i = 0; i < CHUNKS.length; i++) {
+            offsets[i] = offset;
+            offset += CHUNKS[i].length;
+        }
+        return offsets;
+    }
+
+    private static byte[] mdat(byte[][] chunks, boolean largeSize) {
+        byte[] payload = concat(chunks);
+        if (!largeSize) {
+            return box("mdat", payload);
+        }
+        return ByteBuffer.allocate(16 + payload.length)
+                .putInt(1)
+                .put("mdat".getBytes(StandardCharsets.US_ASCII))
+                .putLong(16 + payload.length)
+                .put(payload)
+                .array();
+    }
+
+    private static byte[] moov(boolean co64, long[] offsets) {
+        ByteBuffer table = ByteBuffer.allocate(8 + offsets.length * (co64 ? 8 : 4));
+        table.putInt(0).putInt(offsets.length);
+        for (long offset : offsets) {
+            if (co64) {
+                table.putLong(offset);
+            } else {
+                table.putInt((int) offset);
+            }
+        }
+        byte[] stbl = box("stbl", concat(box("stsd", new byte[8]), box(co64 ? "co64" : "stco", table.array())));
+        byte[] trak = box("trak", concat(box("tkhd", new byte[84]), box("mdia", box("minf", stbl))));
+        return box("moov", concat(box("mvhd", new byte[100]), trak));
+    }
+
+    /**
+     * Finds the chunk offsets table in the moov box starting at the given position
+     */
+    private static long[] readChunkOffsets(byte[] file, int moovOffset, boolean co64) {
+        String tableType = co64 ? "co64" : "stco";
+        int moovEnd = moovOffset + ByteBuffer.wrap(file).getInt(moovOffset);
+        for (int position = moovOffset; position + 4 <= moovEnd; position++) {
+            if (typeAt(file, position - 4).equals(tableType)) {
+                // Skip the type, version and flags
+                ByteBuffer table = ByteBuffer.wrap(file, position + 8, moovEnd - position - 8);
+                long[] offsets = new long[table.getInt()];
+                for (int i = 0; i < offsets.length; i++) {
+                    offsets[i] = co64 ? table.getLong() : table.getInt() & 0xFFFFFFFFL;
+                }
+                return offsets;
+            }
+        }
+        throw new AssertionError("No " + tableType + " box found");
+    }
+
+    private static String typeAt(byte[] file, int boxOffset) {
+        return new String(file, boxOffset + 4, 4, StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] box(String type, byte[] payload) {
+        return ByteBuffer.allocate(8 + payload.length)
+                .putInt(8 + payload.length)
+                .put(type.getBytes(StandardCharsets.US_ASCII))
+                .put(payload)
+                .array();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
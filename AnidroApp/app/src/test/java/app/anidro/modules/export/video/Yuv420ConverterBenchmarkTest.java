@@ -0,0 +1,90 @@
+package app.anidro.modules.export.video;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures the conversion and copy of frames of the largest exported video size. The timings
+ * depend on the machine running the tests, so the benchmark only runs when opted in with
+ * {@code ./gradlew test -Pbenchmarks}, and it only fails if a frame takes longer than the time
+ * a frame of the exported video is shown.
+ */
+public class Yuv420ConverterBenchmarkTest {
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int WARM_UP_FRAMES = 20;
+    private static final int MEASURED_FRAMES = 60;
+    private static final long FRAME_BUDGET_NANOS = 1000_000_000L / 30;
+
+    @Before
+    public void setUp() {
+        assumeTrue(Boolean.getBoolean("anidro.benchmarks"));
+    }
+
+    @Test
+    public void benchmarkConversion() throws InterruptedException {
+        int[] argb = Yuv420ConverterTest.randomFrame(WIDTH, HEIGHT, 42);
+        int threadsCount = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+        for (Yuv420Converter.Layout layout : Yuv420Converter.Layout.values()) {
+            report("convert " + layout + ", 1 thread", measureConversion(argb, layout, 1));
+            if (threadsCount > 1) {
+                report("convert " + layout + ", " + threadsCount + " threads", measureConversion(argb, layout, threadsCount));
+            }
+            report("copy " + layout + ", stride 1280, slice height 720", measureCopy(layout, WIDTH, HEIGHT));
+            report("copy " + layout + ", stride 1536, slice height 736", measureCopy(layout, 1536, 736));
+        }
+    }
+
+    private static long measureConversion(int[] argb, Yuv420Converter.Layout layout, int threadsCount)
+            throws InterruptedException {
+        Yuv420Converter converter = new Yuv420Converter(WIDTH, HEIGHT, layout, threadsCount);
+        try {
+            byte[] yuv = new byte[converter.getFrameSize()];
+            for (int i = 0; i < WARM_UP_FRAMES; i++) {
+                converter.convert(argb, yuv);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURED_FRAMES; i++) {
+                converter.convert(argb, yuv);
+            }
+            return System.nanoTime() - start;
+        } finally {
+            converter.release();
+        }
+    }
+
+    private static long measureCopy(Yuv420Converter.Layout layout, int stride, int sliceHeight) {
+        Yuv420Converter converter = new Yuv420Converter(WIDTH, HEIGHT, layout, 1);
+        try {
+            byte[] yuv = new byte[converter.getFrameSize()];
+            // Encoder input buffers are direct
+            ByteBuffer buffer = ByteBuffer.allocateDirect(stride * sliceHeight * 3 / 2);
+            for (int i = 0; i < WARM_UP_FRAMES; i++) {
+                buffer.clear();
+                converter.copyToBuffer(yuv, buffer, stride, sliceHeight);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURED_FRAMES; i++) {
+                buffer.clear();
+                converter.copyToBuffer(yuv, buffer, stride, sliceHeight);
+            }
+            return System.nanoTime() - start;
+        } finally {
+            converter.release();
+        }
+    }
+
+    private static void report(String name, long nanos) {
+        long frameNanos = nanos / MEASURED_FRAMES;
+        assertTrue(String.format(Locale.US, "%s: %.2f ms per %dx%d frame", name, frameNanos / 1e6, WIDTH, HEIGHT),
+                frameNanos < FRAME_BUDGET_NANOS);
+    }
+}
@@ -0,0 +1,233 @@
+package app.anidro.modules.export.video;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class Yuv420ConverterTest {
+
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+    private static final int RED = 0xFFFF0000;
+    private static final byte PADDING = (byte) 0xAA;
+
+    private Yuv420Converter converter;
+
+    @After
+    public void tearDown() {
+        if (converter != null) {
+            converter.release();
+        }
+    }
+
+    @Test
+    public void frameSizeRoundsChromaUp() {
+        converter = new Yuv420Converter(5, 3, Yuv420Converter.Layout.NV12, 1);
+
+        assertEquals(5 * 3 + 2 * 3 * 2, converter.getFrameSize());
+    }
+
+    @Test
+    public void convertsUniformColorsToLimitedRange() throws InterruptedException {
+        assertUniformFrame(WHITE, 235, 128, 128);
+        assertUniformFrame(BLACK, 16, 128, 128);
+        assertUniformFrame(RED, 82, 90, 240);
+    }
+
+    @Test
+    public void averagesEveryTwoByTwoBlockForChroma() throws InterruptedException {
+        converter = new Yuv420Converter(2, 2, Yuv420Converter.Layout.I420, 1);
+        byte[] yuv = new byte[converter.getFrameSize()];
+
+        converter.convert(new int[]{RED, RED, BLACK, BLACK}, yuv);
+
+        // The average of the block is (128, 0, 0)
+        assertEquals(-38 * 128 / 256 + 128, yuv[4] & 0xFF, 1);
+        assertEquals(112 * 128 / 256 + 128, yuv[5] & 0xFF, 1);
+    }
+
+    @Test
+    public void layoutsContainTheSameSamples() throws InterruptedException {
+        int width = 7;
+        int height = 5;
+        int[] argb = randomFrame(width, height, 1);
+
+        byte[] nv12 = convert(argb, width, height, Yuv420Converter.Layout.NV12, 1);
+        byte[] i420 = convert(argb, width, height, Yuv420Converter.Layout.I420, 1);
+
+        int lumaSize = width * height;
+        int chromaSize = 4 * 3;
+        assertArrayEquals(Arrays.copyOf(nv12, lumaSize), Arrays.copyOf(i420, lumaSize));
+        for (int i = 0; i < chromaSize; i++) {
+            assertEquals(nv12[lumaSize + 2 * i], i420[lumaSize + i]);
+            assertEquals(nv12[lumaSize + 2 * i + 1], i420[lumaSize + chromaSize + i]);
+        }
+    }
+
+    @Test
+    public void parallelConversionMatchesSingleThreaded() throws InterruptedException {
+        int width = 101;
+        int height = 67;
+        int[] argb = randomFrame(width, height, 2);
+
+        for (Yuv420Converter.Layout layout : Yuv420Converter.Layout.values()) {
+            assertArrayEquals(convert(argb, width, height, layout, 1), convert(argb, width, height, layout, 4));
+        }
+    }
+
+    @Test
+    public void copiesTightlyPackedFrameUnchanged() throws InterruptedException {
+        int width = 6;
+        int height = 4;
+        converter = new Yuv420Converter(width, height, Yuv420Converter.Layout.NV12, 1);
+        byte[] yuv = new byte[converter.getFrameSize()];
+        converter.convert(randomFrame(width, height, 3), yuv);
+        ByteBuffer buffer = ByteBuffer.allocate(yuv.length);
+
+        int size = converter.copyToBuffer(yuv, buffer, width, height);
+
+        assertEquals(yuv.length, size);
+        assertArrayEquals(yuv, buffer.array());
+    }
+
+    @Test
+    public void copiesSemiPlanarFrameWithStrideAndSliceHeight() throws InterruptedException {
+        int width = 6;
+        int height = 5;
+        int stride = 16;
+        int sliceHeight = 16;
+        converter = new Yuv420Converter(width, height, Yuv420Converter.Layout.NV12, 1);
+        byte[] yuv = new byte[converter.getFrameSize()];
+        converter.convert(randomFrame(width, height, 4), yuv);
+        ByteBuffer buffer = paddedBuffer(stride * sliceHeight * 3 / 2);
+
+        int size = converter.copyToBuffer(yuv, buffer, stride, sliceHeight);
+
+        assertEquals(stride * sliceHeight * 3 / 2, size);
+        byte[] out = buffer.array();
+        for (int row = 0; row < height; row++) {
+            assertRow(yuv, row * width, out, row * stride, width, stride);
+        }
+        int chromaStart = stride * sliceHeight;
+        for (int row = 0; row < 3; row++) {
+            assertRow(yuv, width * height + row * 6, out, chromaStart + row * stride, 6, stride);
+        }
+        // The rows between the frame height and the slice height are padding
+        assertEquals(PADDING, out[height * stride]);
+    }
+
+    @Test
+    public void copiesPlanarFrameWithHalfStrideChromaPlanes() throws InterruptedException {
+        int width = 5;
+        int height = 3;
+        int stride = 8;
+        int sliceHeight = 4;
+        converter = new Yuv420Converter(width, height, Yuv420Converter.Layout.I420, 1);
+        byte[] yuv = new byte[converter.getFrameSize()];
+        converter.convert(randomFrame(width, height, 5), yuv);
+        ByteBuffer buffer = paddedBuffer(stride * sliceHeight * 3 / 2);
+
+        int size = converter.copyToBuffer(yuv, buffer, stride, sliceHeight);
+
+        assertEquals(stride * sliceHeight * 3 / 2, size);
+        byte[] out = buffer.array();
+        for (int row = 0; row < height; row++) {
+            assertRow(yuv, row * width, out, row * stride, width, stride);
+        }
+        int chromaWidth = 3;
+        int chromaPlaneSize = chromaWidth * 2;
+        int uStart = stride * sliceHeight;
+        int vStart = uStart + (stride / 2) * (sliceHeight / 2);
+        for (int row = 0; row < 2; row++) {
+            assertRow(yuv, width * height + row * chromaWidth, out, uStart + row * stride / 2, chromaWidth, stride / 2);
+            assertRow(yuv, width * height + chromaPlaneSize + row * chromaWidth, out, vStart + row * stride / 2,
+                    chromaWidth, stride / 2);
+        }
+    }
+
+    @Test
+    public void acceptsBufferWithoutTrailingPadding() throws InterruptedException {
+        int width = 4;
+        int height = 2;
+        int stride = 8;
+        converter = new Yuv420Converter(width, height, Yuv420Converter.Layout.NV12, 1);
+        byte[] yuv = new byte[converter.getFrameSize()];
+        converter.convert(randomFrame(width, height, 6), yuv);
+        // The last chroma row ends right after its samples
+        ByteBuffer buffer = paddedBuffer(stride * height + 4);
+
+        int size = converter.copyToBuffer(yuv, buffer, stride, height);
+
+        assertEquals(stride * height + 4, size);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooSmallBuffer() {
+        converter = new Yuv420Converter(4, 4, Yuv420Converter.Layout.NV12, 1);
+
+        converter.copyToBuffer(new byte[converter.getFrameSize()], ByteBuffer.allocate(16 * 4), 16, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsStrideSmallerThanWidth() {
+        converter = new Yuv420Converter(4, 4, Yuv420Converter.Layout.NV12, 1);
+
+        converter.copyToBuffer(new byte[converter.getFrameSize()], ByteBuffer.allocate(1024), 2, 4);
+    }
+
+    private void assertUniformFrame(int color, int y, int u, int v) throws InterruptedException {
+        int[] argb = new int[4 * 4];
+        Arrays.fill(argb, color);
+        byte[] yuv = convert(argb, 4, 4, Yuv420Converter.Layout.I420, 1);
+
+        for (int i = 0; i < 16; i++) {
+            assertEquals(y, yuv[i] & 0xFF, 1);
+        }
+        for (int i = 0; i < 4; i++) {
+            assertEquals(u, yuv[16 + i] & 0xFF, 1);
+            assertEquals(v, yuv[20 + i] & 0xFF, 1);
+        }
+    }
+
+    private static byte[] convert(int[] argb, int width, int height, Yuv420Converter.Layout layout,
+                                  int threadsCount) throws InterruptedException {
+        Yuv420Converter converter = new Yuv420Converter(width, height, layout, threadsCount);
+        try {
+            byte[] yuv = new byte[converter.getFrameSize()];
+            converter.convert(argb, yuv);
+            return yuv;
+        } finally {
+            converter.release();
+        }
+    }
+
+    static int[] randomFrame(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[] argb = new int[width * height];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return argb;
+    }
+
+    private static ByteBuffer paddedBuffer(int capacity) {
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        Arrays.fill(buffer.array(), PADDING);
+        return buffer;
+    }
+
+    private static void assertRow(byte[] expected, int expectedOffset, byte[] actual, int actualOffset,
+                                  int rowLength, int stride) {
+        assertArrayEquals(Arrays.copyOfRange(expected, expectedOffset, expectedOffset + rowLength),
+                Arrays.copyOfRange(actual, actualOffset, actualOffset + rowLength));
+        if (stride > rowLength) {
+            assertEquals(PADDING, actual[actualOffset + rowLength]);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package app.anidro.modules.main;
+
+import org.junit.Test;
+
+import app.anidro.common.ScreenOrientationSensor.ScreenOrientation;
+import app.anidro.models.CubicBezierStroke;
+
+import static org.junit.Assert.assertEquals;
+
+public class CanvasOrientationTransformTest {
+    private static final int SOURCE_WIDTH = 300;
+    private static final int SOURCE_HEIGHT = 500;
+    private static final int TARGET_WIDTH = 640;
+    private static final int TARGET_HEIGHT = 360;
+    private static final float DELTA = 0.01f;
+
+    private static final float[] FRACTIONS = {0f, 0.25f, 0.5f, 0.999f, 1f, -0.1f, 1.2f};
+
+    @Test
+    public void mapsAllOrientationPairsLikeTheRotationSwitch() {
+        for (ScreenOrientation source : ScreenOrientation.values()) {
+            for (ScreenOrientation target : ScreenOrientation.values()) {
+                assertMapsLikeRotationSwitch(source, target);
+            }
+        }
+    }
+
+    @Test
+    public void keepsPointsWithoutOrientation() {
+        assertMapsLikeRotationSwitch(null, ScreenOrientation.ORIENTATION_90);
+        assertMapsLikeRotationSwitch(ScreenOrientation.ORIENTATION_90, null);
+        assertMapsLikeRotationSwitch(null, null);
+    }
+
+    @Test
+    public void recomputesMatrixWhenTargetChanges() {
+        // given
+        final CanvasOrientationTransform transform = new CanvasOrientationTransform();
+        final char[] xs = {TouchPointChunks.toFixedPoint(0.25f)};
+        final char[] ys = {TouchPointChunks.toFixedPoint(0.5f)};
+        final float[] outXs = new float[1];
+        final float[] outYs = new float[1];
+        transform.setTarget(ScreenOrientation.ORIENTATION_0, TARGET_WIDTH, TARGET_HEIGHT);
+        transform.map(ScreenOrientation.ORIENTATION_0, SOURCE_WIDTH, SOURCE_HEIGHT, xs, ys, 0, 1, outXs, outYs, 0);
+
+        // when
+        transform.setTarget(ScreenOrientation.ORIENTATION_180, TARGET_WIDTH, TARGET_HEIGHT);
+        transform.map(ScreenOrientation.ORIENTATION_0, SOURCE_WIDTH, SOURCE_HEIGHT, xs, ys, 0, 1, outXs, outYs, 0);
+
+        // then
+        assertEquals(TARGET_WIDTH - 0.25f * SOURCE_WIDTH, outXs[0], DELTA);
+        assertEquals(TARGET_HEIGHT - 0.5f * SOURCE_HEIGHT, outYs[0], DELTA);
+    }
+
+    @Test
+    public void mapsBetweenOffsets() {
+        // given
+        final CanvasOrientationTransform transform = new CanvasOrientationTransform();
+        transform.setTarget(ScreenOrientation.ORIENTATION_90, TARGET_WIDTH, TARGET_HEIGHT);
+        final char[] xs = {0, TouchPointChunks.toFixedPoint(0.5f), TouchPointChunks.toFixedPoint(1f)};
+        final char[] ys = {0, TouchPointChunks.toFixedPoint(0.25f), TouchPointChunks.toFixedPoint(0f)};
+        final float[] outXs = {-1, -1, -1, -1};
+        final float[] outYs = {-1, -1, -1, -1};
+
+        // when
+        transform.map(ScreenOrientation.ORIENTATION_0, SOURCE_WIDTH, SOURCE_HEIGHT, xs, ys, 1, 2, outXs, outYs, 2);
+
+        // then
+        assertEquals(-1, outXs[1], 0);
+        assertEquals(0.25f * TARGET_WIDTH, outXs[2], DELTA);
+        assertEquals(0.5f * TARGET_HEIGHT, outYs[2], DELTA);
+        assertEquals(0, outXs[3], DELTA);
+        assertEquals(0, outYs[3], DELTA);
+    }
+
+    @Test
+    public void mapsCurvesLikeTheRotationSwitch() {
+        // given
+        final CubicBezierStroke curve = CubicBezierStroke.fit(new float[]{10, 150, 290}, new float[]{20, 480, 20},
+                new long[]{0, 100, 200}, 3, 0.5f, 8f);
+
+        for (ScreenOrientation source : ScreenOrientation.values()) {
+            for (ScreenOrientation target : ScreenOrientation.values()) {
+                final CanvasOrientationTransform transform = new CanvasOrientationTransform();
+                transform.setTarget(target, TARGET_WIDTH, TARGET_HEIGHT);
+
+                // when
+                final CubicBezierStroke mapped = transform.mapCurve(source, SOURCE_WIDTH, SOURCE_HEIGHT, curve);
+
+                // then
+                final float[] expected = new float[2];
+                for (int i = 0; i < curve.getControlPointsCount(); i++) {
+                    mapWithRotationSwitch(source, target, curve.getControlX(i), curve.getControlY(i), expected);
+                    assertEquals(source + " -> " + target, expected[0], mapped.getControlX(i), DELTA);
+                    assertEquals(source + " -> " + target, expected[1], mapped.getControlY(i), DELTA);
+                }
+            }
+        }
+    }
+
+    private static void assertMapsLikeRotationSwitch(ScreenOrientation source, ScreenOrientation target) {
+        final CanvasOrientationTransform transform = new CanvasOrientationTransform();
+        transform.setTarget(target, TARGET_WIDTH, TARGET_HEIGHT);
+
+        final int count = FRACTIONS.length * FRACTIONS.length;
+        final char[] xs = new char[count];
+        final char[] ys = new char[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = TouchPointChunks.toFixedPoint(FRACTIONS[i / FRACTIONS.length]);
+            ys[i] = TouchPointChunks.toFixedPoint(FRACTIONS[i % FRACTIONS.length]);
+        }
+        final float[] outXs = new float[count];
+        final float[] outYs = new float[count];
+
+        transform.map(source, SOURCE_WIDTH, SOURCE_HEIGHT, xs, ys, 0, count, outXs, outYs, 0);
+
+        final float[] expected = new float[2];
+        for (int i = 0; i < count; i++) {
+            final float x = FRACTIONS[i / FRACTIONS.length] * SOURCE_WIDTH;
+            final float y = FRACTIONS[i % FRACTIONS.length] * SOURCE_HEIGHT;
+            mapWithRotationSwitch(source, target, x, y, expected);
+            final String message = source + " -> " + target + " at (" + x + ", " + y + ")";
+            assertEquals(message, expected[0], outXs[i], DELTA);
+            assertEquals(message, expected[1], outYs[i], DELTA);
+        }
+    }
+
+    /**
+     * The per point mapping used before the matrix, kept as the reference
+     */
+    private static void mapWithRotationSwitch(ScreenOrientation source, ScreenOrientation target,
+                                              float x, float y, float[] out) {
+        switch (getRotation(source, target)) {
+            case ORIENTATION_90:
+                out[0] = y * ((float) TARGET_WIDTH) / SOURCE_HEIGHT;
+                out[1] = TARGET_HEIGHT - x * ((float) TARGET_HEIGHT) / SOURCE_WIDTH;
+                break;
+            case ORIENTATION_180:
+                out[0] = TARGET_WIDTH - x;
+                out[1] = TARGET_HEIGHT - y;
+                break;
+            case ORIENTATION_270:
+                out[0] = TARGET_WIDTH - y * ((float) TARGET_WIDTH) / SOURCE_HEIGHT;
+                out[1] = x * ((float) TARGET_HEIGHT) / SOURCE_WIDTH;
+                break;
+            case ORIENTATION_0:
+                out[0] = x;
+                out[1] = y;
+                break;
+        }
+    }
+
+    /**
+     * The rotation between two orientations as it was looked up before the matrix
+     */
+    private static ScreenOrientation getRotation(ScreenOrientation source, ScreenOrientation target) {
+        if (source == null || target == null) {
+            return ScreenOrientation.ORIENTATION_0;
+        }
+        switch (source) {
+            case ORIENTATION_0:
+                switch (target) {
+                    case ORIENTATION_90:
+                        return ScreenOrientation.ORIENTATION_90;
+                    case ORIENTATION_180:
+                        return ScreenOrientation.ORIENTATION_180;
+                    case ORIENTATION_270:
+                        return ScreenOrientation.ORIENTATION_270;
+                }
+                break;
+            case ORIENTATION_90:
+                switch (target) {
+                    case ORIENTATION_180:
+                        return ScreenOrientation.ORIENTATION_90;
+                    case ORIENTATION_270:
+                        return ScreenOrientation.ORIENTATION_180;
+                    case ORIENTATION_0:
+                        return ScreenOrientation.ORIENTATION_270;
+                }
+                break;
+            case ORIENTATION_180:
+                switch (target) {
+                    case ORIENTATION_270:
+                        return ScreenOrientation.ORIENTATION_90;
+                    case ORIENTATION_0:
+                        return ScreenOrientation.ORIENTATION_180;
+                    case ORIENTATION_90:
+                        return ScreenOrientation.ORIENTATION_270;
+                }
+                break;
+            case ORIENTATION_270:
+                switch (target) {
+                    case ORIENTATION_0:
+                        return ScreenOrientation.ORIENTATION_90;
+                    case ORIENTATION_90:
+                        return ScreenOrientation.ORIENTATION_180;
+                    case ORIENTATION_180:
+                        return ScreenOrientation.ORIENTATION_270;
+                }
+                break;
+        }
+        return ScreenOrientation.ORIENTATION_0;
+    }
+}
@@ -0,0 +1,160 @@
+package app.anidro.modules.main;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StrokeSimplifierTest {
+    private static final float TOLERANCE = 0.5f;
+
+    @Test
+    public void replacesPointsOnStraightLineAtConstantSpeed() {
+        // given
+        final StrokeSimplifier simplifier = new StrokeSimplifier(TOLERANCE);
+        simplifier.startStroke(0, 0, 0);
+
+        // when
+        final boolean secondReplaces = simplifier.addPoint(1, 1, 10);
+        final boolean thirdReplaces = simplifier.addPoint(2, 2, 20);
+        final boolean fourthReplaces = simplifier.addPoint(3, 3, 30);
+
+        // then
+        assertFalse(secondReplaces);
+        assertTrue(thirdReplaces);
+        assertTrue(fourthReplaces);
+    }
+
+    @Test
+    public void keepsCorners() {
+        // given
+        final StrokeSimplifier simplifier = new StrokeSimplifier(TOLERANCE);
+        simplifier.startStroke(0, 0, 0);
+        simplifier.addPoint(10, 0, 10);
+
+        // when
+        final boolean replaces = simplifier.addPoint(10, 10, 20);
+
+        // then
+        assertFalse(replaces);
+    }
+
+    @Test
+    public void keepsSpeedChangesOnStraightLine() {
+        // given
+        final StrokeSimplifier simplifier = new StrokeSimplifier(TOLERANCE);
+        simplifier.startStroke(0, 0, 0);
+        simplifier.addPoint(1, 0, 10);
+
+        // when
+        final boolean replaces = simplifier.addPoint(10, 0, 20);
+
+        // then
+        assertFalse(replaces);
+    }
+
+    @Test
+    public void keepsPointWhenDroppedPointsDriftTooFar() {
+        // given
+        final StrokeSimplifier simplifier = new StrokeSimplifier(TOLERANCE);
+        simplifier.startStroke(0, 0, 0);
+
+        // when
+        int replacedCount = 0;
+        boolean hasKeptPoint = false;
+        for (int i = 1; i <= 20 && !hasKeptPoint; i++) {
+            // A gentle arc, each single step stays within the tolerance
+            if (simplifier.addPoint(i, 0.02f * i * i, i * 10)) {
+                replacedCount++;
+            } else if (i > 1) {
+                hasKeptPoint = true;
+            }
+        }
+
+        // then
+        assertTrue(replacedCount > 0);
+        assertTrue(hasKeptPoint);
+    }
+
+    @Test
+    public void dropsPointsOnSameTimestampNearTheLine() {
+        // given
+        final StrokeSimplifier simplifier = new StrokeSimplifier(TOLERANCE);
+        simplifier.startStroke(0, 0, 0);
+        simplifier.addPoint(5, 0.2f, 0);
+
+        // when
+        final boolean replaces = simplifier.addPoint(10, 0, 0);
+
+        // then
+        assertTrue(replaces);
+    }
+
+    @Test
+    public void limitsConsecutiveDroppedPoints() {
+        // given
+        final StrokeSimplifier simplifier = new StrokeSimplifier(TOLERANCE);
+        simplifier.startStroke(0, 0, 0);
+        simplifier.addPoint(1, 0, 10);
+
+        // when
+        int replacedCount = 0;
+        boolean lastReplaces = true;
+        for (int i = 2; lastReplaces; i++) {
+            lastReplaces = simplifier.addPoint(i, 0, i * 10);
+            if (lastReplaces) {
+                replacedCount++;
+            }
+        }
+
+        // then
+        assertEquals(32, replacedCount);
+    }
+
+    @Test
+    public void keepsAllPointsWithZeroTolerance() {
+        // given
+        final StrokeSimplifier simplifier = new StrokeSimplifier(TOLERANCE);
+        simplifier.setTolerance(-1);
+        simplifier.startStroke(0, 0, 0);
+        simplifier.addPoint(1, 1, 10);
+
+        // when
+        final boolean replaces = simplifier.addPoint(2, 2, 20);
+
+        // then
+        assertFalse(replaces);
+    }
+
+    @Test
+    public void keepsPointsOutsideStroke() {
+        // given
+        final StrokeSimplifier simplifier = new StrokeSimplifier(TOLERANCE);
+        simplifier.startStroke(0, 0, 0);
+        simplifier.addPoint(1, 1, 10);
+        simplifier.finishStroke();
+
+        // when
+        final boolean replaces = simplifier.addPoint(2, 2, 20);
+
+        // then
+        assertFalse(replaces);
+    }
+
+    @Test
+    public void startsNewStrokeWithoutPendingPoint() {
+        // given
+        final StrokeSimplifier simplifier = new StrokeSimplifier(TOLERANCE);
+        simplifier.startStroke(0, 0, 0);
+        simplifier.addPoint(1, 1, 10);
+        simplifier.finishStroke();
+        simplifier.startStroke(100, 100, 100);
+
+        // when
+        final boolean replaces = simplifier.addPoint(101, 101, 110);
+
+        // then
+        assertFalse(replaces);
+    }
+}
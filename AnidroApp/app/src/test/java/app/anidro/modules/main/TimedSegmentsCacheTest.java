@@ -0,0 +1,289 @@
+package app.anidro.modules.main;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import app.anidro.common.ScreenOrientationSensor.ScreenOrientation;
+import app.anidro.models.TimedSegment;
+import app.anidro.renderers.SequentialTimeIndex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TimedSegmentsCacheTest {
+
+    @Test
+    public void snapshotDoesNotSeeLaterSegments() {
+        // given
+        final TimedSegmentsCache cache = new TimedSegmentsCache();
+        final List<TimedSegment> segments = addSegments(cache, 2);
+        final List<TimedSegment> snapshot = cache.snapshot();
+
+        // when
+        cache.add(segment(), 1000);
+
+        // then
+        assertEquals(segments, new ArrayList<>(snapshot));
+        assertEquals(3, cache.snapshot().size());
+    }
+
+    @Test
+    public void snapshotKeepsSegmentsAfterTruncate() {
+        // given
+        final TimedSegmentsCache cache = new TimedSegmentsCache();
+        final List<TimedSegment> segments = addSegments(cache, 3);
+        final List<TimedSegment> snapshot = cache.snapshot();
+
+        // when
+        cache.truncate(1);
+        final TimedSegment replacement = segment();
+        cache.add(replacement, 5000);
+
+        // then
+        assertEquals(segments, new ArrayList<>(snapshot));
+        assertEquals(200, ((SequentialTimeIndex) snapshot).getSequentialStartTime(2));
+        final List<TimedSegment> newSnapshot = cache.snapshot();
+        assertEquals(2, newSnapshot.size());
+        assertSame(segments.get(0), newSnapshot.get(0));
+        assertSame(replacement, newSnapshot.get(1));
+        assertEquals(5000, ((SequentialTimeIndex) newSnapshot).getSequentialStartTime(1));
+    }
+
+    @Test
+    public void snapshotsTakenBetweenTruncatesStayIsolated() {
+        // given
+        final TimedSegmentsCache cache = new TimedSegmentsCache();
+        final List<TimedSegment> segments = addSegments(cache, 2);
+        cache.truncate(1);
+        final List<TimedSegment> firstSnapshot = cache.snapshot();
+
+        // when
+        cache.truncate(0);
+        cache.add(segment(), 0);
+        final List<TimedSegment> secondSnapshot = cache.snapshot();
+        cache.truncate(0);
+        cache.add(segment(), 0);
+
+        // then
+        assertEquals(1, firstSnapshot.size());
+        assertSame(segments.get(0), firstSnapshot.get(0));
+        assertEquals(1, secondSnapshot.size());
+        assertNotSame(secondSnapshot.get(0), cache.snapshot().get(0));
+    }
+
+    @Test
+    public void snapshotKeepsSegmentsWhenCacheGrows() {
+        // given
+        final TimedSegmentsCache cache = new TimedSegmentsCache();
+        final List<TimedSegment> segments = addSegments(cache, 16);
+        final List<TimedSegment> snapshot = cache.snapshot();
+
+        // when
+        addSegments(cache, 20);
+        cache.truncate(3);
+
+        // then
+        assertEquals(segments, new ArrayList<>(snapshot));
+    }
+
+    @Test
+    public void reusesSnapshotUntilChanged() {
+        // given
+        final TimedSegmentsCache cache = new TimedSegmentsCache();
+        addSegments(cache, 2);
+        final List<TimedSegment> snapshot = cache.snapshot();
+
+        // when
+        final List<TimedSegment> sameSnapshot = cache.snapshot();
+        cache.truncate(1);
+
+        // then
+        assertSame(snapshot, sameSnapshot);
+        assertNotSame(snapshot, cache.snapshot());
+    }
+
+    @Test
+    public void keepsSnapshotWhenTruncatingToSameSize() {
+        // given
+        final TimedSegmentsCache cache = new TimedSegmentsCache();
+        addSegments(cache, 2);
+        final List<TimedSegment> snapshot = cache.snapshot();
+
+        // when
+        cache.truncate(2);
+
+        // then
+        assertSame(snapshot, cache.snapshot());
+    }
+
+    @Test
+    public void resetsForNewCanvas() {
+        // given
+        final TimedSegmentsCache cache = new TimedSegmentsCache();
+        cache.reset(100, 200, ScreenOrientation.ORIENTATION_0);
+        addSegments(cache, 2);
+        final List<TimedSegment> snapshot = cache.snapshot();
+
+        // when
+        cache.reset(200, 100, ScreenOrientation.ORIENTATION_90);
+
+        // then
+        assertEquals(0, cache.size());
+        assertEquals(2, snapshot.size());
+        assertTrue(cache.isBuiltFor(200, 100, ScreenOrientation.ORIENTATION_90));
+        assertFalse(cache.isBuiltFor(100, 200, ScreenOrientation.ORIENTATION_0));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void snapshotCannotBeModified() {
+        // given
+        final TimedSegmentsCache cache = new TimedSegmentsCache();
+
+        // when
+        cache.snapshot().add(segment());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void snapshotChecksIndex() {
+        // given
+        final TimedSegmentsCache cache = new TimedSegmentsCache();
+        addSegments(cache, 2);
+        final List<TimedSegment> snapshot = cache.snapshot();
+        cache.add(segment(), 0);
+
+        // when
+        snapshot.get(2);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedSegmentsAndLoadsThemAgain() {
+        // given
+        final RecordingLoader loader = new RecordingLoader();
+        final TimedSegmentsCache cache = new TimedSegmentsCache(6, loader);
+        cache.reset(100, 200, ScreenOrientation.ORIENTATION_90);
+        final List<TimedSegment> segments = addSegments(cache, 3);
+        final List<TimedSegment> snapshot = cache.snapshot();
+
+        // when
+        snapshot.get(0);
+        cache.add(segment(), 300);
+        final TimedSegment first = snapshot.get(0);
+        final TimedSegment second = snapshot.get(1);
+
+        // then
+        assertSame(segments.get(0), first);
+        assertNotSame(segments.get(1), second);
+        assertEquals(1, loader.loadsCount);
+        assertEquals(1, loader.loadedStroke);
+        assertEquals(0, loader.loadedStartTimestamp);
+        assertEquals(50, loader.loadedDuration);
+        assertEquals(100, loader.loadedCanvasWidth);
+        assertEquals(ScreenOrientation.ORIENTATION_90, loader.loadedOrientation);
+    }
+
+    @Test
+    public void keepsLoadedSegmentUntilEvicted() {
+        // given
+        final RecordingLoader loader = new RecordingLoader();
+        final TimedSegmentsCache cache = new TimedSegmentsCache(4, loader);
+        addSegments(cache, 3);
+        final List<TimedSegment> snapshot = cache.snapshot();
+
+        // when
+        final TimedSegment reloaded = snapshot.get(0);
+
+        // then
+        assertSame(reloaded, snapshot.get(0));
+        assertEquals(1, loader.loadsCount);
+    }
+
+    @Test
+    public void returnsEmptySegmentWhenStrokeChanged() {
+        // given
+        final RecordingLoader loader = new RecordingLoader();
+        loader.isStrokeChanged = true;
+        final TimedSegmentsCache cache = new TimedSegmentsCache(2, loader);
+        addSegments(cache, 2);
+        final List<TimedSegment> snapshot = cache.snapshot();
+
+        // when
+        final TimedSegment segment = snapshot.get(0);
+
+        // then
+        assertTrue(segment.isEmpty());
+        assertEquals(50, ((SequentialTimeIndex) snapshot).getSegmentDuration(0));
+    }
+
+    @Test
+    public void trimMemoryEvictsAllSegments() {
+        // given
+        final RecordingLoader loader = new RecordingLoader();
+        final TimedSegmentsCache cache = new TimedSegmentsCache(Integer.MAX_VALUE, loader);
+        final List<TimedSegment> segments = addSegments(cache, 2);
+        final List<TimedSegment> snapshot = cache.snapshot();
+
+        // when
+        cache.trimMemory();
+
+        // then
+        assertNotSame(segments.get(0), snapshot.get(0));
+        assertNotSame(segments.get(1), snapshot.get(1));
+        assertEquals(2, loader.loadsCount);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void indexesSegmentDurations() {
+        // given
+        final TimedSegmentsCache cache = new TimedSegmentsCache();
+        cache.add(new TimedSegment(new float[]{0, 10, 20}, new float[]{0, 10, 20}, new long[]{100, 150, 400},
+                100, 100, 0xFF000000, 4), 0);
+
+        // when
+        final SequentialTimeIndex snapshot = (SequentialTimeIndex) cache.snapshot();
+
+        // then
+        assertEquals(300, snapshot.getSegmentDuration(0));
+    }
+
+    private static List<TimedSegment> addSegments(TimedSegmentsCache cache, int count) {
+        final List<TimedSegment> segments = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final TimedSegment segment = segment();
+            cache.add(segment, i * 100L);
+            segments.add(segment);
+        }
+        return segments;
+    }
+
+    private static class RecordingLoader implements TimedSegmentsCache.SegmentLoader {
+        boolean isStrokeChanged;
+        int loadsCount;
+        int loadedStroke;
+        long loadedStartTimestamp;
+        long loadedDuration;
+        int loadedCanvasWidth;
+        ScreenOrientation loadedOrientation;
+
+        @Override
+        public TimedSegment loadSegment(int stroke, long startTimestamp, long duration, int canvasWidth,
+                                        int canvasHeight, ScreenOrientation screenOrientation) {
+            loadsCount++;
+            loadedStroke = stroke;
+            loadedStartTimestamp = startTimestamp;
+            loadedDuration = duration;
+            loadedCanvasWidth = canvasWidth;
+            loadedOrientation = screenOrientation;
+            return isStrokeChanged ? null : segment();
+        }
+    }
+
+    private static TimedSegment segment() {
+        return new TimedSegment(new float[]{0, 10}, new float[]{0, 10}, new long[]{0, 50}, 100, 100, 0xFF000000, 4);
+    }
+}
@@ -0,0 +1,293 @@
+package app.anidro.modules.main;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TouchPointChunksTest {
+    private static final int CHUNKS_COUNT = 3;
+    private static final int POINTS_COUNT = TouchPointChunks.CHUNK_SIZE * (CHUNKS_COUNT - 1) + 100;
+
+    private File spillFile;
+
+    @Before
+    public void setUp() throws IOException {
+        spillFile = File.createTempFile("touch_points", ".chunks");
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        spillFile.delete();
+    }
+
+    @Test
+    public void readsSpilledPointsBackOnAccess() {
+        // given
+        final TouchPointChunks chunks = new TouchPointChunks(spillFile);
+        setPoints(chunks);
+
+        // when
+        chunks.trimMemory();
+
+        // then
+        assertTrue(spillFile.length() > 0);
+        assertPoints(chunks);
+        assertEquals(-1, chunks.takeFirstLostPoint());
+    }
+
+    @Test
+    public void readsAllSpilledPointsBack() throws IOException {
+        // given
+        final TouchPointChunks chunks = new TouchPointChunks(spillFile);
+        setPoints(chunks);
+        chunks.trimMemory();
+
+        // when
+        chunks.readBackSpilledChunks();
+        clearSpillFile();
+
+        // then
+        assertPoints(chunks);
+        assertEquals(-1, chunks.takeFirstLostPoint());
+    }
+
+    @Test
+    public void spillsChangedPointsAgain() {
+        // given
+        final TouchPointChunks chunks = new TouchPointChunks(spillFile);
+        setPoints(chunks);
+        chunks.trimMemory();
+
+        // when
+        chunks.set(5, (char) 1, (char) 2, (char) 3, (byte) 1);
+        chunks.trimMemory();
+        chunks.readBackSpilledChunks();
+
+        // then
+        assertEquals(1, chunks.getChunkXs(0)[5]);
+        assertEquals(2, chunks.getChunkYs(0)[5]);
+        assertEquals(3, chunks.getTimeDelta(5));
+        assertEquals(1, chunks.getAction(5));
+        assertEquals(x(6), chunks.getChunkXs(0)[6]);
+    }
+
+    @Test
+    public void keepsLastChunkInMemory() throws IOException {
+        // given
+        final TouchPointChunks chunks = new TouchPointChunks(spillFile);
+        setPoints(chunks);
+
+        // when
+        chunks.trimMemory();
+        clearSpillFile();
+
+        // then
+        final int lastPoint = POINTS_COUNT - 1;
+        assertEquals(x(lastPoint), chunks.getChunkXs(CHUNKS_COUNT - 1)[TouchPointChunks.offsetOf(lastPoint)]);
+        assertEquals(-1, chunks.takeFirstLostPoint());
+    }
+
+    @Test
+    public void keepsPointsInMemoryWithoutSpillFile() {
+        // given
+        final TouchPointChunks chunks = new TouchPointChunks(null);
+        setPoints(chunks);
+
+        // when
+        chunks.trimMemory();
+
+        // then
+        assertPoints(chunks);
+    }
+
+    @Test
+    public void reportsLostPointsWhenSpillFileCannotBeRead() throws IOException {
+        // given
+        final TouchPointChunks chunks = new TouchPointChunks(spillFile);
+        setPoints(chunks);
+        chunks.trimMemory();
+        clearSpillFile();
+
+        // when
+        final int timeDelta = chunks.getTimeDelta(TouchPointChunks.CHUNK_SIZE + 1);
+
+        // then
+        assertEquals(0, timeDelta);
+        assertEquals(TouchPointChunks.CHUNK_SIZE, chunks.takeFirstLostPoint());
+        assertEquals(-1, chunks.takeFirstLostPoint());
+    }
+
+    @Test
+    public void keepsPointsInMemoryAfterSpillFileFailed() throws IOException {
+        // given
+        final TouchPointChunks chunks = new TouchPointChunks(spillFile);
+        setPoints(chunks);
+        chunks.trimMemory();
+        clearSpillFile();
+        chunks.readBackSpilledChunks();
+        assertEquals(0, chunks.takeFirstLostPoint());
+
+        // when
+        setPoints(chunks);
+        chunks.trimMemory();
+
+        // then
+        assertPoints(chunks);
+    }
+
+    @Test
+    public void forgetsLostPointsWhenTruncated() throws IOException {
+        // given
+        final TouchPointChunks chunks = new TouchPointChunks(spillFile);
+        setPoints(chunks);
+        chunks.trimMemory();
+        clearSpillFile();
+        chunks.getAction(TouchPointChunks.CHUNK_SIZE);
+
+        // when
+        chunks.truncate(TouchPointChunks.CHUNK_SIZE);
+
+        // then
+        assertEquals(-1, chunks.takeFirstLostPoint());
+    }
+
+    @Test
+    public void deletesSpillFileWhenCleared() {
+        // given
+        final TouchPointChunks chunks = new TouchPointChunks(spillFile);
+        setPoints(chunks);
+        chunks.trimMemory();
+
+        // when
+        chunks.clear();
+
+        // then
+        assertFalse(spillFile.exists());
+    }
+
+    @Test
+    public void keepsPointsChangedDuringSpillInMemory() throws IOException {
+        // given
+        final TouchPointChunks chunks = new TouchPointChunks(spillFile);
+        setPoints(chunks);
+        final TouchPointChunks.Transfer spill = chunks.startSpill();
+
+        // when
+        chunks.set(5, (char) 1, (char) 2, (char) 3, (byte) 1);
+        spill.run();
+        chunks.finishTransfer(spill);
+        clearSpillFile();
+
+        // then
+        assertEquals(1, chunks.getChunkXs(0)[5]);
+        assertEquals(2, chunks.getChunkYs(0)[5]);
+        assertEquals(3, chunks.getTimeDelta(5));
+        assertEquals(1, chunks.getAction(5));
+        assertEquals(x(6), chunks.getChunkXs(0)[6]);
+        assertEquals(-1, chunks.takeFirstLostPoint());
+    }
+
+    @Test
+    public void ignoresReadBackFinishedAfterClear() {
+        // given
+        final TouchPointChunks chunks = new TouchPointChunks(spillFile);
+        setPoints(chunks);
+        chunks.trimMemory();
+        final TouchPointChunks.Transfer readBack = chunks.startReadBack();
+
+        // when
+        chunks.clear();
+        readBack.run();
+        chunks.finishTransfer(readBack);
+
+        // then
+        assertFalse(spillFile.exists());
+        setPoints(chunks);
+        assertPoints(chunks);
+        assertEquals(-1, chunks.takeFirstLostPoint());
+    }
+
+    @Test
+    public void fixedPointKeepsFractionsWithinHalfStep() {
+        for (int i = 0; i < 1500; i++) {
+            final float fraction = -TouchPointChunks.FIXED_POINT_ORIGIN + i * 0.0013f;
+            // when
+            final char fixedPoint = TouchPointChunks.toFixedPoint(fraction);
+
+            // then
+            final float restored = fixedPoint / TouchPointChunks.FIXED_POINT_ONE - TouchPointChunks.FIXED_POINT_ORIGIN;
+            // Half a step plus the float rounding
+            assertEquals(fraction, restored, 0.5f / TouchPointChunks.FIXED_POINT_ONE + 1e-6f);
+        }
+    }
+
+    @Test
+    public void fixedPointKeepsCanvasEdgesExact() {
+        assertEquals(0x4000, TouchPointChunks.toFixedPoint(0));
+        assertEquals(0xC000, TouchPointChunks.toFixedPoint(1));
+    }
+
+    @Test
+    public void fixedPointClampsFractionsOutsideOfRange() {
+        assertEquals(0, TouchPointChunks.toFixedPoint(-0.6f));
+        assertEquals(0, TouchPointChunks.toFixedPoint(-100));
+        assertEquals(Character.MAX_VALUE, TouchPointChunks.toFixedPoint(1.5f));
+        assertEquals(Character.MAX_VALUE, TouchPointChunks.toFixedPoint(100));
+    }
+
+    @Test
+    public void timeDeltaClampsToStoredRange() {
+        assertEquals(0, TouchPointChunks.toTimeDelta(-5));
+        assertEquals(16, TouchPointChunks.toTimeDelta(16));
+        assertEquals(TouchPointChunks.MAX_TIME_DELTA, TouchPointChunks.toTimeDelta(TouchPointChunks.MAX_TIME_DELTA));
+        assertEquals(TouchPointChunks.MAX_TIME_DELTA, TouchPointChunks.toTimeDelta(10L * TouchPointChunks.MAX_TIME_DELTA));
+    }
+
+    private static void setPoints(TouchPointChunks chunks) {
+        for (int point = 0; point < POINTS_COUNT; point++) {
+            chunks.set(point, x(point), y(point), timeDelta(point), action(point));
+        }
+    }
+
+    private static void assertPoints(TouchPointChunks chunks) {
+        for (int point = 0; point < POINTS_COUNT; point++) {
+            final int chunk = TouchPointChunks.chunkOf(point);
+            final int offset = TouchPointChunks.offsetOf(point);
+            assertEquals(x(point), chunks.getChunkXs(chunk)[offset]);
+            assertEquals(y(point), chunks.getChunkYs(chunk)[offset]);
+            assertEquals(timeDelta(point), chunks.getChunkTimeDeltas(chunk)[offset]);
+            assertEquals(action(point), chunks.getAction(point));
+        }
+    }
+
+    private void clearSpillFile() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(spillFile, "rw")) {
+            file.setLength(0);
+        }
+    }
+
+    private static char x(int point) {
+        return (char) (point * 7);
+    }
+
+    private static char y(int point) {
+        return (char) (Character.MAX_VALUE - point * 3);
+    }
+
+    private static char timeDelta(int point) {
+        return (char) (point % 50);
+    }
+
+    private static byte action(int point) {
+        return (byte) (point % 3);
+    }
+}
@@ -0,0 +1,143 @@
+package app.anidro.modules.main;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TouchSamplesRingBufferTest {
+
+    @Test
+    public void drainsSamplesInOrder() {
+        // given
+        final TouchSamplesRingBuffer ring = new TouchSamplesRingBuffer(4);
+        ring.offer(1, 2, 100, 0);
+        ring.offer(3, 4, 116, 2);
+        final List<float[]> samples = new ArrayList<>();
+
+        // when
+        final int drained = ring.drain((x, y, timestamp, action) -> samples.add(new float[]{x, y, timestamp, action}));
+
+        // then
+        assertEquals(2, drained);
+        assertEquals(2, samples.size());
+        assertEquals(1, samples.get(0)[0], 0);
+        assertEquals(2, samples.get(0)[1], 0);
+        assertEquals(100, samples.get(0)[2], 0);
+        assertEquals(0, samples.get(0)[3], 0);
+        assertEquals(3, samples.get(1)[0], 0);
+        assertEquals(116, samples.get(1)[2], 0);
+        assertEquals(2, samples.get(1)[3], 0);
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void rejectsSamplesWhenFull() {
+        // given
+        final TouchSamplesRingBuffer ring = new TouchSamplesRingBuffer(2);
+        assertTrue(ring.offer(1, 1, 1, 0));
+        assertTrue(ring.offer(2, 2, 2, 2));
+
+        // when
+        final boolean isOffered = ring.offer(3, 3, 3, 1);
+
+        // then
+        assertFalse(isOffered);
+        final List<Long> timestamps = new ArrayList<>();
+        ring.drain((x, y, timestamp, action) -> timestamps.add(timestamp));
+        assertEquals(2, timestamps.size());
+        assertTrue(ring.offer(3, 3, 3, 1));
+    }
+
+    @Test
+    public void reportsRemainingCapacity() {
+        // given
+        final TouchSamplesRingBuffer ring = new TouchSamplesRingBuffer(4);
+        ring.offer(1, 1, 1, 0);
+        ring.offer(2, 2, 2, 2);
+        ring.offer(3, 3, 3, 0);
+
+        // when
+        final int beforeDrain = ring.remainingCapacity();
+        ring.drain((x, y, timestamp, action) -> { });
+        final int afterDrain = ring.remainingCapacity();
+
+        // then
+        assertEquals(1, beforeDrain);
+        assertEquals(4, afterDrain);
+    }
+
+    @Test
+    public void wrapsAroundTheRing() {
+        // given
+        final TouchSamplesRingBuffer ring = new TouchSamplesRingBuffer(4);
+        final List<Long> timestamps = new ArrayList<>();
+
+        // when
+        for (long timestamp = 0; timestamp < 10; timestamp++) {
+            ring.offer(0, 0, timestamp, 2);
+            if (timestamp % 3 == 2) {
+                ring.drain((x, y, t, action) -> timestamps.add(t));
+            }
+        }
+        ring.drain((x, y, t, action) -> timestamps.add(t));
+
+        // then
+        assertEquals(10, timestamps.size());
+        for (int i = 0; i < timestamps.size(); i++) {
+            assertEquals(i, (long) timestamps.get(i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requiresPowerOfTwoCapacity() {
+        new TouchSamplesRingBuffer(6);
+    }
+
+    @Test
+    public void passesAllSamplesFromProducerToConsumerThread() throws InterruptedException {
+        // given
+        final int samplesCount = 20000;
+        final TouchSamplesRingBuffer ring = new TouchSamplesRingBuffer(64);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final long[] expectedTimestamp = new long[1];
+        final Thread producer = new Thread(() -> {
+            for (int i = 0; i < samplesCount; i++) {
+                while (!ring.offer(i, -i, i, i & 0x7F)) {
+                    Thread.yield();
+                }
+            }
+        });
+        final Thread consumer = new Thread(() -> {
+            while (expectedTimestamp[0] < samplesCount && failure.get() == null) {
+                final int drained = ring.drain((x, y, timestamp, action) -> {
+                    final long expected = expectedTimestamp[0]++;
+                    if (timestamp != expected || x != expected || y != -expected || action != (expected & 0x7F)) {
+                        failure.compareAndSet(null, "Sample " + expected + " was " + x + ", " + y + ", "
+                                + timestamp + ", " + action);
+                    }
+                });
+                if (drained == 0) {
+                    Thread.yield();
+                }
+            }
+        });
+
+        // when
+        producer.start();
+        consumer.start();
+        producer.join(10000);
+        consumer.join(10000);
+
+        // then
+        assertNull(failure.get());
+        assertEquals(samplesCount, expectedTimestamp[0]);
+        assertTrue(ring.isEmpty());
+    }
+}
@@ -0,0 +1,335 @@
+package app.anidro.modules.main;
+
+import android.graphics.Paint;
+import android.view.MotionEvent;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import app.anidro.models.TimedSegment;
+import app.anidro.renderers.NormalizedSegment;
+import app.anidro.renderers.SequentialTimeNormalizer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TouchStrokesStoreTest {
+    private static final long PAUSE = 50;
+    private static final int CANVAS_SIZE = 100;
+
+    @Test
+    public void indexesDrawingTimeOfStrokes() {
+        // given
+        final TouchStrokesStore store = new TouchStrokesStore(PAUSE, null);
+
+        // when
+        addStroke(store, 1000, 10, 10);
+        addStroke(store, 5000, 5, 20);
+
+        // then
+        assertEquals(0, store.getStrokeStartDrawingTime(0));
+        assertEquals(90, store.getStrokeEndDrawingTime(0));
+        assertEquals(90 + PAUSE, store.getStrokeStartDrawingTime(1));
+        assertEquals(90 + PAUSE + 80, store.getDrawingTime());
+        assertEquals(90 + PAUSE + 80 + PAUSE, store.getNextStrokeStartDrawingTime());
+    }
+
+    @Test
+    public void startsFirstStrokeAtZeroDrawingTime() {
+        // given
+        final TouchStrokesStore store = new TouchStrokesStore(PAUSE, null);
+
+        // then
+        assertEquals(0, store.getNextStrokeStartDrawingTime());
+    }
+
+    @Test
+    public void undoRemovesLastStrokeAndRedoRestoresIt() {
+        // given
+        final TouchStrokesStore store = new TouchStrokesStore(PAUSE, null);
+        addStroke(store, 1000, 10, 10);
+        addStroke(store, 5000, 5, 20);
+        final long[] expectedTimestamps = new long[5];
+        store.getStrokeTimestamps(1, expectedTimestamps);
+        final long drawingTime = store.getDrawingTime();
+
+        // when
+        store.undoLastStroke();
+
+        // then
+        assertEquals(1, store.getStrokesCount());
+        assertEquals(10, store.getPointsCount());
+        assertEquals(90, store.getDrawingTime());
+        assertTrue(store.canRedo());
+
+        // when
+        assertTrue(store.redoStroke());
+
+        // then
+        assertEquals(2, store.getStrokesCount());
+        assertEquals(15, store.getPointsCount());
+        assertEquals(10, store.getStrokeFirstPoint(1));
+        assertEquals(15, store.getStrokeEndPoint(1));
+        assertEquals(drawingTime, store.getDrawingTime());
+        final long[] timestamps = new long[5];
+        store.getStrokeTimestamps(1, timestamps);
+        assertArrayEquals(expectedTimestamps, timestamps);
+        assertFalse(store.canRedo());
+        assertFalse(store.redoStroke());
+    }
+
+    @Test
+    public void redoesStrokesInUndoneOrder() {
+        // given
+        final TouchStrokesStore store = new TouchStrokesStore(PAUSE, null);
+        addStroke(store, 1000, 4, 10);
+        addStroke(store, 2000, 6, 10);
+        addStroke(store, 3000, 8, 10);
+        store.undoLastStroke();
+        store.undoLastStroke();
+
+        // when
+        store.redoStroke();
+
+        // then
+        assertEquals(2, store.getStrokesCount());
+        assertEquals(4, store.getStrokeFirstPoint(1));
+        assertEquals(10, store.getStrokeEndPoint(1));
+        assertEquals(10, store.getPointsCount());
+
+        // when
+        store.redoStroke();
+
+        // then
+        assertEquals(3, store.getStrokesCount());
+        assertEquals(10, store.getStrokeFirstPoint(2));
+        assertEquals(18, store.getStrokeEndPoint(2));
+        assertEquals(3000, store.getStrokeStartTimestamp(2));
+    }
+
+    @Test
+    public void newStrokeDiscardsUndoneStrokes() {
+        // given
+        final TouchStrokesStore store = new TouchStrokesStore(PAUSE, null);
+        addStroke(store, 1000, 4, 10);
+        addStroke(store, 2000, 6, 10);
+        store.undoLastStroke();
+
+        // when
+        addStroke(store, 3000, 3, 10);
+
+        // then
+        assertFalse(store.canRedo());
+        assertEquals(2, store.getStrokesCount());
+        assertEquals(7, store.getPointsCount());
+        assertEquals(3000, store.getStrokeStartTimestamp(1));
+    }
+
+    @Test
+    public void forgetsStrokesRedoneLastOverRedoMemory() {
+        // given
+        final TouchStrokesStore store = new TouchStrokesStore(PAUSE, null);
+        store.setMaxRedoMemory(15 * TouchPointChunks.BYTES_PER_POINT);
+        addStroke(store, 1000, 10, 10);
+        addStroke(store, 2000, 10, 10);
+        addStroke(store, 3000, 10, 10);
+        store.undoLastStroke();
+
+        // when
+        store.undoLastStroke();
+
+        // then the last undone stroke is still redoable, the first undone one is forgotten
+        assertEquals(1, store.getStrokesCount());
+        assertTrue(store.redoStroke());
+        assertEquals(2, store.getStrokesCount());
+        assertEquals(10, store.getStrokeFirstPoint(1));
+        assertEquals(20, store.getStrokeEndPoint(1));
+        assertEquals(20, store.getPointsCount());
+        assertEquals(2000, store.getStrokeStartTimestamp(1));
+        assertFalse(store.canRedo());
+    }
+
+    @Test
+    public void keepsNothingForRedoWithoutRedoMemory() {
+        // given
+        final TouchStrokesStore store = new TouchStrokesStore(PAUSE, null);
+        store.setMaxRedoMemory(0);
+        addStroke(store, 1000, 10, 10);
+        addStroke(store, 2000, 10, 10);
+
+        // when
+        store.undoLastStroke();
+
+        // then
+        assertEquals(1, store.getStrokesCount());
+        assertFalse(store.canRedo());
+        assertFalse(store.redoStroke());
+    }
+
+    @Test
+    public void replacesLastPointWithNewDuration() {
+        // given
+        final TouchStrokesStore store = new TouchStrokesStore(PAUSE, null);
+        addStroke(store, 1000, 3, 10);
+
+        // when
+        store.replaceLastPoint(50, 50, 1100, MotionEvent.ACTION_MOVE);
+
+        // then
+        assertEquals(3, store.getPointsCount());
+        assertEquals(100, store.getDrawingTime());
+        assertEquals(1100, store.getLastTimestamp());
+    }
+
+    @Test
+    public void clearsAllStrokesAndRedo() {
+        // given
+        final TouchStrokesStore store = new TouchStrokesStore(PAUSE, null);
+        addStroke(store, 1000, 3, 10);
+        addStroke(store, 2000, 3, 10);
+        store.undoLastStroke();
+
+        // when
+        store.clear();
+
+        // then
+        assertTrue(store.isEmpty());
+        assertEquals(0, store.getStrokesCount());
+        assertEquals(0, store.getDrawingTime());
+        assertFalse(store.canRedo());
+    }
+
+    @Test
+    public void indexedDrawingTimesMatchSequentialNormalizer() {
+        // given
+        final TouchStrokesStore store = new TouchStrokesStore(SequentialTimeNormalizer.SEGMENT_PAUSE, null);
+        for (int i = 0; i < 6; i++) {
+            addStroke(store, i * 10000L, 2 + i, 7 + i);
+        }
+        store.undoLastStroke();
+        store.undoLastStroke();
+        store.redoStroke();
+        addStroke(store, 90000, 4, 25);
+
+        final TimedSegmentsCache cache = new TimedSegmentsCache();
+        final List<TimedSegment> plainSegments = new ArrayList<>();
+        for (int stroke = 0; stroke < store.getStrokesCount(); stroke++) {
+            final TimedSegment segment = buildSegment(store, stroke);
+            cache.add(segment, store.getStrokeStartDrawingTime(stroke));
+            plainSegments.add(segment);
+        }
+        final SequentialTimeNormalizer indexed = new SequentialTimeNormalizer();
+        final SequentialTimeNormalizer summed = new SequentialTimeNormalizer();
+
+        // when
+        indexed.normalizeDrawing(cache.snapshot());
+        summed.normalizeDrawing(plainSegments);
+
+        // then
+        assertEquals(summed.getNormalizedDuration(), indexed.getNormalizedDuration());
+        assertEquals(store.getDrawingTime(), indexed.getNormalizedDuration());
+        final List<NormalizedSegment> expected = summed.getNormalizedDrawing();
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getStartTime(), indexed.getNormalizedDrawing().get(i).getStartTime());
+        }
+    }
+
+    @Test
+    public void dropsStrokesWithLostPoints() throws IOException {
+        // given
+        final File spillFile = File.createTempFile("touch_points", ".chunks");
+        final TouchStrokesStore store = new TouchStrokesStore(PAUSE, spillFile);
+        addStroke(store, 0, TouchPointChunks.CHUNK_SIZE - 10, 1);
+        addStroke(store, 10000, 20, 1);
+        addStroke(store, 20000, TouchPointChunks.CHUNK_SIZE, 1);
+        addStroke(store, 30000, 10, 1);
+        store.trimMemory();
+        try (RandomAccessFile file = new RandomAccessFile(spillFile, "rw")) {
+            // Only the first chunk can be read back
+            file.setLength(TouchPointChunks.CHUNK_SIZE * TouchPointChunks.BYTES_PER_POINT);
+        }
+
+        // when
+        store.readBackSpilledPoints();
+        final boolean hasDroppedStrokes = store.dropLostStrokes();
+
+        // then
+        assertTrue(hasDroppedStrokes);
+        assertEquals(1, store.getStrokesCount());
+        assertEquals(TouchPointChunks.CHUNK_SIZE - 10, store.getPointsCount());
+        assertFalse(store.canRedo());
+        assertFalse(store.dropLostStrokes());
+
+        store.clear();
+        //noinspection ResultOfMethodCallIgnored
+        spillFile.delete();
+    }
+
+    @Test
+    public void restoresFixedPointCoordinatesOnSameCanvas() {
+        // given
+        final TouchStrokesStore store = new TouchStrokesStore(PAUSE, null);
+        final float[] xs = {0, 1079, -200, 1500, 333.3f};
+        final float[] ys = {0, 1919, -900, 2500, 777.7f};
+        store.startStroke(0, 0, 0, 4, null, 1080, 1920, new Paint());
+        for (int i = 0; i < xs.length; i++) {
+            store.addPoint(xs[i], ys[i], i * 10, i == 0 ? MotionEvent.ACTION_DOWN : MotionEvent.ACTION_MOVE);
+        }
+        final CanvasOrientationTransform transform = new CanvasOrientationTransform();
+        transform.setTarget(null, 1080, 1920);
+        final float[] mappedXs = new float[xs.length];
+        final float[] mappedYs = new float[ys.length];
+
+        // when
+        store.mapStroke(0, transform, mappedXs, mappedYs);
+
+        // then
+        final float delta = 1920 / TouchPointChunks.FIXED_POINT_ONE;
+        for (int i = 0; i < xs.length; i++) {
+            assertEquals(xs[i], mappedXs[i], delta);
+            assertEquals(ys[i], mappedYs[i], delta);
+        }
+    }
+
+    @Test
+    public void carriesClampedTimeDeltaOverToNextPoint() {
+        // given
+        final TouchStrokesStore store = new TouchStrokesStore(PAUSE, null);
+        store.startStroke(1000, 0, 0, 4, null, CANVAS_SIZE, CANVAS_SIZE, new Paint());
+        store.addPoint(0, 0, 1000, MotionEvent.ACTION_DOWN);
+        store.addPoint(1, 1, 1000 + 100000, MotionEvent.ACTION_MOVE);
+        store.addPoint(2, 2, 1000 + 100016, MotionEvent.ACTION_UP);
+        final long[] timestamps = new long[3];
+
+        // when
+        store.getStrokeTimestamps(0, timestamps);
+
+        // then
+        assertArrayEquals(new long[]{1000, 1000 + TouchPointChunks.MAX_TIME_DELTA, 1000 + 100016}, timestamps);
+        assertEquals(100016, store.getDrawingTime());
+    }
+
+    private static TimedSegment buildSegment(TouchStrokesStore store, int stroke) {
+        final int pointsCount = store.getStrokeEndPoint(stroke) - store.getStrokeFirstPoint(stroke);
+        final long[] timestamps = new long[pointsCount];
+        store.getStrokeTimestamps(stroke, timestamps);
+        return new TimedSegment(new float[pointsCount], new float[pointsCount], timestamps,
+                CANVAS_SIZE, CANVAS_SIZE, 0xFF000000, 4);
+    }
+
+    private static void addStroke(TouchStrokesStore store, long startTimestamp, int pointsCount, long interval) {
+        store.startStroke(startTimestamp, 0, 0, 4, null, CANVAS_SIZE, CANVAS_SIZE, new Paint());
+        for (int i = 0; i < pointsCount; i++) {
+            final int action = i == 0 ? MotionEvent.ACTION_DOWN
+                    : (i == pointsCount - 1 ? MotionEvent.ACTION_UP : MotionEvent.ACTION_MOVE);
+            store.addPoint(i, i, startTimestamp + i * interval, action);
+        }
+    }
+}
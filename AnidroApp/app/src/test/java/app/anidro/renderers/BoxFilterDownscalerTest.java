@@ -0,0 +1,122 @@
+package app.anidro.renderers;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class BoxFilterDownscalerTest {
+    private static final int BLACK = 0xFF000000;
+    private static final int WHITE = 0xFFFFFFFF;
+
+    @Test
+    public void keepsUniformColorAtAnyRatio() {
+        // given
+        final int[] source = new int[30 * 20];
+        Arrays.fill(source, 0xFF336699);
+        final int[] target = new int[7 * 6];
+        final BoxFilterDownscaler downscaler = new BoxFilterDownscaler(30, 20, 7, 6);
+
+        // when
+        downscaler.downscale(source, 0, 0, 30, 20, target, new int[4]);
+
+        // then
+        for (int pixel : target) {
+            assertEquals(0xFF336699, pixel);
+        }
+    }
+
+    @Test
+    public void averagesBlocksAtHalfSize() {
+        // given
+        final int[] source = {
+                BLACK, WHITE, BLACK, BLACK,
+                WHITE, BLACK, BLACK, BLACK,
+                WHITE, WHITE, 0xFF0000FF, 0xFF0000FF,
+                WHITE, WHITE, 0xFF0000FF, 0xFF0000FF};
+        final int[] target = new int[4];
+
+        // when
+        new BoxFilterDownscaler(4, 4, 2, 2).downscale(source, 0, 0, 4, 4, target, new int[4]);
+
+        // then
+        assertArrayEquals(new int[]{0xFF808080, BLACK, WHITE, 0xFF0000FF}, target);
+    }
+
+    @Test
+    public void weightsPartiallyCoveredPixels() {
+        // given a white column covering a third of the middle target pixel
+        final int[] source = new int[9];
+        Arrays.fill(source, BLACK);
+        source[4] = WHITE;
+        final int[] target = new int[3];
+
+        // when
+        new BoxFilterDownscaler(9, 1, 3, 1).downscale(source, 0, 0, 9, 1, target, new int[4]);
+
+        // then
+        assertArrayEquals(new int[]{BLACK, 0xFF555555, BLACK}, target);
+    }
+
+    @Test
+    public void keepsThinLineVisible() {
+        // given
+        final int[] source = new int[16 * 16];
+        Arrays.fill(source, BLACK);
+        for (int x = 0; x < 16; x++) {
+            source[5 * 16 + x] = WHITE;
+        }
+        final int[] target = new int[4 * 4];
+
+        // when
+        new BoxFilterDownscaler(16, 16, 4, 4).downscale(source, 0, 0, 16, 16, target, new int[4]);
+
+        // then
+        for (int x = 0; x < 4; x++) {
+            assertEquals(0xFF404040, target[4 + x]);
+            assertEquals(BLACK, target[x]);
+        }
+    }
+
+    @Test
+    public void recomputesOnlyPixelsCoveringChangedArea() {
+        // given
+        final int[] source = new int[16 * 16];
+        Arrays.fill(source, WHITE);
+        final int[] target = new int[4 * 4];
+        Arrays.fill(target, 0xFF123456);
+        final int[] targetDirtyBounds = new int[4];
+
+        // when
+        new BoxFilterDownscaler(16, 16, 4, 4).downscale(source, 5, 3, 9, 4, target, targetDirtyBounds);
+
+        // then
+        assertArrayEquals(new int[]{1, 0, 3, 1}, targetDirtyBounds);
+        assertEquals(0xFF123456, target[0]);
+        assertEquals(WHITE, target[1]);
+        assertEquals(WHITE, target[2]);
+        assertEquals(0xFF123456, target[3]);
+        assertEquals(0xFF123456, target[4 + 1]);
+    }
+
+    @Test
+    public void reportsNoChangeForEmptyArea() {
+        // given
+        final int[] target = new int[4];
+        final int[] targetDirtyBounds = {1, 1, 2, 2};
+
+        // when
+        new BoxFilterDownscaler(4, 4, 2, 2).downscale(new int[16], 2, 2, 2, 4, target, targetDirtyBounds);
+
+        // then
+        assertArrayEquals(new int[4], targetDirtyBounds);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUpscaling() {
+        // when
+        new BoxFilterDownscaler(4, 4, 8, 2);
+    }
+}
@@ -0,0 +1,296 @@
+package app.anidro.renderers;
+
+import org.junit.Test;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import app.anidro.models.CubicBezierStroke;
+import app.anidro.models.TimedSegment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Renders with a {@link SoftwareRenderTarget}, so the renderer runs without the Android graphics stack
+ */
+public class FixedFrameRateRendererTest {
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+
+    @Test
+    public void rendersWholeDrawingInSingleFrame() {
+        // given
+        final TimedSegment segment = new TimedSegment(new float[]{10, 50}, new float[]{16, 16}, new long[]{0, 400},
+                64, 32, BLACK, 4);
+        final FixedFrameRateRenderer renderer = new FixedFrameRateRenderer(Collections.singletonList(segment),
+                WHITE, new SoftwareRenderTarget(64, 32), new SingleFrameTimeNormalizer(), 100);
+
+        // when
+        renderer.renderNextFrame();
+
+        // then
+        final SoftwareRenderTarget expected = new SoftwareRenderTarget(64, 32);
+        expected.fill(WHITE);
+        expected.drawStroke(new float[]{10, 16, 50, 16}, 2, BLACK, 4);
+        assertArrayEquals(expected.getPixels(), pixels(renderer));
+        assertFalse(renderer.hasNextFrame());
+    }
+
+    @Test
+    public void scalesSegmentsToFrameSize() {
+        // given
+        final TimedSegment segment = new TimedSegment(new float[]{20, 100}, new float[]{32, 32}, new long[]{0, 400},
+                128, 64, BLACK, 8);
+        final FixedFrameRateRenderer renderer = new FixedFrameRateRenderer(Collections.singletonList(segment),
+                WHITE, new SoftwareRenderTarget(64, 32), new SingleFrameTimeNormalizer(), 100);
+
+        // when
+        renderer.renderNextFrame();
+
+        // then
+        final SoftwareRenderTarget expected = new SoftwareRenderTarget(64, 32);
+        expected.fill(WHITE);
+        expected.drawStroke(new float[]{10, 16, 50, 16}, 2, BLACK, 4);
+        assertArrayEquals(expected.getPixels(), pixels(renderer));
+    }
+
+    @Test
+    public void drawsSegmentProgressivelyOverFrames() {
+        // given
+        final TimedSegment segment = new TimedSegment(new float[]{0, 60}, new float[]{16, 16}, new long[]{0, 600},
+                64, 32, BLACK, 2);
+        final FixedFrameRateRenderer renderer = new FixedFrameRateRenderer(Collections.singletonList(segment),
+                WHITE, new SoftwareRenderTarget(64, 32), new SequentialTimeNormalizer(), 100);
+
+        // when
+        renderer.renderNextFrame();
+        renderer.renderNextFrame();
+        renderer.renderNextFrame();
+
+        // then
+        assertEquals(7, renderer.getFramesCount());
+        assertEquals(BLACK, pixels(renderer)[16 * 64 + 20]);
+        assertEquals(WHITE, pixels(renderer)[16 * 64 + 40]);
+    }
+
+    @Test
+    public void tracksDamageOfEachFrame() {
+        // given
+        final TimedSegment segment = new TimedSegment(new float[]{0, 60}, new float[]{16, 16}, new long[]{0, 600},
+                64, 32, BLACK, 2);
+        final FixedFrameRateRenderer renderer = new FixedFrameRateRenderer(Collections.singletonList(segment),
+                WHITE, new SoftwareRenderTarget(64, 32), new SequentialTimeNormalizer(), 100);
+        renderer.renderNextFrame();
+
+        // when
+        renderer.renderNextFrame();
+
+        // then
+        assertTrue(renderer.hasCurrentFrameChanged());
+        assertTrue(renderer.getDirtyLeft() <= 10 && renderer.getDirtyLeft() >= 7);
+        assertTrue(renderer.getDirtyRight() >= 20 && renderer.getDirtyRight() <= 23);
+        assertTrue(renderer.getDirtyTop() <= 15 && renderer.getDirtyBottom() >= 17);
+    }
+
+    @Test
+    public void reportsWholeFrameDamagedAfterReset() {
+        // given
+        final TimedSegment segment = new TimedSegment(new float[]{0, 60}, new float[]{16, 16}, new long[]{0, 600},
+                64, 32, BLACK, 2);
+        final FixedFrameRateRenderer renderer = new FixedFrameRateRenderer(Collections.singletonList(segment),
+                WHITE, new SoftwareRenderTarget(64, 32), new SequentialTimeNormalizer(), 100);
+        renderer.renderNextFrame();
+        renderer.renderNextFrame();
+
+        // when
+        renderer.resetRenderer();
+        renderer.renderNextFrame();
+
+        // then
+        assertEquals(0, renderer.getDirtyLeft());
+        assertEquals(0, renderer.getDirtyTop());
+        assertEquals(64, renderer.getDirtyRight());
+        assertEquals(32, renderer.getDirtyBottom());
+    }
+
+    @Test
+    public void reportsNoDamageForFinalExtraFrames() {
+        // given
+        final TimedSegment segment = new TimedSegment(new float[]{0, 60}, new float[]{16, 16}, new long[]{0, 100},
+                64, 32, BLACK, 2);
+        final FixedFrameRateRenderer renderer = new FixedFrameRateRenderer(Collections.singletonList(segment),
+                WHITE, new SoftwareRenderTarget(64, 32), new SequentialTimeNormalizer(), 100);
+        renderer.addFinalFrameExtraDelay(200);
+        renderer.renderFrame(renderer.getDrawingFramesCount() - 1);
+
+        // when
+        renderer.renderNextFrame();
+
+        // then
+        assertFalse(renderer.hasCurrentFrameChanged());
+    }
+
+    @Test
+    public void jumpsToFrameWithSameInkAsRenderingAllFrames() {
+        // given
+        final TimedSegment first = new TimedSegment(new float[]{0, 30, 60}, new float[]{4, 20, 4}, new long[]{0, 300, 600},
+                64, 32, BLACK, 3);
+        final TimedSegment second = new TimedSegment(new float[]{60, 0}, new float[]{28, 28}, new long[]{0, 500},
+                64, 32, 0xFFFF0000, 3);
+        final FixedFrameRateRenderer sequential = new FixedFrameRateRenderer(Arrays.asList(first, second),
+                WHITE, new SoftwareRenderTarget(64, 32), new SequentialTimeNormalizer(), 100);
+        final FixedFrameRateRenderer jumping = new FixedFrameRateRenderer(sequential);
+
+        // when
+        for (int i = 0; i <= 9; i++) {
+            sequential.renderNextFrame();
+        }
+        jumping.renderFrame(9);
+
+        // then the parts drawn frame by frame only blend their anti-aliased ends twice
+        final double expected = ink(pixels(sequential));
+        assertEquals(expected, ink(pixels(jumping)), expected * 0.03);
+    }
+
+    @Test
+    public void drawsPiecesOfCurveSegment() {
+        // given
+        final CubicBezierStroke curve = fitArc(0, 600);
+        final TimedSegment segment = new TimedSegment(curve, 128, 64, BLACK, 4);
+        final FixedFrameRateRenderer renderer = new FixedFrameRateRenderer(Collections.singletonList(segment),
+                WHITE, new SoftwareRenderTarget(64, 32), new SingleFrameTimeNormalizer(), 100);
+
+        // when
+        renderer.renderNextFrame();
+
+        // then
+        final float[] controlPoints = new float[curve.getControlPointsCount() * 2];
+        for (int i = 0; i < curve.getControlPointsCount(); i++) {
+            controlPoints[i * 2] = curve.getControlX(i) / 2;
+            controlPoints[i * 2 + 1] = curve.getControlY(i) / 2;
+        }
+        final SoftwareRenderTarget expected = new SoftwareRenderTarget(64, 32);
+        expected.fill(WHITE);
+        expected.drawCurve(controlPoints, curve.getPiecesCount(), BLACK, 2);
+        assertArrayEquals(expected.getPixels(), pixels(renderer));
+    }
+
+    @Test
+    public void drawsCurveSegmentProgressivelyOverFrames() {
+        // given
+        final TimedSegment segment = new TimedSegment(fitArc(0, 600), 64, 32, BLACK, 3);
+        final FixedFrameRateRenderer sequential = new FixedFrameRateRenderer(Collections.singletonList(segment),
+                WHITE, new SoftwareRenderTarget(64, 32), new SequentialTimeNormalizer(), 100);
+        final FixedFrameRateRenderer whole = new FixedFrameRateRenderer(Collections.singletonList(segment),
+                WHITE, new SoftwareRenderTarget(64, 32), new SingleFrameTimeNormalizer(), 100);
+
+        // when
+        sequential.renderNextFrame();
+        sequential.renderNextFrame();
+        final int[] halfDrawn = pixels(sequential).clone();
+        while (sequential.hasNextFrame()) {
+            sequential.renderNextFrame();
+        }
+        whole.renderNextFrame();
+
+        // then the arc starts at the right and ends at the top
+        assertEquals(BLACK, halfDrawn[16 * 64 + 62]);
+        assertEquals(WHITE, halfDrawn[2 * 64 + 32]);
+        final double expected = ink(pixels(whole));
+        assertEquals(expected, ink(pixels(sequential)), expected * 0.03);
+    }
+
+    @Test
+    public void takesSegmentsFromDrawingOnlyWhileDrawingThem() {
+        // given
+        final TimedSegment first = new TimedSegment(new float[]{0, 60}, new float[]{8, 8}, new long[]{0, 200},
+                64, 32, BLACK, 2);
+        final TimedSegment second = new TimedSegment(new float[]{0, 60}, new float[]{24, 24}, new long[]{1000, 1200},
+                64, 32, BLACK, 2);
+        final long[] startTimes = {0, 200 + SequentialTimeNormalizer.SEGMENT_PAUSE};
+        final int[] takenSegments = new int[2];
+        final List<TimedSegment> drawing = new IndexedDrawing(Arrays.asList(first, second), startTimes, takenSegments);
+
+        // when
+        final FixedFrameRateRenderer renderer = new FixedFrameRateRenderer(drawing,
+                WHITE, new SoftwareRenderTarget(64, 32), new SequentialTimeNormalizer(), 100);
+        final int[] takenBeforeRendering = takenSegments.clone();
+        renderer.renderNextFrame();
+
+        // then
+        assertArrayEquals(new int[]{0, 0}, takenBeforeRendering);
+        assertTrue(takenSegments[0] > 0);
+        assertEquals(0, takenSegments[1]);
+        assertEquals(BLACK, pixels(renderer)[8 * 64 + 2]);
+    }
+
+    /**
+     * A drawing which knows the timing of its segments and counts how often each segment is taken
+     */
+    private static class IndexedDrawing extends AbstractList<TimedSegment> implements SequentialTimeIndex {
+        private final List<TimedSegment> segments;
+        private final long[] startTimes;
+        private final int[] takenSegments;
+
+        IndexedDrawing(List<TimedSegment> segments, long[] startTimes, int[] takenSegments) {
+            this.segments = segments;
+            this.startTimes = startTimes;
+            this.takenSegments = takenSegments;
+        }
+
+        @Override
+        public TimedSegment get(int index) {
+            takenSegments[index]++;
+            return segments.get(index);
+        }
+
+        @Override
+        public int size() {
+            return segments.size();
+        }
+
+        @Override
+        public long getSequentialStartTime(int segmentIndex) {
+            return startTimes[segmentIndex];
+        }
+
+        @Override
+        public long getSegmentDuration(int segmentIndex) {
+            return segments.get(segmentIndex).getDuration();
+        }
+    }
+
+    /**
+     * Fits a curve through a three quarters circle around the middle of a 64x32 canvas
+     */
+    private static CubicBezierStroke fitArc(long startTimestamp, long duration) {
+        final int pointsCount = 61;
+        final float[] xs = new float[pointsCount];
+        final float[] ys = new float[pointsCount];
+        final long[] timestamps = new long[pointsCount];
+        for (int i = 0; i < pointsCount; i++) {
+            final double angle = 1.5 * Math.PI * i / (pointsCount - 1);
+            xs[i] = (float) (32 + 30 * Math.cos(angle));
+            ys[i] = (float) (16 + 14 * Math.sin(angle));
+            timestamps[i] = startTimestamp + duration * i / (pointsCount - 1);
+        }
+        return CubicBezierStroke.fit(xs, ys, timestamps, pointsCount, 0.5f, 8f);
+    }
+
+    private static int[] pixels(FixedFrameRateRenderer renderer) {
+        return ((SoftwareRenderTarget) renderer.getRenderTarget()).getPixels();
+    }
+
+    private static double ink(int[] pixels) {
+        double ink = 0;
+        for (int pixel : pixels) {
+            ink += 1 - (pixel & 0xFF) / 255.0;
+        }
+        return ink;
+    }
+}
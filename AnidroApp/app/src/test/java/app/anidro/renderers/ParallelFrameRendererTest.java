@@ -0,0 +1,51 @@
+package app.anidro.renderers;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ParallelFrameRendererTest {
+    private static final long FRAME_BYTES = 1280 * 720 * 4;
+
+    @Test
+    public void keepsThreadsCountWhenFramesFit() {
+        // given
+        final long availableBytes = 4 * 3 * FRAME_BYTES;
+
+        // when
+        final int threadsCount = ParallelFrameRenderer.capThreadsCount(4, 2, FRAME_BYTES, availableBytes);
+
+        // then
+        assertEquals(4, threadsCount);
+    }
+
+    @Test
+    public void reducesThreadsCountToFramesFittingInMemory() {
+        // given
+        final long availableBytes = 2 * 3 * FRAME_BYTES + FRAME_BYTES;
+
+        // when
+        final int threadsCount = ParallelFrameRenderer.capThreadsCount(4, 2, FRAME_BYTES, availableBytes);
+
+        // then
+        assertEquals(2, threadsCount);
+    }
+
+    @Test
+    public void keepsSingleThreadWithoutFreeMemory() {
+        // when
+        final int threadsCount = ParallelFrameRenderer.capThreadsCount(4, 2, FRAME_BYTES, 0);
+
+        // then
+        assertEquals(1, threadsCount);
+    }
+
+    @Test
+    public void keepsThreadsCountForEmptyFrames() {
+        // when
+        final int threadsCount = ParallelFrameRenderer.capThreadsCount(4, 2, 0, 0);
+
+        // then
+        assertEquals(4, threadsCount);
+    }
+}
@@ -0,0 +1,70 @@
+package app.anidro.renderers;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class RunLengthSnapshotTest {
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+
+    @Test
+    public void restoresCompressedPixels() {
+        // given
+        final int[] pixels = new int[1000];
+        Arrays.fill(pixels, WHITE);
+        Arrays.fill(pixels, 100, 140, BLACK);
+        pixels[500] = 0x80FF0000;
+        pixels[999] = BLACK;
+
+        // when
+        final RunLengthSnapshot snapshot = RunLengthSnapshot.compress(pixels, pixels.length);
+
+        // then
+        assertNotNull(snapshot);
+        assertEquals(6 * 2 * 4, snapshot.getByteCount());
+        final int[] restored = new int[pixels.length];
+        snapshot.restore(restored);
+        assertArrayEquals(pixels, restored);
+    }
+
+    @Test
+    public void compressesOnlyFirstPixels() {
+        // given
+        final int[] pixels = new int[100];
+        Arrays.fill(pixels, 0, 50, BLACK);
+        Arrays.fill(pixels, 50, 100, WHITE);
+
+        // when
+        final RunLengthSnapshot snapshot = RunLengthSnapshot.compress(pixels, 50);
+
+        // then
+        assertNotNull(snapshot);
+        final int[] restored = new int[100];
+        snapshot.restore(restored);
+        for (int i = 0; i < 50; i++) {
+            assertEquals(BLACK, restored[i]);
+        }
+        assertEquals(0, restored[50]);
+    }
+
+    @Test
+    public void refusesPixelsNotWorthCompressing() {
+        // given
+        final int[] pixels = new int[100];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = i % 2 == 0 ? WHITE : BLACK;
+        }
+
+        // when
+        final RunLengthSnapshot snapshot = RunLengthSnapshot.compress(pixels, pixels.length);
+
+        // then
+        assertNull(snapshot);
+    }
+}
@@ -0,0 +1,147 @@
+package app.anidro.renderers;
+
+import org.junit.Test;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import app.anidro.models.TimedSegment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SequentialTimeNormalizerTest {
+    private static final long PAUSE = SequentialTimeNormalizer.SEGMENT_PAUSE;
+
+    @Test
+    public void drawsSegmentsOneAfterAnother() {
+        // given
+        final List<TimedSegment> segments = Arrays.asList(segment(5000, 300), segment(100, 0), segment(9000, 250));
+        final SequentialTimeNormalizer normalizer = new SequentialTimeNormalizer();
+
+        // when
+        normalizer.normalizeDrawing(segments);
+
+        // then
+        final List<NormalizedSegment> normalized = normalizer.getNormalizedDrawing();
+        assertEquals(0, normalized.get(0).getStartTime());
+        assertEquals(300 + PAUSE, normalized.get(1).getStartTime());
+        assertEquals(300 + PAUSE + PAUSE, normalized.get(2).getStartTime());
+        assertEquals(300 + PAUSE + PAUSE + 250, normalizer.getNormalizedDuration());
+        assertSame(segments.get(1), normalized.get(1).getSegment());
+    }
+
+    @Test
+    public void readsStartTimesFromIndex() {
+        // given
+        final List<TimedSegment> segments = new IndexedSegments(
+                Arrays.asList(segment(0, 300), segment(0, 200)), new long[]{0, 1000});
+        final SequentialTimeNormalizer normalizer = new SequentialTimeNormalizer();
+
+        // when
+        normalizer.normalizeDrawing(segments);
+
+        // then
+        assertEquals(1000, normalizer.getNormalizedDrawing().get(1).getStartTime());
+        assertEquals(1200, normalizer.getNormalizedDuration());
+    }
+
+    @Test
+    public void normalizesIndexedSegmentsWithoutTakingThem() {
+        // given
+        final IndexedSegments segments = new IndexedSegments(
+                Arrays.asList(segment(0, 300), segment(0, 200)), new long[]{0, 1000});
+        final SequentialTimeNormalizer normalizer = new SequentialTimeNormalizer();
+
+        // when
+        normalizer.normalizeDrawing(segments);
+
+        // then
+        assertEquals(0, segments.getsCount);
+        assertEquals(200, normalizer.getNormalizedDrawing().get(1).getDuration());
+        assertSame(segments.segments.get(1), normalizer.getNormalizedDrawing().get(1).getSegment());
+        assertEquals(1, segments.getsCount);
+    }
+
+    @Test
+    public void indexedStartTimesMatchSummedOnes() {
+        // given
+        final List<TimedSegment> segments = new ArrayList<>();
+        final long[] startTimes = new long[20];
+        long time = 0;
+        for (int i = 0; i < startTimes.length; i++) {
+            final TimedSegment segment = segment(i * 1000L, i * 37L % 300);
+            segments.add(segment);
+            startTimes[i] = time;
+            time += segment.getDuration() + PAUSE;
+        }
+        final SequentialTimeNormalizer summed = new SequentialTimeNormalizer();
+        final SequentialTimeNormalizer indexed = new SequentialTimeNormalizer();
+
+        // when
+        summed.normalizeDrawing(segments);
+        indexed.normalizeDrawing(new IndexedSegments(segments, startTimes));
+
+        // then
+        assertEquals(summed.getNormalizedDuration(), indexed.getNormalizedDuration());
+        for (int i = 0; i < segments.size(); i++) {
+            assertEquals(summed.getNormalizedDrawing().get(i).getStartTime(),
+                    indexed.getNormalizedDrawing().get(i).getStartTime());
+        }
+    }
+
+    @Test
+    public void normalizesEmptyDrawing() {
+        // given
+        final SequentialTimeNormalizer normalizer = new SequentialTimeNormalizer();
+        normalizer.normalizeDrawing(Collections.singletonList(segment(0, 100)));
+
+        // when
+        normalizer.normalizeDrawing(Collections.<TimedSegment>emptyList());
+
+        // then
+        assertTrue(normalizer.getNormalizedDrawing().isEmpty());
+        assertEquals(0, normalizer.getNormalizedDuration());
+    }
+
+    private static TimedSegment segment(long startTimestamp, long duration) {
+        return new TimedSegment(new float[]{0, 10}, new float[]{0, 10},
+                new long[]{startTimestamp, startTimestamp + duration}, 100, 100, 0xFF000000, 4);
+    }
+
+    private static class IndexedSegments extends AbstractList<TimedSegment> implements SequentialTimeIndex {
+        private final List<TimedSegment> segments;
+        private final long[] startTimes;
+        private int getsCount;
+
+        IndexedSegments(List<TimedSegment> segments, long[] startTimes) {
+            this.segments = segments;
+            this.startTimes = startTimes;
+        }
+
+        @Override
+        public TimedSegment get(int index) {
+            getsCount++;
+            return segments.get(index);
+        }
+
+        @Override
+        public int size() {
+            return segments.size();
+        }
+
+        @Override
+        public long getSequentialStartTime(int segmentIndex) {
+            return startTimes[segmentIndex];
+        }
+
+        @Override
+        public long getSegmentDuration(int segmentIndex) {
+            return segments.get(segmentIndex).getDuration();
+        }
+    }
+}
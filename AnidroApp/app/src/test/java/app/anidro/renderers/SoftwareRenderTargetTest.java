@@ -0,0 +1,202 @@
+package app.anidro.renderers;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertNull;
+
+public class SoftwareRenderTargetTest {
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+
+    @Test
+    public void fillsAllPixels() {
+        // given
+        final SoftwareRenderTarget target = new SoftwareRenderTarget(8, 4);
+
+        // when
+        target.fill(0xFF123456);
+
+        // then
+        for (int pixel : target.getPixels()) {
+            assertEquals(0xFF123456, pixel);
+        }
+        assertEquals(8 * 4 * 4, target.getByteCount());
+        assertNull(target.getBitmap());
+    }
+
+    @Test
+    public void coversRowsWithinHalfStrokeWidth() {
+        // given
+        final SoftwareRenderTarget target = whiteTarget(64, 32);
+
+        // when
+        target.drawStroke(new float[]{10, 16, 50, 16}, 2, BLACK, 4);
+
+        // then
+        assertEquals(WHITE, pixel(target, 30, 12));
+        assertEquals(WHITE, pixel(target, 30, 13));
+        assertEquals(BLACK, pixel(target, 30, 14));
+        assertEquals(BLACK, pixel(target, 30, 15));
+        assertEquals(BLACK, pixel(target, 30, 16));
+        assertEquals(BLACK, pixel(target, 30, 17));
+        assertEquals(WHITE, pixel(target, 30, 18));
+    }
+
+    @Test
+    public void inksAreaOfRoundCappedStroke() {
+        // given
+        final SoftwareRenderTarget target = whiteTarget(64, 32);
+        final float strokeWidth = 4;
+
+        // when
+        target.drawStroke(new float[]{10, 16, 50, 16}, 2, BLACK, strokeWidth);
+
+        // then
+        final double expected = 40 * strokeWidth + Math.PI * strokeWidth * strokeWidth / 4;
+        assertEquals(expected, ink(target), expected * 0.02);
+    }
+
+    @Test
+    public void inksAreaOfDiagonalStroke() {
+        // given
+        final SoftwareRenderTarget target = whiteTarget(64, 64);
+        final float strokeWidth = 6;
+
+        // when
+        target.drawStroke(new float[]{10, 10, 50, 40}, 2, BLACK, strokeWidth);
+
+        // then
+        final double expected = 50 * strokeWidth + Math.PI * strokeWidth * strokeWidth / 4;
+        assertEquals(expected, ink(target), expected * 0.02);
+    }
+
+    @Test
+    public void drawsSingleVertexAsDot() {
+        // given
+        final SoftwareRenderTarget target = whiteTarget(32, 32);
+
+        // when
+        target.drawStroke(new float[]{16, 16}, 1, BLACK, 10);
+
+        // then
+        assertEquals(BLACK, pixel(target, 16, 16));
+        assertEquals(WHITE, pixel(target, 16, 4));
+        assertEquals(Math.PI * 25, ink(target), Math.PI * 25 * 0.03);
+    }
+
+    @Test
+    public void blendsTranslucentColorOverBackground() {
+        // given
+        final SoftwareRenderTarget target = whiteTarget(32, 32);
+
+        // when
+        target.drawStroke(new float[]{4, 16, 28, 16}, 2, 0x80FF0000, 8);
+
+        // then
+        final int blended = pixel(target, 16, 16);
+        assertEquals(0xFF, blended >>> 24);
+        assertEquals(0xFF, (blended >> 16) & 0xFF);
+        assertEquals(0x7F, (blended >> 8) & 0xFF, 1);
+        assertEquals(0x7F, blended & 0xFF, 1);
+    }
+
+    @Test
+    public void blendsOverlappingJoinsOnlyOnce() {
+        // given
+        final SoftwareRenderTarget straight = whiteTarget(40, 32);
+        final SoftwareRenderTarget backAndForth = whiteTarget(40, 32);
+
+        // when
+        straight.drawStroke(new float[]{10, 16, 30, 16}, 2, 0x80000000, 6);
+        backAndForth.drawStroke(new float[]{10, 16, 30, 16, 10, 16}, 3, 0x80000000, 6);
+
+        // then
+        assertArrayEquals(straight.getPixels(), backAndForth.getPixels());
+    }
+
+    @Test
+    public void skipsTransparentColor() {
+        // given
+        final SoftwareRenderTarget target = whiteTarget(16, 16);
+
+        // when
+        target.drawStroke(new float[]{0, 0, 16, 16}, 2, 0x00000000, 4);
+
+        // then
+        assertEquals(0, ink(target), 0);
+    }
+
+    @Test
+    public void clipsStrokeToTarget() {
+        // given
+        final SoftwareRenderTarget target = whiteTarget(16, 16);
+
+        // when
+        target.drawStroke(new float[]{-20, 8, 40, 8}, 2, BLACK, 2);
+        target.drawStroke(new float[]{-20, -20, -10, -10}, 2, BLACK, 2);
+
+        // then
+        assertEquals(16 * 2, ink(target), 1);
+    }
+
+    @Test
+    public void restoresSnapshot() {
+        // given
+        final SoftwareRenderTarget target = whiteTarget(16, 16);
+        target.drawStroke(new float[]{2, 2, 14, 14}, 2, BLACK, 2);
+        final int[] expected = target.getPixels().clone();
+        final RenderTarget.Snapshot snapshot = target.takeSnapshot();
+
+        // when
+        target.drawStroke(new float[]{2, 14, 14, 2}, 2, 0xFFFF0000, 2);
+        target.restoreSnapshot(snapshot);
+
+        // then
+        assertArrayEquals(expected, target.getPixels());
+        assertTrue(snapshot.getByteCount() < 16 * 16 * 4);
+    }
+
+    @Test
+    public void restoresUncompressibleSnapshot() {
+        // given
+        final SoftwareRenderTarget target = new SoftwareRenderTarget(16, 16);
+        final int[] pixels = target.getPixels();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | i;
+        }
+        final int[] expected = pixels.clone();
+        final RenderTarget.Snapshot snapshot = target.takeSnapshot();
+
+        // when
+        target.fill(WHITE);
+        target.restoreSnapshot(snapshot);
+
+        // then
+        assertArrayEquals(expected, target.getPixels());
+        assertEquals(16 * 16 * 4, snapshot.getByteCount());
+    }
+
+    private static SoftwareRenderTarget whiteTarget(int width, int height) {
+        final SoftwareRenderTarget target = new SoftwareRenderTarget(width, height);
+        target.fill(WHITE);
+        return target;
+    }
+
+    private static int pixel(SoftwareRenderTarget target, int x, int y) {
+        return target.getPixels()[y * target.getWidth() + x];
+    }
+
+    /**
+     * Returns the area covered by black on white, in pixels
+     */
+    private static double ink(SoftwareRenderTarget target) {
+        double ink = 0;
+        for (int pixel : target.getPixels()) {
+            ink += 1 - (pixel & 0xFF) / 255.0;
+        }
+        return ink;
+    }
+}
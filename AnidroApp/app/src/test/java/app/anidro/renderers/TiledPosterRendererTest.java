@@ -0,0 +1,47 @@
+package app.anidro.renderers;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TiledPosterRendererTest {
+
+    @Test
+    public void limitsBandOfPosterSizedImages() {
+        // when
+        final int bandSize = TiledPosterRenderer.getBandSize(4320, 256);
+
+        // then
+        assertEquals(242, bandSize);
+        assertTrue(4320 * bandSize <= TiledPosterRenderer.MAX_BAND_PIXELS);
+    }
+
+    @Test
+    public void keepsTileSizeWhenBandFits() {
+        // when
+        final int bandSize = TiledPosterRenderer.getBandSize(1080, 256);
+
+        // then
+        assertEquals(256, bandSize);
+    }
+
+    @Test
+    public void limitsBandOfWideImages() {
+        // when
+        final int bandSize = TiledPosterRenderer.getBandSize(100000, 256);
+
+        // then
+        assertEquals(10, bandSize);
+        assertTrue(100000 * bandSize <= TiledPosterRenderer.MAX_BAND_PIXELS);
+    }
+
+    @Test
+    public void keepsSingleRowForExtremelyWideImages() {
+        // when
+        final int bandSize = TiledPosterRenderer.getBandSize(TiledPosterRenderer.MAX_BAND_PIXELS * 2, 256);
+
+        // then
+        assertEquals(1, bandSize);
+    }
+}